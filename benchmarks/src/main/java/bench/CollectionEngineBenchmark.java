@@ -0,0 +1,80 @@
+package bench;
+
+import collection.ParcelMap;
+import collection.QueueOfCustomers;
+import controller.CollectionEngine;
+import model.Customer;
+import model.Parcel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import util.AsyncLog;
+import util.LogLevel;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CollectionEngineBenchmark class - measures serving a full queue with
+ * CollectionEngine.processAll on several counters at once, each customer
+ * collecting a different parcel. The time is per customer, so it shrinks as
+ * counters are added for as long as they do not hold each other up on the
+ * shared queue and parcel map. counters=0 runs one counter per available
+ * processor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CollectionEngineBenchmark {
+    private static final int CUSTOMERS = 100_000;
+
+    @Param({"1", "2", "4", "0"})
+    public int counters;
+
+    private Parcel[] parcels;
+    private Customer[] customers;
+    private CollectionEngine engine;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        AsyncLog.getInstance().setLevel(LogLevel.WARN);
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(42);
+        parcels = new Parcel[CUSTOMERS];
+        customers = new Customer[CUSTOMERS];
+        for (int i = 0; i < CUSTOMERS; i++) {
+            parcels[i] = generator.nextParcel(i);
+            customers[i] = new Customer(i + 1, "Customer " + i, parcels[i].getParcelID());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+        ParcelMap parcelMap = new ParcelMap();
+        QueueOfCustomers queue = new QueueOfCustomers();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            parcels[i].setCollected(false);
+            parcelMap.addParcel(parcels[i]);
+            queue.addCustomer(customers[i]);
+        }
+        engine = new CollectionEngine(parcelMap, queue,
+                counters > 0 ? counters : Runtime.getRuntime().availableProcessors());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CUSTOMERS)
+    public long serveAll() throws InterruptedException {
+        return engine.processAll();
+    }
+}
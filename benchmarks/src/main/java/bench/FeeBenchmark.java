@@ -0,0 +1,127 @@
+package bench;
+
+import collection.ParcelMap;
+import collection.QueueOfCustomers;
+import controller.FeeCache;
+import controller.FeeRules;
+import controller.Tariff;
+import controller.Worker;
+import model.Parcel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FeeBenchmark class - compares the default tariff's calculateFee called once
+ * per parcel with the fee rules as they were hard-coded before tariffs, with
+ * the batch calculateFees over primitive columns, and with quoteFee answered
+ * from a warm fee cache. All are reported per parcel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeeBenchmark {
+    private static final int PARCELS = 4096;
+
+    private Worker worker;
+    private Tariff tariff;
+    private Parcel[] parcels;
+    private double[] weights;
+    private int[] lengths;
+    private int[] widths;
+    private int[] heights;
+    private int[] days;
+    private double[] discounts;
+    private double[] fees;
+
+    @Setup
+    public void generate() {
+        worker = new Worker(new ParcelMap(), new QueueOfCustomers());
+        worker.setFeeCache(new FeeCache(PARCELS * 2));
+        FeeRules.getInstance().setTariff(Tariff.defaults());
+        tariff = FeeRules.getInstance().getTariff();
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(42);
+        parcels = new Parcel[PARCELS];
+        weights = new double[PARCELS];
+        lengths = new int[PARCELS];
+        widths = new int[PARCELS];
+        heights = new int[PARCELS];
+        days = new int[PARCELS];
+        discounts = new double[PARCELS];
+        fees = new double[PARCELS];
+        for (int i = 0; i < PARCELS; i++) {
+            Parcel parcel = generator.nextParcel(i);
+            parcels[i] = parcel;
+            weights[i] = parcel.getWeight();
+            lengths[i] = parcel.getLength();
+            widths[i] = parcel.getWidth();
+            heights[i] = parcel.getHeight();
+            days[i] = parcel.getDaysInDepot();
+            discounts[i] = tariff.getDiscount(parcel.getParcelID());
+            worker.quoteFee(parcel);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PARCELS)
+    public void scalar(Blackhole blackhole) {
+        for (Parcel parcel : parcels) {
+            blackhole.consume(worker.calculateFee(parcel));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PARCELS)
+    public void hardCoded(Blackhole blackhole) {
+        for (Parcel parcel : parcels) {
+            blackhole.consume(hardCodedFee(parcel));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PARCELS)
+    public void cached(Blackhole blackhole) {
+        for (Parcel parcel : parcels) {
+            blackhole.consume(worker.quoteFee(parcel));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PARCELS)
+    public double[] batch() {
+        tariff.calculateFees(weights, lengths, widths, heights, days, discounts, fees, 0, PARCELS);
+        return fees;
+    }
+
+    /**
+     * The fee rules as Worker.calculateFee had them before tariffs
+     */
+    private static double hardCodedFee(Parcel parcel) {
+        double fee = parcel.getWeight() * 0.5;
+        double volume = parcel.getLength() * parcel.getWidth() * parcel.getHeight();
+        fee += volume * 0.01;
+        if (parcel.getDaysInDepot() > 7) {
+            fee += 10.0;
+        } else if (parcel.getDaysInDepot() > 3) {
+            fee += 5.0;
+        }
+        if (parcel.getParcelID().startsWith("X")) {
+            fee *= 0.9;
+        }
+        return Math.round(fee * 100.0) / 100.0;
+    }
+}
@@ -0,0 +1,93 @@
+package bench;
+
+import collection.Journal;
+import collection.ParcelMap;
+import collection.QueueOfCustomers;
+import model.Parcel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import util.AsyncLog;
+import util.LogLevel;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JournalBenchmark class - measures what the write-ahead journal adds to a
+ * parcel change.
+ *
+ * Each operation replaces a random parcel, which journals one record. With
+ * durability "none" there is no journal, with "async" the change returns once
+ * its record is buffered, and with "sync" it also waits until the record is
+ * forced to disk. Run "sync" with several threads (-t 4) to see group commit
+ * share each force between them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+    private static final int PARCELS = 100_000;
+
+    @Param({"none", "async", "sync"})
+    public String durability;
+
+    private ParcelMap parcelMap;
+    private Parcel[] parcels;
+    private Path directory;
+    private Journal journal;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        AsyncLog.getInstance().setLevel(LogLevel.WARN);
+        parcelMap = new ParcelMap();
+        parcels = new Parcel[PARCELS];
+        for (int i = 0; i < PARCELS; i++) {
+            parcels[i] = new Parcel(SyntheticDataGenerator.parcelID(i), i % 14, 1.0 + i % 20, 10, 20, 30);
+            parcelMap.addParcel(parcels[i]);
+        }
+        if (!"none".equals(durability)) {
+            directory = Files.createTempDirectory("journal-bench");
+            journal = new Journal(directory, parcelMap, new QueueOfCustomers());
+            journal.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        if (journal != null) {
+            journal.close();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Benchmark
+    public void replaceParcel() throws IOException, InterruptedException {
+        parcelMap.addParcel(parcels[ThreadLocalRandom.current().nextInt(PARCELS)]);
+        if (journal != null && "sync".equals(durability)) {
+            journal.sync();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package bench;
+
+import collection.ParcelMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import util.AsyncLog;
+import util.LogLevel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParcelLoadBenchmark class - measures loading a parcel file of 10k, 1M and
+ * 10M rows, serially and in parallel. The file is generated once per trial
+ * in the temporary directory and deleted afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class ParcelLoadBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"OBJECTS", "COLUMNS"})
+    public ParcelMap.Storage storage;
+
+    private Path parcelFile;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        AsyncLog.getInstance().setLevel(LogLevel.WARN);
+        parcelFile = Files.createTempFile("parcels-" + rows + "-", ".txt");
+        new SyntheticDataGenerator(42).writeParcelFile(parcelFile, rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(parcelFile);
+    }
+
+    @Benchmark
+    public ParcelMap loadSerial() {
+        ParcelMap parcelMap = new ParcelMap(storage);
+        parcelMap.loadParcelsFromFile(parcelFile.toString());
+        return parcelMap;
+    }
+
+    @Benchmark
+    public ParcelMap loadParallel() {
+        ParcelMap parcelMap = new ParcelMap(storage);
+        parcelMap.loadParcelsFromFileParallel(parcelFile.toString());
+        return parcelMap;
+    }
+}
@@ -0,0 +1,77 @@
+package bench;
+
+import collection.ParcelMap;
+import model.Parcel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import util.AsyncLog;
+import util.LogLevel;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParcelLookupBenchmark class - measures findParcelByID for IDs that are in
+ * the map and for IDs that are not. Lookups walk a shuffled array of IDs so
+ * the access pattern is not cache friendly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParcelLookupBenchmark {
+    private static final int KEYS = 1 << 16;
+
+    @Param({"10000", "1000000"})
+    public int parcels;
+
+    @Param({"OBJECTS", "COLUMNS"})
+    public ParcelMap.Storage storage;
+
+    private ParcelMap parcelMap;
+    private String[] hits;
+    private String[] misses;
+    private int next;
+
+    @Setup
+    public void fill() {
+        AsyncLog.getInstance().setLevel(LogLevel.WARN);
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(42);
+        parcelMap = new ParcelMap(storage);
+        for (int i = 0; i < parcels; i++) {
+            parcelMap.addParcel(generator.nextParcel(i));
+        }
+
+        Random random = new Random(7);
+        hits = new String[KEYS];
+        misses = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            // New String instances, so lookups hash and compare like IDs read from input
+            hits[i] = new String(SyntheticDataGenerator.parcelID(random.nextInt(parcels)));
+            misses[i] = SyntheticDataGenerator.parcelID(parcels + random.nextInt(parcels));
+        }
+    }
+
+    @Benchmark
+    public Parcel findHit() {
+        next = (next + 1) & (KEYS - 1);
+        return parcelMap.findParcelByID(hits[next]);
+    }
+
+    @Benchmark
+    public Parcel findMiss() {
+        next = (next + 1) & (KEYS - 1);
+        return parcelMap.findParcelByID(misses[next]);
+    }
+}
@@ -0,0 +1,86 @@
+package bench;
+
+import collection.ParcelMap;
+import model.Parcel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import util.AsyncLog;
+import util.LogLevel;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParcelMapContentionBenchmark class - measures ParcelMap throughput under
+ * contention and compares it with the same map behind a single lock.
+ *
+ * Every thread runs a mix of 90% findParcelByID and 10% collectParcel on
+ * random IDs. Vary the thread count with -t, e.g. -t 1, -t 4, -t max.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class ParcelMapContentionBenchmark {
+    private static final int PARCELS = 1_000_000;
+
+    /**
+     * ParcelMap with every operation behind one lock, the baseline to beat
+     */
+    static class SynchronizedParcelMap extends ParcelMap {
+        @Override
+        public synchronized void addParcel(Parcel parcel) {
+            super.addParcel(parcel);
+        }
+
+        @Override
+        public synchronized Parcel findParcelByID(String parcelID) {
+            return super.findParcelByID(parcelID);
+        }
+
+        @Override
+        public synchronized CollectResult collectParcel(String parcelID) {
+            return super.collectParcel(parcelID);
+        }
+    }
+
+    @Param({"concurrent", "single-lock"})
+    public String map;
+
+    private ParcelMap parcelMap;
+    private String[] ids;
+
+    @Setup
+    public void fill() {
+        AsyncLog.getInstance().setLevel(LogLevel.WARN);
+        parcelMap = "single-lock".equals(map) ? new SynchronizedParcelMap() : new ParcelMap();
+        ids = new String[PARCELS];
+        for (int i = 0; i < PARCELS; i++) {
+            ids[i] = SyntheticDataGenerator.parcelID(i);
+            parcelMap.addParcel(new Parcel(ids[i], i % 14, 1.0 + i % 20, 10, 20, 30));
+        }
+    }
+
+    @Benchmark
+    public Object mixed() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String id = ids[random.nextInt(PARCELS)];
+        if (random.nextInt(10) == 0) {
+            return parcelMap.collectParcel(id);
+        }
+        return parcelMap.findParcelByID(id);
+    }
+}
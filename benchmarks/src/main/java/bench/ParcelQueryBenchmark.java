@@ -0,0 +1,95 @@
+package bench;
+
+import collection.ParcelMap;
+import collection.ParcelQuery;
+import model.Parcel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import util.AsyncLog;
+import util.LogLevel;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParcelQueryBenchmark class - measures a narrow multi-attribute query and
+ * an ID prefix query through ParcelMap.query, against filtering every
+ * waiting parcel with ParcelQuery.matches, as a caller would without indexes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParcelQueryBenchmark {
+    @Param({"1000000"})
+    public int parcels;
+
+    @Param({"OBJECTS", "COLUMNS"})
+    public ParcelMap.Storage storage;
+
+    private ParcelMap parcelMap;
+    private ParcelQuery ranges;
+    private ParcelQuery prefix;
+
+    @Setup
+    public void fill() {
+        AsyncLog.getInstance().setLevel(LogLevel.WARN);
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(42);
+        parcelMap = new ParcelMap(storage);
+        for (int i = 0; i < parcels; i++) {
+            parcelMap.addParcel(generator.nextParcel(i));
+        }
+        ranges = new ParcelQuery().waiting().weightAbove(20).daysBetween(4, 7).volumeAbove(20_000);
+        prefix = new ParcelQuery().waiting().idStartingWith("X00123");
+        // Build the indexes outside the measurement
+        count(parcelMap.query(ranges));
+    }
+
+    @Benchmark
+    public int indexedRanges() {
+        return count(parcelMap.query(ranges));
+    }
+
+    @Benchmark
+    public int scannedRanges() {
+        return scan(ranges);
+    }
+
+    @Benchmark
+    public int indexedPrefix() {
+        return count(parcelMap.query(prefix));
+    }
+
+    @Benchmark
+    public int scannedPrefix() {
+        return scan(prefix);
+    }
+
+    private int scan(ParcelQuery query) {
+        int matches = 0;
+        for (Parcel parcel : parcelMap.getUncollectedParcelsView()) {
+            if (query.matches(parcel)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private static int count(Iterable<Parcel> parcels) {
+        int count = 0;
+        for (Parcel ignored : parcels) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,89 @@
+package bench;
+
+import collection.ParcelMap;
+import collection.QueueOfCustomers;
+import controller.CustomerValidator;
+import controller.Worker;
+import model.Customer;
+import model.Parcel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import util.AsyncLog;
+import util.LogLevel;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProcessNextCustomerBenchmark class - measures serving customers end to end:
+ * dequeue, lookup, collection and fee. Every customer collects a different
+ * parcel, so each call does the full amount of work. With validated=true
+ * the customers were checked by a CustomerValidator when they joined, so the
+ * counter uses the parcel and fee prepared then.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ProcessNextCustomerBenchmark {
+    private static final int CUSTOMERS = 100_000;
+
+    @Param({"false", "true"})
+    public boolean validated;
+
+    private Parcel[] parcels;
+    private Customer[] customers;
+    private Worker worker;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        AsyncLog.getInstance().setLevel(LogLevel.WARN);
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(42);
+        parcels = new Parcel[CUSTOMERS];
+        customers = new Customer[CUSTOMERS];
+        for (int i = 0; i < CUSTOMERS; i++) {
+            parcels[i] = generator.nextParcel(i);
+            customers[i] = new Customer(i + 1, "Customer " + i, parcels[i].getParcelID());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+        ParcelMap parcelMap = new ParcelMap();
+        QueueOfCustomers queue = new QueueOfCustomers();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            parcels[i].setCollected(false);
+            parcelMap.addParcel(parcels[i]);
+            // Customers are reused, so drop what the last validation prepared
+            customers[i].prepare(null, 0, 0, 0, 0);
+            queue.addCustomer(customers[i]);
+        }
+        worker = new Worker(parcelMap, queue);
+        if (validated) {
+            CustomerValidator validator = new CustomerValidator(parcelMap, queue);
+            validator.start();
+            worker.setValidator(validator);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CUSTOMERS)
+    public void serveAll(Blackhole blackhole) {
+        for (int i = 0; i < CUSTOMERS; i++) {
+            blackhole.consume(worker.processNextCustomer());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package bench;
+
+import collection.QueueOfCustomers;
+import model.Customer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import util.AsyncLog;
+import util.LogLevel;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QueueDrainBenchmark class - measures draining a full customer queue from the
+ * front with removeCustomer(0), the way the counter serves customers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class QueueDrainBenchmark {
+    @Param({"10000", "1000000"})
+    public int customers;
+
+    private Customer[] input;
+    private QueueOfCustomers queue;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        AsyncLog.getInstance().setLevel(LogLevel.WARN);
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(42);
+        input = new Customer[customers];
+        for (int i = 0; i < customers; i++) {
+            input[i] = generator.nextCustomer(i + 1, customers);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        queue = new QueueOfCustomers();
+        for (Customer customer : input) {
+            queue.addCustomer(customer);
+        }
+    }
+
+    @Benchmark
+    public void drain(Blackhole blackhole) {
+        while (!queue.isEmpty()) {
+            blackhole.consume(queue.removeCustomer(0));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package bench;
+
+import collection.ParcelMap;
+import collection.QueueOfCustomers;
+import controller.ReportGenerator;
+import controller.Worker;
+import model.Parcel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import util.AsyncLog;
+import util.LogLevel;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReportBenchmark class - measures the report generation behind MainView's
+ * Generate Report button, with the output discarded so only aggregation and
+ * formatting are timed. Half of the parcels are collected.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReportBenchmark {
+    @Param({"10000", "1000000"})
+    public int parcels;
+
+    @Param({"OBJECTS", "COLUMNS"})
+    public ParcelMap.Storage storage;
+
+    private ReportGenerator generator;
+
+    /**
+     * Writer that drops everything written to it
+     */
+    private static class NullWriter extends Writer {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public Writer append(CharSequence text) {
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Setup
+    public void fill() {
+        AsyncLog.getInstance().setLevel(LogLevel.WARN);
+        SyntheticDataGenerator data = new SyntheticDataGenerator(42);
+        ParcelMap parcelMap = new ParcelMap(storage);
+        for (int i = 0; i < parcels; i++) {
+            Parcel parcel = data.nextParcel(i);
+            parcelMap.addParcel(parcel);
+            if (i % 2 == 0) {
+                parcelMap.collectParcel(parcel.getParcelID());
+            }
+        }
+        generator = new ReportGenerator(parcelMap, new Worker(parcelMap, new QueueOfCustomers()));
+    }
+
+    @Benchmark
+    public ReportGenerator.Summary writeReport() throws IOException {
+        return generator.writeReport(new NullWriter(), null);
+    }
+}
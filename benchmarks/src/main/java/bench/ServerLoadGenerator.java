@@ -0,0 +1,188 @@
+package bench;
+
+import collection.ParcelMap;
+import collection.QueueOfCustomers;
+import server.DepotServer;
+import util.AsyncLog;
+import util.LogLevel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ServerLoadGenerator class - drives a DepotServer with a closed-loop load and
+ * prints throughput and latency percentiles per kind of request.
+ *
+ * Each client thread sends one request at a time over a keep-alive connection:
+ * 80% parcel lookups, 10% customers joining the queue and 10% serving the next
+ * customer. Without a URL an in-process server is started on a free port with
+ * synthetic parcels.
+ *
+ * Usage: ServerLoadGenerator [clients] [seconds] [base URL]
+ */
+public class ServerLoadGenerator {
+    private static final int PARCELS = 200_000;
+    private static final String[] KINDS = {"lookup", "enqueue", "next"};
+
+    /**
+     * Latencies of one client, in nanoseconds, per kind of request
+     */
+    private static class Recorder {
+        final long[][] latencies = new long[KINDS.length][1024];
+        final int[] counts = new int[KINDS.length];
+        int errors;
+
+        void record(int kind, long nanos) {
+            if (counts[kind] == latencies[kind].length) {
+                latencies[kind] = Arrays.copyOf(latencies[kind], counts[kind] * 2);
+            }
+            latencies[kind][counts[kind]++] = nanos;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String baseUrl = args.length > 2 ? args[2] : null;
+
+        DepotServer server = null;
+        if (baseUrl == null) {
+            AsyncLog.getInstance().setLevel(LogLevel.WARN);
+            SyntheticDataGenerator generator = new SyntheticDataGenerator(42);
+            ParcelMap parcelMap = new ParcelMap();
+            for (int i = 0; i < PARCELS; i++) {
+                parcelMap.addParcel(generator.nextParcel(i));
+            }
+            server = new DepotServer(parcelMap, new QueueOfCustomers(), null, new InetSocketAddress("127.0.0.1", 0));
+            server.start();
+            baseUrl = "http://127.0.0.1:" + server.getPort();
+        }
+        System.out.println("Load: " + clients + " clients for " + seconds + "s against " + baseUrl);
+
+        // Warm up for a third of the run, then measure
+        run(baseUrl, clients, Math.max(1, seconds / 3), new Recorder[clients]);
+        Recorder[] recorders = new Recorder[clients];
+        long elapsed = run(baseUrl, clients, seconds, recorders);
+        report(recorders, elapsed);
+
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Run the clients for a while
+     * @return Elapsed nanoseconds
+     */
+    private static long run(String baseUrl, int clients, int seconds, Recorder[] recorders)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            Recorder recorder = new Recorder();
+            recorders[c] = recorder;
+            int client = c;
+            threads[c] = new Thread(() -> {
+                Random random = new Random(client);
+                while (System.nanoTime() < end) {
+                    int roll = random.nextInt(10);
+                    int kind = roll < 8 ? 0 : roll == 8 ? 1 : 2;
+                    long begin = System.nanoTime();
+                    try {
+                        if (kind == 0) {
+                            send(baseUrl + "/parcels/" + SyntheticDataGenerator.parcelID(random.nextInt(PARCELS)),
+                                    "GET", null);
+                        } else if (kind == 1) {
+                            send(baseUrl + "/queue", "POST", "name=Client+" + client + "&parcelId="
+                                    + SyntheticDataGenerator.parcelID(random.nextInt(PARCELS)));
+                        } else {
+                            send(baseUrl + "/queue/next", "POST", "");
+                        }
+                        recorder.record(kind, System.nanoTime() - begin);
+                    } catch (IOException e) {
+                        recorder.errors++;
+                    }
+                }
+            }, "load-client-" + c);
+            threads[c].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Send one request and read the whole response, so the connection can be reused
+     */
+    private static void send(String url, String method, String form) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if (form != null) {
+            byte[] body = form.getBytes(StandardCharsets.UTF_8);
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        int status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (in != null) {
+                byte[] buffer = new byte[4096];
+                while (in.read(buffer) != -1) {
+                    // Drain
+                }
+            }
+        }
+        if (status >= 500) {
+            throw new IOException("Server error " + status);
+        }
+    }
+
+    private static void report(Recorder[] recorders, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long total = 0;
+        int errors = 0;
+        System.out.printf("%-8s %10s %10s %10s %10s %10s %10s%n",
+                "request", "req/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            int count = 0;
+            for (Recorder recorder : recorders) {
+                count += recorder.counts[kind];
+            }
+            long[] all = new long[count];
+            int next = 0;
+            for (Recorder recorder : recorders) {
+                System.arraycopy(recorder.latencies[kind], 0, all, next, recorder.counts[kind]);
+                next += recorder.counts[kind];
+            }
+            Arrays.sort(all);
+            total += count;
+            System.out.printf("%-8s %10.0f %10.1f %10.1f %10.1f %10.1f %10.1f%n", KINDS[kind], count / seconds,
+                    percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99),
+                    percentile(all, 0.999), count == 0 ? 0.0 : all[count - 1] / 1000.0);
+        }
+        for (Recorder recorder : recorders) {
+            errors += recorder.errors;
+        }
+        System.out.printf("total    %10.0f req/s, %d errors%n", total / seconds, errors);
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))] / 1000.0;
+    }
+}
@@ -0,0 +1,146 @@
+package bench;
+
+import model.Customer;
+import model.Parcel;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * SyntheticDataGenerator class - produces realistic parcel and customer data
+ * for the benchmarks, either in memory or as files in the application's format.
+ *
+ * IDs are a one-letter prefix (C for most parcels, X for about one in ten)
+ * followed by a zero-padded number. Dimensions are common box sizes with
+ * some jitter, weights are skewed towards light parcels and days in depot
+ * fall off roughly geometrically over two weeks.
+ */
+public class SyntheticDataGenerator {
+    private static final int[][] BOX_SIZES = {
+        {10, 10, 10}, {20, 15, 10}, {30, 20, 15}, {40, 30, 20}, {60, 40, 40}, {80, 50, 50}
+    };
+    private static final String[] FIRST_NAMES = {
+        "John", "Mary", "Aisha", "Wei", "Carlos", "Fatima", "Liam", "Olga", "Ravi", "Sofia"
+    };
+    private static final String[] LAST_NAMES = {
+        "Smith", "Jones", "Khan", "Chen", "Garcia", "Ali", "Murphy", "Ivanova", "Patel", "Rossi"
+    };
+
+    private final Random random;
+
+    /**
+     * Constructor for SyntheticDataGenerator
+     * @param seed Seed, so that runs are repeatable
+     */
+    public SyntheticDataGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Get the ID of the parcel with a given number
+     * @param number Parcel number
+     * @return Parcel ID
+     */
+    public static String parcelID(int number) {
+        String digits = Integer.toString(number);
+        StringBuilder id = new StringBuilder(9);
+        // A deterministic one in ten parcels has the discounted X prefix
+        id.append(number % 10 == 3 ? 'X' : 'C');
+        for (int i = digits.length(); i < 7; i++) {
+            id.append('0');
+        }
+        return id.append(digits).toString();
+    }
+
+    /**
+     * Create a parcel
+     * @param number Parcel number, used for the ID
+     * @return New parcel
+     */
+    public Parcel nextParcel(int number) {
+        int[] box = BOX_SIZES[random.nextInt(BOX_SIZES.length)];
+        int days = Math.min(14, (int) (-Math.log(1 - random.nextDouble()) * 3));
+        double weight = (Math.round(Math.pow(random.nextDouble(), 2) * 250) + 1) / 10.0;
+        return new Parcel(parcelID(number), days, weight,
+                jitter(box[0]), jitter(box[1]), jitter(box[2]));
+    }
+
+    /**
+     * Create a customer collecting one of the first parcelCount parcels
+     * @param seqNo Sequence number of the customer
+     * @param parcelCount Number of parcels to choose from
+     * @return New customer
+     */
+    public Customer nextCustomer(int seqNo, int parcelCount) {
+        String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        return new Customer(seqNo, name, parcelID(random.nextInt(parcelCount)));
+    }
+
+    /**
+     * Write a parcel file with the PARCELS header
+     * @param file File to write
+     * @param count Number of parcels
+     * @throws IOException if the file cannot be written
+     */
+    public void writeParcelFile(Path file, int count) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("PARCELS\n");
+            out.write("ParcelID DaysInDepot Weight Dimensions\n");
+            StringBuilder line = new StringBuilder(64);
+            for (int i = 0; i < count; i++) {
+                Parcel parcel = nextParcel(i);
+                line.setLength(0);
+                line.append(parcel.getParcelID()).append(' ')
+                        .append(parcel.getDaysInDepot()).append(' ')
+                        .append(parcel.getWeight()).append(' ')
+                        .append(parcel.getLength()).append(" x ")
+                        .append(parcel.getWidth()).append(" x ")
+                        .append(parcel.getHeight()).append('\n');
+                out.append(line);
+            }
+        }
+    }
+
+    /**
+     * Write a customer file
+     * @param file File to write
+     * @param count Number of customers
+     * @param parcelCount Number of parcels the customers collect from
+     * @throws IOException if the file cannot be written
+     */
+    public void writeCustomerFile(Path file, int count, int parcelCount) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("SeqNo Name ParcelID\n");
+            for (int i = 0; i < count; i++) {
+                out.write(nextCustomer(i + 1, parcelCount).toString().replace('\t', ' '));
+                out.write('\n');
+            }
+        }
+    }
+
+    private int jitter(int size) {
+        return Math.max(1, size + random.nextInt(5) - 2);
+    }
+
+    /**
+     * Write data files for manual runs of the application
+     * Usage: SyntheticDataGenerator parcels.txt customers.txt parcelCount [customerCount]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: SyntheticDataGenerator <parcelFile> <customerFile> <parcelCount> [customerCount]");
+            return;
+        }
+        int parcelCount = Integer.parseInt(args[2]);
+        int customerCount = args.length > 3 ? Integer.parseInt(args[3]) : parcelCount / 2;
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(42);
+        generator.writeParcelFile(Paths.get(args[0]), parcelCount);
+        generator.writeCustomerFile(Paths.get(args[1]), customerCount, parcelCount);
+    }
+}
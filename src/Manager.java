@@ -1,14 +1,26 @@
+import server.DepotServer;
 import view.MainView;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
- * Manager class - this is the driver class for the application
+ * Manager class - this is the driver class for the application.
+ * Run with --server [port] [parcel file] [customer file] to serve the depot
+ * over HTTP instead of opening the window.
  */
 public class Manager {
     /**
      * Main method
      * @param args Command line arguments
+     * @throws IOException if the server cannot be started
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--server")) {
+            DepotServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        
         try {
             // Set system look and feel
             javax.swing.UIManager.setLookAndFeel(
@@ -0,0 +1,152 @@
+package collection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ByteLineReader class - reads lines from a byte channel into a reusable buffer
+ * so that callers can parse each line in place without creating a String
+ */
+class ByteLineReader {
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private int scanFrom;
+    private boolean endOfInput;
+    private long bytesConsumed;
+
+    // Bounds of the current line in buffer, excluding the line terminator
+    private int lineStart;
+    private int lineEnd;
+    private int lineNumber;
+
+    /**
+     * Constructor for ByteLineReader
+     * @param channel Channel to read from
+     */
+    ByteLineReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+    }
+
+    /**
+     * Advance to the next line
+     * @return true if a line is available, false at end of input
+     * @throws IOException if the channel cannot be read
+     */
+    boolean nextLine() throws IOException {
+        while (true) {
+            for (int i = scanFrom; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    setLine(position, i);
+                    position = i + 1;
+                    scanFrom = position;
+                    return true;
+                }
+            }
+            scanFrom = limit;
+
+            if (endOfInput) {
+                if (position < limit) {
+                    setLine(position, limit);
+                    position = limit;
+                    scanFrom = limit;
+                    return true;
+                }
+                return false;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * Get the buffer holding the current line
+     * @return Line buffer
+     */
+    byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Get the start offset of the current line in the buffer
+     * @return Start offset
+     */
+    int lineStart() {
+        return lineStart;
+    }
+
+    /**
+     * Get the end offset (exclusive) of the current line in the buffer
+     * @return End offset
+     */
+    int lineEnd() {
+        return lineEnd;
+    }
+
+    /**
+     * Get the 1-based number of the current line
+     * @return Line number
+     */
+    int lineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Get the number of bytes consumed so far, including line terminators
+     * @return Bytes consumed
+     */
+    long bytesConsumed() {
+        return bytesConsumed + position;
+    }
+
+    /**
+     * Get the current line as a String - only meant for headers and error messages
+     * @return Current line
+     */
+    String lineAsString() {
+        return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    private void setLine(int start, int end) {
+        // Treat "\r\n" the same as BufferedReader.readLine does
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        lineStart = start;
+        lineEnd = end;
+        lineNumber++;
+    }
+
+    private void fill() throws IOException {
+        // Move the unfinished line to the front, growing the buffer for very long lines
+        int remaining = limit - position;
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+            bytesConsumed += position;
+        } else if (remaining == buffer.length) {
+            byte[] bigger = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, bigger, 0, remaining);
+            buffer = bigger;
+        }
+        position = 0;
+        limit = remaining;
+        scanFrom = remaining;
+
+        ByteBuffer target = ByteBuffer.wrap(buffer, limit, buffer.length - limit);
+        int read;
+        do {
+            read = channel.read(target);
+        } while (read == 0);
+
+        if (read < 0) {
+            endOfInput = true;
+        } else {
+            limit += read;
+        }
+    }
+}
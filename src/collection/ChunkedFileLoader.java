@@ -0,0 +1,259 @@
+package collection;
+
+import util.Metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * ChunkedFileLoader class - splits a file into newline aligned byte ranges and
+ * parses the ranges in parallel on a fork-join pool. Results come back in file
+ * order so callers can merge them exactly as a sequential load would.
+ */
+class ChunkedFileLoader {
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Parser for a single line, shared by the sequential and parallel loaders
+     * @param <T> Type of item produced by a line
+     */
+    interface LineParser<T> {
+        /**
+         * Parse one line
+         * @param buf Buffer holding the line
+         * @param start Start offset of the line
+         * @param end End offset (exclusive) of the line
+         * @param lineNumber Line number used in error messages
+         * @return Parsed item, or null if the line was skipped or rejected
+         */
+        T parseLine(byte[] buf, int start, int end, int lineNumber);
+
+        /**
+         * Get the error for the last line passed to parseLine
+         * @return Error message, or null if the line was not rejected
+         */
+        String lastError();
+
+        /**
+         * Get the kind of error for the last line passed to parseLine, used to
+         * count parse errors by type
+         * @return Short lower_case name such as "missing_fields", or null if the line was not rejected
+         */
+        String lastErrorType();
+    }
+
+    /**
+     * Items and rejected lines of one byte range
+     * @param <T> Type of item produced by a line
+     */
+    static class Chunk<T> {
+        final List<T> items = new ArrayList<>();
+        final List<Integer> badLineNumbers = new ArrayList<>();
+        final List<byte[]> badLines = new ArrayList<>();
+        int lineCount;
+    }
+
+    /**
+     * Parse the data section of a file in parallel
+     * @param channel Channel of the file to read
+     * @param dataStart Offset of the first data line
+     * @param firstLineNumber Line number of the first data line
+     * @param parsers Supplier of a fresh parser for each range
+     * @param pool Pool to parse on
+     * @param errors Receives error messages, in file order, with file line numbers
+     * @param file Name of the kind of file, used to label the parse error counters
+     * @return Parsed items of each range, in file order
+     * @throws IOException if the file cannot be read
+     */
+    static <T> List<List<T>> load(FileChannel channel, long dataStart, int firstLineNumber,
+                                  Supplier<LineParser<T>> parsers, ForkJoinPool pool,
+                                  List<String> errors, String file) throws IOException {
+        long[] bounds = split(channel, dataStart, pool.getParallelism());
+
+        List<RangeTask<T>> tasks = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            tasks.add(new RangeTask<>(channel, bounds[i], bounds[i + 1], parsers));
+        }
+
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        // Rejected lines are parsed again with their real line number to build the message
+        LineParser<T> messageParser = parsers.get();
+        List<List<T>> results = new ArrayList<>(tasks.size());
+        int lineBase = firstLineNumber - 1;
+        for (RangeTask<T> task : tasks) {
+            Chunk<T> chunk = task.join();
+            for (int i = 0; i < chunk.badLines.size(); i++) {
+                byte[] line = chunk.badLines.get(i);
+                messageParser.parseLine(line, 0, line.length, lineBase + chunk.badLineNumbers.get(i));
+                errors.add(messageParser.lastError());
+                countError(file, messageParser);
+            }
+            lineBase += chunk.lineCount;
+            results.add(chunk.items);
+        }
+        return results;
+    }
+
+    /**
+     * Count the line just rejected by a parser in the parse error counters
+     * @param file Name of the kind of file, e.g. "parcels"
+     * @param parser Parser that rejected the line
+     */
+    static void countError(String file, LineParser<?> parser) {
+        Metrics.getInstance().counter("depot_parse_errors_total{file=\"" + file
+                + "\",type=\"" + parser.lastErrorType() + "\"}").increment();
+    }
+
+    /**
+     * Split [dataStart, size) into ranges that each start at the beginning of a line
+     */
+    private static long[] split(FileChannel channel, long dataStart, int parallelism) throws IOException {
+        long size = channel.size();
+        long length = Math.max(0, size - dataStart);
+        int chunks = (int) Math.max(1, Math.min((long) parallelism * CHUNKS_PER_THREAD, length / MIN_CHUNK_SIZE));
+
+        long[] bounds = new long[chunks + 1];
+        bounds[0] = dataStart;
+        bounds[chunks] = Math.max(dataStart, size);
+        for (int i = 1; i < chunks; i++) {
+            long nominal = dataStart + length / chunks * i;
+            bounds[i] = Math.max(bounds[i - 1], nextLineStart(channel, nominal, size));
+        }
+        return bounds;
+    }
+
+    /**
+     * Find the offset just after the next newline at or after position
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Fork-join task parsing one byte range
+     */
+    private static class RangeTask<T> extends RecursiveTask<Chunk<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final Supplier<LineParser<T>> parsers;
+
+        RangeTask(FileChannel channel, long start, long end, Supplier<LineParser<T>> parsers) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.parsers = parsers;
+        }
+
+        @Override
+        protected Chunk<T> compute() {
+            Chunk<T> chunk = new Chunk<>();
+            LineParser<T> parser = parsers.get();
+            ByteLineReader reader = new ByteLineReader(new RangeChannel(channel, start, end));
+            try {
+                while (reader.nextLine()) {
+                    byte[] buf = reader.buffer();
+                    int lineStart = reader.lineStart();
+                    int lineEnd = reader.lineEnd();
+                    T item = parser.parseLine(buf, lineStart, lineEnd, reader.lineNumber());
+                    if (item != null) {
+                        chunk.items.add(item);
+                    } else if (parser.lastError() != null) {
+                        byte[] line = new byte[lineEnd - lineStart];
+                        System.arraycopy(buf, lineStart, line, 0, line.length);
+                        chunk.badLineNumbers.add(reader.lineNumber());
+                        chunk.badLines.add(line);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            chunk.lineCount = reader.lineNumber();
+            return chunk;
+        }
+    }
+
+    /**
+     * Read-only view of a byte range of a file channel using positional reads,
+     * so several ranges of the same channel can be read concurrently
+     */
+    static class RangeChannel implements ReadableByteChannel {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        RangeChannel(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            long remaining = end - position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int oldLimit = dst.limit();
+            if (dst.remaining() > remaining) {
+                dst.limit(dst.position() + (int) remaining);
+            }
+            try {
+                int read = channel.read(dst, position);
+                if (read > 0) {
+                    position += read;
+                }
+                return read;
+            } finally {
+                dst.limit(oldLimit);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+            // The underlying channel is owned by the caller
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package collection;
+
+import model.Parcel;
+import util.DepotClock;
+import util.ParcelIdCodec;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * ColumnParcelStore class - keeps parcels in primitive columns instead of
+ * one object per parcel.
+ *
+ * Columns are allocated in fixed-size chunks that are never copied, so the
+ * collected bits can be claimed with a compare-and-set while the store grows.
+ * IDs are kept as ParcelIdCodec keys and found through an open-addressing
+ * index of positions, so a parcel costs roughly 52 bytes of heap instead of
+ * about 140, and lookups compare longs rather than strings. Parcels handed
+ * out are short-lived views: their fields are read from the columns when the
+ * view is created, while the collected status and the days in depot, which
+ * depends on it, are always read from and written to the store.
+ *
+ * Writers are serialised on this object's lock; reads and collection never lock.
+ */
+class ColumnParcelStore implements ParcelStore {
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int INITIAL_SLOTS = 2048;
+
+    /**
+     * Columns for CHUNK_SIZE consecutive positions
+     */
+    private static final class Chunk {
+        final int[] arrivalDays = new int[CHUNK_SIZE];
+        final double[] weights = new double[CHUNK_SIZE];
+        final int[] lengths = new int[CHUNK_SIZE];
+        final int[] widths = new int[CHUNK_SIZE];
+        final int[] heights = new int[CHUNK_SIZE];
+        // One bit per position
+        final AtomicIntegerArray collected = new AtomicIntegerArray(CHUNK_SIZE >>> 5);
+        // Day collected on + 1, written just after the collected bit is set; 0 while not yet written
+        final int[] collectedDays = new int[CHUNK_SIZE];
+        final long[] keys = new long[CHUNK_SIZE];
+        // Parcel.getVersion of the values held, so cached fees stay valid across views
+        final long[] versions = new long[CHUNK_SIZE];
+    }
+
+    private volatile Chunk[] chunks = new Chunk[16];
+    // Written after the position it counts, so readers that see a count see its columns
+    private volatile int count;
+    // Slot holds position + 1, 0 marks an empty slot; length is a power of two
+    private volatile int[] slots = new int[INITIAL_SLOTS];
+    private final AtomicInteger collectedCount = new AtomicInteger();
+    private final DepotClock clock = DepotClock.getInstance();
+    // Parcels by days in depot; a parcel moves between waiting and collected only with its collected bit
+    private final DaysHistogram daysHistogram = new DaysHistogram(clock);
+
+    @Override
+    public synchronized int put(Parcel parcel) {
+        long key = ParcelIdCodec.encode(parcel.getParcelID());
+        int position = indexOf(key);
+        if (position >= 0) {
+            Chunk chunk = chunks[position >>> CHUNK_BITS];
+            int offset = position & CHUNK_MASK;
+            // Claim the old parcel first, so that a counter collecting it at the
+            // same moment either collects it before it is replaced or finds it taken
+            int oldArrival = chunk.arrivalDays[offset];
+            if (claim(position)) {
+                daysHistogram.remove(oldArrival);
+            } else {
+                daysHistogram.removeCollected(oldArrival, collectedDay(chunk, offset));
+            }
+            write(chunk, offset, parcel);
+            if (parcel.isCollected()) {
+                daysHistogram.addCollected(parcel.getArrivalDay(), parcel.getCollectedDay());
+            } else if (release(position)) {
+                daysHistogram.add(parcel.getArrivalDay());
+            }
+            // Volatile write so that readers see the new values
+            count = count;
+            return -position - 1;
+        }
+
+        position = count;
+        Chunk chunk = chunkForAppend(position);
+        int offset = position & CHUNK_MASK;
+        write(chunk, offset, parcel);
+        chunk.keys[offset] = key;
+        if (parcel.isCollected()) {
+            claim(position);
+            daysHistogram.addCollected(parcel.getArrivalDay(), parcel.getCollectedDay());
+        } else {
+            daysHistogram.add(parcel.getArrivalDay());
+        }
+
+        if ((position + 1) * 2 > slots.length) {
+            rehash(slots.length * 2, position);
+        }
+        slots[freeSlot(slots, key)] = position + 1;
+        count = position + 1;
+        return position;
+    }
+
+    private static void write(Chunk chunk, int offset, Parcel parcel) {
+        chunk.arrivalDays[offset] = parcel.getArrivalDay();
+        chunk.collectedDays[offset] = parcel.getCollectedDay() + 1;
+        chunk.weights[offset] = parcel.getWeight();
+        chunk.lengths[offset] = parcel.getLength();
+        chunk.widths[offset] = parcel.getWidth();
+        chunk.heights[offset] = parcel.getHeight();
+        chunk.versions[offset] = parcel.getVersion();
+    }
+
+    private Chunk chunkForAppend(int position) {
+        int index = position >>> CHUNK_BITS;
+        Chunk[] current = chunks;
+        if (index == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        if (current[index] == null) {
+            current[index] = new Chunk();
+            chunks = current;
+        }
+        return current[index];
+    }
+
+    @Override
+    public Parcel get(long key) {
+        return getAt(indexOf(key));
+    }
+
+    @Override
+    public ParcelMap.CollectResult collect(long key) {
+        int position = indexOf(key);
+        if (position < 0) {
+            return ParcelMap.CollectResult.NOT_FOUND;
+        }
+        return tryCollect(position) ? ParcelMap.CollectResult.COLLECTED
+                : ParcelMap.CollectResult.ALREADY_COLLECTED;
+    }
+
+    @Override
+    public ParcelMap.CollectResult collectAt(int position, long version) {
+        if (position < 0 || position >= count
+                || chunks[position >>> CHUNK_BITS].versions[position & CHUNK_MASK] != version) {
+            return ParcelMap.CollectResult.NOT_FOUND;
+        }
+        return tryCollect(position) ? ParcelMap.CollectResult.COLLECTED
+                : ParcelMap.CollectResult.ALREADY_COLLECTED;
+    }
+
+    /**
+     * Atomically collect the parcel at a position today
+     * @return true if this call collected it
+     */
+    boolean tryCollect(int position) {
+        Chunk chunk = chunks[position >>> CHUNK_BITS];
+        int offset = position & CHUNK_MASK;
+        // Read before the claim, so a parcel replaced just after it is not mistaken for the one collected
+        int arrival = chunk.arrivalDays[offset];
+        if (!claim(position)) {
+            return false;
+        }
+        int today = clock.today();
+        chunk.collectedDays[offset] = today + 1;
+        daysHistogram.remove(arrival);
+        daysHistogram.addCollected(arrival, today);
+        return true;
+    }
+
+    /**
+     * Read the day the parcel at a claimed position was collected on. A parcel
+     * claimed by a counter this moment has no day written yet; it is being
+     * collected today.
+     */
+    private int collectedDay(Chunk chunk, int offset) {
+        int collectedOn = chunk.collectedDays[offset];
+        return collectedOn == 0 ? clock.today() : collectedOn - 1;
+    }
+
+    /**
+     * Atomically set the collected bit of a position, keeping the count in step
+     * @return true if this call set it
+     */
+    private boolean claim(int position) {
+        AtomicIntegerArray bits = chunks[position >>> CHUNK_BITS].collected;
+        int word = (position & CHUNK_MASK) >>> 5;
+        int bit = 1 << position;
+        int current;
+        do {
+            current = bits.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+        } while (!bits.compareAndSet(word, current, current | bit));
+        collectedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Collect the parcel at a position, or put it back among the waiting parcels
+     */
+    void setCollected(int position, boolean collected) {
+        if (collected) {
+            tryCollect(position);
+            return;
+        }
+        Chunk chunk = chunks[position >>> CHUNK_BITS];
+        int offset = position & CHUNK_MASK;
+        int collectedOn = collectedDay(chunk, offset);
+        if (!release(position)) {
+            return;
+        }
+        chunk.collectedDays[offset] = 0;
+        daysHistogram.removeCollected(chunk.arrivalDays[offset], collectedOn);
+        daysHistogram.add(chunk.arrivalDays[offset]);
+    }
+
+    /**
+     * Atomically clear the collected bit of a position, keeping the count in step
+     * @return true if this call cleared it
+     */
+    private boolean release(int position) {
+        AtomicIntegerArray bits = chunks[position >>> CHUNK_BITS].collected;
+        int word = (position & CHUNK_MASK) >>> 5;
+        int bit = 1 << position;
+        int current;
+        do {
+            current = bits.get(word);
+            if ((current & bit) == 0) {
+                return false;
+            }
+        } while (!bits.compareAndSet(word, current, current & ~bit));
+        collectedCount.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Read the collected bit of a position
+     */
+    boolean isCollected(int position) {
+        return (chunks[position >>> CHUNK_BITS].collected.get((position & CHUNK_MASK) >>> 5) & (1 << position)) != 0;
+    }
+
+    /**
+     * Get the day the parcel at a position was collected on
+     * @return Depot day, or -1 if the parcel is waiting
+     */
+    int collectedDay(int position) {
+        int collectedOn = chunks[position >>> CHUNK_BITS].collectedDays[position & CHUNK_MASK];
+        if (!isCollected(position)) {
+            return -1;
+        }
+        // Collected this very moment, its day not written yet
+        return collectedOn == 0 ? clock.today() : collectedOn - 1;
+    }
+
+    @Override
+    public Parcel getAt(int position) {
+        if (position < 0 || position >= count) {
+            return null;
+        }
+        return new StoredParcel(this, position, chunks[position >>> CHUNK_BITS], position & CHUNK_MASK);
+    }
+
+    @Override
+    public int indexOf(long key) {
+        int size = count;
+        Chunk[] current = chunks;
+        int[] table = slots;
+        int mask = table.length - 1;
+        for (int slot = ParcelIdCodec.hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int position = table[slot] - 1;
+            if (position < 0) {
+                return -1;
+            }
+            if (position < size && current[position >>> CHUNK_BITS].keys[position & CHUNK_MASK] == key) {
+                return position;
+            }
+        }
+    }
+
+    /**
+     * Build a bigger index holding the first size positions, then publish it
+     */
+    private void rehash(int capacity, int size) {
+        int[] table = new int[capacity];
+        for (int position = 0; position < size; position++) {
+            table[freeSlot(table, chunks[position >>> CHUNK_BITS].keys[position & CHUNK_MASK])] = position + 1;
+        }
+        slots = table;
+    }
+
+    private static int freeSlot(int[] table, long key) {
+        int mask = table.length - 1;
+        int slot = ParcelIdCodec.hash(key) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public int collectedCount() {
+        return collectedCount.get();
+    }
+
+    @Override
+    public int uncollectedCount() {
+        return count - collectedCount.get();
+    }
+
+    @Override
+    public Collection<Parcel> all() {
+        return new PositionView(false, false);
+    }
+
+    @Override
+    public Collection<Parcel> collected() {
+        return new PositionView(true, true);
+    }
+
+    @Override
+    public Collection<Parcel> uncollected() {
+        return new PositionView(true, false);
+    }
+
+    @Override
+    public int countMoreThanDays(int days) {
+        return daysHistogram.countMoreThan(days);
+    }
+
+    /**
+     * Live view of the parcels, optionally only those with a given status.
+     * Iteration walks the positions in order and reads the collected bits a
+     * word at a time, skipping 32 positions at once where none match.
+     */
+    private final class PositionView extends AbstractCollection<Parcel> {
+        private final boolean filtered;
+        private final boolean wantCollected;
+
+        PositionView(boolean filtered, boolean wantCollected) {
+            this.filtered = filtered;
+            this.wantCollected = wantCollected;
+        }
+
+        @Override
+        public int size() {
+            if (!filtered) {
+                return count;
+            }
+            return wantCollected ? collectedCount() : uncollectedCount();
+        }
+
+        @Override
+        public Iterator<Parcel> iterator() {
+            return new Iterator<Parcel>() {
+                private final int end = count;
+                private int next = advance(0);
+
+                private int advance(int position) {
+                    while (position < end) {
+                        if (!filtered) {
+                            return position;
+                        }
+                        int word = chunks[position >>> CHUNK_BITS].collected.get((position & CHUNK_MASK) >>> 5);
+                        int matches = (wantCollected ? word : ~word) >>> (position & 31);
+                        if (matches != 0) {
+                            return position + Integer.numberOfTrailingZeros(matches);
+                        }
+                        position = (position | 31) + 1;
+                    }
+                    return end;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next < end;
+                }
+
+                @Override
+                public Parcel next() {
+                    if (next >= end) {
+                        throw new NoSuchElementException();
+                    }
+                    Parcel parcel = getAt(next);
+                    next = advance(next + 1);
+                    return parcel;
+                }
+            };
+        }
+    }
+
+    /**
+     * View of one stored parcel. Everything but the collected status is copied
+     * when the view is created; the collected status, and with it the day the
+     * parcel stopped ageing, goes through the store.
+     */
+    private static final class StoredParcel extends Parcel {
+        private final ColumnParcelStore store;
+        private final int position;
+
+        StoredParcel(ColumnParcelStore store, int position, Chunk chunk, int offset) {
+            super(ParcelIdCodec.decode(chunk.keys[offset]), chunk.weights[offset], chunk.lengths[offset],
+                    chunk.widths[offset], chunk.heights[offset], chunk.arrivalDays[offset], chunk.versions[offset]);
+            this.store = store;
+            this.position = position;
+        }
+
+        @Override
+        public int getDaysInDepot() {
+            int collectedDay = store.collectedDay(position);
+            return (collectedDay < 0 ? store.clock.today() : collectedDay) - getArrivalDay();
+        }
+
+        @Override
+        public int getCollectedDay() {
+            return store.collectedDay(position);
+        }
+
+        @Override
+        public boolean isCollected() {
+            return store.isCollected(position);
+        }
+
+        @Override
+        public void setCollected(boolean collected) {
+            store.setCollected(position, collected);
+        }
+
+        @Override
+        public boolean tryMarkCollected() {
+            return store.tryCollect(position);
+        }
+    }
+}
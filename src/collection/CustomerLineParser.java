@@ -0,0 +1,106 @@
+package collection;
+
+import model.Customer;
+import util.ParcelIdCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * CustomerLineParser class - single pass tokenizer for one line of the customer file
+ * of the form "seqNo name... parcelID"
+ */
+class CustomerLineParser implements ChunkedFileLoader.LineParser<Customer> {
+    private int[] tokenStart = new int[8];
+    private int[] tokenEnd = new int[8];
+    private String error;
+    private String errorType;
+
+    @Override
+    public Customer parseLine(byte[] buf, int start, int end, int lineNumber) {
+        error = null;
+        errorType = null;
+
+        if (ParcelLineParser.isBlank(buf, start, end)) {
+            return null;
+        }
+
+        int tokens = tokenize(buf, start, end);
+        if (tokens < 3) {
+            error = "Line " + lineNumber + " has insufficient data, need at least 3 parts but found " + tokens;
+            errorType = "missing_fields";
+            return null;
+        }
+
+        int seqNo;
+        try {
+            seqNo = ParcelLineParser.parseInt(buf, tokenStart[0], tokenEnd[0]);
+        } catch (NumberFormatException e) {
+            error = "Error parsing sequence number in line " + lineNumber + ": " + e.getMessage();
+            errorType = "bad_sequence_number";
+            return null;
+        }
+
+        // The name is every token between the sequence number and the parcel ID, single spaced
+        String name;
+        if (tokens == 3) {
+            name = text(buf, tokenStart[1], tokenEnd[1]);
+        } else {
+            StringBuilder nameBuilder = new StringBuilder(tokenEnd[tokens - 2] - tokenStart[1]);
+            for (int i = 1; i < tokens - 1; i++) {
+                if (i > 1) {
+                    nameBuilder.append(' ');
+                }
+                nameBuilder.append(text(buf, tokenStart[i], tokenEnd[i]));
+            }
+            name = nameBuilder.toString();
+        }
+        // Looked up, not interned: a customer may name a parcel the depot never had
+        long parcelKey = ParcelIdCodec.find(buf, tokenStart[tokens - 1], tokenEnd[tokens - 1]);
+        if (parcelKey == ParcelIdCodec.NO_KEY) {
+            return new Customer(seqNo, name, text(buf, tokenStart[tokens - 1], tokenEnd[tokens - 1]));
+        }
+        return new Customer(seqNo, name, parcelKey);
+    }
+
+    @Override
+    public String lastError() {
+        return error;
+    }
+
+    @Override
+    public String lastErrorType() {
+        return errorType;
+    }
+
+    /**
+     * Split the line the same way as String.split("\\s+") and return the token count
+     */
+    private int tokenize(byte[] buf, int start, int end) {
+        int count = 0;
+        int i = start;
+        while (true) {
+            int tokenBegin = i;
+            while (i < end && !ParcelLineParser.isWhitespace(buf[i])) {
+                i++;
+            }
+            if (count == tokenStart.length) {
+                tokenStart = Arrays.copyOf(tokenStart, count * 2);
+                tokenEnd = Arrays.copyOf(tokenEnd, count * 2);
+            }
+            tokenStart[count] = tokenBegin;
+            tokenEnd[count] = i;
+            count++;
+            while (i < end && ParcelLineParser.isWhitespace(buf[i])) {
+                i++;
+            }
+            if (i == end) {
+                return count;
+            }
+        }
+    }
+
+    private static String text(byte[] buf, int start, int end) {
+        return new String(buf, start, end - start, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,106 @@
+package collection;
+
+import model.Customer;
+
+import java.util.Collection;
+
+/**
+ * CustomerRing class - growable circular array of customers with O(1) access
+ * at both ends and by index. Removing from the middle shifts whichever side
+ * of the removed element is shorter.
+ */
+class CustomerRing {
+    private Customer[] elements = new Customer[16];
+    private int head;
+    private int size;
+
+    /**
+     * Get the number of customers
+     * @return Number of customers
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the customer at a position, counted from the head
+     * @param index Position from the head
+     * @return Customer at index
+     */
+    Customer get(int index) {
+        return elements[physical(index)];
+    }
+
+    /**
+     * Append a customer at the tail
+     * @param customer Customer to append
+     */
+    void addLast(Customer customer) {
+        if (size == elements.length) {
+            grow(size + 1);
+        }
+        elements[physical(size)] = customer;
+        size++;
+    }
+
+    /**
+     * Append customers at the tail, in iteration order
+     * @param customers Customers to append
+     */
+    void addAll(Collection<Customer> customers) {
+        if (size + customers.size() > elements.length) {
+            grow(size + customers.size());
+        }
+        for (Customer customer : customers) {
+            elements[physical(size)] = customer;
+            size++;
+        }
+    }
+
+    /**
+     * Remove the customer at a position, counted from the head
+     * @param index Position from the head
+     * @return Removed customer
+     */
+    Customer remove(int index) {
+        int slot = physical(index);
+        Customer removed = elements[slot];
+
+        if (index < size / 2) {
+            // Shift the front part one place towards the tail
+            for (int i = index; i > 0; i--) {
+                elements[physical(i)] = elements[physical(i - 1)];
+            }
+            elements[head] = null;
+            head = (head + 1) & (elements.length - 1);
+        } else {
+            // Shift the back part one place towards the head
+            for (int i = index; i < size - 1; i++) {
+                elements[physical(i)] = elements[physical(i + 1)];
+            }
+            elements[physical(size - 1)] = null;
+        }
+        size--;
+        return removed;
+    }
+
+    private int physical(int index) {
+        return (head + index) & (elements.length - 1);
+    }
+
+    /**
+     * Grow to the next power of two that fits, unwrapping the ring in the process
+     */
+    private void grow(int minCapacity) {
+        int capacity = elements.length;
+        while (capacity < minCapacity) {
+            capacity <<= 1;
+        }
+        Customer[] bigger = new Customer[capacity];
+        int firstPart = Math.min(size, elements.length - head);
+        System.arraycopy(elements, head, bigger, 0, firstPart);
+        System.arraycopy(elements, 0, bigger, firstPart, size - firstPart);
+        elements = bigger;
+        head = 0;
+    }
+}
@@ -0,0 +1,145 @@
+package collection;
+
+import util.DepotClock;
+
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * DaysHistogram class - live count of parcels by days in depot.
+ *
+ * Waiting parcels are counted by arrival day rather than by days in depot, so
+ * the counts never change when the DepotClock moves on: the days in depot of
+ * a bucket are worked out from the clock when the histogram is read. Arrival
+ * days from TRACKED_DAYS_BACK days before the histogram was created to
+ * TRACKED_DAYS_AHEAD days after it have their own bucket. Collected parcels
+ * stopped ageing when they were collected, so they are counted by the days
+ * they spent in the depot, with a bucket each from 0 to MAX_TRACKED_STAY.
+ * Rare days outside those ranges are kept in sorted maps, so every query is
+ * exact.
+ */
+class DaysHistogram {
+    static final int TRACKED_DAYS_BACK = 1024;
+    static final int TRACKED_DAYS_AHEAD = 3072;
+    static final int MAX_TRACKED_STAY = 365;
+
+    private final DepotClock clock;
+    // Arrival day of bucket 0
+    private final int firstDay;
+    private final AtomicIntegerArray buckets = new AtomicIntegerArray(TRACKED_DAYS_BACK + TRACKED_DAYS_AHEAD);
+    private final ConcurrentSkipListMap<Integer, AtomicInteger> outliers = new ConcurrentSkipListMap<>();
+    // Collected parcels by days in depot
+    private final AtomicIntegerArray stays = new AtomicIntegerArray(MAX_TRACKED_STAY + 1);
+    private final ConcurrentSkipListMap<Integer, AtomicInteger> stayOutliers = new ConcurrentSkipListMap<>();
+
+    /**
+     * Constructor for DaysHistogram
+     * @param clock Clock that days in depot are counted by
+     */
+    DaysHistogram(DepotClock clock) {
+        this.clock = clock;
+        this.firstDay = clock.today() - TRACKED_DAYS_BACK;
+    }
+
+    /**
+     * Count a waiting parcel
+     * @param arrivalDay Arrival day of the parcel
+     */
+    void add(int arrivalDay) {
+        change(arrivalDay, 1);
+    }
+
+    /**
+     * Stop counting a waiting parcel, because it was collected or replaced
+     * @param arrivalDay Arrival day of the parcel
+     */
+    void remove(int arrivalDay) {
+        change(arrivalDay, -1);
+    }
+
+    /**
+     * Count a collected parcel
+     * @param arrivalDay Arrival day of the parcel
+     * @param collectedDay Day the parcel was collected on
+     */
+    void addCollected(int arrivalDay, int collectedDay) {
+        changeStay(collectedDay - arrivalDay, 1);
+    }
+
+    /**
+     * Stop counting a collected parcel, because it was replaced or put back
+     * among the waiting parcels
+     * @param arrivalDay Arrival day of the parcel
+     * @param collectedDay Day the parcel was collected on
+     */
+    void removeCollected(int arrivalDay, int collectedDay) {
+        changeStay(collectedDay - arrivalDay, -1);
+    }
+
+    /**
+     * Count parcels with more than the given number of days in depot, waiting
+     * ones as of today and collected ones as of the day they were collected
+     * @param days Days threshold
+     * @return Number of parcels with more than days days in depot, in O(buckets)
+     */
+    int countMoreThan(int days) {
+        return countWaitingMoreThan(days) + countCollectedMoreThan(days);
+    }
+
+    /**
+     * Count waiting parcels that arrived more than days days ago
+     */
+    private int countWaitingMoreThan(int days) {
+        // Arrived before this day
+        long before = (long) clock.today() - days;
+        int count = 0;
+        int end = (int) Math.min(Math.max(before - firstDay, 0), buckets.length());
+        for (int bucket = 0; bucket < end; bucket++) {
+            count += buckets.get(bucket);
+        }
+        if (before > Integer.MIN_VALUE && before <= Integer.MAX_VALUE) {
+            for (AtomicInteger outlier : outliers.headMap((int) before, false).values()) {
+                count += outlier.get();
+            }
+        } else if (before > Integer.MAX_VALUE) {
+            for (AtomicInteger outlier : outliers.values()) {
+                count += outlier.get();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count collected parcels that spent more than days days in the depot
+     */
+    private int countCollectedMoreThan(int days) {
+        int count = 0;
+        if (days < MAX_TRACKED_STAY) {
+            for (int stay = Math.max(0, days + 1); stay <= MAX_TRACKED_STAY; stay++) {
+                count += stays.get(stay);
+            }
+        }
+        for (AtomicInteger outlier : stayOutliers.tailMap(days, false).values()) {
+            count += outlier.get();
+        }
+        return count;
+    }
+
+    private void change(int arrivalDay, int delta) {
+        long bucket = (long) arrivalDay - firstDay;
+        if (bucket >= 0 && bucket < buckets.length()) {
+            buckets.addAndGet((int) bucket, delta);
+        } else {
+            outliers.computeIfAbsent(arrivalDay, d -> new AtomicInteger()).addAndGet(delta);
+        }
+    }
+
+    private void changeStay(int stay, int delta) {
+        if (stay >= 0 && stay <= MAX_TRACKED_STAY) {
+            stays.addAndGet(stay, delta);
+        } else {
+            stayOutliers.computeIfAbsent(stay, d -> new AtomicInteger()).addAndGet(delta);
+        }
+    }
+}
@@ -0,0 +1,739 @@
+package collection;
+
+import model.Customer;
+import model.Parcel;
+import util.AsyncLog;
+import util.DepotClock;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Journal class - write-ahead journal of the changes made to a ParcelMap and
+ * a QueueOfCustomers, so that a crash does not lose the collections of a shift.
+ *
+ * Every added, replaced or collected parcel is journaled as the parcel's full
+ * state, and every customer joining or leaving the queue as that change.
+ * The DepotClock's day is journaled at the start of every segment and
+ * whenever it moves on, as parcels hold the day they arrived and a clock moved
+ * on by hand would otherwise go back to the calendar on restart.
+ * Records are copied into a buffer by the thread making the change and written
+ * by a flusher thread, which forces everything gathered during the previous
+ * force in one go (group commit); sync waits for the records appended so far
+ * to be on disk.
+ *
+ * The directory holds numbered journal segments, snapshots numbered like the
+ * segment they precede, and a CHECKPOINT file naming the newest complete
+ * snapshot pair. Recovery loads that pair and replays the segments from the
+ * same number on; without a checkpoint the segments are replayed on top of
+ * whatever the caller loaded. A compactor thread folds the journal into a new
+ * checkpoint whenever the current segment grows large, then deletes the files
+ * it replaces.
+ *
+ * If a write fails the journal stops: later changes are not journaled, and
+ * sync and close report the failure, as does isFailed for callers that want
+ * to warn about it.
+ *
+ * <pre>
+ *   segment: int magic "PMSJ", short version, short reserved, long number,
+ *            then records: int payload length, int CRC32 of payload, payload
+ *   payload: byte type, then for PARCEL: UTF-8 ID, int arrival day, double weight,
+ *            int length, int width, int height, int collected day or -1;
+ *            CUSTOMER_ADDED: int seqNo, UTF-8 name, UTF-8 parcel ID;
+ *            CUSTOMER_REMOVED: int index;
+ *            DEPOT_DAY: int depot day, int days the clock was moved on by hand
+ * </pre>
+ * Version 1 segments, whose PARCEL records hold int days in depot in place
+ * of the arrival day and end with byte collected, are still replayed; their
+ * days are taken to have been counted up to today. Version 2 segments are
+ * version 3 without DEPOT_DAY records.
+ */
+public class Journal {
+    private static final int MAGIC = 0x504D534A;
+    private static final short VERSION = 3;
+    private static final int HEADER_SIZE = 4 + 2 + 2 + 8;
+    private static final int RECORD_HEADER_SIZE = 4 + 4;
+    private static final byte PARCEL = 1;
+    private static final byte CUSTOMER_ADDED = 2;
+    private static final byte CUSTOMER_REMOVED = 3;
+    private static final byte DEPOT_DAY = 4;
+    // A segment this big is folded into a new checkpoint
+    private static final long COMPACT_BYTES = 16L << 20;
+    private static final int INITIAL_BUFFER = 1 << 16;
+    private static final String CHECKPOINT_FILE = "CHECKPOINT";
+
+    private final Path directory;
+    private final ParcelMap parcels;
+    private final QueueOfCustomers customers;
+    private final DepotClock clock;
+    private final AsyncLog log;
+
+    // Guarded by this: records appended but not yet taken by a writer
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER);
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER);
+    private final CRC32 crc = new CRC32();
+    private int recordStart;
+    private long appendedCount;
+    private long durableCount;
+    private boolean closed;
+    private IOException failure;
+
+    // Guarded by channelLock, which is taken before this when both are needed
+    private final Object channelLock = new Object();
+    private FileChannel channel;
+    private long segmentNumber;
+    private long segmentBytes;
+
+    private final Object checkpointLock = new Object();
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+    private ExecutorService compactor;
+    private Thread flusher;
+    private ParcelMap.ParcelListener parcelListener;
+    private QueueOfCustomers.QueueListener queueListener;
+    private DepotClock.DayListener dayListener;
+
+    /**
+     * Constructor for Journal; nothing is read or written until it is used
+     * @param directory Directory holding the journal, created on start if missing
+     * @param parcels ParcelMap to journal and recover
+     * @param customers QueueOfCustomers to journal and recover
+     */
+    public Journal(Path directory, ParcelMap parcels, QueueOfCustomers customers) {
+        this.directory = directory;
+        this.parcels = parcels;
+        this.customers = customers;
+        this.clock = DepotClock.getInstance();
+        this.log = AsyncLog.getInstance();
+    }
+
+    /**
+     * Check whether the directory holds a checkpoint to recover from
+     * @return true if loadParcelCheckpoint and loadCustomerCheckpoint can be used
+     */
+    public boolean hasCheckpoint() {
+        return checkpointNumber() > 0;
+    }
+
+    /**
+     * Load the parcels of the last checkpoint into the parcel map
+     * @return true if successful, false otherwise
+     */
+    public boolean loadParcelCheckpoint() {
+        long number = checkpointNumber();
+        return number > 0 && parcels.loadSnapshot(parcelSnapshot(number).toString());
+    }
+
+    /**
+     * Load the customers of the last checkpoint into the queue
+     * @return true if successful, false otherwise
+     */
+    public boolean loadCustomerCheckpoint() {
+        long number = checkpointNumber();
+        return number > 0 && customers.loadSnapshot(customerSnapshot(number).toString());
+    }
+
+    /**
+     * Apply the journaled changes made since the last checkpoint, in order.
+     * Call after loading the checkpoint, or the data it was started from, and
+     * before start. A segment ends at a record that was only partly written
+     * when the process stopped; later segments were started after recovering
+     * without it, so they are still replayed. The queue's analytics are cleared
+     * afterwards, as replayed customers are not arrivals of this run.
+     * @return Number of changes applied
+     * @throws IOException if the directory cannot be read
+     */
+    public int replay() throws IOException {
+        long first = checkpointNumber();
+        int applied = 0;
+        for (long number : segmentNumbers()) {
+            if (number >= first) {
+                applied += replaySegment(segment(number));
+            }
+        }
+        // Replayed customers joined in an earlier run, so they are not arrivals of this one
+        customers.getAnalytics().clear();
+        int total = applied;
+        log.info(() -> "Replayed " + total + " journaled changes from " + directory);
+        return applied;
+    }
+
+    /**
+     * Replay one segment, up to its first damaged record
+     * @return Number of records applied
+     */
+    private int replaySegment(Path file) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (in.size() < HEADER_SIZE) {
+                log.warn("Skipping journal segment without a header: " + file);
+                return 0;
+            }
+            data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        }
+        short version = data.getShort(4);
+        if (data.getInt(0) != MAGIC || version < 1 || version > VERSION) {
+            log.warn("Skipping file that is not a journal segment: " + file);
+            return 0;
+        }
+
+        CRC32 check = new CRC32();
+        int applied = 0;
+        int position = HEADER_SIZE;
+        while (position < data.capacity()) {
+            if (data.capacity() - position < RECORD_HEADER_SIZE) {
+                break;
+            }
+            int length = data.getInt(position);
+            if (length < 1 || length > data.capacity() - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            ByteBuffer payload = data.duplicate();
+            payload.position(position + RECORD_HEADER_SIZE).limit(position + RECORD_HEADER_SIZE + length);
+            check.reset();
+            check.update(payload.duplicate());
+            if ((int) check.getValue() != data.getInt(position + 4)) {
+                break;
+            }
+            apply(payload, version);
+            applied++;
+            position += RECORD_HEADER_SIZE + length;
+        }
+        if (position < data.capacity()) {
+            int offset = position;
+            log.warn(() -> "Journal segment " + file + " ends with a damaged record at byte "
+                    + offset + "; the rest of the segment is lost");
+        }
+        return applied;
+    }
+
+    /**
+     * Apply one journaled change, read in the format of the given segment version
+     */
+    private void apply(ByteBuffer payload, short version) throws IOException {
+        byte type = payload.get();
+        if (type == PARCEL && version < 2) {
+            Parcel parcel = new Parcel(getString(payload), payload.getInt(), payload.getDouble(),
+                    payload.getInt(), payload.getInt(), payload.getInt());
+            parcel.setCollected(payload.get() != 0);
+            parcels.addParcel(parcel);
+        } else if (type == PARCEL) {
+            String id = getString(payload);
+            int arrivalDay = payload.getInt();
+            parcels.addParcel(Parcel.restore(id, payload.getDouble(), payload.getInt(), payload.getInt(),
+                    payload.getInt(), arrivalDay, payload.getInt()));
+        } else if (type == CUSTOMER_ADDED) {
+            int seqNo = payload.getInt();
+            String name = getString(payload);
+            customers.addCustomer(new Customer(seqNo, name, getString(payload)));
+        } else if (type == CUSTOMER_REMOVED) {
+            customers.removeCustomer(payload.getInt());
+        } else if (type == DEPOT_DAY) {
+            int day = payload.getInt();
+            clock.restore(day, payload.getInt());
+        } else {
+            throw new IOException("Unknown journal record type: " + type);
+        }
+    }
+
+    /**
+     * Start journaling changes to a new segment. Also queues a checkpoint, so
+     * that replayed segments and changes made before this call are folded in.
+     * @throws IOException if the segment cannot be created
+     */
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        long last = checkpointNumber();
+        for (long number : segmentNumbers()) {
+            last = Math.max(last, number);
+        }
+        synchronized (channelLock) {
+            segmentNumber = last + 1;
+            channel = openSegment(segmentNumber);
+            segmentBytes = HEADER_SIZE;
+        }
+
+        compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+
+        parcelListener = new ParcelMap.ParcelListener() {
+            @Override
+            public void parcelsAdded(int firstPosition, int lastPosition) {
+                for (int position = firstPosition; position <= lastPosition; position++) {
+                    appendParcel(position);
+                }
+            }
+
+            @Override
+            public void parcelUpdated(int position) {
+                appendParcel(position);
+            }
+        };
+        queueListener = new QueueOfCustomers.QueueListener() {
+            @Override
+            public void customersAdded(int firstIndex, int lastIndex) {
+                for (int index = firstIndex; index <= lastIndex; index++) {
+                    appendCustomer(customers.getCustomerAt(index));
+                }
+            }
+
+            @Override
+            public void customerRemoved(int index) {
+                appendRemoval(index);
+            }
+        };
+        dayListener = new DepotClock.DayListener() {
+            @Override
+            public void dayChanged(int today) {
+                appendDay();
+            }
+        };
+        parcels.addParcelListener(parcelListener);
+        customers.addQueueListener(queueListener);
+        clock.addDayListener(dayListener);
+        // Every segment starts with the depot day, so recovery needs no older one
+        appendDay();
+        log.info("Journaling changes to " + segment(segmentNumber));
+        requestCheckpoint();
+    }
+
+    /**
+     * Journal the current state of the parcel at a position. The parcel is
+     * read under the journal's lock, so the last record for a parcel always
+     * holds its latest state.
+     */
+    private synchronized void appendParcel(int position) {
+        if (failure != null) {
+            return;
+        }
+        Parcel parcel = parcels.getParcelAt(position);
+        if (parcel == null) {
+            return;
+        }
+        byte[] id = parcel.getParcelID().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = beginRecord(1 + 2 + id.length + 4 + 8 + 4 + 4 + 4 + 4);
+        record.put(PARCEL);
+        putString(record, id);
+        record.putInt(parcel.getArrivalDay());
+        record.putDouble(parcel.getWeight());
+        record.putInt(parcel.getLength());
+        record.putInt(parcel.getWidth());
+        record.putInt(parcel.getHeight());
+        record.putInt(parcel.getCollectedDay());
+        endRecord();
+    }
+
+    /**
+     * Journal a customer joining the queue
+     */
+    private synchronized void appendCustomer(Customer customer) {
+        if (failure != null) {
+            return;
+        }
+        byte[] name = customer.getName().getBytes(StandardCharsets.UTF_8);
+        // A customer without a parcel ID comes back with an empty one, which finds no parcel either
+        String parcelID = customer.getParcelID();
+        byte[] id = (parcelID == null ? "" : parcelID).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = beginRecord(1 + 4 + 2 + name.length + 2 + id.length);
+        record.put(CUSTOMER_ADDED);
+        record.putInt(customer.getSeqNo());
+        putString(record, name);
+        putString(record, id);
+        endRecord();
+    }
+
+    /**
+     * Journal a customer leaving the queue
+     */
+    private synchronized void appendRemoval(int index) {
+        if (failure != null) {
+            return;
+        }
+        ByteBuffer record = beginRecord(1 + 4);
+        record.put(CUSTOMER_REMOVED);
+        record.putInt(index);
+        endRecord();
+    }
+
+    /**
+     * Journal the depot day and the days the clock has been moved on by hand.
+     * Both only grow, so however a change races with this, the last record
+     * replayed holds the latest day.
+     */
+    private synchronized void appendDay() {
+        if (failure != null) {
+            return;
+        }
+        ByteBuffer record = beginRecord(1 + 4 + 4);
+        record.put(DEPOT_DAY);
+        record.putInt(clock.today());
+        record.putInt(clock.getAdvancedDays());
+        endRecord();
+    }
+
+    /**
+     * Reserve room for a record in the pending buffer and write its length;
+     * caller holds this object's lock and fills in the payload
+     */
+    private ByteBuffer beginRecord(int length) {
+        if (pending.remaining() < RECORD_HEADER_SIZE + length) {
+            ByteBuffer bigger = ByteBuffer.allocate(
+                    Math.max(pending.capacity() * 2, pending.position() + RECORD_HEADER_SIZE + length));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+        recordStart = pending.position();
+        pending.putInt(length);
+        // Checksum is filled in by endRecord
+        pending.putInt(0);
+        return pending;
+    }
+
+    /**
+     * Checksum the record started by beginRecord and wake the flusher if it was idle
+     */
+    private void endRecord() {
+        int payloadStart = recordStart + RECORD_HEADER_SIZE;
+        crc.reset();
+        crc.update(pending.array(), payloadStart, pending.position() - payloadStart);
+        pending.putInt(recordStart + 4, (int) crc.getValue());
+        if (appendedCount++ == durableCount) {
+            notifyAll();
+        }
+    }
+
+    private static void putString(ByteBuffer record, byte[] bytes) {
+        record.putShort((short) bytes.length);
+        record.put(bytes);
+    }
+
+    private static String getString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getShort() & 0xFFFF];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Check whether the journal has stopped because a write failed
+     * @return true if changes are no longer being journaled
+     */
+    public synchronized boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Wait until every change journaled before this call is on disk
+     * @throws IOException if the journal could not be written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void sync() throws IOException, InterruptedException {
+        long target = appendedCount;
+        while (durableCount < target && failure == null) {
+            wait();
+        }
+        if (failure != null) {
+            throw new IOException("Journal could not be written", failure);
+        }
+    }
+
+    /**
+     * Body of the flusher thread: write and force whatever has been appended
+     * until the journal is closed and drained
+     */
+    private void flushLoop() {
+        while (true) {
+            synchronized (this) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        closed = true;
+                    }
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+            }
+            try {
+                boolean compact;
+                synchronized (channelLock) {
+                    writePending();
+                    compact = segmentBytes >= COMPACT_BYTES;
+                }
+                if (compact) {
+                    requestCheckpoint();
+                }
+            } catch (IOException e) {
+                log.error("IO Error writing journal, further changes are not journaled: " + e.getMessage());
+                synchronized (this) {
+                    failure = e;
+                    // Nothing will write these, and no more are appended
+                    pending = ByteBuffer.allocate(0);
+                    spare = pending;
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Take the pending records, write them to the current segment and force
+     * them to disk; caller holds channelLock
+     */
+    private void writePending() throws IOException {
+        ByteBuffer batch;
+        long batchCount;
+        synchronized (this) {
+            batch = pending;
+            pending = spare;
+            spare = batch;
+            batchCount = appendedCount;
+        }
+        batch.flip();
+        int bytes = batch.remaining();
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+        batch.clear();
+        if (bytes > 0) {
+            channel.force(false);
+            segmentBytes += bytes;
+        }
+        synchronized (this) {
+            durableCount = batchCount;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Fold the journal into a new checkpoint in the background, unless one is already queued
+     */
+    public void requestCheckpoint() {
+        if (compactor != null && compactionQueued.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                compactionQueued.set(false);
+                checkpoint();
+            });
+        }
+    }
+
+    /**
+     * Start a new segment and write snapshots that the older segments are
+     * folded into, then record them as the checkpoint and delete what they
+     * replace. Changes carry on being journaled while the snapshots are
+     * written; the queue is only held while it is copied. Call after start.
+     * @return true if successful, false otherwise
+     */
+    public boolean checkpoint() {
+        synchronized (checkpointLock) {
+            return writeCheckpoint();
+        }
+    }
+
+    private boolean writeCheckpoint() {
+        try {
+            long number;
+            SnapshotFormat.Writer customerSnapshot;
+            // Queue changes are journaled under the queue's lock, so the copy
+            // holds exactly the changes in the segments before the new one
+            synchronized (customers) {
+                number = rotate();
+                customerSnapshot = customers.snapshotWriter();
+            }
+            // Parcel records hold whole states, so replaying ones already in the snapshot is harmless
+            if (!parcels.saveSnapshot(parcelSnapshot(number).toString())
+                    || !customers.writeSnapshot(customerSnapshot, customerSnapshot(number).toString())) {
+                return false;
+            }
+            writeCheckpointNumber(number);
+            deleteBefore(number);
+            log.info("Journal checkpoint " + number + " written to " + directory);
+            return true;
+        } catch (IOException e) {
+            log.error("IO Error writing journal checkpoint: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Flush the current segment and switch to the next one
+     * @return Number of the new segment
+     */
+    private long rotate() throws IOException {
+        synchronized (channelLock) {
+            if (channel == null || !channel.isOpen()) {
+                throw new IOException("Journal is not running");
+            }
+            synchronized (this) {
+                if (failure != null) {
+                    throw new IOException("Journal could not be written", failure);
+                }
+            }
+            FileChannel next = openSegment(segmentNumber + 1);
+            writePending();
+            channel.close();
+            channel = next;
+            segmentNumber++;
+            segmentBytes = HEADER_SIZE;
+            // The segments holding the older day records are about to be folded away
+            appendDay();
+            return segmentNumber;
+        }
+    }
+
+    /**
+     * Stop journaling: write and force everything appended so far, then stop
+     * the flusher and the compactor. A checkpoint in progress is completed.
+     * @throws IOException if the journal could not be written
+     */
+    public void close() throws IOException {
+        if (flusher == null) {
+            return;
+        }
+        parcels.removeParcelListener(parcelListener);
+        customers.removeQueueListener(queueListener);
+        clock.removeDayListener(dayListener);
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (channelLock) {
+            channel.close();
+        }
+        synchronized (this) {
+            if (failure != null) {
+                throw new IOException("Journal could not be written", failure);
+            }
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        FileChannel segment = FileChannel.open(segment(number), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(number);
+        header.flip();
+        while (header.hasRemaining()) {
+            segment.write(header);
+        }
+        segment.force(true);
+        return segment;
+    }
+
+    private Path segment(long number) {
+        return directory.resolve(String.format("journal-%08d.log", number));
+    }
+
+    private Path parcelSnapshot(long number) {
+        return directory.resolve(String.format("parcels-%08d.snap", number));
+    }
+
+    private Path customerSnapshot(long number) {
+        return directory.resolve(String.format("customers-%08d.snap", number));
+    }
+
+    /**
+     * Get the numbers of the journal segments in the directory, in order
+     */
+    private List<Long> segmentNumbers() throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return numbers;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal-*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(8, name.length() - 4)));
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring unexpected file in journal directory: " + file);
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * Read the number of the last checkpoint
+     * @return Checkpoint number, or 0 if there is none
+     */
+    private long checkpointNumber() {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Ignoring unreadable journal checkpoint " + file + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Record a checkpoint; the file is replaced in one step, so a crash leaves the old or the new one
+     */
+    private void writeCheckpointNumber(long number) throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer text = ByteBuffer.wrap((number + "\n").getBytes(StandardCharsets.UTF_8));
+            while (text.hasRemaining()) {
+                out.write(text);
+            }
+            out.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Delete the segments and snapshots replaced by checkpoint number
+     */
+    private void deleteBefore(long number) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "{journal-*.log,*-*.snap}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String digits = name.substring(name.indexOf('-') + 1, name.lastIndexOf('.'));
+                try {
+                    if (Long.parseLong(digits) < number) {
+                        Files.delete(file);
+                    }
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package collection;
+
+/**
+ * LoadProgressListener interface - receives progress while a data file is
+ * loaded; called on the loading thread, so implementations must be quick
+ */
+public interface LoadProgressListener {
+    /**
+     * Called periodically while a file is read, and once at the end
+     * @param bytesRead Bytes of the file read so far
+     * @param totalBytes Size of the file
+     */
+    void progress(long bytesRead, long totalBytes);
+}
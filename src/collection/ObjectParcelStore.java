@@ -0,0 +1,143 @@
+package collection;
+
+import model.Parcel;
+import util.DepotClock;
+import util.ParcelIdCodec;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ObjectParcelStore class - keeps every parcel as its own object, found
+ * through the ID key index of ParcelRows, with identity-based sets of
+ * collected and uncollected parcels. Parcels handed out are the objects
+ * that were stored.
+ */
+class ObjectParcelStore implements ParcelStore {
+    private final Set<Parcel> collectedParcels = ConcurrentHashMap.newKeySet();
+    private final Set<Parcel> uncollectedParcels = ConcurrentHashMap.newKeySet();
+    // Parcels by days in depot, kept in step with the two sets
+    private final DaysHistogram daysHistogram = new DaysHistogram(DepotClock.getInstance());
+    // Parcels by position and ID key; its lock serialises all writes
+    private final ParcelRows rows = new ParcelRows();
+
+    @Override
+    public int put(Parcel parcel) {
+        long key = ParcelIdCodec.encode(parcel.getParcelID());
+        synchronized (rows) {
+            int position = rows.indexOf(key);
+            if (position < 0) {
+                index(parcel);
+                return rows.append(key, parcel);
+            }
+            unindex(rows.get(position));
+            index(parcel);
+            rows.replace(position, parcel);
+            return -position - 1;
+        }
+    }
+
+    private void index(Parcel parcel) {
+        synchronized (parcel) {
+            if (parcel.isCollected()) {
+                collectedParcels.add(parcel);
+                daysHistogram.addCollected(parcel.getArrivalDay(), parcel.getCollectedDay());
+            } else {
+                uncollectedParcels.add(parcel);
+                daysHistogram.add(parcel.getArrivalDay());
+            }
+        }
+    }
+
+    private void unindex(Parcel parcel) {
+        synchronized (parcel) {
+            if (uncollectedParcels.remove(parcel)) {
+                daysHistogram.remove(parcel.getArrivalDay());
+            } else if (collectedParcels.remove(parcel)) {
+                daysHistogram.removeCollected(parcel.getArrivalDay(), parcel.getCollectedDay());
+            }
+        }
+    }
+
+    @Override
+    public Parcel get(long key) {
+        return rows.get(rows.indexOf(key));
+    }
+
+    @Override
+    public ParcelMap.CollectResult collect(long key) {
+        return collect(get(key));
+    }
+
+    @Override
+    public ParcelMap.CollectResult collectAt(int position, long version) {
+        Parcel parcel = rows.get(position);
+        return parcel != null && parcel.getVersion() == version
+                ? collect(parcel) : ParcelMap.CollectResult.NOT_FOUND;
+    }
+
+    private ParcelMap.CollectResult collect(Parcel parcel) {
+        if (parcel == null) {
+            return ParcelMap.CollectResult.NOT_FOUND;
+        }
+        if (!parcel.tryMarkCollected()) {
+            return ParcelMap.CollectResult.ALREADY_COLLECTED;
+        }
+        // Move it to the collected set, unless it has been replaced and unindexed meanwhile
+        synchronized (parcel) {
+            if (uncollectedParcels.remove(parcel)) {
+                collectedParcels.add(parcel);
+                daysHistogram.remove(parcel.getArrivalDay());
+                daysHistogram.addCollected(parcel.getArrivalDay(), parcel.getCollectedDay());
+            }
+        }
+        return ParcelMap.CollectResult.COLLECTED;
+    }
+
+    @Override
+    public Parcel getAt(int position) {
+        return rows.get(position);
+    }
+
+    @Override
+    public int indexOf(long key) {
+        return rows.indexOf(key);
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    @Override
+    public int collectedCount() {
+        return collectedParcels.size();
+    }
+
+    @Override
+    public int uncollectedCount() {
+        return uncollectedParcels.size();
+    }
+
+    @Override
+    public Collection<Parcel> all() {
+        return rows.asCollection();
+    }
+
+    @Override
+    public Collection<Parcel> collected() {
+        return Collections.unmodifiableSet(collectedParcels);
+    }
+
+    @Override
+    public Collection<Parcel> uncollected() {
+        return Collections.unmodifiableSet(uncollectedParcels);
+    }
+
+    @Override
+    public int countMoreThanDays(int days) {
+        return daysHistogram.countMoreThan(days);
+    }
+}
@@ -0,0 +1,276 @@
+package collection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * ParcelIdTrie class - trie of parcel IDs for type-ahead search, by prefix
+ * and by prefixes within an edit distance of what was typed.
+ *
+ * Nodes are kept in primitive columns allocated in fixed-size chunks, one
+ * character per node, with each node's children in a sibling list sorted by
+ * character, so a walk of the trie visits IDs in order. A node costs 14 bytes
+ * and IDs of the usual shape share most of their nodes with their
+ * neighbours, so the trie takes roughly 20 bytes per ID.
+ *
+ * A fuzzy search walks the trie once, keeping one row of the Levenshtein
+ * table per depth, and leaves a branch as soon as every entry of its row is
+ * over the distance allowed, so it only visits the few thousand nodes near
+ * what was typed, however many IDs there are.
+ *
+ * Writers are serialised on this object's lock; searches never lock. Links
+ * are written with volatile semantics after the node they lead to is
+ * complete, so a search sees every ID added before it started and never a
+ * half-added one.
+ */
+final class ParcelIdTrie {
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int ROOT = 0;
+
+    /**
+     * Columns for CHUNK_SIZE consecutive nodes; a link of 0 means none, as
+     * the root is never a child
+     */
+    private static final class Chunk {
+        final char[] labels = new char[CHUNK_SIZE];
+        final AtomicIntegerArray firstChildren = new AtomicIntegerArray(CHUNK_SIZE);
+        final AtomicIntegerArray nextSiblings = new AtomicIntegerArray(CHUNK_SIZE);
+        // Position of the parcel whose ID ends at the node + 1, 0 if none does
+        final AtomicIntegerArray positions = new AtomicIntegerArray(CHUNK_SIZE);
+    }
+
+    /**
+     * Receives the positions found by a search
+     */
+    interface Matches {
+        /**
+         * Called for each ID found
+         * @param position Position of the parcel with the ID
+         * @param distance Edit distance from what was typed to the closest prefix of the ID
+         * @return true to go on, false once no more are wanted
+         */
+        boolean found(int position, int distance);
+    }
+
+    private volatile Chunk[] chunks = new Chunk[16];
+    private int nodes;
+    private volatile int ids;
+    // The last ID added and the node after each of its characters; lastPath[0] is the root
+    private String lastID = "";
+    private int[] lastPath = new int[16];
+
+    /**
+     * Constructor for ParcelIdTrie, holding no IDs
+     */
+    ParcelIdTrie() {
+        newNode('\0');
+    }
+
+    /**
+     * Add an ID; adding it again only updates its position
+     * @param parcelID Parcel ID
+     * @param position Position of the parcel in the store
+     */
+    synchronized void add(String parcelID, int position) {
+        // Loads usually come in ID order, so start from where the last ID shares its path
+        int shared = 0;
+        int limit = Math.min(parcelID.length(), lastID.length());
+        while (shared < limit && parcelID.charAt(shared) == lastID.charAt(shared)) {
+            shared++;
+        }
+        if (lastPath.length <= parcelID.length()) {
+            lastPath = Arrays.copyOf(lastPath, parcelID.length() + 1);
+        }
+        int node = lastPath[shared];
+        for (int i = shared; i < parcelID.length(); i++) {
+            char c = parcelID.charAt(i);
+            int previous = 0;
+            int child = firstChild(node);
+            while (child != 0 && label(child) < c) {
+                previous = child;
+                child = nextSibling(child);
+            }
+            if (child == 0 || label(child) != c) {
+                int created = newNode(c);
+                chunk(created).nextSiblings.set(created & CHUNK_MASK, child);
+                if (previous == 0) {
+                    chunk(node).firstChildren.set(node & CHUNK_MASK, created);
+                } else {
+                    chunk(previous).nextSiblings.set(previous & CHUNK_MASK, created);
+                }
+                child = created;
+            }
+            node = child;
+            lastPath[i + 1] = node;
+        }
+        lastID = parcelID;
+        if (chunk(node).positions.getAndSet(node & CHUNK_MASK, position + 1) == 0) {
+            ids++;
+        }
+    }
+
+    /**
+     * Get the number of IDs
+     * @return Number of IDs added
+     */
+    int size() {
+        return ids;
+    }
+
+    /**
+     * Get the number of nodes, to estimate the size of the trie
+     * @return Number of nodes, including the root
+     */
+    synchronized int nodeCount() {
+        return nodes;
+    }
+
+    /**
+     * Find the IDs that start with the text typed, or with something within
+     * an edit distance of it: one character added, removed or changed counts
+     * 1. IDs are found closest first, and in ID order among equally close ones.
+     * @param text Text typed
+     * @param maxDistance Largest edit distance allowed, from 0
+     * @param matches Receives the IDs
+     */
+    void search(String text, int maxDistance, Matches matches) {
+        int node = find(text);
+        if (node >= 0 && !collect(node, 0, matches)) {
+            return;
+        }
+        // The IDs at each distance are found in a pass of their own, so the
+        // closest come first and a search that has found enough stops early
+        List<int[]> rows = new ArrayList<>();
+        int[] first = new int[text.length() + 1];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = i;
+        }
+        rows.add(first);
+        for (int distance = 1; distance <= maxDistance; distance++) {
+            if (!search(ROOT, 0, text, distance, first[text.length()], rows, matches)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Walk the children of a node for a fuzzy search
+     * @param node Node reached
+     * @param depth Depth of the node, which is the number of characters on its path
+     * @param text Text typed
+     * @param distance Distance of the IDs wanted in this pass
+     * @param best Smallest distance from the text to a prefix of the node's path
+     * @param rows Levenshtein rows, row d for the path to depth d
+     * @return false once the matches want no more
+     */
+    private boolean search(int node, int depth, String text, int distance, int best,
+                           List<int[]> rows, Matches matches) {
+        int[] row = rows.get(depth);
+        if (rows.size() == depth + 1) {
+            rows.add(new int[row.length]);
+        }
+        int[] next = rows.get(depth + 1);
+        int length = text.length();
+        for (int child = firstChild(node); child != 0; child = nextSibling(child)) {
+            char c = label(child);
+            next[0] = row[0] + 1;
+            int lowest = next[0];
+            for (int i = 1; i <= length; i++) {
+                int cost = text.charAt(i - 1) == c ? 0 : 1;
+                int value = Math.min(Math.min(next[i - 1], row[i]) + 1, row[i - 1] + cost);
+                next[i] = value;
+                lowest = Math.min(lowest, value);
+            }
+            int childBest = Math.min(best, next[length]);
+            if (lowest > distance) {
+                // Deeper rows only grow, so every ID below is exactly childBest away
+                if (childBest == distance && !collect(child, distance, matches)) {
+                    return false;
+                }
+                continue;
+            }
+            if (childBest < distance) {
+                // Every ID below is closer, so it was found in an earlier pass
+                continue;
+            }
+            int position = chunk(child).positions.get(child & CHUNK_MASK);
+            if (position != 0 && childBest == distance && !matches.found(position - 1, distance)) {
+                return false;
+            }
+            if (!search(child, depth + 1, text, distance, childBest, rows, matches)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Report every ID at or below a node, in ID order
+     * @return false once the matches want no more
+     */
+    private boolean collect(int node, int distance, Matches matches) {
+        int position = chunk(node).positions.get(node & CHUNK_MASK);
+        if (position != 0 && !matches.found(position - 1, distance)) {
+            return false;
+        }
+        for (int child = firstChild(node); child != 0; child = nextSibling(child)) {
+            if (!collect(child, distance, matches)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the node at the end of a path
+     * @return Node, or -1 if no ID starts with the path
+     */
+    private int find(String path) {
+        int node = ROOT;
+        for (int i = 0; i < path.length() && node >= 0; i++) {
+            char c = path.charAt(i);
+            int child = firstChild(node);
+            while (child != 0 && label(child) < c) {
+                child = nextSibling(child);
+            }
+            node = child != 0 && label(child) == c ? child : -1;
+        }
+        return node;
+    }
+
+    private int newNode(char label) {
+        int node = nodes;
+        int index = node >>> CHUNK_BITS;
+        Chunk[] current = chunks;
+        if (index == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        if (current[index] == null) {
+            current[index] = new Chunk();
+            chunks = current;
+        }
+        current[index].labels[node & CHUNK_MASK] = label;
+        nodes = node + 1;
+        return node;
+    }
+
+    private Chunk chunk(int node) {
+        return chunks[node >>> CHUNK_BITS];
+    }
+
+    private char label(int node) {
+        return chunk(node).labels[node & CHUNK_MASK];
+    }
+
+    private int firstChild(int node) {
+        return chunk(node).firstChildren.get(node & CHUNK_MASK);
+    }
+
+    private int nextSibling(int node) {
+        return chunk(node).nextSiblings.get(node & CHUNK_MASK);
+    }
+}
@@ -0,0 +1,362 @@
+package collection;
+
+import model.Parcel;
+import util.ParcelIdCodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ParcelIndex class - immutable query indexes over the parcels at positions
+ * 0 to size() - 1 of a store, as they were when the index was built.
+ *
+ * Weight, volume and arrival day are each split into about 32 buckets at
+ * quantiles of a sample of the parcels, and each bucket keeps the positions of
+ * its parcels as a PositionBitmap. A range of an attribute is then the union
+ * of the buckets it overlaps, and a query with several ranges intersects
+ * those unions, so a narrow query reads few parcels whatever the size of the
+ * depot. Buckets at the ends of a range also hold parcels just outside it, so
+ * the positions found are candidates that ParcelQuery.matches must confirm.
+ *
+ * IDs are kept sorted as ParcelIdCodec order keys, so the IDs starting with
+ * a prefix are one slice found by binary search. The few IDs that cannot be
+ * packed are kept sorted as strings beside them.
+ *
+ * Building reads every parcel once, in parallel per container of positions.
+ * The index takes about 14 bytes per parcel.
+ */
+final class ParcelIndex {
+    private static final int BUCKETS = 32;
+    private static final int SAMPLE_SIZE = 4096;
+    private static final String[] NO_IDS = new String[0];
+
+    private final int size;
+    private final Attribute weights;
+    private final Attribute volumes;
+    private final Attribute arrivals;
+    // Latest collection day of any parcel indexed, so days in depot of collected parcels can be bounded
+    private final int lastCollectedDay;
+    // Order keys of the packed IDs, sorted
+    private final long[] orderKeys;
+    // IDs that could not be packed, sorted
+    private final String[] otherIDs;
+
+    /**
+     * One attribute split into buckets; bucket b holds values from lower[b]
+     * up to, but not including, lower[b + 1]
+     */
+    private static final class Attribute {
+        final double[] lower;
+        final PositionBitmap[] buckets;
+
+        Attribute(double[] lower, PositionBitmap[] buckets) {
+            this.lower = lower;
+            this.buckets = buckets;
+        }
+
+        /**
+         * Get the positions of parcels in the buckets a range overlaps
+         * @return Positions, or null if the range overlaps every bucket
+         */
+        PositionBitmap between(double min, double max) {
+            int first = bucket(lower, min);
+            int last = bucket(lower, max);
+            if (first == 0 && last == buckets.length - 1) {
+                return null;
+            }
+            return PositionBitmap.or(Arrays.asList(buckets).subList(first, last + 1));
+        }
+    }
+
+    /**
+     * Reads the parcels of one container of positions into the bucket builders
+     */
+    private static final class BuildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ParcelStore store;
+        private final int from;
+        private final int to;
+        private final double[][] bounds;
+        private final PositionBitmap.Builder[][] builders;
+        private final long[] orderKeys;
+        final List<String> otherIDs = new ArrayList<>();
+        int lastCollectedDay = Integer.MIN_VALUE;
+
+        BuildTask(ParcelStore store, int from, int to, double[][] bounds,
+                  PositionBitmap.Builder[][] builders, long[] orderKeys) {
+            this.store = store;
+            this.from = from;
+            this.to = to;
+            this.bounds = bounds;
+            this.builders = builders;
+            this.orderKeys = orderKeys;
+        }
+
+        @Override
+        protected void compute() {
+            for (int position = from; position < to; position++) {
+                Parcel parcel = store.getAt(position);
+                if (parcel == null) {
+                    orderKeys[position] = Long.MAX_VALUE;
+                    continue;
+                }
+                double[] values = values(parcel);
+                for (int a = 0; a < values.length; a++) {
+                    builders[a][bucket(bounds[a], values[a])].add(position);
+                }
+                String parcelID = parcel.getParcelID();
+                long key = ParcelIdCodec.find(parcelID);
+                long orderKey = key == ParcelIdCodec.NO_KEY ? -1 : ParcelIdCodec.orderKey(key);
+                if (orderKey < 0) {
+                    orderKeys[position] = Long.MAX_VALUE;
+                    otherIDs.add(parcelID);
+                } else {
+                    orderKeys[position] = orderKey;
+                }
+                lastCollectedDay = Math.max(lastCollectedDay, parcel.getCollectedDay());
+            }
+        }
+    }
+
+    private ParcelIndex(int size, Attribute[] attributes, int lastCollectedDay, long[] orderKeys, String[] otherIDs) {
+        this.size = size;
+        this.weights = attributes[0];
+        this.volumes = attributes[1];
+        this.arrivals = attributes[2];
+        this.lastCollectedDay = lastCollectedDay;
+        this.orderKeys = orderKeys;
+        this.otherIDs = otherIDs;
+    }
+
+    /**
+     * Build the indexes over the parcels a store holds now
+     * @param store Store to index
+     * @param pool Pool to read the parcels on
+     * @return Index of the positions below the store's size when the build started
+     */
+    static ParcelIndex build(ParcelStore store, ForkJoinPool pool) {
+        int size = store.size();
+        double[][] bounds = sampleBounds(store, size);
+        PositionBitmap.Builder[][] builders = new PositionBitmap.Builder[bounds.length][];
+        for (int a = 0; a < bounds.length; a++) {
+            builders[a] = new PositionBitmap.Builder[bounds[a].length];
+            for (int b = 0; b < bounds[a].length; b++) {
+                builders[a][b] = new PositionBitmap.Builder(size);
+            }
+        }
+
+        // One task per container, so no two tasks ever write the same container of a builder
+        long[] orderKeys = new long[size];
+        List<BuildTask> tasks = new ArrayList<>();
+        for (int from = 0; from < size; from += PositionBitmap.CONTAINER_SIZE) {
+            int to = (int) Math.min(size, (long) from + PositionBitmap.CONTAINER_SIZE);
+            tasks.add(new BuildTask(store, from, to, bounds, builders, orderKeys));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+
+        int lastCollectedDay = Integer.MIN_VALUE;
+        List<String> others = new ArrayList<>();
+        for (BuildTask task : tasks) {
+            lastCollectedDay = Math.max(lastCollectedDay, task.lastCollectedDay);
+            others.addAll(task.otherIDs);
+        }
+        String[] otherIDs = others.isEmpty() ? NO_IDS : others.toArray(new String[0]);
+        Arrays.sort(otherIDs);
+        // IDs that are not packed were given the highest key, so they sort to the end and are cut off
+        Arrays.parallelSort(orderKeys);
+        int packed = size;
+        while (packed > 0 && orderKeys[packed - 1] == Long.MAX_VALUE) {
+            packed--;
+        }
+
+        Attribute[] attributes = new Attribute[bounds.length];
+        for (int a = 0; a < bounds.length; a++) {
+            PositionBitmap[] buckets = new PositionBitmap[builders[a].length];
+            for (int b = 0; b < buckets.length; b++) {
+                buckets[b] = builders[a][b].build();
+            }
+            attributes[a] = new Attribute(bounds[a], buckets);
+        }
+        return new ParcelIndex(size, attributes, lastCollectedDay,
+                packed == size ? orderKeys : Arrays.copyOf(orderKeys, packed), otherIDs);
+    }
+
+    /**
+     * Get the number of positions indexed
+     * @return Positions 0 to size() - 1 are indexed
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Find the positions that may match the ranges of a query
+     * @param query Query to find candidates for
+     * @param today Depot day the query's days in depot are counted to
+     * @return Candidate positions, or null if the query has no range that narrows the search
+     */
+    PositionBitmap candidates(ParcelQuery query, int today) {
+        List<PositionBitmap> parts = new ArrayList<>(3);
+        if (query.hasWeight()) {
+            addPart(parts, weights.between(query.getMinWeight(), query.getMaxWeight()));
+        }
+        if (query.hasVolume()) {
+            addPart(parts, volumes.between(query.getMinVolume(), query.getMaxVolume()));
+        }
+        if (query.hasDays()) {
+            // A waiting parcel arrived today - days ago. A collected one stopped
+            // ageing on its collection day, which is no later than lastCollectedDay
+            // for the parcels indexed, so only the latest arrival is known.
+            boolean waiting = Boolean.FALSE.equals(query.getCollected());
+            long latestDay = waiting ? today : Math.max(today, lastCollectedDay);
+            double earliest = waiting ? (double) today - query.getMaxDays() : Double.NEGATIVE_INFINITY;
+            addPart(parts, arrivals.between(earliest, (double) latestDay - query.getMinDays()));
+        }
+        if (parts.isEmpty()) {
+            return null;
+        }
+        // Smallest first, so each intersection is as cheap as it can be
+        parts.sort((a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+        PositionBitmap candidates = parts.get(0);
+        for (int i = 1; i < parts.size(); i++) {
+            candidates = PositionBitmap.and(candidates, parts.get(i));
+        }
+        return candidates;
+    }
+
+    /**
+     * Walk the positions of the indexed parcels whose ID starts with a prefix,
+     * in ID order
+     * @param prefix Start of the ID
+     * @param store Store the index was built over, to find the positions of IDs
+     * @return Cursor over the positions
+     */
+    PositionBitmap.Cursor positionsStartingWith(String prefix, ParcelStore store) {
+        long firstKey = ParcelIdCodec.firstOrderKey(prefix);
+        int from = firstKey < 0 ? 0 : firstAtLeast(orderKeys, firstKey);
+        int to = firstKey < 0 ? 0 : firstAtLeast(orderKeys, ParcelIdCodec.lastOrderKey(prefix) + 1);
+        int otherFrom = Arrays.binarySearch(otherIDs, prefix);
+        int otherStart = otherFrom >= 0 ? otherFrom : -otherFrom - 1;
+
+        return new PositionBitmap.Cursor() {
+            private int next = from;
+            private int nextOther = otherStart;
+
+            @Override
+            public int next() {
+                while (true) {
+                    boolean hasOther = nextOther < otherIDs.length && otherIDs[nextOther].startsWith(prefix);
+                    long key;
+                    if (next < to && (!hasOther
+                            || ParcelIdCodec.decode(ParcelIdCodec.fromOrderKey(orderKeys[next]))
+                                    .compareTo(otherIDs[nextOther]) < 0)) {
+                        key = ParcelIdCodec.fromOrderKey(orderKeys[next++]);
+                    } else if (hasOther) {
+                        key = ParcelIdCodec.find(otherIDs[nextOther++]);
+                    } else {
+                        return -1;
+                    }
+                    int position = store.indexOf(key);
+                    if (position >= 0) {
+                        return position;
+                    }
+                }
+            }
+        };
+    }
+
+    private static void addPart(List<PositionBitmap> parts, PositionBitmap part) {
+        if (part != null) {
+            parts.add(part);
+        }
+    }
+
+    /**
+     * The indexed values of a parcel: weight, volume and arrival day
+     */
+    private static double[] values(Parcel parcel) {
+        return new double[] {parcel.getWeight(), parcel.getVolume(), parcel.getArrivalDay()};
+    }
+
+    /**
+     * Choose bucket bounds for each attribute at quantiles of a sample of
+     * evenly spaced positions; values seen many times get a bucket of their own
+     */
+    private static double[][] sampleBounds(ParcelStore store, int size) {
+        int step = Math.max(1, size / SAMPLE_SIZE);
+        int count = size == 0 ? 0 : (size - 1) / step + 1;
+        double[][] samples = new double[3][count];
+        int n = 0;
+        for (int position = 0; position < size && n < count; position += step) {
+            Parcel parcel = store.getAt(position);
+            if (parcel != null) {
+                double[] values = values(parcel);
+                for (int a = 0; a < values.length; a++) {
+                    samples[a][n] = values[a];
+                }
+                n++;
+            }
+        }
+
+        double[][] bounds = new double[samples.length][];
+        for (int a = 0; a < samples.length; a++) {
+            double[] sample = Arrays.copyOf(samples[a], n);
+            Arrays.sort(sample);
+            double[] lower = new double[BUCKETS];
+            lower[0] = Double.NEGATIVE_INFINITY;
+            int buckets = 1;
+            for (int b = 1; b < BUCKETS && n > 0; b++) {
+                double bound = sample[(int) ((long) b * n / BUCKETS)];
+                if (bound > lower[buckets - 1]) {
+                    lower[buckets++] = bound;
+                }
+            }
+            bounds[a] = Arrays.copyOf(lower, buckets);
+        }
+        return bounds;
+    }
+
+    /**
+     * Find the bucket holding a value
+     * @return Index of the last lower bound not above the value, 0 for NaN
+     */
+    private static int bucket(double[] lower, double value) {
+        int low = 1;
+        int high = lower.length - 1;
+        int found = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (lower[mid] <= value) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private static int firstAtLeast(long[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,305 @@
+package collection;
+
+import model.Parcel;
+import util.AsyncLog;
+import util.DepotClock;
+import util.LatencyHistogram;
+import util.Metrics;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * ParcelIndexer class - keeps a ParcelIndex of a store and answers
+ * ParcelQuery searches from it.
+ *
+ * The index is built on the first query. Parcels added since then sit at
+ * positions beyond the index and are read directly, and parcels replaced
+ * since then are remembered by position, read directly and skipped in the
+ * index, since their old values may have been indexed. Once these make up
+ * an eighth of the depot the index is built again in the background, while
+ * queries go on using the old one. Collecting a parcel needs no change to the
+ * index, as status is checked on the parcel itself.
+ */
+final class ParcelIndexer {
+    // Parcels read directly before a rebuild is worth it, however small the depot
+    private static final int MIN_STALE = 4096;
+    private static final int[] NO_POSITIONS = new int[0];
+    private static final LatencyHistogram BUILD_TIMES =
+            Metrics.getInstance().histogram("depot_parcel_index_build_seconds");
+
+    /**
+     * An index together with the positions replaced since it was built
+     */
+    private static final class State {
+        final ParcelIndex index;
+        // Sorted
+        final int[] replaced;
+
+        State(ParcelIndex index, int[] replaced) {
+            this.index = index;
+            this.replaced = replaced;
+        }
+    }
+
+    private final ParcelStore store;
+    private final ForkJoinPool pool;
+    private final DepotClock clock;
+    private final AsyncLog log;
+    private final Object firstBuild = new Object();
+    private volatile State state;
+    // Positions replaced since the build in progress started; guarded by this
+    private int[] replacedWhileBuilding = NO_POSITIONS;
+    // Written under this; volatile so replacements can skip the lock before the first query
+    private volatile boolean building;
+
+    /**
+     * Constructor for ParcelIndexer; nothing is built until the first query
+     * @param store Store to index
+     * @param pool Pool to build on
+     */
+    ParcelIndexer(ParcelStore store, ForkJoinPool pool) {
+        this.store = store;
+        this.pool = pool;
+        this.clock = DepotClock.getInstance();
+        this.log = AsyncLog.getInstance();
+    }
+
+    /**
+     * Note that the parcel at a position was replaced, so its indexed values
+     * can no longer be trusted
+     * @param position Position of the parcel
+     */
+    void parcelReplaced(int position) {
+        if (state == null && !building) {
+            return;
+        }
+        synchronized (this) {
+            State current = state;
+            // Parcels beyond the index are read directly anyway
+            if (current != null && position < current.index.size()) {
+                state = new State(current.index, insert(current.replaced, position));
+            }
+            if (building) {
+                replacedWhileBuilding = insert(replacedWhileBuilding, position);
+            }
+        }
+        rebuildIfStale();
+    }
+
+    /**
+     * Find the parcels matching a query. The parcels are read as they are
+     * iterated, so the results are weakly consistent, like the store's views.
+     * @param query Query to run
+     * @return Matching parcels; in ID order for a query by ID prefix and in
+     *         position order otherwise, followed by any parcels added or
+     *         replaced since the index was built
+     */
+    Iterator<Parcel> query(ParcelQuery query) {
+        if (query.isEmpty()) {
+            return Collections.emptyIterator();
+        }
+        State current = awaitIndex();
+        rebuildIfStale();
+        PositionBitmap candidates = current.index.candidates(query, clock.today());
+        String prefix = query.getIdPrefix();
+        if (candidates == null && prefix == null) {
+            // Nothing to narrow the search, so filter the store's own view
+            Boolean collected = query.getCollected();
+            Collection<Parcel> parcels = collected == null ? store.all()
+                    : collected ? store.collected() : store.uncollected();
+            return new Results(parcels.iterator(), query);
+        }
+        PositionBitmap.Cursor positions = prefix != null
+                ? current.index.positionsStartingWith(prefix, store) : candidates.cursor();
+        return new Results(current, positions, prefix != null ? candidates : null, query);
+    }
+
+    /**
+     * Get the index, building it first if no query has been run yet
+     */
+    private State awaitIndex() {
+        State current = state;
+        if (current == null) {
+            synchronized (firstBuild) {
+                current = state;
+                if (current == null) {
+                    rebuild();
+                    current = state;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Start building the index again in the background if enough parcels have
+     * been added or replaced since it was built, and no build is running
+     */
+    private void rebuildIfStale() {
+        State current = state;
+        if (current == null) {
+            return;
+        }
+        long stale = (long) store.size() - current.index.size() + current.replaced.length;
+        if (stale <= Math.max(MIN_STALE, current.index.size() >>> 3)) {
+            return;
+        }
+        synchronized (this) {
+            if (building) {
+                return;
+            }
+            building = true;
+        }
+        pool.execute(this::rebuild);
+    }
+
+    /**
+     * Build the index and put it in place of the old one. Replacements made
+     * while building may not have been seen, so they stay marked.
+     */
+    private void rebuild() {
+        synchronized (this) {
+            building = true;
+            replacedWhileBuilding = NO_POSITIONS;
+        }
+        long start = System.nanoTime();
+        try {
+            ParcelIndex index = ParcelIndex.build(store, pool);
+            synchronized (this) {
+                state = new State(index, replacedWhileBuilding);
+            }
+            log.info(() -> "Built parcel query indexes over " + index.size() + " parcels in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (RuntimeException e) {
+            log.error("Could not build parcel query indexes: " + e);
+            throw e;
+        } finally {
+            synchronized (this) {
+                building = false;
+                replacedWhileBuilding = NO_POSITIONS;
+            }
+            BUILD_TIMES.recordSince(start);
+        }
+    }
+
+    /**
+     * Add a position to a sorted array, copying it unless already there
+     */
+    private static int[] insert(int[] sorted, int position) {
+        int at = Arrays.binarySearch(sorted, position);
+        if (at >= 0) {
+            return sorted;
+        }
+        at = -at - 1;
+        int[] copy = new int[sorted.length + 1];
+        System.arraycopy(sorted, 0, copy, 0, at);
+        copy[at] = position;
+        System.arraycopy(sorted, at, copy, at + 1, sorted.length - at);
+        return copy;
+    }
+
+    /**
+     * Parcels that match a query, read one at a time: first the positions
+     * found in the index, then those replaced since it was built, then those
+     * added since
+     */
+    private final class Results implements Iterator<Parcel> {
+        private final ParcelQuery query;
+        private final Iterator<Parcel> view;
+        private final PositionBitmap.Cursor positions;
+        // Positions must also be in here, when not null
+        private final PositionBitmap candidates;
+        private final int[] replaced;
+        private final int indexed;
+        private int phase;
+        private int nextReplaced;
+        private int nextAdded;
+        private Parcel next;
+
+        /**
+         * Results filtered from a view of the store
+         */
+        Results(Iterator<Parcel> view, ParcelQuery query) {
+            this.query = query;
+            this.view = view;
+            this.positions = null;
+            this.candidates = null;
+            this.replaced = NO_POSITIONS;
+            this.indexed = 0;
+        }
+
+        /**
+         * Results found through the index
+         */
+        Results(State state, PositionBitmap.Cursor positions, PositionBitmap candidates, ParcelQuery query) {
+            this.query = query;
+            this.view = null;
+            this.positions = positions;
+            this.candidates = candidates;
+            this.replaced = state.replaced;
+            this.indexed = state.index.size();
+            this.nextAdded = indexed;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (view != null) {
+                    if (!view.hasNext()) {
+                        return false;
+                    }
+                    next = accept(view.next());
+                    continue;
+                }
+                int position;
+                if (phase == 0) {
+                    position = positions.next();
+                    if (position < 0) {
+                        phase = 1;
+                        continue;
+                    }
+                    if ((candidates != null && !candidates.contains(position))
+                            || Arrays.binarySearch(replaced, position) >= 0) {
+                        continue;
+                    }
+                } else if (phase == 1) {
+                    if (nextReplaced == replaced.length) {
+                        phase = 2;
+                        continue;
+                    }
+                    position = replaced[nextReplaced++];
+                    if (position >= indexed) {
+                        // Added and then replaced while the index was built; read with the added parcels
+                        continue;
+                    }
+                } else {
+                    if (nextAdded >= store.size()) {
+                        return false;
+                    }
+                    position = nextAdded++;
+                }
+                next = accept(store.getAt(position));
+            }
+            return true;
+        }
+
+        @Override
+        public Parcel next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Parcel parcel = next;
+            next = null;
+            return parcel;
+        }
+
+        private Parcel accept(Parcel parcel) {
+            return parcel != null && query.matches(parcel) ? parcel : null;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package collection;
+
+import model.Parcel;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ParcelLineParser class - single pass tokenizer for one line of the parcel file.
+ * Fields are parsed straight out of the byte buffer; Strings are only created
+ * for the parcel ID and for error messages.
+ */
+class ParcelLineParser implements ChunkedFileLoader.LineParser<Parcel> {
+    /** Result of parsing a line */
+    enum Result { PARSED, BLANK, ERROR }
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Fields of the last successfully parsed line
+    String parcelID;
+    int daysInDepot;
+    double weight;
+    int length;
+    int width;
+    int height;
+
+    // Description and kind of the last failure
+    String error;
+    String errorType;
+
+    // Token bounds of the current line, split exactly like line.split("\\s+")
+    private final int[] tokenStart = new int[4];
+    private final int[] tokenEnd = new int[4];
+
+    /**
+     * Parse a line of the form "ID days weight L x W x H"
+     * @param buf Buffer holding the line
+     * @param start Start offset of the line
+     * @param end End offset (exclusive) of the line
+     * @param lineNumber Line number used in error messages
+     * @return Outcome of parsing the line
+     */
+    Result parse(byte[] buf, int start, int end, int lineNumber) {
+        error = null;
+        errorType = null;
+
+        if (isBlank(buf, start, end)) {
+            return Result.BLANK;
+        }
+
+        int tokens = tokenize(buf, start, end);
+        if (tokens < 4) {
+            error = "Line " + lineNumber + " has insufficient data: " + tokens + " parts";
+            errorType = "missing_fields";
+            return Result.ERROR;
+        }
+
+        try {
+            parcelID = new String(buf, tokenStart[0], tokenEnd[0] - tokenStart[0], StandardCharsets.UTF_8);
+            daysInDepot = parseInt(buf, tokenStart[1], tokenEnd[1]);
+            weight = parseDouble(buf, tokenStart[2], tokenEnd[2]);
+
+            if (!parseDimensions(buf, tokenStart[3], end)) {
+                error = "Failed to parse dimensions from: " + joinTokens(buf, tokenStart[3], end);
+                errorType = "bad_dimensions";
+                return Result.ERROR;
+            }
+        } catch (NumberFormatException e) {
+            error = "Error parsing numbers in line " + lineNumber + ": " + e.getMessage();
+            errorType = "bad_number";
+            return Result.ERROR;
+        }
+        return Result.PARSED;
+    }
+
+    @Override
+    public Parcel parseLine(byte[] buf, int start, int end, int lineNumber) {
+        if (parse(buf, start, end, lineNumber) != Result.PARSED) {
+            return null;
+        }
+        return new Parcel(parcelID, daysInDepot, weight, length, width, height);
+    }
+
+    @Override
+    public String lastError() {
+        return error;
+    }
+
+    @Override
+    public String lastErrorType() {
+        return errorType;
+    }
+
+    /**
+     * Check whether a line would be empty after String.trim()
+     */
+    static boolean isBlank(byte[] buf, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if ((buf[i] & 0xFF) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check for a character matched by the regex class \s
+     */
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    /**
+     * Parse an int in place, falling back to Integer.parseInt for anything unusual
+     * so that the accepted syntax and exception messages are unchanged
+     */
+    static int parseInt(byte[] buf, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+        if (i == end || end - i > 9) {
+            return Integer.parseInt(text(buf, start, end));
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(text(buf, start, end));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a plain decimal number in place. Up to 15 significant digits and 22
+     * fractional digits the result is exact (a single correctly rounded division),
+     * so it matches Double.parseDouble; everything else is delegated to it.
+     */
+    static double parseDouble(byte[] buf, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            byte b = buf[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                return Double.parseDouble(text(buf, start, end));
+            }
+        }
+        if (digits == 0 || digits > 15 || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(text(buf, start, end));
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Split the line the same way as String.split("\\s+"): a leading separator
+     * produces an empty first token and trailing separators are dropped.
+     * Records the first four tokens and returns the total token count.
+     */
+    private int tokenize(byte[] buf, int start, int end) {
+        int count = 0;
+        int i = start;
+        while (true) {
+            int tokenBegin = i;
+            while (i < end && !isWhitespace(buf[i])) {
+                i++;
+            }
+            if (count < 4) {
+                tokenStart[count] = tokenBegin;
+                tokenEnd[count] = i;
+            }
+            count++;
+            while (i < end && isWhitespace(buf[i])) {
+                i++;
+            }
+            if (i == end) {
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Find the first "L x W x H" triple in the rest of the line, equivalent to
+     * the pattern (\d+)\s*x\s*(\d+)\s*x\s*(\d+) used with Matcher.find()
+     */
+    private boolean parseDimensions(byte[] buf, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isDigit(buf[i]) || (i > start && isDigit(buf[i - 1]))) {
+                continue;
+            }
+            int lengthEnd = skipDigits(buf, i, end);
+            int p = expectSeparator(buf, lengthEnd, end);
+            if (p < 0) {
+                continue;
+            }
+            int widthEnd = skipDigits(buf, p, end);
+            if (widthEnd == p) {
+                continue;
+            }
+            int q = expectSeparator(buf, widthEnd, end);
+            if (q < 0) {
+                continue;
+            }
+            int heightEnd = skipDigits(buf, q, end);
+            if (heightEnd == q) {
+                continue;
+            }
+            length = parseInt(buf, i, lengthEnd);
+            width = parseInt(buf, p, widthEnd);
+            height = parseInt(buf, q, heightEnd);
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static int skipDigits(byte[] buf, int i, int end) {
+        while (i < end && isDigit(buf[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Match \s*x\s* and return the offset after it, or -1
+     */
+    private static int expectSeparator(byte[] buf, int i, int end) {
+        while (i < end && isWhitespace(buf[i])) {
+            i++;
+        }
+        if (i == end || buf[i] != 'x') {
+            return -1;
+        }
+        i++;
+        while (i < end && isWhitespace(buf[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Rebuild the dimension text as the tokens joined by single spaces
+     */
+    private static String joinTokens(byte[] buf, int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        for (String part : text(buf, start, end).split("\\s+")) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(part);
+        }
+        return sb.toString();
+    }
+
+    private static String text(byte[] buf, int start, int end) {
+        return new String(buf, start, end - start, StandardCharsets.UTF_8);
+    }
+}
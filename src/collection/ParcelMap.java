@@ -1,32 +1,155 @@
 package collection;
 
 import model.Parcel;
-import util.Log;
+import util.AsyncLog;
+import util.LatencyHistogram;
+import util.Metrics;
+import util.ParcelIdCodec;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * ParcelMap class - uses a map data structure to store parcel objects
+ * ParcelMap class - uses a map data structure to store parcel objects.
+ * Loaders, counters and the UI can use it at the same time without external
+ * locking. Parcels also have a stable position in arrival order, so views can
+ * read them by index without copying.
+ *
+ * Parcels are kept either as objects or, for very large
+ * depots, in compact primitive columns; see Storage.
  */
 public class ParcelMap {
-    private Map<String, Parcel> parcels;
-    private Log log;
+    /**
+     * Result of trying to collect a parcel
+     */
+    public enum CollectResult {
+        COLLECTED,
+        ALREADY_COLLECTED,
+        NOT_FOUND
+    }
 
     /**
-     * Constructor for ParcelMap
+     * How parcels are stored
+     */
+    public enum Storage {
+        /** One Parcel object per parcel; findParcelByID returns the object that was added */
+        OBJECTS,
+        /**
+         * Primitive columns, several times smaller; findParcelByID returns a new view
+         * of the stored values each time, so compare parcels by ID, not identity
+         */
+        COLUMNS
+    }
+
+    /**
+     * Receives changes to the parcels by position; called on the thread that
+     * made the change, so implementations must be quick and thread-safe
+     */
+    public interface ParcelListener {
+        /**
+         * Called after parcels with new IDs have been added
+         * @param firstPosition Position of the first new parcel
+         * @param lastPosition Position of the last new parcel
+         */
+        void parcelsAdded(int firstPosition, int lastPosition);
+
+        /**
+         * Called after the parcel at a position has been collected or replaced
+         * @param position Position of the parcel
+         */
+        void parcelUpdated(int position);
+    }
+
+    /**
+     * A parcel found by searchParcelIDs
+     */
+    public static class IdMatch {
+        private final Parcel parcel;
+        private final int distance;
+
+        /**
+         * Constructor for IdMatch
+         * @param parcel Parcel found
+         * @param distance Edit distance from the text searched for to the closest prefix of the ID
+         */
+        public IdMatch(Parcel parcel, int distance) {
+            this.parcel = parcel;
+            this.distance = distance;
+        }
+
+        /**
+         * Get the parcel found
+         * @return Parcel
+         */
+        public Parcel getParcel() {
+            return parcel;
+        }
+
+        /**
+         * Get how far the ID is from the text searched for
+         * @return 0 if the ID starts with the text, otherwise the characters
+         *         that must be added, removed or changed
+         */
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    // Snapshot record: id ref, arrival day, weight, length, width, height, collected day or -1;
+    // version 1 records held days in depot and a collected flag in place of the days
+    private static final int SNAPSHOT_RECORD_SIZE = 32;
+    // Progress is reported every 4096 lines
+    private static final int PROGRESS_LINE_MASK = 4095;
+
+    // A lookup takes about as long as reading the clock twice, so only one in 16 is timed
+    private static final int LOOKUP_SAMPLE_MASK = 15;
+    private static final LatencyHistogram LOOKUP_TIMES =
+            Metrics.getInstance().histogram("depot_parcel_lookup_seconds");
+    private static final LatencyHistogram ID_SEARCH_TIMES =
+            Metrics.getInstance().histogram("depot_parcel_id_search_seconds");
+    private static final LatencyHistogram LOAD_TIMES =
+            Metrics.getInstance().histogram("depot_file_load_seconds{file=\"parcels\",mode=\"sequential\"}");
+    private static final LatencyHistogram PARALLEL_LOAD_TIMES =
+            Metrics.getInstance().histogram("depot_file_load_seconds{file=\"parcels\",mode=\"parallel\"}");
+
+    private ParcelStore store;
+    private ParcelIndexer indexer;
+    // Set when ID search is enabled; new IDs are added to it from then on
+    private volatile ParcelIdTrie idTrie;
+    // Set once idTrie holds every ID added before it was set
+    private volatile boolean idSearchReady;
+    // Set once the trie is being filled in the background, so it is only filled once
+    private final AtomicBoolean idSearchStarted = new AtomicBoolean();
+    private List<ParcelListener> listeners;
+    private AsyncLog log;
+
+    /**
+     * Constructor for ParcelMap, storing parcels as objects
      */
     public ParcelMap() {
-        parcels = new HashMap<>();
-        log = Log.getInstance();
+        this(Storage.OBJECTS);
+    }
+
+    /**
+     * Constructor for ParcelMap
+     * @param storage How to store the parcels
+     */
+    public ParcelMap(Storage storage) {
+        store = storage == Storage.COLUMNS ? new ColumnParcelStore() : new ObjectParcelStore();
+        indexer = new ParcelIndexer(store, ForkJoinPool.commonPool());
+        listeners = new CopyOnWriteArrayList<>();
+        log = AsyncLog.getInstance();
     }
 
     /**
@@ -35,88 +158,240 @@ public class ParcelMap {
      * @return true if successful, false otherwise
      */
     public boolean loadParcelsFromFile(String filename) {
-        log.addLog("Starting to load parcels from file: " + filename);
+        return loadParcelsFromFile(filename, null);
+    }
+
+    /**
+     * Load parcels from file, reporting progress as it is read. Parcels are
+     * added one at a time, so views following the map fill up while loading.
+     * @param filename Name of file to load
+     * @param progress Receives progress, may be null
+     * @return true if successful, false otherwise
+     */
+    public boolean loadParcelsFromFile(String filename, LoadProgressListener progress) {
+        log.info("Starting to load parcels from file: " + filename);
+        long start = System.nanoTime();
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            
-            // Read and check the file header first
-            String headerLine1 = reader.readLine();
-            log.addLog("Header line 1: " + headerLine1);
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            return loadParcels(channel, channel.size(), progress);
+        } catch (IOException e) {
+            log.error("IO Error loading parcels: " + e.getMessage());
+            return false;
+        } finally {
+            LOAD_TIMES.recordSince(start);
+        }
+    }
+
+    /**
+     * Load parcels from a channel holding the contents of a parcel file.
+     * Lines are tokenized in place, so only the parcel ID and error messages
+     * allocate Strings.
+     * @param channel Channel to read from
+     * @return true if successful, false otherwise
+     * @throws IOException if the channel cannot be read
+     */
+    public boolean loadParcels(ReadableByteChannel channel) throws IOException {
+        return loadParcels(channel, -1, null);
+    }
+
+    /**
+     * Load parcels from a channel, reporting progress every few thousand lines
+     * @param channel Channel to read from
+     * @param totalBytes Size of the input, or -1 if unknown
+     * @param progress Receives progress, may be null
+     * @return true if successful, false otherwise
+     * @throws IOException if the channel cannot be read
+     */
+    private boolean loadParcels(ReadableByteChannel channel, long totalBytes,
+            LoadProgressListener progress) throws IOException {
+        ByteLineReader reader = new ByteLineReader(channel);
+        
+        // Read and check the file header first
+        if (!readHeader(reader)) {
+            return false;
+        }
+        
+        ParcelLineParser parser = new ParcelLineParser();
+        int errorCount = 0;
+        
+        while (reader.nextLine()) {
+            Parcel parcel = parser.parseLine(reader.buffer(),
+                    reader.lineStart(), reader.lineEnd(), reader.lineNumber());
             
-            if (headerLine1 == null || !headerLine1.trim().equals("PARCELS")) {
-                log.addLog("Error: First line should be 'PARCELS'");
+            if (parcel != null) {
+                putParcel(parcel);
+            } else if (parser.lastError() != null) {
+                errorCount++;
+                ChunkedFileLoader.countError("parcels", parser);
+                log.warn(parser.lastError());
+            }
+            if (progress != null && (reader.lineNumber() & PROGRESS_LINE_MASK) == 0) {
+                progress.progress(reader.bytesConsumed(), totalBytes);
+            }
+        }
+        if (progress != null) {
+            progress.progress(reader.bytesConsumed(), totalBytes);
+        }
+        
+        int loadedCount = store.size();
+        log.info("Loaded " + loadedCount + " parcels from file (" + errorCount + " bad lines skipped)");
+        
+        return loadedCount > 0;
+    }
+
+    /**
+     * Read and check the two header lines of a parcel file
+     * @param reader Reader positioned at the start of the file
+     * @return true if the header is valid, false otherwise
+     * @throws IOException if the file cannot be read
+     */
+    private boolean readHeader(ByteLineReader reader) throws IOException {
+        String headerLine1 = reader.nextLine() ? reader.lineAsString() : null;
+        log.debug(() -> "Header line 1: " + headerLine1);
+        
+        if (headerLine1 == null || !headerLine1.trim().equals("PARCELS")) {
+            log.error("Error: First line should be 'PARCELS'");
+            return false;
+        }
+        
+        String headerLine2 = reader.nextLine() ? reader.lineAsString() : null;
+        log.debug(() -> "Header line 2: " + headerLine2);
+        
+        if (headerLine2 == null) {
+            log.error("Error: Missing column headers");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Load parcels from file, parsing newline aligned ranges of the file in
+     * parallel on the common fork-join pool
+     * @param filename Name of file to load
+     * @return true if successful, false otherwise
+     */
+    public boolean loadParcelsFromFileParallel(String filename) {
+        return loadParcelsFromFileParallel(filename, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Load parcels from file, parsing newline aligned ranges of the file in parallel.
+     * The result is the same as loadParcelsFromFile, including which parcel wins
+     * when an ID appears more than once.
+     * @param filename Name of file to load
+     * @param pool Pool to parse on
+     * @return true if successful, false otherwise
+     */
+    public boolean loadParcelsFromFileParallel(String filename, ForkJoinPool pool) {
+        log.info("Starting parallel load of parcels from file: " + filename);
+        long start = System.nanoTime();
+        
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            ByteLineReader reader = new ByteLineReader(new ChunkedFileLoader.RangeChannel(channel, 0, channel.size()));
+            if (!readHeader(reader)) {
                 return false;
             }
             
-            String headerLine2 = reader.readLine();
-            log.addLog("Header line 2: " + headerLine2);
+            List<String> errors = new ArrayList<>();
+            List<List<Parcel>> chunks = ChunkedFileLoader.load(channel, reader.bytesConsumed(),
+                    reader.lineNumber() + 1, ParcelLineParser::new, pool, errors, "parcels");
             
-            if (headerLine2 == null) {
-                log.addLog("Error: Missing column headers");
-                return false;
+            for (List<Parcel> chunk : chunks) {
+                for (Parcel parcel : chunk) {
+                    putParcel(parcel);
+                }
+            }
+            for (String error : errors) {
+                log.warn(error);
             }
             
-            int lineCount = 2; 
+            int loadedCount = store.size();
+            log.info("Loaded " + loadedCount + " parcels from file (" + errors.size() + " bad lines skipped)");
             
-            Pattern dimensionPattern = Pattern.compile("(\\d+)\\s*x\\s*(\\d+)\\s*x\\s*(\\d+)");
+            return loadedCount > 0;
+        } catch (IOException e) {
+            log.error("IO Error loading parcels: " + e.getMessage());
+            return false;
+        } finally {
+            PARALLEL_LOAD_TIMES.recordSince(start);
+        }
+    }
+
+    /**
+     * Save all parcels to a binary snapshot that loadSnapshot can map back quickly
+     * @param filename Name of snapshot file to write
+     * @return true if successful, false otherwise
+     */
+    public boolean saveSnapshot(String filename) {
+        SnapshotFormat.Writer writer = new SnapshotFormat.Writer(
+                SnapshotFormat.KIND_PARCELS, SNAPSHOT_RECORD_SIZE, store.size());
+        
+        try {
+            for (Parcel parcel : store.all()) {
+                ByteBuffer record = writer.newRecord();
+                record.putInt(writer.intern(parcel.getParcelID()));
+                record.putInt(parcel.getArrivalDay());
+                record.putDouble(parcel.getWeight());
+                record.putInt(parcel.getLength());
+                record.putInt(parcel.getWidth());
+                record.putInt(parcel.getHeight());
+                record.putInt(parcel.getCollectedDay());
+            }
+            writer.writeTo(Paths.get(filename));
+            log.info("Saved snapshot of " + store.size() + " parcels to: " + filename);
+            return true;
+        } catch (IOException e) {
+            log.error("IO Error saving parcel snapshot: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Load parcels from a binary snapshot written by saveSnapshot.
+     * A truncated or corrupt snapshot is rejected without changing the map.
+     * Parcels of a version 1 snapshot, which only kept days in depot, are
+     * taken to have been counted up to today.
+     * @param filename Name of snapshot file to read
+     * @return true if the snapshot was valid, even if it held no parcels; false otherwise
+     */
+    public boolean loadSnapshot(String filename) {
+        try {
+            SnapshotFormat.Reader reader = new SnapshotFormat.Reader(
+                    Paths.get(filename), SnapshotFormat.KIND_PARCELS, SNAPSHOT_RECORD_SIZE);
+            ByteBuffer records = reader.records();
             
-            while ((line = reader.readLine()) != null) {
-                lineCount++;
-                log.addLog("Processing line " + lineCount + ": " + line);
-                
-                if (line.trim().isEmpty()) {
-                    log.addLog("Skipping empty line");
-                    continue;
-                }
-                
-                try {
-                    String[] parts = line.split("\\s+");
-                    
-                    if (parts.length < 4) {
-                        log.addLog("Line " + lineCount + " has insufficient data: " + parts.length + " parts");
-                        continue;
-                    }
-                    
-                    String parcelID = parts[0];
-                    int daysInDepot = Integer.parseInt(parts[1]);
-                    double weight = Double.parseDouble(parts[2]);
-                    
-                    StringBuilder dimensionStr = new StringBuilder();
-                    for (int i = 3; i < parts.length; i++) {
-                        dimensionStr.append(parts[i]).append(" ");
-                    }
-                    
-                    String dimensions = dimensionStr.toString().trim();
-                    log.addLog("Dimensions string: " + dimensions);
-                    
-                    Matcher matcher = dimensionPattern.matcher(dimensions);
-                    
-                    if (matcher.find()) {
-                        int length = Integer.parseInt(matcher.group(1));
-                        int width = Integer.parseInt(matcher.group(2));
-                        int height = Integer.parseInt(matcher.group(3));
-                        
-                        log.addLog("Successfully parsed dimensions: " + length + "x" + width + "x" + height);
-                        
-                        Parcel parcel = new Parcel(parcelID, daysInDepot, weight, length, width, height);
-                        addParcel(parcel);
-                    } else {
-                        log.addLog("Failed to parse dimensions from: " + dimensions);
-                    }
-                } catch (NumberFormatException e) {
-                    log.addLog("Error parsing numbers in line " + lineCount + ": " + e.getMessage());
-                } catch (Exception e) {
-                    log.addLog("Unexpected error processing line " + lineCount + ": " + e.getMessage());
+            boolean daysInDepot = reader.version() < 2;
+            List<Parcel> loaded = new ArrayList<>(reader.recordCount());
+            for (int i = 0; i < reader.recordCount(); i++) {
+                int offset = reader.recordOffset(i);
+                Parcel parcel;
+                if (daysInDepot) {
+                    parcel = new Parcel(reader.string(records.getInt(offset)),
+                            records.getInt(offset + 4),
+                            records.getDouble(offset + 8),
+                            records.getInt(offset + 16),
+                            records.getInt(offset + 20),
+                            records.getInt(offset + 24));
+                    parcel.setCollected(records.get(offset + 28) != 0);
+                } else {
+                    parcel = Parcel.restore(reader.string(records.getInt(offset)),
+                            records.getDouble(offset + 8),
+                            records.getInt(offset + 16),
+                            records.getInt(offset + 20),
+                            records.getInt(offset + 24),
+                            records.getInt(offset + 4),
+                            records.getInt(offset + 28));
                 }
+                loaded.add(parcel);
             }
             
-            int loadedCount = parcels.size();
-            log.addLog("Loaded " + loadedCount + " parcels from file");
-            
-            return loadedCount > 0;
+            for (Parcel parcel : loaded) {
+                putParcel(parcel);
+            }
+            log.info("Loaded " + loaded.size() + " parcels from snapshot: " + filename);
+            return true;
         } catch (IOException e) {
-            log.addLog("IO Error loading parcels: " + e.getMessage());
+            log.warn("Rejected parcel snapshot " + filename + ": " + e.getMessage());
             return false;
         }
     }
@@ -126,32 +401,283 @@ public class ParcelMap {
      * @param parcel Parcel to add
      */
     public void addParcel(Parcel parcel) {
-        parcels.put(parcel.getParcelID(), parcel);
-        log.addLog("Parcel added: " + parcel.getParcelID());
+        putParcel(parcel);
+        log.debug(() -> "Parcel added: " + parcel.getParcelID());
     }
 
     /**
-     * Find a parcel by ID
+     * Store a parcel and tell the listeners. A parcel replaced by one with the
+     * same ID keeps its position.
+     * @param parcel Parcel to store
+     */
+    private void putParcel(Parcel parcel) {
+        int position = store.put(parcel);
+        if (position < 0) {
+            indexer.parcelReplaced(-position - 1);
+        } else {
+            ParcelIdTrie trie = idTrie;
+            if (trie != null) {
+                trie.add(parcel.getParcelID(), position);
+            }
+        }
+        for (ParcelListener listener : listeners) {
+            if (position >= 0) {
+                listener.parcelsAdded(position, position);
+            } else {
+                listener.parcelUpdated(-position - 1);
+            }
+        }
+    }
+
+    /**
+     * Publish the number of parcels and of uncollected parcels as gauges with
+     * the hot-path metrics
+     */
+    public void registerMetrics() {
+        Metrics metrics = Metrics.getInstance();
+        metrics.gauge("depot_parcels", this::size);
+        metrics.gauge("depot_parcels_uncollected", this::getUncollectedCount);
+    }
+
+    /**
+     * Find a parcel by ID. A random sample of lookups is timed in
+     * depot_parcel_lookup_seconds.
      * @param parcelID ID of parcel to find
      * @return Parcel if found, null otherwise
      */
     public Parcel findParcelByID(String parcelID) {
-        return parcels.get(parcelID);
+        if ((ThreadLocalRandom.current().nextInt() & LOOKUP_SAMPLE_MASK) != 0) {
+            return findParcel(parcelID);
+        }
+        long start = System.nanoTime();
+        Parcel parcel = findParcel(parcelID);
+        LOOKUP_TIMES.recordSince(start);
+        return parcel;
+    }
+
+    /**
+     * Find a parcel by ID without timing the lookup
+     */
+    private Parcel findParcel(String parcelID) {
+        long key = ParcelIdCodec.find(parcelID);
+        return key == ParcelIdCodec.NO_KEY ? null : store.get(key);
+    }
+
+    /**
+     * Find a parcel by the key of its ID, without touching any String
+     * @param parcelKey Key of the parcel ID, from ParcelIdCodec
+     * @return Parcel if found, null otherwise
+     */
+    public Parcel findParcelByKey(long parcelKey) {
+        return store.get(parcelKey);
     }
 
     /**
      * Mark a parcel as collected
      * @param parcelID ID of parcel to mark
-     * @return true if successful, false otherwise
+     * @return true if this call collected the parcel, false if it was not found or already collected
      */
     public boolean markParcelAsCollected(String parcelID) {
-        Parcel parcel = findParcelByID(parcelID);
-        if (parcel != null) {
-            parcel.setCollected(true);
-            log.addLog("Parcel marked as collected: " + parcelID);
-            return true;
+        return collectParcel(parcelID) == CollectResult.COLLECTED;
+    }
+
+    /**
+     * Atomically mark a parcel as collected. When several threads collect the
+     * same parcel at once, exactly one of them gets COLLECTED.
+     * @param parcelID ID of parcel to collect
+     * @return COLLECTED, ALREADY_COLLECTED or NOT_FOUND
+     */
+    public CollectResult collectParcel(String parcelID) {
+        long key = ParcelIdCodec.find(parcelID);
+        return key == ParcelIdCodec.NO_KEY ? CollectResult.NOT_FOUND : collectParcelByKey(key);
+    }
+
+    /**
+     * Atomically mark a parcel as collected, by the key of its ID
+     * @param parcelKey Key of the parcel ID, from ParcelIdCodec
+     * @return COLLECTED, ALREADY_COLLECTED or NOT_FOUND
+     */
+    public CollectResult collectParcelByKey(long parcelKey) {
+        CollectResult result = store.collect(parcelKey);
+        if (result == CollectResult.ALREADY_COLLECTED) {
+            log.debug(() -> "Parcel already collected: " + ParcelIdCodec.decode(parcelKey));
+        }
+        if (result != CollectResult.COLLECTED) {
+            return result;
+        }
+        collected(listeners.isEmpty() ? -1 : store.indexOf(parcelKey), parcelKey);
+        return CollectResult.COLLECTED;
+    }
+
+    /**
+     * Atomically mark the parcel at a position as collected, without looking
+     * its ID up, if it is still the version given; for a parcel found earlier,
+     * such as when a customer joined the queue
+     * @param position Position of the parcel, see indexOfKey
+     * @param version Version of the parcel found there
+     * @return COLLECTED, ALREADY_COLLECTED, or NOT_FOUND if the parcel has been replaced since
+     */
+    public CollectResult collectParcelAt(int position, long version) {
+        CollectResult result = store.collectAt(position, version);
+        if (result == CollectResult.COLLECTED) {
+            collected(position, ParcelIdCodec.NO_KEY);
+        }
+        return result;
+    }
+
+    /**
+     * Tell the listeners about a parcel just collected
+     * @param position Position of the parcel, or -1 if not known
+     * @param parcelKey Key of its ID for the log, or NO_KEY to read it from the position
+     */
+    private void collected(int position, long parcelKey) {
+        if (position >= 0) {
+            for (ParcelListener listener : listeners) {
+                listener.parcelUpdated(position);
+            }
+        }
+        log.debug(() -> "Parcel marked as collected: "
+                + (parcelKey != ParcelIdCodec.NO_KEY ? ParcelIdCodec.decode(parcelKey)
+                : store.getAt(position).getParcelID()));
+    }
+
+    /**
+     * Find the parcels matching a query, for example
+     * {@code query(new ParcelQuery().waiting().weightAbove(20).daysBetween(4, 7))}.
+     * Ranges are answered from indexes built on the first query and kept up
+     * to date as parcels are added and replaced, so a narrow query reads few
+     * parcels however large the depot; see ParcelIndex. Nothing is copied:
+     * each iteration runs the query again and reads the parcels as it goes.
+     * @param query Conditions the parcels must meet
+     * @return Matching parcels; in ID order for a query by ID prefix and in
+     *         position order otherwise, followed by any parcels added or
+     *         replaced since the indexes were last built
+     */
+    public Iterable<Parcel> query(ParcelQuery query) {
+        return () -> indexer.query(query);
+    }
+
+    /**
+     * Start keeping the trie of parcel IDs that searchParcelIDs uses, filling
+     * it with the IDs already in the map, and return once it holds them all.
+     * From then on every new ID is added as it arrives.
+     */
+    public synchronized void enableIdSearch() {
+        if (idTrie != null) {
+            return;
+        }
+        long start = System.nanoTime();
+        ParcelIdTrie trie = new ParcelIdTrie();
+        // Set first, so IDs added while filling are not missed; adding an ID twice does no harm
+        idTrie = trie;
+        for (int position = 0; position < store.size(); position++) {
+            Parcel parcel = store.getAt(position);
+            if (parcel != null) {
+                trie.add(parcel.getParcelID(), position);
+            }
+        }
+        idSearchReady = true;
+        log.info(() -> "Indexed " + trie.size() + " parcel IDs for search in " + trie.nodeCount()
+                + " trie nodes, " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Start keeping the trie of parcel IDs that searchParcelIDs uses, filling
+     * it on a background thread. Views that offer type-ahead search call this
+     * once the parcels have loaded; otherwise the first search does.
+     */
+    public void startIdSearch() {
+        if (!idSearchReady && idSearchStarted.compareAndSet(false, true)) {
+            ForkJoinPool.commonPool().execute(this::enableIdSearch);
+        }
+    }
+
+    /**
+     * Check whether searchParcelIDs can search yet
+     * @return true once every parcel ID has been indexed for search
+     */
+    public boolean isIdSearchReady() {
+        return idSearchReady;
+    }
+
+    /**
+     * Find parcels by what was typed of their ID, for type-ahead search:
+     * first those whose ID starts with the text, then, if maxDistance allows,
+     * those whose ID starts with something one or two characters different,
+     * such as a misread digit, a digit left out or two digits swapped.
+     * Searches are timed in depot_parcel_id_search_seconds. Until the IDs
+     * have been indexed nothing is found, so that the caller, often the event
+     * thread, never waits for the whole map to be indexed; check
+     * isIdSearchReady to tell that apart from no match.
+     * @param text Text typed
+     * @param maxDistance Most characters that may be added, removed or changed, from 0
+     * @param limit Most parcels to return
+     * @return Parcels found, closest first and in ID order among equally close ones
+     */
+    public List<IdMatch> searchParcelIDs(String text, int maxDistance, int limit) {
+        List<IdMatch> found = new ArrayList<>(Math.min(Math.max(limit, 0), 64));
+        if (!idSearchReady) {
+            startIdSearch();
+            return found;
+        }
+        if (limit <= 0) {
+            return found;
         }
-        return false;
+        long start = System.nanoTime();
+        idTrie.search(text, maxDistance, (position, distance) -> {
+            Parcel parcel = store.getAt(position);
+            if (parcel != null) {
+                found.add(new IdMatch(parcel, distance));
+            }
+            return found.size() < limit;
+        });
+        ID_SEARCH_TIMES.recordSince(start);
+        return found;
+    }
+
+    /**
+     * Add a listener for added and changed parcels
+     * @param listener Listener to add
+     */
+    public void addParcelListener(ParcelListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener added with addParcelListener
+     * @param listener Listener to remove
+     */
+    public void removeParcelListener(ParcelListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Get the parcel at a position, without copying anything. Positions are in
+     * the order parcel IDs first arrived and do not change.
+     * @param position Position, from 0 to size() - 1
+     * @return Parcel at position, or null if position invalid
+     */
+    public Parcel getParcelAt(int position) {
+        return store.getAt(position);
+    }
+
+    /**
+     * Get the position of a parcel
+     * @param parcelID ID of parcel to find
+     * @return Position of the parcel, or -1 if not found
+     */
+    public int indexOf(String parcelID) {
+        long key = ParcelIdCodec.find(parcelID);
+        return key == ParcelIdCodec.NO_KEY ? -1 : store.indexOf(key);
+    }
+
+    /**
+     * Get the position of a parcel by the key of its ID
+     * @param parcelKey Key of the parcel ID, from ParcelIdCodec
+     * @return Position of the parcel, or -1 if not found
+     */
+    public int indexOfKey(long parcelKey) {
+        return parcelKey == ParcelIdCodec.NO_KEY ? -1 : store.indexOf(parcelKey);
     }
 
     /**
@@ -159,7 +685,7 @@ public class ParcelMap {
      * @return List of all parcels
      */
     public List<Parcel> getAllParcels() {
-        return new ArrayList<>(parcels.values());
+        return new ArrayList<>(store.all());
     }
 
     /**
@@ -167,9 +693,7 @@ public class ParcelMap {
      * @return List of uncollected parcels
      */
     public List<Parcel> getUncollectedParcels() {
-        return parcels.values().stream()
-                .filter(parcel -> !parcel.isCollected())
-                .collect(Collectors.toList());
+        return new ArrayList<>(store.uncollected());
     }
 
     /**
@@ -177,19 +701,58 @@ public class ParcelMap {
      * @return List of collected parcels
      */
     public List<Parcel> getCollectedParcels() {
-        return parcels.values().stream()
-                .filter(Parcel::isCollected)
-                .collect(Collectors.toList());
+        return new ArrayList<>(store.collected());
+    }
+
+    /**
+     * Get a live, read-only view of the collected parcels, for single-pass
+     * iteration without copying
+     * @return Collected parcels
+     */
+    public Collection<Parcel> getCollectedParcelsView() {
+        return store.collected();
+    }
+
+    /**
+     * Get a live, read-only view of the uncollected parcels, for single-pass
+     * iteration without copying
+     * @return Uncollected parcels
+     */
+    public Collection<Parcel> getUncollectedParcelsView() {
+        return store.uncollected();
+    }
+
+    /**
+     * Get the number of parcels; every position below it holds a parcel
+     * @return Number of parcels
+     */
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * Get the number of collected parcels without copying them
+     * @return Number of collected parcels
+     */
+    public int getCollectedCount() {
+        return store.collectedCount();
+    }
+
+    /**
+     * Get the number of uncollected parcels without copying them
+     * @return Number of uncollected parcels
+     */
+    public int getUncollectedCount() {
+        return store.uncollectedCount();
     }
 
     /**
-     * Count parcels in depot more than n days
+     * Count parcels in depot more than n days, as of today on the DepotClock;
+     * collected parcels count the days they spent in the depot
      * @param days Number of days threshold
      * @return Count of parcels
      */
     public int countParcelsInDepotMoreThanDays(int days) {
-        return (int) parcels.values().stream()
-                .filter(parcel -> parcel.getDaysInDepot() > days)
-                .count();
+        return store.countMoreThanDays(days);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,241 @@
+package collection;
+
+import model.Parcel;
+
+/**
+ * ParcelQuery class - conditions on parcels for ParcelMap.query, such as
+ * "waiting, weight over 20, 4 to 7 days in depot, volume over 5000".
+ *
+ * Each method narrows the query and returns it, so conditions can be chained;
+ * giving the same kind of condition twice keeps only parcels that meet both.
+ * Ranges include both ends. Days in depot are as of today on the DepotClock,
+ * as getDaysInDepot gives them.
+ */
+public class ParcelQuery {
+    private Boolean collected;
+    private double minWeight = Double.NEGATIVE_INFINITY;
+    private double maxWeight = Double.POSITIVE_INFINITY;
+    private long minVolume = Long.MIN_VALUE;
+    private long maxVolume = Long.MAX_VALUE;
+    private int minDays = Integer.MIN_VALUE;
+    private int maxDays = Integer.MAX_VALUE;
+    private String idPrefix;
+    // Set when two conditions contradict each other, so nothing can match
+    private boolean empty;
+
+    /**
+     * Keep only parcels waiting to be collected
+     * @return This query
+     */
+    public ParcelQuery waiting() {
+        return status(false);
+    }
+
+    /**
+     * Keep only collected parcels
+     * @return This query
+     */
+    public ParcelQuery collected() {
+        return status(true);
+    }
+
+    /**
+     * Keep only parcels of a weight in a range
+     * @param min Lowest weight
+     * @param max Highest weight
+     * @return This query
+     */
+    public ParcelQuery weightBetween(double min, double max) {
+        minWeight = Math.max(minWeight, min);
+        maxWeight = Math.min(maxWeight, max);
+        return this;
+    }
+
+    /**
+     * Keep only parcels heavier than a weight
+     * @param weight Weight the parcels must be over
+     * @return This query
+     */
+    public ParcelQuery weightAbove(double weight) {
+        return weightBetween(Math.nextUp(weight), Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Keep only parcels of a volume in a range
+     * @param min Lowest volume
+     * @param max Highest volume
+     * @return This query
+     */
+    public ParcelQuery volumeBetween(long min, long max) {
+        minVolume = Math.max(minVolume, min);
+        maxVolume = Math.min(maxVolume, max);
+        return this;
+    }
+
+    /**
+     * Keep only parcels larger than a volume
+     * @param volume Volume the parcels must be over
+     * @return This query
+     */
+    public ParcelQuery volumeAbove(long volume) {
+        return volume == Long.MAX_VALUE ? volumeBetween(1, 0) : volumeBetween(volume + 1, Long.MAX_VALUE);
+    }
+
+    /**
+     * Keep only parcels that have been in the depot a number of days in a range
+     * @param min Fewest days
+     * @param max Most days
+     * @return This query
+     */
+    public ParcelQuery daysBetween(int min, int max) {
+        minDays = Math.max(minDays, min);
+        maxDays = Math.min(maxDays, max);
+        return this;
+    }
+
+    /**
+     * Keep only parcels that have been in the depot more than a number of days
+     * @param days Days the parcels must be over
+     * @return This query
+     */
+    public ParcelQuery daysAbove(int days) {
+        return days == Integer.MAX_VALUE ? daysBetween(1, 0) : daysBetween(days + 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Keep only parcels whose ID starts with a prefix
+     * @param prefix Start of the ID, case sensitive
+     * @return This query
+     */
+    public ParcelQuery idStartingWith(String prefix) {
+        if (idPrefix == null || prefix.startsWith(idPrefix)) {
+            idPrefix = prefix;
+        } else if (!idPrefix.startsWith(prefix)) {
+            // No ID starts with both
+            empty = true;
+        }
+        return this;
+    }
+
+    /**
+     * Check whether a parcel meets every condition of the query
+     * @param parcel Parcel to check
+     * @return true if the parcel matches
+     */
+    public boolean matches(Parcel parcel) {
+        if (empty) {
+            return false;
+        }
+        if (collected != null && parcel.isCollected() != collected) {
+            return false;
+        }
+        double weight = parcel.getWeight();
+        if (!(weight >= minWeight && weight <= maxWeight)) {
+            return false;
+        }
+        if (hasVolume()) {
+            long volume = parcel.getVolume();
+            if (volume < minVolume || volume > maxVolume) {
+                return false;
+            }
+        }
+        if (hasDays()) {
+            int days = parcel.getDaysInDepot();
+            if (days < minDays || days > maxDays) {
+                return false;
+            }
+        }
+        return idPrefix == null || parcel.getParcelID().startsWith(idPrefix);
+    }
+
+    /**
+     * Get the status the query asks for
+     * @return true for collected, false for waiting, null for either
+     */
+    Boolean getCollected() {
+        return collected;
+    }
+
+    /**
+     * Check whether the conditions contradict each other, for instance
+     * waiting and collected, so that no parcel can match
+     * @return true if nothing can match
+     */
+    boolean isEmpty() {
+        return empty || minWeight > maxWeight || minVolume > maxVolume || minDays > maxDays;
+    }
+
+    boolean hasWeight() {
+        return minWeight != Double.NEGATIVE_INFINITY || maxWeight != Double.POSITIVE_INFINITY;
+    }
+
+    boolean hasVolume() {
+        return minVolume != Long.MIN_VALUE || maxVolume != Long.MAX_VALUE;
+    }
+
+    boolean hasDays() {
+        return minDays != Integer.MIN_VALUE || maxDays != Integer.MAX_VALUE;
+    }
+
+    double getMinWeight() {
+        return minWeight;
+    }
+
+    double getMaxWeight() {
+        return maxWeight;
+    }
+
+    long getMinVolume() {
+        return minVolume;
+    }
+
+    long getMaxVolume() {
+        return maxVolume;
+    }
+
+    int getMinDays() {
+        return minDays;
+    }
+
+    int getMaxDays() {
+        return maxDays;
+    }
+
+    String getIdPrefix() {
+        return idPrefix;
+    }
+
+    private ParcelQuery status(boolean wanted) {
+        if (collected == null) {
+            collected = wanted;
+        } else if (collected != wanted) {
+            // Neither waiting nor collected
+            empty = true;
+        }
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("ParcelQuery[");
+        if (empty) {
+            text.append("nothing ");
+        }
+        if (collected != null) {
+            text.append(collected ? "collected " : "waiting ");
+        }
+        if (hasWeight()) {
+            text.append("weight ").append(minWeight).append("..").append(maxWeight).append(' ');
+        }
+        if (hasVolume()) {
+            text.append("volume ").append(minVolume).append("..").append(maxVolume).append(' ');
+        }
+        if (hasDays()) {
+            text.append("days ").append(minDays).append("..").append(maxDays).append(' ');
+        }
+        if (idPrefix != null) {
+            text.append("id ").append(idPrefix).append("* ");
+        }
+        return text.toString().trim() + "]";
+    }
+}
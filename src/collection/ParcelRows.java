@@ -0,0 +1,164 @@
+package collection;
+
+import model.Parcel;
+import util.ParcelIdCodec;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * ParcelRows class - parcels by position, in the order their IDs first
+ * arrived, with an open-addressing index from ID key to position.
+ *
+ * A parcel that replaces one with the same ID takes over its position, so
+ * positions never move. Writers must be serialised by the caller (the stores
+ * hold this object's lock); get, size and indexOf never lock.
+ */
+class ParcelRows {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private volatile Parcel[] rows = new Parcel[INITIAL_CAPACITY];
+    private volatile long[] keys = new long[INITIAL_CAPACITY];
+    // Written after the row it counts, so readers that see a count see its rows
+    private volatile int count;
+    // Slot holds position + 1, 0 marks an empty slot; length is a power of two
+    private volatile int[] slots = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * Get the number of positions in use
+     * @return Number of parcels
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Get the parcel at a position
+     * @param position Position in arrival order
+     * @return Parcel, or null if the position is not in use
+     */
+    Parcel get(int position) {
+        int size = count;
+        Parcel[] current = rows;
+        return position >= 0 && position < size ? current[position] : null;
+    }
+
+    /**
+     * Find the position of an ID key. A parcel being added by another
+     * thread at the same moment may not be found yet.
+     * @param key Key of the parcel ID
+     * @return Position, or -1 if not found
+     */
+    int indexOf(long key) {
+        int size = count;
+        long[] currentKeys = keys;
+        int[] table = slots;
+        int mask = table.length - 1;
+        for (int slot = ParcelIdCodec.hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int position = table[slot] - 1;
+            if (position < 0) {
+                return -1;
+            }
+            if (position < size && currentKeys[position] == key) {
+                return position;
+            }
+        }
+    }
+
+    /**
+     * Give a new ID the next position. Caller must hold this object's lock.
+     * @param key Key of the parcel ID, not indexed yet
+     * @param parcel Parcel to add
+     * @return Position of the parcel
+     */
+    int append(long key, Parcel parcel) {
+        int position = count;
+        if (position == rows.length) {
+            Parcel[] biggerRows = Arrays.copyOf(rows, position * 2);
+            long[] biggerKeys = Arrays.copyOf(keys, position * 2);
+            biggerRows[position] = parcel;
+            biggerKeys[position] = key;
+            rows = biggerRows;
+            keys = biggerKeys;
+        } else {
+            rows[position] = parcel;
+            keys[position] = key;
+        }
+        if ((position + 1) * 2 > slots.length) {
+            rehash(slots.length * 2, position);
+        }
+        slots[freeSlot(slots, key)] = position + 1;
+        count = position + 1;
+        return position;
+    }
+
+    /**
+     * Put a parcel in a position in use. Caller must hold this object's lock.
+     * @param position Position of the parcel being replaced
+     * @param parcel Parcel with the same ID
+     */
+    void replace(int position, Parcel parcel) {
+        rows[position] = parcel;
+        // Volatile write so that readers see the new parcel
+        count = count;
+    }
+
+    /**
+     * Get a live, read-only view of the parcels in position order
+     * @return All parcels
+     */
+    Collection<Parcel> asCollection() {
+        return new AbstractCollection<Parcel>() {
+            @Override
+            public int size() {
+                return count;
+            }
+
+            @Override
+            public Iterator<Parcel> iterator() {
+                return new Iterator<Parcel>() {
+                    private final int end = count;
+                    private final Parcel[] current = rows;
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < end;
+                    }
+
+                    @Override
+                    public Parcel next() {
+                        if (next >= end) {
+                            throw new NoSuchElementException();
+                        }
+                        return current[next++];
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Build a bigger index holding the first size positions, then publish it
+     */
+    private void rehash(int capacity, int size) {
+        int[] table = new int[capacity];
+        long[] currentKeys = keys;
+        for (int position = 0; position < size; position++) {
+            table[freeSlot(table, currentKeys[position])] = position + 1;
+        }
+        slots = table;
+    }
+
+    private static int freeSlot(int[] table, long key) {
+        int mask = table.length - 1;
+        int slot = ParcelIdCodec.hash(key) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
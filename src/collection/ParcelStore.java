@@ -0,0 +1,103 @@
+package collection;
+
+import model.Parcel;
+
+import java.util.Collection;
+
+/**
+ * ParcelStore interface - storage behind a ParcelMap.
+ *
+ * A store holds the parcels by ID key and by position, keeps the collected and
+ * uncollected parcels and the days histogram of the uncollected ones in step,
+ * and claims parcels atomically. Loading, logging and listeners stay in ParcelMap.
+ */
+interface ParcelStore {
+    /**
+     * Store a parcel. A parcel with an ID already stored replaces the old one
+     * and takes over its position.
+     * @param parcel Parcel to store
+     * @return Position of a new ID, or -(position + 1) when a parcel was replaced
+     */
+    int put(Parcel parcel);
+
+    /**
+     * Find a parcel by ID
+     * @param key Key of the parcel ID, from ParcelIdCodec
+     * @return Parcel if found, null otherwise
+     */
+    Parcel get(long key);
+
+    /**
+     * Atomically mark a parcel as collected
+     * @param key Key of the parcel ID, from ParcelIdCodec
+     * @return COLLECTED, ALREADY_COLLECTED or NOT_FOUND
+     */
+    ParcelMap.CollectResult collect(long key);
+
+    /**
+     * Atomically mark the parcel at a position as collected, if it is still
+     * the version given
+     * @param position Position of the parcel
+     * @param version Version of the parcel expected there
+     * @return COLLECTED, ALREADY_COLLECTED, or NOT_FOUND if another version is stored there
+     */
+    ParcelMap.CollectResult collectAt(int position, long version);
+
+    /**
+     * Get the parcel at a position
+     * @param position Position in arrival order
+     * @return Parcel, or null if the position is not in use
+     */
+    Parcel getAt(int position);
+
+    /**
+     * Find the position of a parcel ID
+     * @param key Key of the parcel ID, from ParcelIdCodec
+     * @return Position, or -1 if not found
+     */
+    int indexOf(long key);
+
+    /**
+     * Get the number of parcels
+     * @return Number of parcels
+     */
+    int size();
+
+    /**
+     * Get the number of collected parcels
+     * @return Number of collected parcels
+     */
+    int collectedCount();
+
+    /**
+     * Get the number of uncollected parcels
+     * @return Number of uncollected parcels
+     */
+    int uncollectedCount();
+
+    /**
+     * Get a live, read-only view of all parcels
+     * @return All parcels
+     */
+    Collection<Parcel> all();
+
+    /**
+     * Get a live, read-only view of the collected parcels
+     * @return Collected parcels
+     */
+    Collection<Parcel> collected();
+
+    /**
+     * Get a live, read-only view of the uncollected parcels
+     * @return Uncollected parcels
+     */
+    Collection<Parcel> uncollected();
+
+    /**
+     * Count parcels with more than the given number of days in depot, collected
+     * ones as of the day they were collected
+     * @param days Days threshold
+     * @return Number of parcels
+     */
+    int countMoreThanDays(int days);
+}
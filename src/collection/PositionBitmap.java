@@ -0,0 +1,333 @@
+package collection;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * PositionBitmap class - compressed, immutable set of parcel positions, for
+ * the query indexes.
+ *
+ * Positions are split into containers of 65,536 by their high 16 bits, as in
+ * a roaring bitmap. A container holding few positions keeps their low 16 bits
+ * as a sorted char array; one holding more than ARRAY_LIMIT keeps a plain
+ * bitset of 1024 longs, which is then never larger than the array would be.
+ * Intersecting two bitmaps works container by container, so containers that
+ * only one of them uses cost nothing, and two bitsets are intersected a long
+ * at a time.
+ */
+final class PositionBitmap {
+    static final int CONTAINER_BITS = 16;
+    static final int CONTAINER_SIZE = 1 << CONTAINER_BITS;
+
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int WORDS = CONTAINER_SIZE >>> 6;
+    private static final char[] NO_POSITIONS = new char[0];
+
+    // Container c is arrays[c], words[c] or, when both are null, empty
+    private final char[][] arrays;
+    private final long[][] words;
+    private final int cardinality;
+
+    /**
+     * Positions in increasing order; next returns -1 once they run out
+     */
+    interface Cursor {
+        /**
+         * Get the next position
+         * @return Position, or -1 if there are no more
+         */
+        int next();
+    }
+
+    /**
+     * Builds a bitmap from positions added in increasing order within each
+     * container. Different containers may be filled by different threads.
+     */
+    static final class Builder {
+        private final char[][] arrays;
+        private final int[] counts;
+        private final long[][] words;
+
+        /**
+         * Constructor for Builder
+         * @param positions Positions the bitmap may hold, from 0 up
+         */
+        Builder(int positions) {
+            int containers = (int) (((long) positions + CONTAINER_SIZE - 1) >>> CONTAINER_BITS);
+            arrays = new char[containers][];
+            counts = new int[containers];
+            words = new long[containers][];
+        }
+
+        /**
+         * Add a position, higher than any added before in its container
+         * @param position Position to add
+         */
+        void add(int position) {
+            int container = position >>> CONTAINER_BITS;
+            long[] bits = words[container];
+            if (bits != null) {
+                bits[(position >>> 6) & (WORDS - 1)] |= 1L << position;
+                return;
+            }
+            char[] array = arrays[container];
+            int count = counts[container];
+            if (array == null) {
+                array = arrays[container] = new char[16];
+            } else if (count == ARRAY_LIMIT) {
+                bits = words[container] = toWords(array, count);
+                arrays[container] = null;
+                bits[(position >>> 6) & (WORDS - 1)] |= 1L << position;
+                return;
+            } else if (count == array.length) {
+                array = arrays[container] = Arrays.copyOf(array, Math.min(count * 2, ARRAY_LIMIT));
+            }
+            array[count] = (char) position;
+            counts[container] = count + 1;
+        }
+
+        /**
+         * Finish the bitmap; the builder must not be used afterwards
+         * @return Bitmap of the positions added
+         */
+        PositionBitmap build() {
+            for (int c = 0; c < arrays.length; c++) {
+                if (arrays[c] != null && arrays[c].length != counts[c]) {
+                    arrays[c] = Arrays.copyOf(arrays[c], counts[c]);
+                }
+            }
+            return new PositionBitmap(arrays, words);
+        }
+    }
+
+    private PositionBitmap(char[][] arrays, long[][] words) {
+        this.arrays = arrays;
+        this.words = words;
+        int total = 0;
+        for (int c = 0; c < arrays.length; c++) {
+            total += containerCardinality(c);
+        }
+        this.cardinality = total;
+    }
+
+    /**
+     * Get the number of positions in the bitmap
+     * @return Number of positions
+     */
+    int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Check whether the bitmap holds a position
+     * @param position Position to look for
+     * @return true if the position is in the bitmap
+     */
+    boolean contains(int position) {
+        int container = position >>> CONTAINER_BITS;
+        if (position < 0 || container >= arrays.length) {
+            return false;
+        }
+        long[] bits = words[container];
+        if (bits != null) {
+            return (bits[(position >>> 6) & (WORDS - 1)] & (1L << position)) != 0;
+        }
+        char[] array = arrays[container];
+        return array != null && Arrays.binarySearch(array, (char) position) >= 0;
+    }
+
+    /**
+     * Intersect two bitmaps
+     * @param a First bitmap
+     * @param b Second bitmap
+     * @return Positions in both
+     */
+    static PositionBitmap and(PositionBitmap a, PositionBitmap b) {
+        int containers = Math.min(a.arrays.length, b.arrays.length);
+        char[][] arrays = new char[containers][];
+        long[][] words = new long[containers][];
+        for (int c = 0; c < containers; c++) {
+            long[] aBits = a.words[c];
+            long[] bBits = b.words[c];
+            char[] aArray = a.arrays[c];
+            char[] bArray = b.arrays[c];
+            if (aBits != null && bBits != null) {
+                long[] bits = new long[WORDS];
+                int count = 0;
+                for (int w = 0; w < WORDS; w++) {
+                    bits[w] = aBits[w] & bBits[w];
+                    count += Long.bitCount(bits[w]);
+                }
+                store(arrays, words, c, bits, count);
+            } else if (aArray != null && bBits != null) {
+                arrays[c] = filter(aArray, bBits);
+            } else if (bArray != null && aBits != null) {
+                arrays[c] = filter(bArray, aBits);
+            } else if (aArray != null && bArray != null) {
+                arrays[c] = intersect(aArray, bArray);
+            }
+        }
+        return new PositionBitmap(arrays, words);
+    }
+
+    /**
+     * Unite bitmaps
+     * @param bitmaps Bitmaps to unite, at least one
+     * @return Positions in any of them
+     */
+    static PositionBitmap or(List<PositionBitmap> bitmaps) {
+        if (bitmaps.size() == 1) {
+            return bitmaps.get(0);
+        }
+        int containers = 0;
+        for (PositionBitmap bitmap : bitmaps) {
+            containers = Math.max(containers, bitmap.arrays.length);
+        }
+        char[][] arrays = new char[containers][];
+        long[][] words = new long[containers][];
+        for (int c = 0; c < containers; c++) {
+            long[] bits = null;
+            for (PositionBitmap bitmap : bitmaps) {
+                if (c >= bitmap.arrays.length) {
+                    continue;
+                }
+                if (bitmap.words[c] != null) {
+                    if (bits == null) {
+                        bits = new long[WORDS];
+                    }
+                    long[] other = bitmap.words[c];
+                    for (int w = 0; w < WORDS; w++) {
+                        bits[w] |= other[w];
+                    }
+                } else if (bitmap.arrays[c] != null) {
+                    if (bits == null) {
+                        bits = new long[WORDS];
+                    }
+                    for (char low : bitmap.arrays[c]) {
+                        bits[low >>> 6] |= 1L << low;
+                    }
+                }
+            }
+            if (bits != null) {
+                int count = 0;
+                for (long word : bits) {
+                    count += Long.bitCount(word);
+                }
+                store(arrays, words, c, bits, count);
+            }
+        }
+        return new PositionBitmap(arrays, words);
+    }
+
+    /**
+     * Walk the positions in increasing order
+     * @return Cursor at the first position
+     */
+    Cursor cursor() {
+        return new Cursor() {
+            private int container = -1;
+            private char[] array = NO_POSITIONS;
+            private long[] bits;
+            // Next index in array, or the remaining bits of word w of bits
+            private int index;
+            private int w;
+            private long word;
+
+            @Override
+            public int next() {
+                while (true) {
+                    if (bits != null) {
+                        while (word == 0 && ++w < WORDS) {
+                            word = bits[w];
+                        }
+                        if (word != 0) {
+                            int low = (w << 6) | Long.numberOfTrailingZeros(word);
+                            word &= word - 1;
+                            return (container << CONTAINER_BITS) | low;
+                        }
+                    } else if (index < array.length) {
+                        return (container << CONTAINER_BITS) | array[index++];
+                    }
+                    if (++container >= arrays.length) {
+                        container = arrays.length;
+                        return -1;
+                    }
+                    bits = words[container];
+                    array = arrays[container] != null ? arrays[container] : NO_POSITIONS;
+                    index = 0;
+                    w = 0;
+                    word = bits != null ? bits[0] : 0;
+                }
+            }
+        };
+    }
+
+    private int containerCardinality(int c) {
+        if (words[c] != null) {
+            int count = 0;
+            for (long word : words[c]) {
+                count += Long.bitCount(word);
+            }
+            return count;
+        }
+        return arrays[c] != null ? arrays[c].length : 0;
+    }
+
+    /**
+     * Keep a container worked out as a bitset in whichever form suits its size
+     */
+    private static void store(char[][] arrays, long[][] words, int c, long[] bits, int count) {
+        if (count > ARRAY_LIMIT) {
+            words[c] = bits;
+        } else if (count > 0) {
+            char[] array = new char[count];
+            int i = 0;
+            for (int w = 0; w < WORDS; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    array[i++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            arrays[c] = array;
+        }
+    }
+
+    private static long[] toWords(char[] array, int count) {
+        long[] bits = new long[WORDS];
+        for (int i = 0; i < count; i++) {
+            bits[array[i] >>> 6] |= 1L << array[i];
+        }
+        return bits;
+    }
+
+    private static char[] filter(char[] array, long[] bits) {
+        char[] kept = new char[array.length];
+        int count = 0;
+        for (char low : array) {
+            if ((bits[low >>> 6] & (1L << low)) != 0) {
+                kept[count++] = low;
+            }
+        }
+        return count == 0 ? null : Arrays.copyOf(kept, count);
+    }
+
+    private static char[] intersect(char[] a, char[] b) {
+        char[] kept = new char[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                kept[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return count == 0 ? null : Arrays.copyOf(kept, count);
+    }
+}
@@ -0,0 +1,221 @@
+package collection;
+
+import util.LatencyHistogram;
+import util.Metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * QueueAnalytics class - rolling-window statistics of a customer queue: how
+ * fast customers arrive and are served, and how long they waited.
+ *
+ * Time is cut into slices, one minute each by default. A slice counts the
+ * arrivals and services that happened in it and holds a histogram of the
+ * waits that ended in it; when the clock comes round to a slice again it is
+ * cleared. Recording is therefore O(1), and a summary merges one window of
+ * slices without ever looking at the queue itself.
+ */
+public class QueueAnalytics {
+    /** Length of a slice unless given otherwise */
+    public static final long DEFAULT_SLICE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    /** Slices in the window unless given otherwise, so the window is 15 minutes */
+    public static final int DEFAULT_SLICES = 15;
+
+    private static final LatencyHistogram ALL_WAITS =
+            Metrics.getInstance().histogram("depot_customer_wait_seconds");
+
+    /**
+     * Statistics of the window at one moment
+     */
+    public static class Summary {
+        private final long windowNanos;
+        private final long arrivals;
+        private final long services;
+        private final LatencyHistogram.Snapshot waits;
+
+        Summary(long windowNanos, long arrivals, long services, LatencyHistogram.Snapshot waits) {
+            this.windowNanos = windowNanos;
+            this.arrivals = arrivals;
+            this.services = services;
+            this.waits = waits;
+        }
+
+        /**
+         * Get the time the summary covers: the window, or less if the
+         * statistics were started or cleared more recently
+         * @return Covered time in nanoseconds
+         */
+        public long getWindowNanos() {
+            return windowNanos;
+        }
+
+        /**
+         * Get the number of customers that joined the queue in the window
+         * @return Arrivals
+         */
+        public long getArrivals() {
+            return arrivals;
+        }
+
+        /**
+         * Get the number of customers called to a counter in the window
+         * @return Services
+         */
+        public long getServices() {
+            return services;
+        }
+
+        /**
+         * Get the arrival rate over the window
+         * @return Customers joining per minute
+         */
+        public double getArrivalsPerMinute() {
+            return perMinute(arrivals);
+        }
+
+        /**
+         * Get the service rate over the window
+         * @return Customers called per minute
+         */
+        public double getServicesPerMinute() {
+            return perMinute(services);
+        }
+
+        /**
+         * Get a percentile of the waits of customers called in the window
+         * @param percentile Percentile from 0 to 100
+         * @return Wait in nanoseconds, 0 if nobody was called
+         */
+        public long getWaitPercentile(double percentile) {
+            return waits.getPercentile(percentile);
+        }
+
+        /**
+         * Get the waits of customers called in the window
+         * @return Snapshot of the waits, in nanoseconds
+         */
+        public LatencyHistogram.Snapshot getWaits() {
+            return waits;
+        }
+
+        private double perMinute(long count) {
+            return windowNanos <= 0 ? 0 : count * (double) TimeUnit.MINUTES.toNanos(1) / windowNanos;
+        }
+    }
+
+    /**
+     * Counts of one slice of time
+     */
+    private static class Slice {
+        long epoch = Long.MIN_VALUE;
+        long arrivals;
+        long services;
+        final LatencyHistogram waits = new LatencyHistogram();
+    }
+
+    private final LongSupplier clock;
+    private final long sliceNanos;
+    private final Slice[] slices;
+    private long startNanos;
+
+    /**
+     * Constructor for QueueAnalytics, with a 15 minute window on System.nanoTime()
+     */
+    public QueueAnalytics() {
+        this(System::nanoTime, DEFAULT_SLICE_NANOS, DEFAULT_SLICES);
+    }
+
+    /**
+     * Constructor for QueueAnalytics
+     * @param clock Monotonic clock in nanoseconds
+     * @param sliceNanos Length of a slice
+     * @param sliceCount Slices in the window
+     */
+    public QueueAnalytics(LongSupplier clock, long sliceNanos, int sliceCount) {
+        this.clock = clock;
+        this.sliceNanos = sliceNanos;
+        this.slices = new Slice[sliceCount];
+        for (int i = 0; i < sliceCount; i++) {
+            slices[i] = new Slice();
+        }
+        this.startNanos = clock.getAsLong();
+    }
+
+    /**
+     * Read the clock the statistics are kept on
+     * @return Current time in nanoseconds
+     */
+    public long now() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * Count a customer joining the queue
+     * @param nowNanos Time the customer joined
+     */
+    public synchronized void customerArrived(long nowNanos) {
+        slice(nowNanos).arrivals++;
+    }
+
+    /**
+     * Count a customer being called to a counter
+     * @param waitNanos How long the customer waited, or -1 if unknown
+     * @param nowNanos Time the customer was called
+     */
+    public synchronized void customerServed(long waitNanos, long nowNanos) {
+        Slice slice = slice(nowNanos);
+        slice.services++;
+        if (waitNanos >= 0) {
+            slice.waits.record(waitNanos);
+            ALL_WAITS.record(waitNanos);
+        }
+    }
+
+    /**
+     * Forget everything counted so far and start a new window now
+     */
+    public synchronized void clear() {
+        for (Slice slice : slices) {
+            slice.epoch = Long.MIN_VALUE;
+        }
+        startNanos = clock.getAsLong();
+    }
+
+    /**
+     * Summarise the current window
+     * @return Rates and waits of the window
+     */
+    public synchronized Summary getSummary() {
+        long now = clock.getAsLong();
+        long currentEpoch = Math.floorDiv(now, sliceNanos);
+        long oldestEpoch = currentEpoch - slices.length + 1;
+        long arrivals = 0;
+        long services = 0;
+        LatencyHistogram.Snapshot waits = LatencyHistogram.emptySnapshot();
+        for (Slice slice : slices) {
+            if (slice.epoch >= oldestEpoch && slice.epoch <= currentEpoch) {
+                arrivals += slice.arrivals;
+                services += slice.services;
+                waits = waits.add(slice.waits.snapshot());
+            }
+        }
+        long windowStart = Math.max(startNanos, oldestEpoch * sliceNanos);
+        return new Summary(now - windowStart, arrivals, services, waits);
+    }
+
+    /**
+     * Get the slice a time falls in, clearing it if it last held an older slice
+     */
+    private Slice slice(long nowNanos) {
+        long epoch = Math.floorDiv(nowNanos, sliceNanos);
+        Slice slice = slices[(int) Math.floorMod(epoch, (long) slices.length)];
+        if (slice.epoch != epoch) {
+            slice.epoch = epoch;
+            slice.arrivals = 0;
+            slice.services = 0;
+            slice.waits.reset();
+        }
+        return slice;
+    }
+}
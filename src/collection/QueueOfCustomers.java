@@ -1,27 +1,96 @@
 package collection;
 
 import model.Customer;
-import util.Log;
+import util.AsyncLog;
+import util.LatencyHistogram;
+import util.Metrics;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * QueueOfCustomers class - to enable maintaining a queue/list of customer objects
+ * QueueOfCustomers class - to enable maintaining a queue/list of customer objects.
+ * All operations are thread-safe, so several counters can serve the same queue.
+ * Customers are stamped when they join and when they are polled, and the
+ * queue's QueueAnalytics follows arrival and service rates and waits.
  */
 public class QueueOfCustomers {
-    private List<Customer> customerQueue;
-    private Log log;
+    /**
+     * Receives changes to the queue by position. Called while the queue's lock
+     * is held, in the order the changes happen, so implementations must be quick
+     * and must not call back into the queue from another thread.
+     */
+    public interface QueueListener {
+        /**
+         * Called after customers have joined the queue
+         * @param firstIndex Position of the first new customer
+         * @param lastIndex Position of the last new customer
+         */
+        void customersAdded(int firstIndex, int lastIndex);
+
+        /**
+         * Called after a customer has left the queue; customers behind it
+         * move forward one place and are renumbered
+         * @param index Position the customer had
+         */
+        void customerRemoved(int index);
+    }
+
+    /**
+     * Decides whether a customer given to addCustomer may join the queue.
+     * Called while the queue's lock is held, so implementations must be quick.
+     */
+    public interface Admission {
+        /**
+         * Check a customer about to join the queue
+         * @param customer Customer to check
+         * @return true to let the customer join, false if the admission has dealt with them
+         */
+        boolean admit(Customer customer);
+    }
+
+    // Snapshot record: seqNo, name ref, parcel ID ref
+    private static final int SNAPSHOT_RECORD_SIZE = 12;
+    // Progress is reported every 4096 lines
+    private static final int PROGRESS_LINE_MASK = 4095;
+
+    private static final LatencyHistogram LOAD_TIMES =
+            Metrics.getInstance().histogram("depot_file_load_seconds{file=\"customers\",mode=\"sequential\"}");
+    private static final LatencyHistogram PARALLEL_LOAD_TIMES =
+            Metrics.getInstance().histogram("depot_file_load_seconds{file=\"customers\",mode=\"parallel\"}");
+
+    private CustomerRing customerQueue;
+    // Customers in front of this position were in the queue at the last removal,
+    // so their sequence number is their position in the queue; see seqNoAt
+    private int renumberedCount;
+    private List<QueueListener> listeners;
+    private QueueAnalytics analytics;
+    private volatile Admission admission;
+    private AsyncLog log;
 
     /**
      * Constructor for QueueOfCustomers
      */
     public QueueOfCustomers() {
-        customerQueue = new ArrayList<>();
-        log = Log.getInstance();
+        this(new QueueAnalytics());
+    }
+
+    /**
+     * Constructor for QueueOfCustomers
+     * @param analytics Statistics to keep, whose clock is used to stamp customers
+     */
+    public QueueOfCustomers(QueueAnalytics analytics) {
+        this.analytics = analytics;
+        customerQueue = new CustomerRing();
+        listeners = new CopyOnWriteArrayList<>();
+        log = AsyncLog.getInstance();
     }
 
     /**
@@ -30,123 +99,378 @@ public class QueueOfCustomers {
      * @return true if successful, false otherwise
      */
     public boolean loadCustomersFromFile(String filename) {
-        log.addLog("Starting to load customers from file: " + filename);
+        return loadCustomersFromFile(filename, null);
+    }
+
+    /**
+     * Load customers from file, reporting progress as it is read. Customers
+     * join the queue one at a time, so views following the queue fill up while loading.
+     * @param filename Name of file to load
+     * @param progress Receives progress, may be null
+     * @return true if successful, false otherwise
+     */
+    public boolean loadCustomersFromFile(String filename, LoadProgressListener progress) {
+        log.info("Starting to load customers from file: " + filename);
+        long start = System.nanoTime();
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            
-            String headerLine = reader.readLine();
-            log.addLog("Header line: " + headerLine);
-            
-            if (headerLine == null) {
-                log.addLog("Error: Empty customer file");
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long totalBytes = channel.size();
+            ByteLineReader reader = new ByteLineReader(channel);
+            if (!readHeader(reader)) {
                 return false;
             }
             
-            int lineCount = 1; 
+            CustomerLineParser parser = new CustomerLineParser();
+            int errorCount = 0;
             
-            while ((line = reader.readLine()) != null) {
-                lineCount++;
-                log.addLog("Processing line " + lineCount + ": " + line);
+            while (reader.nextLine()) {
+                Customer customer = parser.parseLine(reader.buffer(),
+                        reader.lineStart(), reader.lineEnd(), reader.lineNumber());
                 
-                if (line.trim().isEmpty()) {
-                    log.addLog("Skipping empty line");
-                    continue;
-                }
-                
-                try {
-                    String[] parts = line.split("\\s+");
-                    
-                    if (parts.length < 3) {
-                        log.addLog("Line " + lineCount + " has insufficient data, need at least 3 parts but found " + parts.length);
-                        continue;
-                    }
-                    
-                    int seqNo = Integer.parseInt(parts[0]);
-                    
-                    String name;
-                    String parcelID;
-                    
-                    if (parts.length == 3) {
-
-                        name = parts[1];
-                        parcelID = parts[2];
-                    } else {
-                        parcelID = parts[parts.length - 1];
-                        
-                        StringBuilder nameBuilder = new StringBuilder();
-                        for (int i = 1; i < parts.length - 1; i++) {
-                            nameBuilder.append(parts[i]).append(" ");
-                        }
-                        name = nameBuilder.toString().trim();
+                if (customer != null) {
+                    synchronized (this) {
+                        append(customer);
                     }
-                    
-                    log.addLog("Parsed customer: seqNo=" + seqNo + ", name=" + name + ", parcelID=" + parcelID);
-                    
-                    Customer customer = new Customer(seqNo, name, parcelID);
-                    addCustomer(customer);
-                } catch (NumberFormatException e) {
-                    log.addLog("Error parsing sequence number in line " + lineCount + ": " + e.getMessage());
-                } catch (Exception e) {
-                    log.addLog("Unexpected error processing line " + lineCount + ": " + e.getMessage());
+                } else if (parser.lastError() != null) {
+                    errorCount++;
+                    ChunkedFileLoader.countError("customers", parser);
+                    log.warn(parser.lastError());
                 }
+                if (progress != null && (reader.lineNumber() & PROGRESS_LINE_MASK) == 0) {
+                    progress.progress(reader.bytesConsumed(), totalBytes);
+                }
+            }
+            if (progress != null) {
+                progress.progress(reader.bytesConsumed(), totalBytes);
             }
             
-            int loadedCount = customerQueue.size();
-            log.addLog("Loaded " + loadedCount + " customers from file");
+            int loadedCount = size();
+            log.info("Loaded " + loadedCount + " customers from file (" + errorCount + " bad lines skipped)");
             
             return loadedCount > 0;
         } catch (IOException e) {
-            log.addLog("IO Error loading customers: " + e.getMessage());
+            log.error("IO Error loading customers: " + e.getMessage());
+            return false;
+        } finally {
+            LOAD_TIMES.recordSince(start);
+        }
+    }
+
+    /**
+     * Load customers from file, parsing newline aligned ranges of the file in
+     * parallel on the common fork-join pool
+     * @param filename Name of file to load
+     * @return true if successful, false otherwise
+     */
+    public boolean loadCustomersFromFileParallel(String filename) {
+        return loadCustomersFromFileParallel(filename, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Load customers from file, parsing newline aligned ranges of the file in parallel.
+     * Ranges are merged in file order, so customers join the queue in the same
+     * seqNo order as with loadCustomersFromFile.
+     * @param filename Name of file to load
+     * @param pool Pool to parse on
+     * @return true if successful, false otherwise
+     */
+    public boolean loadCustomersFromFileParallel(String filename, ForkJoinPool pool) {
+        log.info("Starting parallel load of customers from file: " + filename);
+        long start = System.nanoTime();
+        
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            ByteLineReader reader = new ByteLineReader(new ChunkedFileLoader.RangeChannel(channel, 0, channel.size()));
+            if (!readHeader(reader)) {
+                return false;
+            }
+            
+            List<String> errors = new ArrayList<>();
+            List<List<Customer>> chunks = ChunkedFileLoader.load(channel, reader.bytesConsumed(),
+                    reader.lineNumber() + 1, CustomerLineParser::new, pool, errors, "customers");
+            
+            synchronized (this) {
+                for (List<Customer> chunk : chunks) {
+                    appendAll(chunk);
+                }
+            }
+            for (String error : errors) {
+                log.warn(error);
+            }
+            
+            int loadedCount = size();
+            log.info("Loaded " + loadedCount + " customers from file (" + errors.size() + " bad lines skipped)");
+            
+            return loadedCount > 0;
+        } catch (IOException e) {
+            log.error("IO Error loading customers: " + e.getMessage());
+            return false;
+        } finally {
+            PARALLEL_LOAD_TIMES.recordSince(start);
+        }
+    }
+
+    /**
+     * Read and check the header line of a customer file
+     * @param reader Reader positioned at the start of the file
+     * @return true if the header is present, false otherwise
+     * @throws IOException if the file cannot be read
+     */
+    private boolean readHeader(ByteLineReader reader) throws IOException {
+        String headerLine = reader.nextLine() ? reader.lineAsString() : null;
+        log.debug(() -> "Header line: " + headerLine);
+        
+        if (headerLine == null) {
+            log.error("Error: Empty customer file");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Save the queue to a binary snapshot that loadSnapshot can map back quickly
+     * @param filename Name of snapshot file to write
+     * @return true if successful, false otherwise
+     */
+    public boolean saveSnapshot(String filename) {
+        SnapshotFormat.Writer writer;
+        try {
+            writer = snapshotWriter();
+        } catch (IOException e) {
+            log.error("IO Error saving customer snapshot: " + e.getMessage());
+            return false;
+        }
+        return writeSnapshot(writer, filename);
+    }
+
+    /**
+     * Copy the queue into a snapshot that has not been written yet. Holding
+     * the queue's lock around this call keeps the copy in step with other
+     * work done under the same lock.
+     * @return Snapshot of the queue, to be passed to writeSnapshot
+     * @throws IOException if the queue is too large for a snapshot
+     */
+    synchronized SnapshotFormat.Writer snapshotWriter() throws IOException {
+        int count = customerQueue.size();
+        SnapshotFormat.Writer writer = new SnapshotFormat.Writer(
+                SnapshotFormat.KIND_CUSTOMERS, SNAPSHOT_RECORD_SIZE, count);
+        for (int i = 0; i < count; i++) {
+            Customer customer = customerQueue.get(i);
+            ByteBuffer record = writer.newRecord();
+            record.putInt(seqNoAt(i));
+            record.putInt(writer.intern(customer.getName()));
+            String parcelID = customer.getParcelID();
+            record.putInt(writer.intern(parcelID == null ? "" : parcelID));
+        }
+        return writer;
+    }
+
+    /**
+     * Write a snapshot made by snapshotWriter
+     * @param writer Snapshot of the queue
+     * @param filename Name of snapshot file to write
+     * @return true if successful, false otherwise
+     */
+    boolean writeSnapshot(SnapshotFormat.Writer writer, String filename) {
+        try {
+            writer.writeTo(Paths.get(filename));
+            log.info("Saved snapshot of " + writer.recordCount() + " customers to: " + filename);
+            return true;
+        } catch (IOException e) {
+            log.error("IO Error saving customer snapshot: " + e.getMessage());
             return false;
         }
     }
 
     /**
-     * Add a customer to the queue
+     * Load customers from a binary snapshot written by saveSnapshot, in queue order.
+     * A truncated or corrupt snapshot is rejected without changing the queue.
+     * @param filename Name of snapshot file to read
+     * @return true if the snapshot was valid, even if it held no customers; false otherwise
+     */
+    public boolean loadSnapshot(String filename) {
+        try {
+            SnapshotFormat.Reader reader = new SnapshotFormat.Reader(
+                    Paths.get(filename), SnapshotFormat.KIND_CUSTOMERS, SNAPSHOT_RECORD_SIZE);
+            ByteBuffer records = reader.records();
+            
+            List<Customer> loaded = new ArrayList<>(reader.recordCount());
+            for (int i = 0; i < reader.recordCount(); i++) {
+                int offset = reader.recordOffset(i);
+                loaded.add(new Customer(records.getInt(offset),
+                        reader.string(records.getInt(offset + 4)),
+                        reader.string(records.getInt(offset + 8))));
+            }
+            
+            synchronized (this) {
+                appendAll(loaded);
+            }
+            log.info("Loaded " + loaded.size() + " customers from snapshot: " + filename);
+            return true;
+        } catch (IOException e) {
+            log.warn("Rejected customer snapshot " + filename + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Add a customer to the queue, counting them as an arrival, if the admission lets them in
      * @param customer Customer to add
+     * @return true if the customer joined the queue, false if the admission turned them away
      */
-    public void addCustomer(Customer customer) {
-        customerQueue.add(customer);
-        log.addLog("Customer added to queue: " + customer.getName() + " for parcel " + customer.getParcelID());
+    public synchronized boolean addCustomer(Customer customer) {
+        Admission current = admission;
+        if (current != null && !current.admit(customer)) {
+            log.debug(() -> "Customer not admitted to queue: " + customer.getName());
+            return false;
+        }
+        append(customer);
+        analytics.customerArrived(customer.getEnqueuedNanos());
+        log.debug(() -> "Customer added to queue: " + customer.getName() + " for parcel " + customer.getParcelID());
+        return true;
+    }
+
+    /**
+     * Set the check applied to customers given to addCustomer. Customers added
+     * by the file and snapshot loaders are not checked.
+     * @param admission Admission to apply, or null to admit everyone
+     */
+    public void setAdmission(Admission admission) {
+        this.admission = admission;
     }
 
     /**
-     * Remove a customer from the queue
+     * Remove a customer from the queue. Removing the first customer is O(1);
+     * the remaining customers are not renumbered here, their sequence numbers
+     * are derived from their position by getSeqNoAt. The removed customer
+     * is given the number it had in the queue.
      * @param index Index of customer to remove
      * @return Removed customer or null if index invalid
      */
-    public Customer removeCustomer(int index) {
+    public synchronized Customer removeCustomer(int index) {
         if (index >= 0 && index < customerQueue.size()) {
-            Customer customer = customerQueue.remove(index);
-            log.addLog("Customer removed from queue: " + customer.getName());
-            
-            // Update sequence numbers for remaining customers
-            for (int i = 0; i < customerQueue.size(); i++) {
-                customerQueue.get(i).setSeqNo(i + 1);
+            Customer customer = customerQueue.get(index);
+            customer.setSeqNo(seqNoAt(index));
+            customerQueue.remove(index);
+            renumberedCount = customerQueue.size();
+            for (QueueListener listener : listeners) {
+                listener.customerRemoved(index);
             }
-            
+            log.debug(() -> "Customer removed from queue: " + customer.getName());
             return customer;
         }
         return null;
     }
 
+    /**
+     * Remove and return the first customer in one atomic step, so that two
+     * counters can never be handed the same customer. The customer is stamped
+     * with the time they were called and counted as served.
+     * @return First customer or null if queue empty
+     */
+    public synchronized Customer pollCustomer() {
+        Customer customer = removeCustomer(0);
+        if (customer != null) {
+            long now = analytics.now();
+            customer.setDequeuedNanos(now);
+            analytics.customerServed(customer.getWaitNanos(), now);
+        }
+        return customer;
+    }
+
+    /**
+     * Get how long the customer at the front of the queue has been waiting
+     * @return Wait in nanoseconds, 0 if the queue is empty
+     */
+    public synchronized long getOldestWaitNanos() {
+        if (customerQueue.size() == 0) {
+            return 0;
+        }
+        return analytics.now() - customerQueue.get(0).getEnqueuedNanos();
+    }
+
+    /**
+     * Get the arrival, service and wait statistics of this queue
+     * @return Queue analytics
+     */
+    public QueueAnalytics getAnalytics() {
+        return analytics;
+    }
+
+    /**
+     * Publish the queue depth, oldest wait, rates and recent wait percentiles
+     * as gauges with the hot-path metrics
+     */
+    public void registerMetrics() {
+        Metrics metrics = Metrics.getInstance();
+        metrics.gauge("depot_queue_depth", this::size);
+        metrics.gauge("depot_queue_oldest_wait_seconds", () -> getOldestWaitNanos() / 1e9);
+        metrics.gauge("depot_queue_arrivals_per_minute", () -> analytics.getSummary().getArrivalsPerMinute());
+        metrics.gauge("depot_queue_services_per_minute", () -> analytics.getSummary().getServicesPerMinute());
+        for (String quantile : new String[] {"0.5", "0.95", "0.99"}) {
+            double percentile = Double.parseDouble(quantile) * 100;
+            metrics.gauge("depot_queue_wait_seconds{quantile=\"" + quantile + "\"}",
+                    () -> analytics.getSummary().getWaitPercentile(percentile) / 1e9);
+        }
+    }
+
     /**
      * Get the first customer in the queue
      * @return First customer or null if queue empty
      */
-    public Customer getFirstCustomer() {
-        if (!customerQueue.isEmpty()) {
+    public synchronized Customer getFirstCustomer() {
+        if (customerQueue.size() > 0) {
             return customerQueue.get(0);
         }
         return null;
     }
 
+    /**
+     * Get the customer at a position in the queue. Its own sequence number is
+     * the one it joined with; getSeqNoAt gives its number in the queue now.
+     * @param index Position in the queue, 0 being the next to be served
+     * @return Customer at index or null if index invalid
+     */
+    public synchronized Customer getCustomerAt(int index) {
+        if (index >= 0 && index < customerQueue.size()) {
+            return customerQueue.get(index);
+        }
+        return null;
+    }
+
+    /**
+     * Get the sequence number of the customer at a position in the queue
+     * @param index Position in the queue, 0 being the next to be served
+     * @return Sequence number, or -1 if index invalid
+     */
+    public synchronized int getSeqNoAt(int index) {
+        if (index >= 0 && index < customerQueue.size()) {
+            return seqNoAt(index);
+        }
+        return -1;
+    }
+
+    /**
+     * Copy customers and their sequence numbers, starting at a position, in
+     * one step so the numbers match the customers
+     * @param from Position of the first customer to copy
+     * @param customers Array to copy customers into, from its start
+     * @param seqNos Array at least as long as customers to copy sequence numbers into
+     * @return Number of customers copied, 0 if from is at or past the end
+     */
+    public synchronized int copyCustomers(int from, Customer[] customers, int[] seqNos) {
+        int count = Math.max(0, Math.min(customers.length, customerQueue.size() - from));
+        for (int i = 0; i < count; i++) {
+            customers[i] = customerQueue.get(from + i);
+            seqNos[i] = seqNoAt(from + i);
+        }
+        return count;
+    }
+
     /**
      * Get the queue size
      * @return Size of queue
      */
-    public int size() {
+    public synchronized int size() {
         return customerQueue.size();
     }
 
@@ -154,15 +478,78 @@ public class QueueOfCustomers {
      * Check if queue is empty
      * @return true if empty, false otherwise
      */
-    public boolean isEmpty() {
-        return customerQueue.isEmpty();
+    public synchronized boolean isEmpty() {
+        return customerQueue.size() == 0;
     }
 
     /**
-     * Get all customers
+     * Get all customers, in queue order. As with getCustomerAt, their own
+     * sequence numbers are the ones they joined with.
      * @return List of all customers
      */
-    public List<Customer> getAllCustomers() {
-        return new ArrayList<>(customerQueue);
+    public synchronized List<Customer> getAllCustomers() {
+        List<Customer> customers = new ArrayList<>(customerQueue.size());
+        for (int i = 0; i < customerQueue.size(); i++) {
+            customers.add(customerQueue.get(i));
+        }
+        return customers;
+    }
+
+    /**
+     * Add a listener for customers joining and leaving the queue
+     * @param listener Listener to add
+     */
+    public synchronized void addQueueListener(QueueListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener added with addQueueListener
+     * @param listener Listener to remove
+     */
+    public synchronized void removeQueueListener(QueueListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Append one customer and tell the listeners; caller holds the lock
+     */
+    private void append(Customer customer) {
+        customer.setEnqueuedNanos(analytics.now());
+        customerQueue.addLast(customer);
+        int index = customerQueue.size() - 1;
+        for (QueueListener listener : listeners) {
+            listener.customersAdded(index, index);
+        }
+    }
+
+    /**
+     * Append customers in order and tell the listeners once; caller holds the lock
+     */
+    private void appendAll(List<Customer> customers) {
+        if (customers.isEmpty()) {
+            return;
+        }
+        long now = analytics.now();
+        for (Customer customer : customers) {
+            customer.setEnqueuedNanos(now);
+        }
+        int first = customerQueue.size();
+        customerQueue.addAll(customers);
+        for (QueueListener listener : listeners) {
+            listener.customersAdded(first, customerQueue.size() - 1);
+        }
+    }
+
+    /**
+     * Get the sequence number of the customer at a valid position, without
+     * changing the customer, which other threads may be reading. Customers
+     * that were in the queue at the last removal are numbered by their
+     * 1-based position; customers added since keep the number they were given.
+     * @param index Position in the queue
+     * @return Sequence number
+     */
+    private int seqNoAt(int index) {
+        return index < renumberedCount ? index + 1 : customerQueue.get(index).getSeqNo();
     }
 } 
\ No newline at end of file
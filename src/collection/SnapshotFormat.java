@@ -0,0 +1,321 @@
+package collection;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * SnapshotFormat class - versioned binary snapshot of a collection.
+ *
+ * Layout (big endian):
+ * <pre>
+ *   int    magic "PMSS"
+ *   short  format version
+ *   byte   kind of records
+ *   byte   reserved
+ *   int    record size in bytes
+ *   int    record count
+ *   int    string count
+ *   long   length of the string table in bytes
+ *   ...    string table: for each string, unsigned short length + UTF-8 bytes
+ *   ...    records: fixed width, referencing strings by index
+ *   long   CRC32 of everything above
+ * </pre>
+ * Readers accept every version up to the current one and tell the caller
+ * which version they hold, so old snapshots stay readable when the meaning
+ * of a record field changes.
+ */
+class SnapshotFormat {
+    static final byte KIND_PARCELS = 1;
+    static final byte KIND_CUSTOMERS = 2;
+
+    private static final int MAGIC = 0x504D5353;
+    // 2: parcel records hold arrival and collection days instead of days in depot
+    static final short VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 2 + 1 + 1 + 4 + 4 + 4 + 8;
+    private static final int TRAILER_SIZE = 8;
+    // Readers map the whole file, so no snapshot may be larger than this
+    private static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+    // Some VMs reserve a few header words in arrays
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Builds a snapshot in memory and writes it to disk in one go
+     */
+    static class Writer {
+        private final byte kind;
+        private final int recordSize;
+        private final Map<String, Integer> stringIndex = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private long stringTableLength;
+        private ByteBuffer records;
+        private int recordCount;
+
+        /**
+         * Constructor for Writer
+         * @param kind Kind of records in the snapshot
+         * @param recordSize Size of each record in bytes
+         * @param expectedRecords Number of records expected, used to size the buffer
+         */
+        Writer(byte kind, int recordSize, int expectedRecords) {
+            this.kind = kind;
+            this.recordSize = recordSize;
+            // Sized in long, as a large count times the record size overflows int;
+            // newRecord grows the buffer, and fails, when there are more
+            long expectedBytes = (long) recordSize * Math.max(16, expectedRecords);
+            this.records = ByteBuffer.allocate((int) Math.min(expectedBytes, maxRecordBytes()));
+        }
+
+        /**
+         * Get the largest record section a buffer can hold, in whole records
+         * @return Size in bytes
+         */
+        private int maxRecordBytes() {
+            return MAX_BUFFER_SIZE / recordSize * recordSize;
+        }
+
+        /**
+         * Add a string to the string table, reusing the entry of an equal string
+         * @param value String to add
+         * @return Index of the string in the table
+         */
+        int intern(String value) {
+            Integer index = stringIndex.get(value);
+            if (index == null) {
+                int length = value.getBytes(StandardCharsets.UTF_8).length;
+                if (length > 0xFFFF) {
+                    throw new IllegalArgumentException("String too long for snapshot: " + length + " bytes");
+                }
+                index = strings.size();
+                strings.add(value);
+                stringIndex.put(value, index);
+                stringTableLength += 2 + length;
+            }
+            return index;
+        }
+
+        /**
+         * Start a new record
+         * @return Buffer positioned at the start of the record, with recordSize bytes available
+         * @throws IOException if the snapshot cannot hold another record
+         */
+        ByteBuffer newRecord() throws IOException {
+            if (records.remaining() < recordSize) {
+                int limit = maxRecordBytes();
+                if (records.capacity() >= limit) {
+                    throw new IOException("Snapshot too large: more than " + (limit / recordSize)
+                            + " records of " + recordSize + " bytes");
+                }
+                ByteBuffer bigger = ByteBuffer.allocate((int) Math.min((long) records.capacity() * 2, limit));
+                records.flip();
+                bigger.put(records);
+                records = bigger;
+            }
+            recordCount++;
+            return records;
+        }
+
+        /**
+         * Get the number of records added so far
+         * @return Record count
+         */
+        int recordCount() {
+            return recordCount;
+        }
+
+        /**
+         * Write the snapshot. The file is written next to the target and then
+         * moved into place, so readers never see a partially written snapshot.
+         * @param target File to write
+         * @throws IOException if the file cannot be written, or would be too large to read back
+         */
+        void writeTo(Path target) throws IOException {
+            long size = HEADER_SIZE + stringTableLength + (long) recordCount * recordSize + TRAILER_SIZE;
+            if (size > MAX_FILE_SIZE) {
+                throw new IOException("Snapshot too large to map: " + size + " bytes");
+            }
+            Path absolute = target.toAbsolutePath();
+            Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+            CRC32 crc = new CRC32();
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                OutputStream raw = Channels.newOutputStream(channel);
+                DataOutputStream out = new DataOutputStream(
+                        new CheckedOutputStream(new BufferedOutputStream(raw, 1 << 16), crc));
+
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeByte(kind);
+                out.writeByte(0);
+                out.writeInt(recordSize);
+                out.writeInt(recordCount);
+                out.writeInt(strings.size());
+                out.writeLong(stringTableLength);
+
+                for (String value : strings) {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(bytes.length);
+                    out.write(bytes);
+                }
+                out.write(records.array(), 0, recordCount * recordSize);
+
+                // The checksum itself is not part of the checksummed data
+                out.flush();
+                DataOutputStream trailer = new DataOutputStream(raw);
+                trailer.writeLong(crc.getValue());
+                trailer.flush();
+                channel.force(true);
+            }
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Memory-mapped, validated view of a snapshot file
+     */
+    static class Reader {
+        private final String[] strings;
+        private final ByteBuffer records;
+        private final int recordCount;
+        private final int recordSize;
+        private final short version;
+
+        /**
+         * Open and validate a snapshot
+         * @param file Snapshot file
+         * @param expectedKind Kind of records the caller expects
+         * @param expectedRecordSize Record size the caller expects
+         * @throws IOException if the file cannot be read, is truncated, corrupt or of the wrong kind
+         */
+        Reader(Path file, byte expectedKind, int expectedRecordSize) throws IOException {
+            MappedByteBuffer data;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < HEADER_SIZE + TRAILER_SIZE) {
+                    throw new IOException("Snapshot truncated: " + size + " bytes");
+                }
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Snapshot too large to map: " + size + " bytes");
+                }
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            data.order(ByteOrder.BIG_ENDIAN);
+
+            if (data.getInt(0) != MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            version = data.getShort(4);
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot version: " + version);
+            }
+            byte kind = data.get(6);
+            recordSize = data.getInt(8);
+            if (kind != expectedKind || recordSize != expectedRecordSize) {
+                throw new IOException("Snapshot holds different records: kind " + kind + ", size " + recordSize);
+            }
+            recordCount = data.getInt(12);
+            int stringCount = data.getInt(16);
+            long stringTableLength = data.getLong(20);
+
+            long expectedSize = HEADER_SIZE + stringTableLength + (long) recordCount * recordSize + TRAILER_SIZE;
+            if (recordCount < 0 || stringCount < 0 || stringTableLength < 0 || data.capacity() != expectedSize) {
+                throw new IOException("Snapshot truncated: expected " + expectedSize
+                        + " bytes but found " + data.capacity());
+            }
+
+            int bodyEnd = data.capacity() - TRAILER_SIZE;
+            CRC32 crc = new CRC32();
+            ByteBuffer body = data.duplicate();
+            body.position(0).limit(bodyEnd);
+            crc.update(body);
+            if (crc.getValue() != data.getLong(bodyEnd)) {
+                throw new IOException("Snapshot checksum mismatch: " + file);
+            }
+
+            strings = new String[stringCount];
+            int position = HEADER_SIZE;
+            byte[] scratch = new byte[256];
+            for (int i = 0; i < stringCount; i++) {
+                int length = data.getShort(position) & 0xFFFF;
+                position += 2;
+                if (length > scratch.length) {
+                    scratch = Arrays.copyOf(scratch, Math.max(length, scratch.length * 2));
+                }
+                ByteBuffer source = data.duplicate();
+                source.position(position);
+                source.get(scratch, 0, length);
+                strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+                position += length;
+            }
+
+            ByteBuffer recordSection = data.duplicate();
+            recordSection.position(position).limit(bodyEnd);
+            records = recordSection.slice();
+        }
+
+        /**
+         * Get the number of records
+         * @return Record count
+         */
+        int recordCount() {
+            return recordCount;
+        }
+
+        /**
+         * Get the format version the snapshot was written in
+         * @return Version, from 1 to VERSION
+         */
+        short version() {
+            return version;
+        }
+
+        /**
+         * Get the absolute offset of a record in records()
+         * @param index Index of the record
+         * @return Offset of the record
+         */
+        int recordOffset(int index) {
+            return index * recordSize;
+        }
+
+        /**
+         * Get the record section, to be read with absolute gets
+         * @return Record section
+         */
+        ByteBuffer records() {
+            return records;
+        }
+
+        /**
+         * Get a string from the string table
+         * @param index Index of the string
+         * @return String at index
+         * @throws IOException if the index is out of range
+         */
+        String string(int index) throws IOException {
+            if (index < 0 || index >= strings.length) {
+                throw new IOException("Snapshot string index out of range: " + index);
+            }
+            return strings[index];
+        }
+    }
+}
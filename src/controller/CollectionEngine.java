@@ -0,0 +1,210 @@
+package controller;
+
+import collection.ParcelMap;
+import collection.QueueOfCustomers;
+import model.Customer;
+import model.Parcel;
+import util.AsyncLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * CollectionEngine class - runs several counters at once against one shared
+ * customer queue and parcel map.
+ *
+ * Each counter owns a Worker, so the current customer, parcel and fee are never
+ * shared between counters. Customers are taken from the queue atomically and a
+ * parcel is claimed with a compare-and-set, so the same customer or parcel is
+ * never served by two counters.
+ */
+public class CollectionEngine {
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Receives every completed collection; called on the counter's own thread
+     */
+    public interface TransactionListener {
+        /**
+         * Called after a parcel has been collected
+         * @param counter Index of the counter that served the customer
+         * @param customer Customer that was served
+         * @param parcel Parcel that was collected
+         * @param fee Fee charged
+         */
+        void transactionCompleted(int counter, Customer customer, Parcel parcel, double fee);
+    }
+
+    private final Worker[] workers;
+    private final List<TransactionListener> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AsyncLog log;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    /**
+     * Constructor for CollectionEngine
+     * @param parcelMap ParcelMap shared by all counters
+     * @param customerQueue QueueOfCustomers shared by all counters
+     * @param counters Number of counters to run
+     */
+    public CollectionEngine(ParcelMap parcelMap, QueueOfCustomers customerQueue, int counters) {
+        if (counters < 1) {
+            throw new IllegalArgumentException("At least one counter is required: " + counters);
+        }
+        this.workers = new Worker[counters];
+        for (int i = 0; i < counters; i++) {
+            workers[i] = new Worker(parcelMap, customerQueue);
+        }
+        this.log = AsyncLog.getInstance();
+    }
+
+    /**
+     * Send customers that cannot be served, on any counter, to a validator's
+     * exception queue instead of dropping them; set before the counters start
+     * @param validator Validator to report to, or null to drop them
+     */
+    public void setValidator(CustomerValidator validator) {
+        for (Worker worker : workers) {
+            worker.setValidator(validator);
+        }
+    }
+
+    /**
+     * Add a listener for completed collections
+     * @param listener Listener to add
+     */
+    public void addTransactionListener(TransactionListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Get the number of counters
+     * @return Number of counters
+     */
+    public int getCounterCount() {
+        return workers.length;
+    }
+
+    /**
+     * Get the Worker of a counter
+     * @param counter Index of the counter
+     * @return Worker of the counter
+     */
+    public Worker getWorker(int counter) {
+        return workers[counter];
+    }
+
+    /**
+     * Get the number of customers served successfully
+     * @return Completed collections
+     */
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    /**
+     * Get the number of customers turned away (parcel unknown or already collected)
+     * @return Failed collections
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Serve customers on all counters until the queue is empty, then return
+     * @return Number of customers served successfully by this call
+     * @throws InterruptedException if interrupted while waiting for the counters
+     */
+    public long processAll() throws InterruptedException {
+        long before = completed.sum();
+        List<Thread> batch = new ArrayList<>();
+        for (int i = 0; i < workers.length; i++) {
+            int counter = i;
+            batch.add(startCounter(counter, () -> serveUntilEmpty(counter)));
+        }
+        for (Thread thread : batch) {
+            thread.join();
+        }
+        return completed.sum() - before;
+    }
+
+    /**
+     * Start serving continuously; counters wait for new customers when the queue is empty
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < workers.length; i++) {
+            int counter = i;
+            threads.add(startCounter(counter, () -> serveWhileRunning(counter)));
+        }
+        log.info("Collection engine started with " + workers.length + " counters");
+    }
+
+    /**
+     * Stop serving; customers being served are finished first
+     * @throws InterruptedException if interrupted while waiting for the counters
+     */
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        threads.clear();
+        log.info("Collection engine stopped: " + completed.sum() + " collected, " + failed.sum() + " failed");
+    }
+
+    /**
+     * Check whether the engine is serving continuously
+     * @return true if started
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    private Thread startCounter(int counter, Runnable body) {
+        Thread thread = new Thread(body, "counter-" + (counter + 1));
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void serveUntilEmpty(int counter) {
+        while (serveOne(counter) != Worker.Outcome.QUEUE_EMPTY) {
+            // keep serving
+        }
+    }
+
+    private void serveWhileRunning(int counter) {
+        while (running) {
+            if (serveOne(counter) == Worker.Outcome.QUEUE_EMPTY) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Serve the next customer on one counter and report the result
+     */
+    private Worker.Outcome serveOne(int counter) {
+        Worker worker = workers[counter];
+        if (worker.processNextCustomer()) {
+            completed.increment();
+            for (TransactionListener listener : listeners) {
+                listener.transactionCompleted(counter, worker.getCurrentCustomer(),
+                        worker.getCurrentParcel(), worker.getCurrentFee());
+            }
+        } else if (worker.getLastOutcome() != Worker.Outcome.QUEUE_EMPTY) {
+            failed.increment();
+        }
+        return worker.getLastOutcome();
+    }
+}
@@ -0,0 +1,214 @@
+package controller;
+
+import collection.ParcelMap;
+import collection.QueueOfCustomers;
+import model.Customer;
+import model.Parcel;
+import util.AsyncLog;
+import util.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CustomerValidator class - pipeline stage that checks customers against the
+ * parcel map as they join the queue, instead of when they reach a counter.
+ *
+ * A customer whose parcel exists and is still waiting joins the queue with the
+ * parcel, its position and its fee already attached, so a counter claims the
+ * parcel at that position without looking its ID up, and looks it up and
+ * works the fee out again only if the parcel, its days in depot or the tariff
+ * changed while the customer waited.
+ * A customer whose parcel is unknown or already collected is turned away into
+ * the exception queue, with the reason, where staff can see them. Workers
+ * that find a problem when serving also report it here. The exception queue
+ * keeps the latest MAX_EXCEPTIONS customers; older ones are dropped and
+ * counted in depot_exceptions_dropped_total.
+ */
+public class CustomerValidator implements QueueOfCustomers.Admission {
+    /**
+     * Why a customer cannot be served
+     */
+    public enum Problem {
+        PARCEL_NOT_FOUND,
+        ALREADY_COLLECTED
+    }
+
+    /**
+     * A customer in the exception queue
+     */
+    public static class Rejection {
+        private final Customer customer;
+        private final Problem problem;
+
+        /**
+         * Constructor for Rejection
+         * @param customer Customer that cannot be served
+         * @param problem Why they cannot be served
+         */
+        public Rejection(Customer customer, Problem problem) {
+            this.customer = customer;
+            this.problem = problem;
+        }
+
+        /**
+         * Get the customer
+         * @return Customer that cannot be served
+         */
+        public Customer getCustomer() {
+            return customer;
+        }
+
+        /**
+         * Get the problem
+         * @return Why the customer cannot be served
+         */
+        public Problem getProblem() {
+            return problem;
+        }
+
+        /**
+         * Describe the problem for staff
+         * @return Description naming the customer and the parcel
+         */
+        public String getMessage() {
+            String parcel = "parcel " + customer.getParcelID();
+            return customer.getName() + ": " + (problem == Problem.PARCEL_NOT_FOUND
+                    ? parcel + " not found" : parcel + " already collected");
+        }
+
+        @Override
+        public String toString() {
+            return getMessage();
+        }
+    }
+
+    /** Most customers kept in the exception queue */
+    public static final int MAX_EXCEPTIONS = 10_000;
+
+    private static final LongAdder[] REJECTED = new LongAdder[Problem.values().length];
+    private static final LongAdder DROPPED = Metrics.getInstance().counter("depot_exceptions_dropped_total");
+
+    static {
+        for (Problem problem : Problem.values()) {
+            REJECTED[problem.ordinal()] = Metrics.getInstance().counter(
+                    "depot_customers_rejected_total{problem=\"" + problem.name().toLowerCase() + "\"}");
+        }
+    }
+
+    private final ParcelMap parcelMap;
+    private final QueueOfCustomers customerQueue;
+    private final FeeCache feeCache;
+    private final FeeRules feeRules;
+    private final ConcurrentLinkedQueue<Rejection> exceptions = new ConcurrentLinkedQueue<>();
+    // Kept apart, as the queue counts its elements one by one
+    private final AtomicInteger exceptionCount = new AtomicInteger();
+    private final AsyncLog log;
+
+    /**
+     * Constructor for CustomerValidator; customers are checked once start is called
+     * @param parcelMap ParcelMap to check customers against
+     * @param customerQueue QueueOfCustomers to guard
+     */
+    public CustomerValidator(ParcelMap parcelMap, QueueOfCustomers customerQueue) {
+        this.parcelMap = parcelMap;
+        this.customerQueue = customerQueue;
+        this.feeCache = FeeCache.getInstance();
+        this.feeRules = FeeRules.getInstance();
+        this.log = AsyncLog.getInstance();
+    }
+
+    /**
+     * Check the customers already in the queue, moving those who cannot be
+     * served to the exception queue, then check every customer that joins.
+     * Call once the parcels have been loaded.
+     */
+    public void start() {
+        int rejected = 0;
+        synchronized (customerQueue) {
+            int i = 0;
+            while (i < customerQueue.size()) {
+                if (admit(customerQueue.getCustomerAt(i))) {
+                    i++;
+                } else {
+                    customerQueue.removeCustomer(i);
+                    rejected++;
+                }
+            }
+            customerQueue.setAdmission(this);
+        }
+        int total = rejected;
+        log.info(() -> "Validated queued customers, " + total + " moved to the exception queue");
+    }
+
+    /**
+     * Stop checking customers as they join
+     */
+    public void stop() {
+        customerQueue.setAdmission(null);
+    }
+
+    @Override
+    public boolean admit(Customer customer) {
+        int position = parcelMap.indexOfKey(customer.getParcelKey());
+        Parcel parcel = position < 0 ? null : parcelMap.getParcelAt(position);
+        if (parcel == null) {
+            reject(customer, Problem.PARCEL_NOT_FOUND);
+            return false;
+        }
+        if (parcel.isCollected()) {
+            reject(customer, Problem.ALREADY_COLLECTED);
+            return false;
+        }
+        Tariff tariff = feeRules.getTariff();
+        int days = parcel.getDaysInDepot();
+        customer.prepare(parcel, position, days, feeCache.getFee(parcel, days, tariff, true), tariff.getVersion());
+        return true;
+    }
+
+    /**
+     * Put a customer in the exception queue, dropping the oldest one if it is full
+     * @param customer Customer that cannot be served
+     * @param problem Why they cannot be served
+     */
+    public void reject(Customer customer, Problem problem) {
+        Rejection rejection = new Rejection(customer, problem);
+        exceptions.add(rejection);
+        REJECTED[problem.ordinal()].increment();
+        log.warn(rejection::getMessage);
+        if (exceptionCount.incrementAndGet() > MAX_EXCEPTIONS && pollException() != null) {
+            DROPPED.increment();
+        }
+    }
+
+    /**
+     * Get the customers in the exception queue, oldest first
+     * @return Copy of the exception queue
+     */
+    public List<Rejection> getExceptions() {
+        return new ArrayList<>(exceptions);
+    }
+
+    /**
+     * Remove and return the oldest customer in the exception queue
+     * @return Oldest rejection, or null if the exception queue is empty
+     */
+    public Rejection pollException() {
+        Rejection rejection = exceptions.poll();
+        if (rejection != null) {
+            exceptionCount.decrementAndGet();
+        }
+        return rejection;
+    }
+
+    /**
+     * Get the number of customers in the exception queue
+     * @return Number of rejections
+     */
+    public int getExceptionCount() {
+        return exceptionCount.get();
+    }
+}
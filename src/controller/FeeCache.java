@@ -0,0 +1,265 @@
+package controller;
+
+import model.Parcel;
+import util.Metrics;
+import util.ParcelIdCodec;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * FeeCache class - bounded cache of parcel fees, keyed by parcel version.
+ *
+ * Versions are unique in the process and a parcel gets a new one whenever it
+ * is replaced, so a version stands for one parcel ID with one arrival day and
+ * one set of dimensions. A quote is only used while the parcel still has the
+ * version and the days in depot it was worked out for, and is asked for under
+ * the Tariff it was worked out under, so neither a replaced parcel, a new
+ * depot day nor a change of tariff needs anyone to remove old quotes: they
+ * simply stop matching and age out.
+ *
+ * The table is set-associative, like a CPU cache: a version can only be kept
+ * in the 8 slots of its set. Each set evicts by CLOCK, the usual
+ * approximation of LRU: a hit sets the slot's reference bit, and a miss in a
+ * full set sweeps its hand round the slots, clearing bits, until it finds a
+ * slot not used since the last sweep. New quotes start unreferenced, so a
+ * parcel quoted once is pushed out before those quoted again. Quotes are
+ * immutable and slots are written without locks; a race can at worst lose a
+ * quote or keep it twice, which costs a later miss but never a wrong fee. A
+ * hit is therefore a hash, a few array reads and compares, and at most one
+ * byte written.
+ */
+public class FeeCache {
+    /** Quotes kept unless given otherwise */
+    public static final int DEFAULT_CAPACITY = 65_536;
+
+    private static final int WAYS = 8;
+
+    private static FeeCache instance;
+
+    /**
+     * Fee of one version of a parcel after some days in depot under one tariff
+     */
+    private static final class Quote {
+        final long version;
+        final int days;
+        final Tariff tariff;
+        final double fee;
+
+        Quote(long version, int days, Tariff tariff, double fee) {
+            this.version = version;
+            this.days = days;
+            this.tariff = tariff;
+            this.fee = fee;
+        }
+    }
+
+    // Set s holds slots s * WAYS to s * WAYS + WAYS - 1
+    private final Quote[] slots;
+    // Version of the quote in each slot, so a lookup only reads the quote it hits
+    private final long[] tags;
+    // CLOCK reference bit of each slot, and the hand of each set
+    private final byte[] referenced;
+    private final byte[] hands;
+    private final int setMask;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    /**
+     * Constructor for FeeCache
+     * @param capacity Most quotes kept; rounded up to a power of two, at least 8
+     */
+    public FeeCache(int capacity) {
+        this(capacity, new LongAdder(), new LongAdder(), new LongAdder());
+    }
+
+    /**
+     * Constructor for FeeCache that counts into the given counters
+     */
+    private FeeCache(int capacity, LongAdder hits, LongAdder misses, LongAdder evictions) {
+        int sets = Math.max(1, (capacity + WAYS - 1) / WAYS);
+        sets = sets == 1 ? 1 : Integer.highestOneBit(sets - 1) << 1;
+        this.slots = new Quote[sets * WAYS];
+        this.tags = new long[sets * WAYS];
+        this.referenced = new byte[sets * WAYS];
+        this.hands = new byte[sets];
+        this.setMask = sets - 1;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    /**
+     * Get the cache shared by all Workers, creating it on first use. Its
+     * statistics are exported as depot_fee_cache_requests_total{result},
+     * depot_fee_cache_evictions_total and depot_fee_cache_size.
+     * @return The shared FeeCache
+     */
+    public static synchronized FeeCache getInstance() {
+        if (instance == null) {
+            Metrics metrics = Metrics.getInstance();
+            instance = new FeeCache(DEFAULT_CAPACITY,
+                    metrics.counter("depot_fee_cache_requests_total{result=\"hit\"}"),
+                    metrics.counter("depot_fee_cache_requests_total{result=\"miss\"}"),
+                    metrics.counter("depot_fee_cache_evictions_total"));
+            metrics.gauge("depot_fee_cache_size", instance::size);
+        }
+        return instance;
+    }
+
+    /**
+     * Get the fee of a parcel as of today, working it out and keeping it on a miss
+     * @param parcel Parcel to quote
+     * @param tariff Tariff to charge by
+     * @return Fee
+     */
+    public double getFee(Parcel parcel, Tariff tariff) {
+        return getFee(parcel, parcel.getDaysInDepot(), tariff, true);
+    }
+
+    /**
+     * Get the fee of a parcel as of today, working it out on a miss
+     * @param parcel Parcel to quote
+     * @param tariff Tariff to charge by
+     * @param keep Whether to keep a fee worked out on a miss; a scan over
+     *             every parcel, such as a report, passes false so that it
+     *             does not push out the quotes of parcels being served
+     * @return Fee
+     */
+    public double getFee(Parcel parcel, Tariff tariff, boolean keep) {
+        return getFee(parcel, parcel.getDaysInDepot(), tariff, keep);
+    }
+
+    /**
+     * Get the fee of a parcel after a given number of days in depot, working
+     * it out on a miss
+     * @param parcel Parcel to quote
+     * @param days Days in depot, usually parcel.getDaysInDepot() read once by the caller
+     * @param tariff Tariff to charge by
+     * @param keep Whether to keep a fee worked out on a miss
+     * @return Fee
+     */
+    public double getFee(Parcel parcel, int days, Tariff tariff, boolean keep) {
+        long version = parcel.getVersion();
+        Quote[] table = slots;
+        int set = ParcelIdCodec.hash(version) & setMask;
+        int first = set * WAYS;
+        for (int slot = first; slot < first + WAYS; slot++) {
+            if (tags[slot] != version) {
+                continue;
+            }
+            // The tag may be from a racing write, so the quote itself decides
+            Quote quote = table[slot];
+            if (quote != null && quote.version == version && quote.days == days && quote.tariff == tariff) {
+                if (referenced[slot] == 0) {
+                    referenced[slot] = 1;
+                }
+                hits.increment();
+                return quote.fee;
+            }
+        }
+        misses.increment();
+        double fee = tariff.calculateFee(parcel, days);
+        if (keep) {
+            int slot = victim(table, set, first, tariff);
+            table[slot] = new Quote(version, days, tariff, fee);
+            tags[slot] = version;
+            referenced[slot] = 0;
+        }
+        return fee;
+    }
+
+    /**
+     * Choose the slot of a set to put a new quote in: an empty one if there
+     * is one, otherwise the first slot from the hand on with its reference
+     * bit clear, clearing the bits passed over. Quotes under another tariff
+     * are never hit, so they lose their bits and go first.
+     */
+    private int victim(Quote[] table, int set, int first, Tariff tariff) {
+        for (int slot = first; slot < first + WAYS; slot++) {
+            if (table[slot] == null) {
+                return slot;
+            }
+        }
+        int hand = hands[set];
+        while (true) {
+            int slot = first + hand;
+            hand = (hand + 1) & (WAYS - 1);
+            if (referenced[slot] == 0) {
+                hands[set] = (byte) hand;
+                Quote old = table[slot];
+                if (old != null && old.tariff == tariff) {
+                    evictions.increment();
+                }
+                return slot;
+            }
+            referenced[slot] = 0;
+        }
+    }
+
+    /**
+     * Forget every quote, to free the quotes of a tariff no longer in force
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = null;
+        }
+    }
+
+    /**
+     * Get the number of quotes kept, including any for parcels that have
+     * since been replaced but not yet pushed out
+     * @return Number of quotes
+     */
+    public int size() {
+        int size = 0;
+        for (Quote quote : slots) {
+            if (quote != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the most quotes the cache can keep
+     * @return Capacity
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Get the number of quotes answered from the cache
+     * @return Hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of quotes that had to be worked out
+     * @return Misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of quotes pushed out to make room
+     * @return Evictions
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the share of quotes answered from the cache
+     * @return Hit rate from 0 to 1, 0 before the first quote
+     */
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+}
@@ -0,0 +1,206 @@
+package controller;
+
+import util.AsyncLog;
+import util.Metrics;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * FeeRules class - singleton holding the tariff every Worker charges by.
+ *
+ * The tariff is swapped in one volatile write: a fee being worked out while a
+ * new tariff arrives is worked out wholly under the old or wholly under the
+ * new one, and no counter ever waits for a reload. A tariff file that does not
+ * compile is reported and the tariff in force is kept. Quotes in a FeeCache
+ * remember the tariff they were worked out under, so they stop matching as
+ * soon as the tariff changes.
+ *
+ * A watched file is reloaded when its size or content checksum changes, so a
+ * rewrite within the same modification time tick is still seen. A file is read
+ * whole before it is compiled, but a writer can still be caught halfway; write
+ * a new tariff to a temporary file and rename it into place.
+ */
+public class FeeRules {
+    private static final long WATCH_INTERVAL_MILLIS = 1000;
+    // A tariff is a few lines; a file this big is a mistake, not a tariff
+    private static final long MAX_FILE_BYTES = 1 << 20;
+
+    private static FeeRules instance;
+
+    private final LongAdder reloads = Metrics.getInstance().counter("depot_tariff_reloads_total{result=\"ok\"}");
+    private final LongAdder failedReloads =
+            Metrics.getInstance().counter("depot_tariff_reloads_total{result=\"error\"}");
+    private final AsyncLog log = AsyncLog.getInstance();
+    private volatile Tariff tariff = Tariff.defaults();
+    private ScheduledExecutorService watcher;
+    // Size and CRC32 of the tariff file as last read, -1 before any read
+    private long lastSize = -1;
+    private long lastChecksum = -1;
+
+    /**
+     * Private constructor for singleton
+     */
+    private FeeRules() {
+    }
+
+    /**
+     * Get the single instance of FeeRules, which starts with the default tariff
+     * @return The FeeRules instance
+     */
+    public static synchronized FeeRules getInstance() {
+        if (instance == null) {
+            instance = new FeeRules();
+        }
+        return instance;
+    }
+
+    /**
+     * Get the tariff in force
+     * @return Current tariff
+     */
+    public Tariff getTariff() {
+        return tariff;
+    }
+
+    /**
+     * Put a tariff in force
+     * @param tariff Tariff to charge by from now on
+     */
+    public void setTariff(Tariff tariff) {
+        this.tariff = tariff;
+        // Old quotes can no longer match; drop them rather than wait for them to age out
+        FeeCache.getInstance().invalidateAll();
+    }
+
+    /**
+     * Load a tariff file and put it in force, keeping the current tariff if
+     * the file cannot be read or does not compile
+     * @param file Tariff file
+     * @return true if the file's tariff is now in force
+     */
+    public synchronized boolean reload(Path file) {
+        try {
+            return reload(file, read(file));
+        } catch (IOException e) {
+            failedReloads.increment();
+            log.error("Tariff not changed, could not load " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Compile tariff rules read from a file and put them in force, keeping the
+     * current tariff if they do not compile
+     * @param file Tariff file the rules were read from
+     * @param rules Content of the file
+     * @return true if the file's tariff is now in force
+     */
+    private boolean reload(Path file, byte[] rules) {
+        // Remember the content even if it does not compile, so it is reported once
+        lastSize = rules.length;
+        lastChecksum = checksum(rules);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(rules), StandardCharsets.UTF_8))) {
+            setTariff(Tariff.parse(reader, file.getFileName().toString()));
+            reloads.increment();
+            log.info("Tariff loaded from " + file);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            failedReloads.increment();
+            log.error("Tariff not changed, could not load " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Load a tariff file if it exists, then check it every second and
+     * reload it whenever its size or content changes. Without the file the
+     * default tariff stays in force until the file appears.
+     * @param file Tariff file
+     */
+    public synchronized void watch(Path file) {
+        if (watcher != null) {
+            watcher.shutdownNow();
+        }
+        lastSize = -1;
+        lastChecksum = -1;
+        if (Files.exists(file)) {
+            reload(file);
+        } else {
+            log.info("No tariff file at " + file + ", charging by the default tariff");
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tariff-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(() -> reloadIfChanged(file),
+                WATCH_INTERVAL_MILLIS, WATCH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop watching the tariff file
+     */
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Reload the tariff file if its size or content has changed since it was
+     * last read
+     */
+    private synchronized void reloadIfChanged(Path file) {
+        try {
+            long size = Files.size(file);
+            if (size > MAX_FILE_BYTES) {
+                if (size != lastSize) {
+                    // Report a file too big to be a tariff once, not every second
+                    lastSize = size;
+                    lastChecksum = -1;
+                    failedReloads.increment();
+                    log.error("Tariff not changed, " + file + " is larger than " + MAX_FILE_BYTES + " bytes");
+                }
+                return;
+            }
+            byte[] rules = Files.readAllBytes(file);
+            if (rules.length != lastSize || checksum(rules) != lastChecksum) {
+                reload(file, rules);
+            }
+        } catch (IOException e) {
+            // The file is missing for now; keep the tariff in force
+        }
+    }
+
+    /**
+     * Read a whole tariff file
+     * @param file Tariff file
+     * @return Content of the file
+     * @throws IOException if the file cannot be read or is too big to be a tariff
+     */
+    private static byte[] read(Path file) throws IOException {
+        if (Files.size(file) > MAX_FILE_BYTES) {
+            throw new IOException("larger than " + MAX_FILE_BYTES + " bytes");
+        }
+        return Files.readAllBytes(file);
+    }
+
+    private static long checksum(byte[] rules) {
+        CRC32 crc = new CRC32();
+        crc.update(rules, 0, rules.length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,204 @@
+package controller;
+
+import collection.ParcelMap;
+import model.Parcel;
+import util.DepotClock;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * ReportGenerator class - writes the depot report in a single pass over the parcels.
+ *
+ * Totals come from ParcelMap's live counters, each parcel is visited once
+ * (collected parcels first, then waiting ones) and every line is streamed to
+ * the writer as it is produced, so time is linear in the number of parcels and
+ * memory use does not depend on it. Fees are quoted once per collected parcel,
+ * from the fee cache where the counter left them; fees that have to be
+ * calculated are not added to the cache, so a report does not push out the
+ * quotes of parcels being served.
+ */
+public class ReportGenerator {
+    private static final int PROGRESS_STEP = 4096;
+
+    /**
+     * Receives progress while a report is written; called on the generating thread
+     */
+    public interface ProgressListener {
+        /**
+         * Called periodically while parcels are written
+         * @param done Number of parcels written so far
+         * @param total Number of parcels expected
+         */
+        void progress(int done, int total);
+    }
+
+    /**
+     * Figures of a generated report
+     */
+    public static class Summary {
+        private final int totalParcels;
+        private final int collectedParcels;
+        private final int waitingParcels;
+        private final double totalFees;
+
+        Summary(int totalParcels, int collectedParcels, int waitingParcels, double totalFees) {
+            this.totalParcels = totalParcels;
+            this.collectedParcels = collectedParcels;
+            this.waitingParcels = waitingParcels;
+            this.totalFees = totalFees;
+        }
+
+        /**
+         * Get the number of parcels in the report
+         * @return Total parcels
+         */
+        public int getTotalParcels() {
+            return totalParcels;
+        }
+
+        /**
+         * Get the number of collected parcels
+         * @return Collected parcels
+         */
+        public int getCollectedParcels() {
+            return collectedParcels;
+        }
+
+        /**
+         * Get the number of waiting parcels
+         * @return Waiting parcels
+         */
+        public int getWaitingParcels() {
+            return waitingParcels;
+        }
+
+        /**
+         * Get the total of the fees of collected parcels
+         * @return Total fees
+         */
+        public double getTotalFees() {
+            return totalFees;
+        }
+    }
+
+    private final ParcelMap parcelMap;
+    private final Worker worker;
+
+    /**
+     * Constructor for ReportGenerator
+     * @param parcelMap ParcelMap to report on
+     * @param worker Worker used to calculate fees
+     */
+    public ReportGenerator(ParcelMap parcelMap, Worker worker) {
+        this.parcelMap = parcelMap;
+        this.worker = worker;
+    }
+
+    /**
+     * Write the report to a file
+     * @param filename Name of the report file
+     * @param listener Receives progress, may be null
+     * @return Figures of the report
+     * @throws IOException if the file cannot be written
+     */
+    public Summary writeReport(String filename, ProgressListener listener) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(filename), StandardCharsets.UTF_8)) {
+            return writeReport(out, listener);
+        }
+    }
+
+    /**
+     * Write the report to a writer
+     * @param out Writer to stream the report to
+     * @param listener Receives progress, may be null
+     * @return Figures of the report
+     * @throws IOException if the writer fails
+     */
+    public Summary writeReport(Writer out, ProgressListener listener) throws IOException {
+        int total = parcelMap.size();
+        int collected = parcelMap.getCollectedCount();
+        int waiting = parcelMap.getUncollectedCount();
+        StringBuilder line = new StringBuilder(128);
+
+        writeLine(out, line.append("=== DEPOT PARCEL SYSTEM REPORT ==="));
+        writeLine(out, line.append("Depot day: ").append(DepotClock.getInstance().getDate()));
+        writeLine(out, line.append("Total parcels: ").append(total));
+        writeLine(out, line.append("Collected parcels: ").append(collected));
+        writeLine(out, line.append("Waiting parcels: ").append(waiting));
+
+        int done = 0;
+        double totalFees = 0;
+
+        writeLine(out, line.append("\nCOLLECTED PARCELS:"));
+        for (Parcel parcel : parcelMap.getCollectedParcelsView()) {
+            double fee = worker.peekFee(parcel);
+            totalFees += fee;
+            appendParcel(line, parcel).append(" - Fee: £");
+            appendMoney(line, fee);
+            writeLine(out, line);
+            done = reportProgress(listener, done + 1, total);
+        }
+
+        writeLine(out, line.append("\nWAITING PARCELS:"));
+        for (Parcel parcel : parcelMap.getUncollectedParcelsView()) {
+            writeLine(out, appendParcel(line, parcel));
+            done = reportProgress(listener, done + 1, total);
+        }
+
+        writeLine(out, line.append("\nSTATISTICS:"));
+        writeLine(out, line.append("Parcels in depot more than 7 days: ")
+                .append(parcelMap.countParcelsInDepotMoreThanDays(7)));
+        writeLine(out, line.append("Total fees collected: £").append(String.format("%.2f", totalFees)));
+        writeLine(out, line.append("=== END OF REPORT ==="));
+
+        if (listener != null) {
+            listener.progress(done, Math.max(done, total));
+        }
+        return new Summary(total, collected, waiting, totalFees);
+    }
+
+    private static StringBuilder appendParcel(StringBuilder line, Parcel parcel) {
+        return line.append(parcel.getParcelID())
+                .append(" - Days: ").append(parcel.getDaysInDepot())
+                .append(" - Weight: ").append(parcel.getWeight())
+                .append(" - Dimensions: ").append(parcel.getLength())
+                .append(" x ").append(parcel.getWidth())
+                .append(" x ").append(parcel.getHeight());
+    }
+
+    /**
+     * Append a fee that is already rounded to whole pence, giving the same text
+     * as String.format("%.2f") without its per-call parsing overhead
+     */
+    static void appendMoney(StringBuilder line, double amount) {
+        long pence = Math.round(amount * 100.0);
+        if (pence < 0) {
+            line.append('-');
+            pence = -pence;
+        }
+        long fraction = pence % 100;
+        line.append(pence / 100).append('.');
+        if (fraction < 10) {
+            line.append('0');
+        }
+        line.append(fraction);
+    }
+
+    private static void writeLine(Writer out, StringBuilder line) throws IOException {
+        line.append(System.lineSeparator());
+        out.append(line);
+        line.setLength(0);
+    }
+
+    private static int reportProgress(ProgressListener listener, int done, int total) {
+        if (listener != null && done % PROGRESS_STEP == 0) {
+            listener.progress(done, Math.max(done, total));
+        }
+        return done;
+    }
+}
@@ -0,0 +1,364 @@
+package controller;
+
+import model.Parcel;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tariff class - fee rules read from a tariff file and compiled into tables.
+ *
+ * A tariff file has one rule per line; blank lines and text after '#' are ignored.
+ * The weight and volume rules must each appear once; day and discount rules
+ * are optional.
+ * <pre>
+ *   weight RATE              fee per unit of weight
+ *   volume RATE              fee per unit of volume (length x width x height)
+ *   days FROM SURCHARGE      surcharge once a parcel has been in the depot FROM days
+ *   discount PREFIX FACTOR   multiply the fee by FACTOR for IDs starting with PREFIX
+ * </pre>
+ * A parcel pays the surcharge of the highest FROM it has reached, and the
+ * factor of the longest prefix its ID starts with. The fee is
+ * (weight x RATE + volume x RATE + surcharge) x factor, rounded to pennies.
+ *
+ * Compiling turns the day rules into an array indexed by days in depot and
+ * the discounts into a trie with a transition table, so working out a fee is
+ * a few multiplications, one array read and one more per character of the
+ * ID that matches a prefix, whatever the number of rules.
+ * A Tariff never changes once compiled; FeeRules swaps in a new one.
+ */
+public class Tariff {
+    /** Rules of the depot before tariffs could be changed */
+    public static final String DEFAULT_RULES =
+            "# Depot tariff\n"
+            + "weight 0.5\n"
+            + "volume 0.01\n"
+            + "days 4 5.0\n"
+            + "days 8 10.0\n"
+            + "discount X 0.9\n";
+
+    // Day rules above this would only make the surcharge table large
+    private static final int MAX_DAYS = 36_500;
+    // Discount prefixes are ASCII, so each trie node has one transition per ASCII character
+    private static final int ALPHABET_BITS = 7;
+    private static final int ALPHABET = 1 << ALPHABET_BITS;
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final double weightRate;
+    private final double volumeRate;
+    // Surcharge by days in depot; the last entry holds for any later day
+    private final double[] surcharges;
+    private final int lastDay;
+    // Discount trie: from node n, character c leads to node transitions[n << 7 | c],
+    // or 0 when no prefix continues that way. Node 0 is the root.
+    private final int[] transitions;
+    // Factor of the longest prefix ending at or above each node, 1.0 at the root
+    private final double[] factors;
+    // Whether any prefix continues past each node
+    private final boolean[] hasChildren;
+    private final boolean hasDiscounts;
+    private final String rules;
+    private final long version = VERSIONS.incrementAndGet();
+
+    /**
+     * Compile a tariff from its rules
+     */
+    private Tariff(double weightRate, double volumeRate, TreeMap<Integer, Double> dayRules,
+                   Map<String, Double> discounts, String rules) {
+        this.weightRate = weightRate;
+        this.volumeRate = volumeRate;
+        this.rules = rules;
+
+        lastDay = dayRules.isEmpty() ? 0 : dayRules.lastKey();
+        surcharges = new double[lastDay + 1];
+        for (Map.Entry<Integer, Double> rule : dayRules.entrySet()) {
+            Arrays.fill(surcharges, rule.getKey(), lastDay + 1, rule.getValue());
+        }
+
+        // Prefixes come sorted, so a prefix is always added after its own prefixes
+        // and every node can start from the factor of its parent
+        int nodes = 1;
+        for (String prefix : discounts.keySet()) {
+            nodes += prefix.length();
+        }
+        int[] next = new int[nodes << ALPHABET_BITS];
+        double[] nodeFactors = new double[nodes];
+        nodeFactors[0] = 1.0;
+        int used = 1;
+        for (Map.Entry<String, Double> discount : discounts.entrySet()) {
+            int node = 0;
+            for (char c : discount.getKey().toCharArray()) {
+                int child = next[node << ALPHABET_BITS | c];
+                if (child == 0) {
+                    child = used++;
+                    next[node << ALPHABET_BITS | c] = child;
+                    nodeFactors[child] = nodeFactors[node];
+                }
+                node = child;
+            }
+            nodeFactors[node] = discount.getValue();
+        }
+        transitions = Arrays.copyOf(next, used << ALPHABET_BITS);
+        factors = Arrays.copyOf(nodeFactors, used);
+        hasChildren = new boolean[used];
+        for (int i = 0; i < transitions.length; i++) {
+            if (transitions[i] != 0) {
+                hasChildren[i >>> ALPHABET_BITS] = true;
+            }
+        }
+        hasDiscounts = !discounts.isEmpty();
+    }
+
+    /**
+     * Get the tariff of the depot's original rules, see DEFAULT_RULES
+     * @return Default tariff
+     */
+    public static Tariff defaults() {
+        try {
+            return parse(new BufferedReader(new StringReader(DEFAULT_RULES)), "default tariff");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Read and compile a tariff file
+     * @param file Tariff file
+     * @return Compiled tariff
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a rule is not valid, naming the file and line
+     */
+    public static Tariff load(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(reader, file.getFileName().toString());
+        }
+    }
+
+    /**
+     * Read and compile tariff rules
+     * @param reader Reader of the rules
+     * @param source Name of the rules for error messages
+     * @return Compiled tariff
+     * @throws IOException if the rules cannot be read
+     * @throws IllegalArgumentException if a rule is not valid, naming the source and line,
+     *         or if there is no weight or no volume rule
+     */
+    public static Tariff parse(BufferedReader reader, String source) throws IOException {
+        Double weightRate = null;
+        Double volumeRate = null;
+        TreeMap<Integer, Double> dayRules = new TreeMap<>();
+        Map<String, Double> discounts = new TreeMap<>();
+        StringBuilder rules = new StringBuilder();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            rules.append(line).append('\n');
+            int comment = line.indexOf('#');
+            String rule = (comment < 0 ? line : line.substring(0, comment)).trim();
+            if (rule.isEmpty()) {
+                continue;
+            }
+            String[] parts = rule.split("\\s+");
+            String where = source + " line " + lineNumber + ": ";
+            switch (parts[0]) {
+                case "weight":
+                    expectParts(parts, 2, where);
+                    if (weightRate != null) {
+                        throw new IllegalArgumentException(where + "second weight rule");
+                    }
+                    weightRate = number(parts[1], where);
+                    break;
+                case "volume":
+                    expectParts(parts, 2, where);
+                    if (volumeRate != null) {
+                        throw new IllegalArgumentException(where + "second volume rule");
+                    }
+                    volumeRate = number(parts[1], where);
+                    break;
+                case "days":
+                    expectParts(parts, 3, where);
+                    int from = wholeNumber(parts[1], where);
+                    if (from < 0 || from > MAX_DAYS) {
+                        throw new IllegalArgumentException(where + "days must be from 0 to " + MAX_DAYS);
+                    }
+                    if (dayRules.put(from, number(parts[2], where)) != null) {
+                        throw new IllegalArgumentException(where + "second rule for " + from + " days");
+                    }
+                    break;
+                case "discount":
+                    expectParts(parts, 3, where);
+                    double factor = number(parts[2], where);
+                    if (factor < 0) {
+                        throw new IllegalArgumentException(where + "discount factor must not be negative");
+                    }
+                    if (!isAscii(parts[1])) {
+                        throw new IllegalArgumentException(where + "discount prefix must be ASCII: " + parts[1]);
+                    }
+                    if (discounts.put(parts[1], factor) != null) {
+                        throw new IllegalArgumentException(where + "second discount for " + parts[1]);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException(where + "unknown rule " + parts[0]);
+            }
+        }
+        // An empty or cut-off file would otherwise charge nothing for every parcel
+        if (weightRate == null) {
+            throw new IllegalArgumentException(source + ": no weight rule");
+        }
+        if (volumeRate == null) {
+            throw new IllegalArgumentException(source + ": no volume rule");
+        }
+        return new Tariff(weightRate, volumeRate, dayRules, discounts, rules.toString());
+    }
+
+    /**
+     * Calculate the fee for a parcel as of today
+     * @param parcel Parcel to calculate fee for
+     * @return Fee amount, rounded to pennies
+     */
+    public double calculateFee(Parcel parcel) {
+        return calculateFee(parcel, parcel.getDaysInDepot());
+    }
+
+    /**
+     * Calculate the fee for a parcel after a given number of days in depot, so
+     * that a fee can be kept with the days it was worked out for even if the
+     * DepotClock moves on meanwhile
+     * @param parcel Parcel to calculate fee for
+     * @param days Days in depot
+     * @return Fee amount, rounded to pennies
+     */
+    public double calculateFee(Parcel parcel, int days) {
+        double fee = parcel.getWeight() * weightRate;
+        double volume = parcel.getLength() * parcel.getWidth() * parcel.getHeight();
+        fee += volume * volumeRate;
+        fee += surcharges[Math.min(Math.max(days, 0), lastDay)];
+        fee *= getDiscount(parcel.getParcelID());
+        return Math.round(fee * 100.0) / 100.0;
+    }
+
+    /**
+     * Get the discount factor of a parcel ID
+     * @param parcelID Parcel ID
+     * @return Factor of the longest matching prefix, 1.0 if none matches
+     */
+    public double getDiscount(String parcelID) {
+        if (!hasDiscounts) {
+            return 1.0;
+        }
+        int length = parcelID.length();
+        if (length == 0) {
+            return factors[0];
+        }
+        // The first step, usually the only one, straight from the root's row
+        int[] next = transitions;
+        char first = parcelID.charAt(0);
+        int node = first < ALPHABET ? next[first] : 0;
+        if (node == 0) {
+            return factors[0];
+        }
+        boolean[] branches = hasChildren;
+        for (int i = 1; i < length && branches[node]; i++) {
+            char c = parcelID.charAt(i);
+            int child = c < ALPHABET ? next[node << ALPHABET_BITS | c] : 0;
+            if (child == 0) {
+                break;
+            }
+            node = child;
+        }
+        return factors[node];
+    }
+
+    /**
+     * Calculate fees for a range of rows of parallel primitive columns.
+     *
+     * The loop is a straight-line sequence of arithmetic on array elements,
+     * so the JIT can unroll and vectorise it. Every operation is the same, in
+     * the same order, as in calculateFee, so the results match bit for bit.
+     * @param weights Weight of each parcel
+     * @param lengths Length of each parcel
+     * @param widths Width of each parcel
+     * @param heights Height of each parcel
+     * @param days Days in depot of each parcel
+     * @param discounts Discount factor of each parcel, see getDiscount
+     * @param fees Receives the fee of each parcel
+     * @param from First row, inclusive
+     * @param to Last row, exclusive
+     */
+    public void calculateFees(double[] weights, int[] lengths, int[] widths, int[] heights,
+                              int[] days, double[] discounts, double[] fees, int from, int to) {
+        double[] table = surcharges;
+        int last = lastDay;
+        for (int i = from; i < to; i++) {
+            double fee = weights[i] * weightRate;
+            double volume = lengths[i] * widths[i] * heights[i];
+            fee += volume * volumeRate;
+            fee += table[Math.min(Math.max(days[i], 0), last)];
+            fee *= discounts[i];
+            fees[i] = Math.round(fee * 100.0) / 100.0;
+        }
+    }
+
+    /**
+     * Get the version of the tariff, so a fee can be kept with the tariff it
+     * was worked out under without keeping the tariff itself
+     * @return Version, unique in the process
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the rules the tariff was compiled from
+     * @return Rules, in the tariff file format
+     */
+    public String getRules() {
+        return rules;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= ALPHABET) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void expectParts(String[] parts, int count, String where) {
+        if (parts.length != count) {
+            throw new IllegalArgumentException(where + parts[0] + " takes " + (count - 1)
+                    + (count == 2 ? " value" : " values"));
+        }
+    }
+
+    private static double number(String text, String where) {
+        try {
+            double value = Double.parseDouble(text);
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                throw new NumberFormatException();
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(where + "not a number: " + text);
+        }
+    }
+
+    private static int wholeNumber(String text, String where) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(where + "not a whole number: " + text);
+        }
+    }
+}
@@ -4,18 +4,51 @@ import model.Customer;
 import model.Parcel;
 import collection.ParcelMap;
 import collection.QueueOfCustomers;
-import util.Log;
+import util.AsyncLog;
+import util.LatencyHistogram;
+import util.Metrics;
+
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Worker class - contains logic for a worker processing a customer
+ * Worker class - contains logic for a worker processing a customer.
+ * Each counter has its own Worker; several Workers can safely share one
+ * ParcelMap and QueueOfCustomers.
  */
 public class Worker {
+    /**
+     * Outcome of the last call to processNextCustomer
+     */
+    public enum Outcome {
+        NONE,
+        COLLECTED,
+        QUEUE_EMPTY,
+        PARCEL_NOT_FOUND,
+        ALREADY_COLLECTED
+    }
+
+    private static final LatencyHistogram PROCESS_TIMES =
+            Metrics.getInstance().histogram("depot_process_customer_seconds");
+    // Customers processed, indexed by Outcome ordinal
+    private static final LongAdder[] OUTCOME_COUNTS = new LongAdder[Outcome.values().length];
+
+    static {
+        for (Outcome outcome : Outcome.values()) {
+            OUTCOME_COUNTS[outcome.ordinal()] = Metrics.getInstance().counter(
+                    "depot_customers_processed_total{outcome=\"" + outcome.name().toLowerCase() + "\"}");
+        }
+    }
+
     private ParcelMap parcelMap;
     private QueueOfCustomers customerQueue;
     private Customer currentCustomer;
     private Parcel currentParcel;
     private double currentFee;
-    private Log log;
+    private Outcome lastOutcome;
+    private CustomerValidator validator;
+    private FeeCache feeCache;
+    private final FeeRules feeRules;
+    private AsyncLog log;
 
     /**
      * Constructor for Worker
@@ -25,76 +58,167 @@ public class Worker {
     public Worker(ParcelMap parcelMap, QueueOfCustomers customerQueue) {
         this.parcelMap = parcelMap;
         this.customerQueue = customerQueue;
-        this.log = Log.getInstance();
+        this.log = AsyncLog.getInstance();
+        this.feeCache = FeeCache.getInstance();
+        this.feeRules = FeeRules.getInstance();
         this.currentCustomer = null;
         this.currentParcel = null;
         this.currentFee = 0;
+        this.lastOutcome = Outcome.NONE;
+    }
+
+    /**
+     * Send customers that cannot be served to a validator's exception queue
+     * instead of dropping them
+     * @param validator Validator to report to, or null to drop them
+     */
+    public void setValidator(CustomerValidator validator) {
+        this.validator = validator;
+    }
+
+    /**
+     * Use a different cache for fee quotes than the one shared by all Workers
+     * @param feeCache Cache to use
+     */
+    public void setFeeCache(FeeCache feeCache) {
+        this.feeCache = feeCache;
     }
 
     /**
-     * Process the next customer in the queue
-     * @return true if processed successfully, false if queue empty or parcel not found
+     * Process the next customer in the queue. The time taken is recorded in
+     * depot_process_customer_seconds and the outcome counted in
+     * depot_customers_processed_total.
+     * @return true if processed successfully, false if queue empty, parcel not found or already collected
      */
     public boolean processNextCustomer() {
-        if (customerQueue.isEmpty()) {
-            log.addLog("No customers in queue to process");
+        long start = System.nanoTime();
+        boolean processed = processNext();
+        PROCESS_TIMES.recordSince(start);
+        OUTCOME_COUNTS[lastOutcome.ordinal()].increment();
+        return processed;
+    }
+
+    /**
+     * Process the next customer in the queue, setting lastOutcome
+     * @return true if processed successfully
+     */
+    private boolean processNext() {
+        // Get the next customer
+        Customer customer = customerQueue.pollCustomer();
+        if (customer == null) {
+            log.debug(() -> "No customers in queue to process");
+            lastOutcome = Outcome.QUEUE_EMPTY;
             return false;
         }
+        currentCustomer = customer;
+        log.debug(() -> "Processing customer: " + customer.getName());
 
-        // Get the next customer
-        currentCustomer = customerQueue.removeCustomer(0);
-        log.addLog("Processing customer: " + currentCustomer.getName());
+        // Claim the parcel found when the customer joined, if it is still the
+        // stored version; otherwise look it up and claim it by ID
+        Parcel prepared = customer.getPreparedParcel();
+        ParcelMap.CollectResult result = prepared == null ? ParcelMap.CollectResult.NOT_FOUND
+                : parcelMap.collectParcelAt(customer.getPreparedPosition(), prepared.getVersion());
+        Parcel parcel = prepared;
+        if (result == ParcelMap.CollectResult.NOT_FOUND) {
+            parcel = parcelMap.findParcelByKey(customer.getParcelKey());
+            if (parcel == null) {
+                log.warn(() -> "Parcel not found: " + customer.getParcelID());
+                currentCustomer = null;
+                currentParcel = null;
+                lastOutcome = Outcome.PARCEL_NOT_FOUND;
+                if (validator != null) {
+                    validator.reject(customer, CustomerValidator.Problem.PARCEL_NOT_FOUND);
+                }
+                return false;
+            }
+            result = parcelMap.collectParcelByKey(customer.getParcelKey());
+        }
+        Parcel served = parcel;
+        currentParcel = served;
 
-        // Find the parcel
-        currentParcel = parcelMap.findParcelByID(currentCustomer.getParcelID());
-        if (currentParcel == null) {
-            log.addLog("Parcel not found: " + currentCustomer.getParcelID());
+        // Claimed, so it is handed out by at most one counter
+        if (result != ParcelMap.CollectResult.COLLECTED) {
+            log.warn(() -> "Parcel already collected: " + served.getParcelID());
             currentCustomer = null;
+            currentParcel = null;
+            lastOutcome = Outcome.ALREADY_COLLECTED;
+            if (validator != null) {
+                validator.reject(customer, CustomerValidator.Problem.ALREADY_COLLECTED);
+            }
             return false;
         }
 
-        // Calculate fee
-        currentFee = calculateFee(currentParcel);
-        log.addLog("Fee calculated: $" + String.format("%.2f", currentFee));
-
-        // Mark parcel as collected
-        parcelMap.markParcelAsCollected(currentParcel.getParcelID());
-        log.addLog("Parcel " + currentParcel.getParcelID() + " collected by " + currentCustomer.getName());
+        // Use the fee worked out when the customer joined, unless the parcel, its days
+        // in depot or the tariff have changed since
+        Tariff tariff = feeRules.getTariff();
+        int days = served.getDaysInDepot();
+        double fee = served == prepared && customer.getPreparedDays() == days
+                && customer.getPreparedTariffVersion() == tariff.getVersion()
+                ? customer.getPreparedFee() : feeCache.getFee(served, days, tariff, true);
+        currentFee = fee;
+        log.debug(() -> "Fee calculated: $" + String.format("%.2f", fee));
+        log.debug(() -> "Parcel " + served.getParcelID() + " collected by " + customer.getName());
+        lastOutcome = Outcome.COLLECTED;
 
         return true;
     }
 
     /**
-     * Calculate fee for a parcel
+     * Calculate fee for a parcel under the tariff in force, see FeeRules
      * @param parcel Parcel to calculate fee for
      * @return Fee amount
      */
     public double calculateFee(Parcel parcel) {
-        // Base fee based on weight
-        double fee = parcel.getWeight() * 0.5;
-        
-        // Add fee based on dimensions (volume)
-        double volume = parcel.getLength() * parcel.getWidth() * parcel.getHeight();
-        fee += volume * 0.01;
-        
-        // Add fee based on days in depot
-        if (parcel.getDaysInDepot() <= 3) {
-            // No additional fee for first 3 days
-        } else if (parcel.getDaysInDepot() <= 7) {
-            // Small fee for 4-7 days
-            fee += 5.0;
-        } else {
-            // Larger fee for more than 7 days
-            fee += 10.0;
-        }
-        
-        // Special discount for parcels with ID starting with "X"
-        if (parcel.getParcelID().startsWith("X")) {
-            fee *= 0.9; // 10% discount
-        }
-        
-        // Round to 2 decimal places
-        return Math.round(fee * 100.0) / 100.0;
+        return feeRules.getTariff().calculateFee(parcel);
+    }
+
+    /**
+     * Get the fee for a parcel from the fee cache, calculating it only if
+     * this version of the parcel has not been quoted today under the tariff in force
+     * @param parcel Parcel to quote
+     * @return Fee amount, the same as calculateFee gives
+     */
+    public double quoteFee(Parcel parcel) {
+        return feeCache.getFee(parcel, feeRules.getTariff());
+    }
+
+    /**
+     * Get the fee for a parcel from the fee cache, without keeping it if it
+     * has to be calculated; for passes over many parcels
+     * @param parcel Parcel to quote
+     * @return Fee amount, the same as calculateFee gives
+     */
+    public double peekFee(Parcel parcel) {
+        return feeCache.getFee(parcel, feeRules.getTariff(), false);
+    }
+
+    /**
+     * Check whether the tariff in force discounts a parcel ID
+     * @param parcelID Parcel ID
+     * @return true if a discount prefix of the tariff matches the ID
+     */
+    public static boolean hasDiscount(String parcelID) {
+        return FeeRules.getInstance().getTariff().getDiscount(parcelID) != 1.0;
+    }
+
+    /**
+     * Calculate fees for many parcels held as parallel primitive columns,
+     * all under the tariff in force when called. Gives exactly the same
+     * results as calculateFee for each row.
+     * @param weights Weight of each parcel
+     * @param lengths Length of each parcel
+     * @param widths Width of each parcel
+     * @param heights Height of each parcel
+     * @param days Days in depot of each parcel
+     * @param discounts Discount factor of each parcel, see Tariff.getDiscount
+     * @return Fee of each parcel
+     */
+    public double[] calculateFees(double[] weights, int[] lengths, int[] widths, int[] heights,
+                                  int[] days, double[] discounts) {
+        double[] fees = new double[weights.length];
+        feeRules.getTariff().calculateFees(weights, lengths, widths, heights, days, discounts, fees, 0,
+                weights.length);
+        return fees;
     }
 
     /**
@@ -121,6 +245,14 @@ public class Worker {
         return currentFee;
     }
 
+    /**
+     * Get the outcome of the last call to processNextCustomer
+     * @return Last outcome
+     */
+    public Outcome getLastOutcome() {
+        return lastOutcome;
+    }
+
     /**
      * Clear current transaction
      */
@@ -1,23 +1,54 @@
 package model;
 
+import util.ParcelIdCodec;
+
 /**
  * Customer class - blueprint for customer objects
+ * The parcel ID is held as its ParcelIdCodec key rather than a String,
+ * unless no parcel has had that ID, which is then kept as given so that
+ * customers cannot grow the codec's table of interned IDs.
+ * A validated customer also carries their parcel and its fee, worked out
+ * when they joined the queue.
+ * Times in the queue are monotonic clock readings in nanoseconds, as from
+ * System.nanoTime(), and 0 when not yet set.
  */
 public class Customer {
     private int seqNo;
     private String name;
-    private String parcelID;
+    private long parcelKey;
+    // Only set when parcelKey is NO_KEY
+    private String unknownParcelID;
+    private long enqueuedNanos;
+    private long dequeuedNanos;
+    private volatile Parcel preparedParcel;
+    private volatile int preparedPosition;
+    private volatile double preparedFee;
+    private volatile long preparedTariff;
+    private volatile int preparedDays;
 
     /**
      * Constructor for Customer
      * @param seqNo Sequence number in queue
      * @param name Name of customer
-     * @param parcelID ID of parcel to collect
+     * @param parcelID ID of parcel to collect, may be null
      */
     public Customer(int seqNo, String name, String parcelID) {
+        this(seqNo, name, parcelID == null ? ParcelIdCodec.NO_KEY : ParcelIdCodec.find(parcelID));
+        if (parcelKey == ParcelIdCodec.NO_KEY) {
+            unknownParcelID = parcelID;
+        }
+    }
+
+    /**
+     * Constructor for Customer
+     * @param seqNo Sequence number in queue
+     * @param name Name of customer
+     * @param parcelKey Key of the ID of parcel to collect, from ParcelIdCodec
+     */
+    public Customer(int seqNo, String name, long parcelKey) {
         this.seqNo = seqNo;
         this.name = name;
-        this.parcelID = parcelID;
+        this.parcelKey = parcelKey;
     }
 
     /**
@@ -49,7 +80,119 @@ public class Customer {
      * @return Parcel ID
      */
     public String getParcelID() {
-        return parcelID;
+        return parcelKey != ParcelIdCodec.NO_KEY ? ParcelIdCodec.decode(parcelKey) : unknownParcelID;
+    }
+
+    /**
+     * Get the key of the parcel ID, for lookups in ParcelMap. An ID no parcel
+     * had when the customer was made is looked up again, in case one has
+     * arrived since.
+     * @return Parcel ID key, or NO_KEY if no parcel has had the ID
+     */
+    public long getParcelKey() {
+        if (parcelKey == ParcelIdCodec.NO_KEY && unknownParcelID != null) {
+            return ParcelIdCodec.find(unknownParcelID);
+        }
+        return parcelKey;
+    }
+
+    /**
+     * Get the time the customer joined the queue
+     * @return Clock reading when the customer joined, 0 if never queued
+     */
+    public long getEnqueuedNanos() {
+        return enqueuedNanos;
+    }
+
+    /**
+     * Set the time the customer joined the queue
+     * @param enqueuedNanos Clock reading when the customer joined
+     */
+    public void setEnqueuedNanos(long enqueuedNanos) {
+        this.enqueuedNanos = enqueuedNanos;
+    }
+
+    /**
+     * Get the time the customer was called to a counter
+     * @return Clock reading when the customer was called, 0 if still waiting
+     */
+    public long getDequeuedNanos() {
+        return dequeuedNanos;
+    }
+
+    /**
+     * Set the time the customer was called to a counter
+     * @param dequeuedNanos Clock reading when the customer was called
+     */
+    public void setDequeuedNanos(long dequeuedNanos) {
+        this.dequeuedNanos = dequeuedNanos;
+    }
+
+    /**
+     * Get how long the customer waited in the queue
+     * @return Wait in nanoseconds, or -1 if the customer has not been both queued and called
+     */
+    public long getWaitNanos() {
+        if (enqueuedNanos == 0 || dequeuedNanos == 0) {
+            return -1;
+        }
+        return dequeuedNanos - enqueuedNanos;
+    }
+
+    /**
+     * Attach the customer's parcel and fee, found when the customer was validated
+     * @param parcel Parcel the customer will collect
+     * @param position Position of the parcel in the ParcelMap
+     * @param days Days in depot the fee was worked out for
+     * @param fee Fee for the parcel
+     * @param tariffVersion Version of the tariff the fee was worked out under
+     */
+    public void prepare(Parcel parcel, int position, int days, double fee, long tariffVersion) {
+        this.preparedPosition = position;
+        this.preparedDays = days;
+        this.preparedFee = fee;
+        this.preparedTariff = tariffVersion;
+        this.preparedParcel = parcel;
+    }
+
+    /**
+     * Get the parcel found when the customer was validated
+     * @return Parcel, or null if the customer was not validated
+     */
+    public Parcel getPreparedParcel() {
+        return preparedParcel;
+    }
+
+    /**
+     * Get the position of the parcel found when the customer was validated
+     * @return Position in the ParcelMap, only meaningful if getPreparedParcel is not null
+     */
+    public int getPreparedPosition() {
+        return preparedPosition;
+    }
+
+    /**
+     * Get the fee quoted when the customer was validated
+     * @return Fee, only meaningful if getPreparedParcel is not null
+     */
+    public double getPreparedFee() {
+        return preparedFee;
+    }
+
+    /**
+     * Get the version of the tariff the prepared fee was worked out under
+     * @return Tariff version, only meaningful if getPreparedParcel is not null
+     */
+    public long getPreparedTariffVersion() {
+        return preparedTariff;
+    }
+
+    /**
+     * Get the days in depot the prepared fee was worked out for
+     * @return Days in depot, only meaningful if getPreparedParcel is not null
+     */
+    public int getPreparedDays() {
+        return preparedDays;
     }
 
     /**
@@ -58,6 +201,6 @@ public class Customer {
      */
     @Override
     public String toString() {
-        return seqNo + "\t" + name + "\t" + parcelID;
+        return seqNo + "\t" + name + "\t" + getParcelID();
     }
 } 
\ No newline at end of file
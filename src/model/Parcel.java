@@ -1,34 +1,91 @@
 package model;
 
+import util.DepotClock;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Parcel class - contains attributes and methods of a parcel
+ * Every parcel gets a version, unique in the process, when it is created.
+ * The arrival day and dimensions never change for a version, so a fee
+ * worked out for one version and one number of days in depot stays right
+ * until the parcel is replaced.
+ *
+ * Days in depot are counted on the DepotClock from the day the parcel
+ * arrived, so a waiting parcel ages without being touched. Collecting the
+ * parcel stops the count on the day it was collected.
  */
 public class Parcel {
+    private static final AtomicIntegerFieldUpdater<Parcel> COLLECTED =
+            AtomicIntegerFieldUpdater.newUpdater(Parcel.class, "collected");
+    private static final AtomicLong VERSIONS = new AtomicLong();
+    private static final DepotClock CLOCK = DepotClock.getInstance();
+
     private String parcelID;
-    private int daysInDepot;
+    private int arrivalDay;
     private double weight;
     private int length;
     private int width;
     private int height;
-    private boolean collected;
+    // Depot day collected on + 1, 0 while waiting; an int so that collection can be claimed atomically
+    private volatile int collected;
+    private final long version;
 
     /**
      * Constructor for Parcel
      * @param parcelID Unique ID of the parcel
-     * @param daysInDepot Number of days in depot
+     * @param daysInDepot Number of days in depot as of today on the DepotClock
      * @param weight Weight of parcel
      * @param length Length of parcel
      * @param width Width of parcel
      * @param height Height of parcel
      */
     public Parcel(String parcelID, int daysInDepot, double weight, int length, int width, int height) {
+        this(parcelID, weight, length, width, height, CLOCK.today() - daysInDepot, VERSIONS.incrementAndGet());
+    }
+
+    /**
+     * Constructor for a parcel that is another view of an existing version,
+     * such as one read back from a store
+     * @param parcelID Unique ID of the parcel
+     * @param weight Weight of parcel
+     * @param length Length of parcel
+     * @param width Width of parcel
+     * @param height Height of parcel
+     * @param arrivalDay Depot day the parcel arrived on
+     * @param version Version of the parcel the values were taken from
+     */
+    protected Parcel(String parcelID, double weight, int length, int width, int height, int arrivalDay,
+                     long version) {
+        this.version = version;
         this.parcelID = parcelID;
-        this.daysInDepot = daysInDepot;
+        this.arrivalDay = arrivalDay;
         this.weight = weight;
         this.length = length;
         this.width = width;
         this.height = height;
-        this.collected = false;
+        this.collected = 0;
+    }
+
+    /**
+     * Recreate a parcel saved with its arrival and collection days, such as
+     * one read back from a journal or snapshot
+     * @param parcelID Unique ID of the parcel
+     * @param weight Weight of parcel
+     * @param length Length of parcel
+     * @param width Width of parcel
+     * @param height Height of parcel
+     * @param arrivalDay Depot day the parcel arrived on
+     * @param collectedDay Depot day the parcel was collected on, or -1 if it is waiting
+     * @return New version of the parcel
+     */
+    public static Parcel restore(String parcelID, double weight, int length, int width, int height,
+                                 int arrivalDay, int collectedDay) {
+        Parcel parcel = new Parcel(parcelID, weight, length, width, height, arrivalDay,
+                VERSIONS.incrementAndGet());
+        parcel.collected = collectedDay + 1;
+        return parcel;
     }
 
     /**
@@ -40,11 +97,29 @@ public class Parcel {
     }
 
     /**
-     * Get the number of days in depot
+     * Get the number of days in depot: up to today for a waiting parcel, up to
+     * the day it was collected for a collected one
      * @return Days in depot
      */
     public int getDaysInDepot() {
-        return daysInDepot;
+        int collectedOn = collected;
+        return (collectedOn == 0 ? CLOCK.today() : collectedOn - 1) - arrivalDay;
+    }
+
+    /**
+     * Get the day the parcel arrived
+     * @return Depot day, see DepotClock
+     */
+    public int getArrivalDay() {
+        return arrivalDay;
+    }
+
+    /**
+     * Get the day the parcel was collected
+     * @return Depot day, or -1 if the parcel is waiting
+     */
+    public int getCollectedDay() {
+        return collected - 1;
     }
 
     /**
@@ -79,19 +154,50 @@ public class Parcel {
         return height;
     }
 
+    /**
+     * Get the volume of the parcel, worked out in longs so it cannot overflow
+     * @return Length x width x height
+     */
+    public long getVolume() {
+        return (long) getLength() * getWidth() * getHeight();
+    }
+
+    /**
+     * Get the version of the parcel, which changes whenever the arrival day
+     * or dimensions do; ageing and collecting the parcel do not change it
+     * @return Version, unique in the process
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * Check if the parcel is collected
      * @return true if collected, false otherwise
      */
     public boolean isCollected() {
-        return collected;
+        return collected != 0;
     }
 
     /**
-     * Set the parcel as collected
+     * Set the parcel as collected. For a parcel held in a ParcelMap use
+     * ParcelMap.markParcelAsCollected, which also keeps the map's indexes up to date.
      */
     public void setCollected(boolean collected) {
-        this.collected = collected;
+        if (!collected) {
+            this.collected = 0;
+        } else {
+            // A parcel already collected keeps its collection day
+            tryMarkCollected();
+        }
+    }
+
+    /**
+     * Atomically mark the parcel as collected today if it is not already
+     * @return true if this call collected the parcel, false if it was already collected
+     */
+    public boolean tryMarkCollected() {
+        return COLLECTED.compareAndSet(this, 0, CLOCK.today() + 1);
     }
 
     /**
@@ -108,6 +214,6 @@ public class Parcel {
      */
     @Override
     public String toString() {
-        return parcelID + "\t" + daysInDepot + "\t" + weight + "\t" + getDimensions();
+        return parcelID + "\t" + getDaysInDepot() + "\t" + weight + "\t" + getDimensions();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,736 @@
+package server;
+
+import collection.Journal;
+import collection.ParcelMap;
+import collection.ParcelQuery;
+import collection.QueueAnalytics;
+import collection.QueueOfCustomers;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import controller.CustomerValidator;
+import controller.FeeRules;
+import controller.ReportGenerator;
+import controller.Worker;
+import model.Customer;
+import model.Parcel;
+import util.AsyncLog;
+import util.DepotClock;
+import util.Metrics;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DepotServer class - headless HTTP front-end to the parcel map, customer
+ * queue and workers, for kiosks and handheld scanners.
+ *
+ * Requests carry their fields as a query string or a form-encoded body and
+ * get JSON back. Lists and reports are streamed as they are produced, so no
+ * response is built in memory. Requests run on virtual threads when the JVM
+ * has them, and otherwise on a fixed pool of platform threads.
+ *
+ * <pre>
+ *   GET  /parcels/{id}                       find a parcel and its fee
+ *   GET  /parcels   status=all|collected|uncollected, minWeight, maxWeight,
+ *                   minDays, maxDays, minVolume, maxVolume, prefix   all optional
+ *   POST /parcels   id, days, weight, length, width, height
+ *   GET  /queue                              customers in queue order
+ *   POST /queue     name, parcelId           join the queue, 422 if the parcel cannot be collected
+ *   POST /queue/next                         serve the next customer
+ *   GET  /queue/exceptions                   customers who cannot be served, and why
+ *   GET  /reports/summary                    counts as JSON
+ *   GET  /reports/full                       the depot report as text
+ *   GET  /reports/queue                      arrival and service rates and waits
+ *   GET  /metrics                            counters and latencies, Prometheus text format
+ *   GET  /tariff                             the fee rules in force, in the tariff file format
+ *   GET  /clock                              the depot day parcels are aged by
+ *   POST /clock/advance  days                move the depot day on, ageing every waiting parcel
+ * </pre>
+ *
+ * A request that changes the depot is answered only once the journal has
+ * forced its change to disk, so whatever a client was told has happened
+ * survives a crash. Requests waiting at the same moment share one force. If
+ * the journal can no longer be written the change is made but answered 503.
+ */
+public class DepotServer {
+    private static final int DEFAULT_PORT = 8080;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int RESPONSE_BUFFER = 8192;
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+    private static final String TEXT_TYPE = "text/plain; charset=utf-8";
+    private static final String METRICS_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    // Read once, when the JDK server is first used
+    private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+    // Customers copied from the queue at a time by GET /queue
+    private static final int QUEUE_PAGE = 256;
+
+    /**
+     * Request that cannot be served as sent; answered with 400 and the message
+     */
+    private static class BadRequestException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        BadRequestException(String message) {
+            super(message);
+        }
+    }
+
+    private final ParcelMap parcelMap;
+    private final QueueOfCustomers customerQueue;
+    private final CustomerValidator validator;
+    private final Journal journal;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AsyncLog log;
+
+    /**
+     * Constructor for DepotServer; the server accepts requests after start
+     * @param parcelMap ParcelMap to serve
+     * @param customerQueue QueueOfCustomers to serve
+     * @param journal Journal of the depot's changes, started, or null if changes are not journaled
+     * @param address Address and port to listen on, port 0 for any free port
+     * @throws IOException if the address cannot be bound
+     */
+    public DepotServer(ParcelMap parcelMap, QueueOfCustomers customerQueue, Journal journal,
+                       InetSocketAddress address) throws IOException {
+        this.parcelMap = parcelMap;
+        this.customerQueue = customerQueue;
+        this.validator = new CustomerValidator(parcelMap, customerQueue);
+        this.journal = journal;
+        this.log = AsyncLog.getInstance();
+        // The JDK server sends headers and body in separate writes; without
+        // TCP_NODELAY each small response waits for the client's delayed ACK
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+        this.server = HttpServer.create(address, 0);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/parcels", guarded(this::handleParcels));
+        server.createContext("/queue", guarded(this::handleQueue));
+        server.createContext("/reports", guarded(this::handleReports));
+        server.createContext("/metrics", guarded(this::handleMetrics));
+        server.createContext("/tariff", guarded(this::handleTariff));
+        server.createContext("/clock", guarded(this::handleClock));
+
+        parcelMap.registerMetrics();
+        customerQueue.registerMetrics();
+    }
+
+    /**
+     * Create the executor requests run on: one virtual thread per request on
+     * a JVM that has them, looked up reflectively so the code still runs on
+     * older JVMs, and otherwise a pool big enough for requests that block on I/O
+     * @return Executor for requests
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger count = new AtomicInteger();
+            int threads = Math.max(16, 8 * Runtime.getRuntime().availableProcessors());
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "http-worker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Check the queued customers against the parcels, then start accepting
+     * requests; from then on customers are checked as they join
+     */
+    public void start() {
+        validator.start();
+        server.start();
+        log.info("Depot server listening on port " + getPort());
+    }
+
+    /**
+     * Stop accepting requests and wait for the running ones to finish
+     * @param delaySeconds Longest time to wait for running requests
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Depot server stopped");
+    }
+
+    /**
+     * Get the port the server listens on
+     * @return Port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Wrap a handler so that every exchange is answered and closed: bad
+     * requests get 400 and anything unexpected gets 500
+     */
+    private HttpHandler guarded(HttpHandler handler) {
+        return exchange -> {
+            try {
+                handler.handle(exchange);
+            } catch (BadRequestException e) {
+                sendJson(exchange, 400, Json.error(e.getMessage()));
+            } catch (IOException e) {
+                // Usually the client went away while the response was streamed
+                log.debug(() -> "IO Error serving " + exchange.getRequestURI() + ": " + e.getMessage());
+            } catch (RuntimeException e) {
+                log.error("Error serving " + exchange.getRequestURI() + ": " + e);
+                sendJson(exchange, 500, Json.error("Internal error"));
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    /**
+     * /parcels and /parcels/{id}
+     */
+    private void handleParcels(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        if (path.startsWith("/parcels/") && path.length() > "/parcels/".length()) {
+            if (requireMethod(exchange, "GET")) {
+                findParcel(exchange, path.substring("/parcels/".length()));
+            }
+        } else if (!path.equals("/parcels") && !path.equals("/parcels/")) {
+            sendJson(exchange, 404, Json.error("No such resource: " + path));
+        } else if ("GET".equals(method)) {
+            listParcels(exchange, readFields(exchange));
+        } else if ("POST".equals(method)) {
+            addParcel(exchange, readFields(exchange));
+        } else {
+            sendMethodNotAllowed(exchange, "GET, POST");
+        }
+    }
+
+    private void findParcel(HttpExchange exchange, String parcelID) throws IOException {
+        Parcel parcel = parcelMap.findParcelByID(parcelID);
+        if (parcel == null) {
+            sendJson(exchange, 404, Json.error("Parcel not found: " + parcelID));
+        } else {
+            double fee = new Worker(parcelMap, customerQueue).quoteFee(parcel);
+            sendJson(exchange, 200, Json.appendParcel(new StringBuilder(160), parcel, fee).toString());
+        }
+    }
+
+    private void listParcels(HttpExchange exchange, Map<String, String> fields) throws IOException {
+        ParcelQuery query = new ParcelQuery();
+        String status = fields.get("status");
+        if ("collected".equals(status)) {
+            query.collected();
+        } else if ("uncollected".equals(status)) {
+            query.waiting();
+        } else if (status != null && !status.equals("all")) {
+            throw new BadRequestException("Status must be all, collected or uncollected: " + status);
+        }
+        if (fields.containsKey("minWeight") || fields.containsKey("maxWeight")) {
+            query.weightBetween(optionalDouble(fields, "minWeight", Double.NEGATIVE_INFINITY),
+                    optionalDouble(fields, "maxWeight", Double.POSITIVE_INFINITY));
+        }
+        if (fields.containsKey("minDays") || fields.containsKey("maxDays")) {
+            query.daysBetween(optionalInt(fields, "minDays", Integer.MIN_VALUE),
+                    optionalInt(fields, "maxDays", Integer.MAX_VALUE));
+        }
+        if (fields.containsKey("minVolume") || fields.containsKey("maxVolume")) {
+            query.volumeBetween(optionalLong(fields, "minVolume", Long.MIN_VALUE),
+                    optionalLong(fields, "maxVolume", Long.MAX_VALUE));
+        }
+        if (fields.containsKey("prefix")) {
+            query.idStartingWith(fields.get("prefix"));
+        }
+        Iterable<Parcel> parcels = parcelMap.query(query);
+
+        Writer out = startStream(exchange, JSON_TYPE);
+        StringBuilder item = new StringBuilder(160);
+        item.append('[');
+        boolean first = true;
+        for (Parcel parcel : parcels) {
+            if (!first) {
+                item.append(',');
+            }
+            first = false;
+            Json.appendParcel(item, parcel);
+            out.append(item);
+            item.setLength(0);
+        }
+        out.append(item.append(']'));
+        out.flush();
+    }
+
+    private void addParcel(HttpExchange exchange, Map<String, String> fields) throws IOException {
+        String parcelID = requiredField(fields, "id");
+        Parcel parcel = new Parcel(parcelID, nonNegativeIntField(fields, "days"), doubleField(fields, "weight"),
+                nonNegativeIntField(fields, "length"), nonNegativeIntField(fields, "width"),
+                nonNegativeIntField(fields, "height"));
+        parcelMap.addParcel(parcel);
+        if (!synced(exchange)) {
+            return;
+        }
+        sendJson(exchange, 201, Json.appendParcel(new StringBuilder(160), parcel).toString());
+    }
+
+    /**
+     * /queue and /queue/next
+     */
+    private void handleQueue(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        if (path.equals("/queue/next")) {
+            if (requireMethod(exchange, "POST")) {
+                processNext(exchange);
+            }
+        } else if (path.equals("/queue/exceptions")) {
+            if (requireMethod(exchange, "GET")) {
+                listExceptions(exchange);
+            }
+        } else if (!path.equals("/queue") && !path.equals("/queue/")) {
+            sendJson(exchange, 404, Json.error("No such resource: " + path));
+        } else if ("GET".equals(method)) {
+            listQueue(exchange);
+        } else if ("POST".equals(method)) {
+            addCustomer(exchange, readFields(exchange));
+        } else {
+            sendMethodNotAllowed(exchange, "GET, POST");
+        }
+    }
+
+    private void listQueue(HttpExchange exchange) throws IOException {
+        Writer out = startStream(exchange, JSON_TYPE);
+        StringBuilder item = new StringBuilder(96);
+        item.append('[');
+        // Copied a page at a time, so a long queue is never held in memory twice;
+        // customers who move forward while it is sent may be missed, as when paging
+        Customer[] customers = new Customer[QUEUE_PAGE];
+        int[] seqNos = new int[QUEUE_PAGE];
+        int from = 0;
+        int count;
+        while ((count = customerQueue.copyCustomers(from, customers, seqNos)) > 0) {
+            for (int i = 0; i < count; i++) {
+                if (from + i > 0) {
+                    item.append(',');
+                }
+                Json.appendCustomer(item, customers[i], seqNos[i]);
+                out.append(item);
+                item.setLength(0);
+            }
+            from += count;
+        }
+        out.append(item.append(']'));
+        out.flush();
+    }
+
+    private void addCustomer(HttpExchange exchange, Map<String, String> fields) throws IOException {
+        String name = requiredField(fields, "name");
+        String parcelID = requiredField(fields, "parcelId");
+        Customer customer;
+        boolean queued;
+        // Numbered and added in one step, so two kiosks never get the same number
+        synchronized (customerQueue) {
+            customer = new Customer(customerQueue.size() + 1, name, parcelID);
+            queued = customerQueue.addCustomer(customer);
+        }
+        if (!synced(exchange)) {
+            return;
+        }
+        if (queued) {
+            sendJson(exchange, 201, Json.appendCustomer(new StringBuilder(96), customer).toString());
+        } else {
+            sendJson(exchange, 422, Json.error("Parcel " + parcelID
+                    + " is not in the depot or was already collected; see /queue/exceptions"));
+        }
+    }
+
+    private void listExceptions(HttpExchange exchange) throws IOException {
+        Writer out = startStream(exchange, JSON_TYPE);
+        StringBuilder item = new StringBuilder(128);
+        item.append('[');
+        boolean first = true;
+        for (CustomerValidator.Rejection rejection : validator.getExceptions()) {
+            if (!first) {
+                item.append(',');
+            }
+            first = false;
+            Json.appendCustomer(item.append("{\"customer\":"), rejection.getCustomer());
+            Json.appendString(item.append(",\"problem\":"), rejection.getProblem().name()).append('}');
+            out.append(item);
+            item.setLength(0);
+        }
+        out.append(item.append(']'));
+        out.flush();
+    }
+
+    /**
+     * Serve the next customer. Each request acts as its own counter, with a
+     * Worker of its own, as CollectionEngine does for its counters.
+     */
+    private void processNext(HttpExchange exchange) throws IOException {
+        Worker worker = new Worker(parcelMap, customerQueue);
+        worker.setValidator(validator);
+        worker.processNextCustomer();
+        StringBuilder json = new StringBuilder(320).append("{\"outcome\":");
+        Json.appendString(json, worker.getLastOutcome().name());
+        if (worker.getLastOutcome() == Worker.Outcome.COLLECTED) {
+            Json.appendCustomer(json.append(",\"customer\":"), worker.getCurrentCustomer());
+            Json.appendParcel(json.append(",\"parcel\":"), worker.getCurrentParcel());
+            json.append(",\"fee\":").append(worker.getCurrentFee());
+        }
+        if (!synced(exchange)) {
+            return;
+        }
+        sendJson(exchange, 200, json.append('}').toString());
+    }
+
+    /**
+     * /reports/summary, /reports/full and /reports/queue
+     */
+    private void handleReports(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/reports/summary")) {
+            if (requireMethod(exchange, "GET")) {
+                sendJson(exchange, 200, "{\"totalParcels\":" + parcelMap.size()
+                        + ",\"collectedParcels\":" + parcelMap.getCollectedCount()
+                        + ",\"waitingParcels\":" + parcelMap.getUncollectedCount()
+                        + ",\"parcelsOverSevenDays\":" + parcelMap.countParcelsInDepotMoreThanDays(7)
+                        + ",\"queueLength\":" + customerQueue.size() + "}");
+            }
+        } else if (path.equals("/reports/queue")) {
+            if (requireMethod(exchange, "GET")) {
+                sendJson(exchange, 200, queueReport());
+            }
+        } else if (path.equals("/reports/full")) {
+            if (requireMethod(exchange, "GET")) {
+                Writer out = startStream(exchange, TEXT_TYPE);
+                new ReportGenerator(parcelMap, new Worker(parcelMap, customerQueue)).writeReport(out, null);
+                out.flush();
+            }
+        } else {
+            sendJson(exchange, 404, Json.error("No such resource: " + path));
+        }
+    }
+
+    /**
+     * Build the queue analytics of the current window as JSON; times are in seconds
+     */
+    private String queueReport() {
+        QueueAnalytics.Summary summary = customerQueue.getAnalytics().getSummary();
+        return new StringBuilder(256)
+                .append("{\"queueLength\":").append(customerQueue.size())
+                .append(",\"oldestWaitSeconds\":").append(customerQueue.getOldestWaitNanos() / 1e9)
+                .append(",\"windowSeconds\":").append(summary.getWindowNanos() / 1e9)
+                .append(",\"arrivals\":").append(summary.getArrivals())
+                .append(",\"served\":").append(summary.getServices())
+                .append(",\"arrivalsPerMinute\":").append(summary.getArrivalsPerMinute())
+                .append(",\"servedPerMinute\":").append(summary.getServicesPerMinute())
+                .append(",\"waitSeconds\":{\"p50\":").append(summary.getWaitPercentile(50) / 1e9)
+                .append(",\"p95\":").append(summary.getWaitPercentile(95) / 1e9)
+                .append(",\"p99\":").append(summary.getWaitPercentile(99) / 1e9)
+                .append(",\"max\":").append(summary.getWaits().getMax() / 1e9)
+                .append("}}").toString();
+    }
+
+    /**
+     * /metrics
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (!path.equals("/metrics")) {
+            sendJson(exchange, 404, Json.error("No such resource: " + path));
+        } else if (requireMethod(exchange, "GET")) {
+            Metrics.getInstance().writeExposition(startStream(exchange, METRICS_TYPE));
+        }
+    }
+
+    /**
+     * /tariff
+     */
+    private void handleTariff(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (!path.equals("/tariff")) {
+            sendJson(exchange, 404, Json.error("No such resource: " + path));
+        } else if (requireMethod(exchange, "GET")) {
+            Writer out = startStream(exchange, TEXT_TYPE);
+            out.append(FeeRules.getInstance().getTariff().getRules());
+            out.flush();
+        }
+    }
+
+    /**
+     * /clock and /clock/advance
+     */
+    private void handleClock(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        DepotClock clock = DepotClock.getInstance();
+        if (path.equals("/clock")) {
+            if (requireMethod(exchange, "GET")) {
+                sendJson(exchange, 200, clockJson(clock.today()));
+            }
+        } else if (path.equals("/clock/advance")) {
+            if (requireMethod(exchange, "POST")) {
+                int days = intField(readFields(exchange), "days");
+                if (days < 0) {
+                    throw new BadRequestException("Field days must not be negative");
+                }
+                int today = clock.advance(days);
+                if (synced(exchange)) {
+                    sendJson(exchange, 200, clockJson(today));
+                }
+            }
+        } else {
+            sendJson(exchange, 404, Json.error("No such resource: " + path));
+        }
+    }
+
+    /**
+     * Wait until the changes made so far are on disk before they are
+     * acknowledged, answering 503 if the journal cannot be written
+     * @return true if the change may be acknowledged
+     */
+    private boolean synced(HttpExchange exchange) throws IOException {
+        if (journal == null) {
+            return true;
+        }
+        try {
+            journal.sync();
+            return true;
+        } catch (IOException e) {
+            log.error("Change not journaled: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sendJson(exchange, 503, Json.error("The change was made but could not be saved"));
+        return false;
+    }
+
+    private static String clockJson(int day) {
+        return "{\"day\":" + day + ",\"date\":\"" + LocalDate.ofEpochDay(day) + "\"}";
+    }
+
+    /**
+     * Check the request method, answering 405 if it is not the expected one
+     * @return true if the request can be served
+     */
+    private static boolean requireMethod(HttpExchange exchange, String method) throws IOException {
+        if (method.equals(exchange.getRequestMethod())) {
+            return true;
+        }
+        sendMethodNotAllowed(exchange, method);
+        return false;
+    }
+
+    private static void sendMethodNotAllowed(HttpExchange exchange, String allowed) throws IOException {
+        exchange.getResponseHeaders().set("Allow", allowed);
+        sendJson(exchange, 405, Json.error("Method not allowed: " + exchange.getRequestMethod()));
+    }
+
+    /**
+     * Send a complete JSON response, unless a response has already been started
+     */
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            return;
+        }
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Start a 200 response of unknown length; the body is sent in chunks as the writer's buffer fills
+     * @return Writer for the body
+     */
+    private static Writer startStream(HttpExchange exchange, String contentType) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, 0);
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8),
+                RESPONSE_BUFFER);
+    }
+
+    /**
+     * Read the fields of the query string and, for a POST, of the form-encoded body
+     */
+    private static Map<String, String> readFields(HttpExchange exchange) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        parseFields(exchange.getRequestURI().getRawQuery(), fields);
+        if ("POST".equals(exchange.getRequestMethod())) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            try (InputStream in = exchange.getRequestBody()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    if (body.size() + read > MAX_BODY_BYTES) {
+                        throw new BadRequestException("Request body larger than " + MAX_BODY_BYTES + " bytes");
+                    }
+                    body.write(buffer, 0, read);
+                }
+            }
+            parseFields(new String(body.toByteArray(), StandardCharsets.UTF_8), fields);
+        }
+        return fields;
+    }
+
+    private static void parseFields(String encoded, Map<String, String> fields) throws UnsupportedEncodingException {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            try {
+                String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8");
+                String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+                fields.put(name, value);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Badly encoded field: " + pair);
+            }
+        }
+    }
+
+    private static String requiredField(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            throw new BadRequestException("Missing field: " + name);
+        }
+        return value.trim();
+    }
+
+    private static int intField(Map<String, String> fields, String name) {
+        try {
+            return Integer.parseInt(requiredField(fields, name));
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Field " + name + " must be a whole number");
+        }
+    }
+
+    private static double optionalDouble(Map<String, String> fields, String name, double missing) {
+        return fields.containsKey(name) ? doubleField(fields, name) : missing;
+    }
+
+    private static int optionalInt(Map<String, String> fields, String name, int missing) {
+        return fields.containsKey(name) ? intField(fields, name) : missing;
+    }
+
+    private static long optionalLong(Map<String, String> fields, String name, long missing) {
+        if (!fields.containsKey(name)) {
+            return missing;
+        }
+        try {
+            return Long.parseLong(requiredField(fields, name));
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Field " + name + " must be a whole number");
+        }
+    }
+
+    private static int nonNegativeIntField(Map<String, String> fields, String name) {
+        int value = intField(fields, name);
+        if (value < 0) {
+            throw new BadRequestException("Field " + name + " must not be negative");
+        }
+        return value;
+    }
+
+    private static double doubleField(Map<String, String> fields, String name) {
+        double value;
+        try {
+            value = Double.parseDouble(requiredField(fields, name));
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Field " + name + " must be a number");
+        }
+        // parseDouble also accepts NaN and Infinity, which no weight can be
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new BadRequestException("Field " + name + " must be a finite number");
+        }
+        if (value < 0) {
+            throw new BadRequestException("Field " + name + " must not be negative");
+        }
+        return value;
+    }
+
+    /**
+     * Run the depot without a window: load the data, recover the journal and
+     * serve HTTP. Fees follow tariff.txt next to the parcel file, reloaded
+     * whenever it changes.
+     * @param args Optional port, parcel file and customer file
+     * @throws IOException if the server cannot be started
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        String parcelFile = args.length > 1 ? args[1] : "parcels.txt";
+        String customerFile = args.length > 2 ? args[2] : "customers.txt";
+        AsyncLog log = AsyncLog.getInstance();
+
+        ParcelMap parcelMap = new ParcelMap();
+        QueueOfCustomers customerQueue = new QueueOfCustomers();
+        Path journalDirectory = Paths.get(parcelFile).toAbsolutePath().resolveSibling("journal");
+        Journal journal = new Journal(journalDirectory, parcelMap, customerQueue);
+        FeeRules.getInstance().watch(Paths.get(parcelFile).toAbsolutePath().resolveSibling("tariff.txt"));
+
+        boolean loaded;
+        if (journal.hasCheckpoint()) {
+            loaded = journal.loadParcelCheckpoint() & journal.loadCustomerCheckpoint();
+        } else {
+            loaded = parcelMap.loadParcelsFromFileParallel(parcelFile)
+                    & customerQueue.loadCustomersFromFileParallel(customerFile);
+        }
+        if (loaded) {
+            journal.replay();
+            journal.start();
+        } else {
+            log.warn("Changes are not journaled because the data did not load");
+            journal = null;
+        }
+
+        DepotServer server = new DepotServer(parcelMap, customerQueue, journal, new InetSocketAddress(port));
+        Journal running = journal;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            try {
+                if (running != null) {
+                    running.close();
+                }
+            } catch (IOException e) {
+                log.error("IO Error closing journal: " + e.getMessage());
+            }
+        }, "depot-server-shutdown"));
+        Metrics.getInstance().registerMBean();
+        DepotClock.getInstance().start();
+        server.start();
+    }
+}
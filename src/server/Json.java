@@ -0,0 +1,120 @@
+package server;
+
+import model.Customer;
+import model.Parcel;
+
+/**
+ * Json class - appends the JSON form of the depot's objects to a StringBuilder.
+ * Responses are streamed by reusing one builder per element, the same way
+ * ReportGenerator writes its lines.
+ */
+final class Json {
+    private Json() {
+    }
+
+    /**
+     * Append a parcel as a JSON object
+     * @param out Builder to append to
+     * @param parcel Parcel to append
+     * @return out
+     */
+    static StringBuilder appendParcel(StringBuilder out, Parcel parcel) {
+        return appendParcelFields(out, parcel).append('}');
+    }
+
+    /**
+     * Append a parcel as a JSON object, with the fee it would cost to collect
+     * @param out Builder to append to
+     * @param parcel Parcel to append
+     * @param fee Fee for the parcel
+     * @return out
+     */
+    static StringBuilder appendParcel(StringBuilder out, Parcel parcel, double fee) {
+        return appendParcelFields(out, parcel).append(",\"fee\":").append(fee).append('}');
+    }
+
+    private static StringBuilder appendParcelFields(StringBuilder out, Parcel parcel) {
+        out.append("{\"id\":");
+        appendString(out, parcel.getParcelID());
+        return out.append(",\"daysInDepot\":").append(parcel.getDaysInDepot())
+                .append(",\"weight\":").append(parcel.getWeight())
+                .append(",\"length\":").append(parcel.getLength())
+                .append(",\"width\":").append(parcel.getWidth())
+                .append(",\"height\":").append(parcel.getHeight())
+                .append(",\"collected\":").append(parcel.isCollected());
+    }
+
+    /**
+     * Append a customer as a JSON object
+     * @param out Builder to append to
+     * @param customer Customer to append
+     * @return out
+     */
+    static StringBuilder appendCustomer(StringBuilder out, Customer customer) {
+        return appendCustomer(out, customer, customer.getSeqNo());
+    }
+
+    /**
+     * Append a customer as a JSON object, with its sequence number in the queue
+     * @param out Builder to append to
+     * @param customer Customer to append
+     * @param seqNo Sequence number to give
+     * @return out
+     */
+    static StringBuilder appendCustomer(StringBuilder out, Customer customer, int seqNo) {
+        out.append("{\"seqNo\":").append(seqNo).append(",\"name\":");
+        appendString(out, customer.getName());
+        out.append(",\"parcelId\":");
+        appendString(out, customer.getParcelID());
+        return out.append('}');
+    }
+
+    /**
+     * Append a string as a quoted JSON string, escaping what JSON requires
+     * @param out Builder to append to
+     * @param value String to append, null gives null
+     * @return out
+     */
+    static StringBuilder appendString(StringBuilder out, String value) {
+        if (value == null) {
+            return out.append("null");
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"');
+    }
+
+    /**
+     * Build an error object
+     * @param message Error message
+     * @return JSON text
+     */
+    static String error(String message) {
+        return appendString(new StringBuilder("{\"error\":"), message).append('}').toString();
+    }
+}
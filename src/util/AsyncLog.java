@@ -0,0 +1,304 @@
+package util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * AsyncLog class - singleton, asynchronous log for the hot paths of the system.
+ *
+ * Callers only drop an entry into a lock-free ring buffer; a background writer
+ * thread formats the entries and appends them to the log file in batches. Memory
+ * use is bounded by the ring buffer and the writer's buffer. Messages can be given
+ * as Suppliers, which are never called for disabled levels and are otherwise
+ * called on the writer thread, so the caller does no string building at all.
+ */
+public class AsyncLog {
+    private static final int RING_CAPACITY = 8192;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private static AsyncLog instance;
+
+    private final LogRingBuffer ring = new LogRingBuffer(RING_CAPACITY);
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.");
+    private final StringBuilder line = new StringBuilder(256);
+    private volatile LogLevel level = LogLevel.INFO;
+    private volatile String filename = "depot.log";
+    private volatile Thread writerThread;
+    private volatile boolean running;
+    private volatile long written;
+    private Writer out;
+    private String openFilename;
+    private long cachedSecond = -1;
+    private String cachedSecondText;
+
+    /**
+     * Private constructor for singleton
+     */
+    private AsyncLog() {
+    }
+
+    /**
+     * Get the single instance of AsyncLog
+     * @return The AsyncLog instance
+     */
+    public static synchronized AsyncLog getInstance() {
+        if (instance == null) {
+            instance = new AsyncLog();
+        }
+        return instance;
+    }
+
+    /**
+     * Set the minimum level that is written
+     * @param level Minimum level
+     */
+    public void setLevel(LogLevel level) {
+        this.level = level;
+    }
+
+    /**
+     * Get the minimum level that is written
+     * @return Minimum level
+     */
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * Set the file that entries are appended to; takes effect with the next batch
+     * @param filename Name of log file
+     */
+    public void setFile(String filename) {
+        this.filename = filename;
+    }
+
+    /**
+     * Check whether entries of a level are written
+     * @param level Level to check
+     * @return true if enabled
+     */
+    public boolean isEnabled(LogLevel level) {
+        return level.compareTo(this.level) >= 0 && level != LogLevel.OFF;
+    }
+
+    /**
+     * Log a lazily built message at DEBUG level
+     * @param message Supplier of the message
+     */
+    public void debug(Supplier<String> message) {
+        log(LogLevel.DEBUG, message);
+    }
+
+    /**
+     * Log a message at INFO level
+     * @param message Message
+     */
+    public void info(String message) {
+        log(LogLevel.INFO, message);
+    }
+
+    /**
+     * Log a lazily built message at INFO level
+     * @param message Supplier of the message
+     */
+    public void info(Supplier<String> message) {
+        log(LogLevel.INFO, message);
+    }
+
+    /**
+     * Log a message at WARN level
+     * @param message Message
+     */
+    public void warn(String message) {
+        log(LogLevel.WARN, message);
+    }
+
+    /**
+     * Log a lazily built message at WARN level
+     * @param message Supplier of the message
+     */
+    public void warn(Supplier<String> message) {
+        log(LogLevel.WARN, message);
+    }
+
+    /**
+     * Log a message at ERROR level
+     * @param message Message
+     */
+    public void error(String message) {
+        log(LogLevel.ERROR, message);
+    }
+
+    /**
+     * Log a message built lazily on the writer thread
+     * @param level Level of the entry
+     * @param message Supplier of the message
+     */
+    public void log(LogLevel level, Supplier<String> message) {
+        if (isEnabled(level)) {
+            enqueue(level, message);
+        }
+    }
+
+    /**
+     * Log a message
+     * @param level Level of the entry
+     * @param message Message
+     */
+    public void log(LogLevel level, String message) {
+        if (isEnabled(level)) {
+            enqueue(level, message);
+        }
+    }
+
+    /**
+     * Wait until every entry logged so far has been written to the file
+     */
+    public void flush() {
+        long target = ring.offeredCount();
+        while (written < target && running) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Write all pending entries and stop the writer thread
+     */
+    public void shutdown() {
+        Thread thread;
+        synchronized (this) {
+            thread = writerThread;
+            running = false;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void enqueue(LogLevel level, Object message) {
+        ensureStarted();
+        long timestamp = System.currentTimeMillis();
+        // When the buffer is full, wait for the writer instead of growing without bound
+        while (!ring.offer(level, timestamp, message) && running) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+    }
+
+    private void ensureStarted() {
+        if (writerThread != null) {
+            return;
+        }
+        synchronized (this) {
+            if (writerThread == null) {
+                running = true;
+                Thread thread = new Thread(this::writeLoop, "async-log-writer");
+                thread.setDaemon(true);
+                writerThread = thread;
+                thread.start();
+                Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "async-log-shutdown"));
+            }
+        }
+    }
+
+    /**
+     * Body of the writer thread: drain in batches, flush when idle
+     */
+    private void writeLoop() {
+        LogRingBuffer.EntrySink sink = this::write;
+        while (true) {
+            boolean stopping = !running;
+            long drained = 0;
+            while (ring.poll(sink)) {
+                drained++;
+            }
+            if (drained > 0) {
+                flushWriter();
+                written += drained;
+            }
+            if (stopping) {
+                break;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        closeWriter();
+    }
+
+    private void write(LogLevel entryLevel, long timestamp, Object message) {
+        String text;
+        try {
+            text = message instanceof Supplier ? String.valueOf(((Supplier<?>) message).get()) : (String) message;
+        } catch (RuntimeException e) {
+            text = "Failed to build log message: " + e;
+        }
+        // Only the millisecond part changes between most entries, so format once per second
+        long second = timestamp / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedSecondText = timeFormat.format(new Date(second * 1000));
+        }
+        int millis = (int) (timestamp % 1000);
+        line.setLength(0);
+        line.append(cachedSecondText)
+                .append((char) ('0' + millis / 100)).append((char) ('0' + millis / 10 % 10)).append((char) ('0' + millis % 10))
+                .append(' ').append(entryLevel).append(' ')
+                .append(text).append(System.lineSeparator());
+        try {
+            writer().append(line);
+        } catch (IOException e) {
+            System.err.println("Error writing log file: " + e.getMessage());
+            out = null;
+        }
+    }
+
+    private Writer writer() throws IOException {
+        String target = filename;
+        if (out == null || !target.equals(openFilename)) {
+            closeWriter();
+            out = new BufferedWriter(new OutputStreamWriter(
+                    Files.newOutputStream(Paths.get(target), StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+                    StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+            openFilename = target;
+        }
+        return out;
+    }
+
+    private void flushWriter() {
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("Error flushing log file: " + e.getMessage());
+            }
+        }
+    }
+
+    private void closeWriter() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                System.err.println("Error closing log file: " + e.getMessage());
+            }
+            out = null;
+        }
+    }
+}
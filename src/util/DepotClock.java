@@ -0,0 +1,185 @@
+package util;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DepotClock class - singleton calendar the depot ages parcels by.
+ *
+ * Days are epoch days (days since 1970-01-01) in the system time zone. A
+ * parcel keeps the day it arrived and works out its days in depot from the
+ * clock, so moving the clock on a day ages every waiting parcel at once: one
+ * volatile write, whatever the size of the depot, and nothing for counters
+ * to wait for. Once started, the clock moves on by itself at midnight; it can
+ * also be moved on by hand, for instance to catch up a depot that was closed.
+ * The clock never goes back. Days moved on by hand are only held in memory;
+ * the Journal records them and restores them on recovery, so parcels that
+ * arrived on an advanced day do not come back with negative days in depot.
+ */
+public class DepotClock {
+    private static final long CHECK_INTERVAL_SECONDS = 60;
+
+    private static DepotClock instance;
+
+    /**
+     * Told when the depot day changes; called on the thread that changed it
+     */
+    public interface DayListener {
+        /**
+         * Called after the depot day has moved on
+         * @param today New depot day
+         */
+        void dayChanged(int today);
+    }
+
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final List<DayListener> listeners = new CopyOnWriteArrayList<>();
+    private final AsyncLog log = AsyncLog.getInstance();
+    private volatile int today = calendarDay();
+    // Days the clock has been moved on by hand, ahead of the calendar; written under the lock
+    private volatile int advancedDays;
+    private ScheduledExecutorService ticker;
+
+    /**
+     * Private constructor for singleton
+     */
+    private DepotClock() {
+    }
+
+    /**
+     * Get the single instance of DepotClock, which starts at today's date.
+     * The depot day is exported as the gauge depot_clock_day.
+     * @return The DepotClock instance
+     */
+    public static synchronized DepotClock getInstance() {
+        if (instance == null) {
+            instance = new DepotClock();
+            Metrics.getInstance().gauge("depot_clock_day", instance::today);
+        }
+        return instance;
+    }
+
+    /**
+     * Get the depot day
+     * @return Epoch day
+     */
+    public int today() {
+        return today;
+    }
+
+    /**
+     * Get the depot day as a date
+     * @return Date of the depot day
+     */
+    public LocalDate getDate() {
+        return LocalDate.ofEpochDay(today);
+    }
+
+    /**
+     * Move the clock on by hand
+     * @param days Days to move on, at least 0
+     * @return New depot day
+     */
+    public synchronized int advance(int days) {
+        if (days < 0) {
+            throw new IllegalArgumentException("The depot clock cannot go back: " + days + " days");
+        }
+        advancedDays += days;
+        return moveTo(today + days);
+    }
+
+    /**
+     * Get the days the clock has been moved on by hand, ahead of the calendar
+     * @return Days ahead of the calendar, at least 0
+     */
+    public int getAdvancedDays() {
+        return advancedDays;
+    }
+
+    /**
+     * Bring back a depot day recorded before a restart, keeping the days it
+     * was moved on by hand so that it carries on ahead of the calendar. The
+     * clock only moves on; a day earlier than the current one is ignored.
+     * @param day Depot day as recorded
+     * @param advancedDays Days the recorded clock was ahead of the calendar
+     * @return New depot day
+     */
+    public synchronized int restore(int day, int advancedDays) {
+        if (advancedDays > this.advancedDays) {
+            this.advancedDays = advancedDays;
+        }
+        return moveTo(Math.max(day, calendarDay() + this.advancedDays));
+    }
+
+    /**
+     * Move the clock on by itself whenever the calendar date changes, checking
+     * once a minute
+     */
+    public synchronized void start() {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "depot-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::tick, 0, CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop moving the clock on by itself
+     */
+    public synchronized void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+
+    /**
+     * Add a listener for changes of the depot day
+     * @param listener Listener to add
+     */
+    public void addDayListener(DayListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener added with addDayListener
+     * @param listener Listener to remove
+     */
+    public void removeDayListener(DayListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Catch up with the calendar, keeping any days moved on by hand
+     */
+    private synchronized void tick() {
+        moveTo(calendarDay() + advancedDays);
+    }
+
+    /**
+     * Move the clock to a day, if it is later, and tell the listeners
+     */
+    private int moveTo(int day) {
+        if (day > today) {
+            today = day;
+            log.info(() -> "Depot day is now " + getDate());
+            for (DayListener listener : listeners) {
+                listener.dayChanged(day);
+            }
+        }
+        return today;
+    }
+
+    private int calendarDay() {
+        return (int) LocalDate.now(zone).toEpochDay();
+    }
+}
@@ -0,0 +1,213 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram class - lock-free histogram of durations in nanoseconds
+ * with HDR-style log-linear buckets.
+ *
+ * Values below 16 get a bucket each; above that every power of two is split
+ * into 16 equal buckets, so any value is known to within 1/16 (6.25%) and the
+ * whole range of a long fits in 960 counters. Recording is a bucket
+ * computation and a single atomic increment, with no locks and no allocation;
+ * like HDR histograms, the sum and mean are estimated from the buckets rather
+ * than kept exactly, to within the same 1/16.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * Consistent-enough copy of a histogram's counts, for reading percentiles
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Get the number of recorded values
+         * @return Count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the total of the recorded values, estimated from the bucket midpoints
+         * @return Sum in nanoseconds
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * Get the largest recorded value
+         * @return Maximum in nanoseconds, 0 if nothing was recorded
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Get the mean of the recorded values, estimated from the bucket midpoints
+         * @return Mean in nanoseconds, 0 if nothing was recorded
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Get a percentile, as the upper bound of the bucket it falls in
+         * @param percentile Percentile from 0 to 100
+         * @return Value in nanoseconds, 0 if nothing was recorded
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Combine this snapshot with another, as if all values had been
+         * recorded in one histogram
+         * @param other Snapshot to add
+         * @return New snapshot holding the values of both
+         */
+        public Snapshot add(Snapshot other) {
+            long[] combined = new long[counts.length];
+            for (int i = 0; i < combined.length; i++) {
+                combined[i] = counts[i] + other.counts[i];
+            }
+            return new Snapshot(combined, count + other.count, sum + other.sum, Math.max(max, other.max));
+        }
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a duration
+     * @param nanos Duration in nanoseconds; negative values count as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucket(nanos));
+        long currentMax = max.get();
+        while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Record the time since a start taken with System.nanoTime()
+     * @param startNanos Start time
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Clear all recorded values. Values recorded during the reset may or may not be kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        max.set(0);
+    }
+
+    /**
+     * Get an empty snapshot, to add other snapshots to
+     * @return Snapshot with no values
+     */
+    public static Snapshot emptySnapshot() {
+        return new Snapshot(new long[BUCKETS], 0, 0, 0);
+    }
+
+    /**
+     * Copy the counts. Values recorded during the copy may or may not be included.
+     * @return Snapshot of the histogram
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+            if (copy[i] != 0) {
+                sum += copy[i] * midpoint(i);
+            }
+        }
+        long maxValue = max.get();
+        // A midpoint can lie above the largest value actually recorded
+        return new Snapshot(copy, count, Math.min(sum, count * maxValue), maxValue);
+    }
+
+    /**
+     * Get the bucket of a non-negative value
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Get the value in the middle of a bucket
+     */
+    static long midpoint(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        long upper = upperBound(bucket);
+        return upper - (upper - lowerBound(bucket)) / 2;
+    }
+
+    /**
+     * Get the smallest value that falls in a bucket
+     */
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Get the largest value that falls in a bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return lowerBound(bucket) + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,12 @@
+package util;
+
+/**
+ * LogLevel enum - severity of a log entry, in increasing order
+ */
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    OFF
+}
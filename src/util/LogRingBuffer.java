@@ -0,0 +1,103 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LogRingBuffer class - bounded, lock-free multi-producer single-consumer queue
+ * of log entries. Each slot carries a sequence number that tells producers when
+ * the slot is free and the consumer when it has been published, so neither side
+ * ever takes a lock.
+ */
+class LogRingBuffer {
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final LogLevel[] levels;
+    private final long[] timestamps;
+    private final Object[] messages;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    /**
+     * Constructor for LogRingBuffer
+     * @param capacity Number of slots, rounded up to a power of two
+     */
+    LogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        levels = new LogLevel[size];
+        timestamps = new long[size];
+        messages = new Object[size];
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add an entry; safe to call from any number of threads
+     * @param level Level of the entry
+     * @param timestamp Time of the entry in milliseconds since the epoch
+     * @param message Message String, or a Supplier of it
+     * @return true if added, false if the buffer is full
+     */
+    boolean offer(LogLevel level, long timestamp, Object message) {
+        long position = tail.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        levels[index] = level;
+        timestamps[index] = timestamp;
+        messages[index] = message;
+        // Publishing the sequence makes the plain writes above visible to the consumer
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Take the next entry; must only be called from the single consumer thread
+     * @param sink Receives the entry
+     * @return true if an entry was taken, false if the buffer is empty
+     */
+    boolean poll(EntrySink sink) {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return false;
+        }
+        LogLevel level = levels[index];
+        long timestamp = timestamps[index];
+        Object message = messages[index];
+        messages[index] = null;
+        sequences.lazySet(index, head + mask + 1);
+        head++;
+        sink.accept(level, timestamp, message);
+        return true;
+    }
+
+    /**
+     * Get the number of entries ever offered successfully
+     * @return Offered entry count
+     */
+    long offeredCount() {
+        return tail.get();
+    }
+
+    /**
+     * Receiver of entries taken from the buffer
+     */
+    interface EntrySink {
+        void accept(LogLevel level, long timestamp, Object message);
+    }
+}
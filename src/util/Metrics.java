@@ -0,0 +1,257 @@
+package util;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Metrics class - singleton registry of the counters, gauges and latency
+ * histograms of the hot paths of the system.
+ *
+ * Metrics are looked up by name once, usually into a static field, and then
+ * recorded without locks: counters are LongAdders and histograms are
+ * LatencyHistograms. Gauges are read only when the metrics are exported.
+ * Names may carry labels in braces, e.g. depot_parse_errors_total{file="parcels"};
+ * metrics that differ only in labels are exported as one family.
+ *
+ * The metrics can be read as text in the Prometheus exposition format, and
+ * through JMX once registerMBean has been called.
+ */
+public class Metrics {
+    /** Name the metrics are registered under with JMX */
+    public static final String OBJECT_NAME = "depot:type=Metrics";
+    /** Quantiles exported for each histogram */
+    static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static Metrics instance;
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private boolean mbeanRegistered;
+
+    /**
+     * Private constructor for singleton
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Get the single instance of Metrics
+     * @return The Metrics instance
+     */
+    public static synchronized Metrics getInstance() {
+        if (instance == null) {
+            instance = new Metrics();
+        }
+        return instance;
+    }
+
+    /**
+     * Get a counter, creating it the first time the name is used
+     * @param name Metric name, with optional labels
+     * @return Counter for the name
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * Get a latency histogram, creating it the first time the name is used
+     * @param name Metric name, with optional labels; values are exported in seconds
+     * @return Histogram for the name
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    /**
+     * Register a gauge, replacing any gauge with the same name
+     * @param name Metric name, with optional labels
+     * @param gauge Reads the current value; called on the exporting thread
+     */
+    public void gauge(String name, DoubleSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Remove a gauge, so it no longer holds on to what it reads
+     * @param name Metric name, with labels
+     */
+    public void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    /**
+     * Get the current values of all counters and gauges
+     * @return Values by metric name, sorted by name
+     */
+    Map<String, Number> values() {
+        Map<String, Number> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsDouble()));
+        return values;
+    }
+
+    /**
+     * Get snapshots of all histograms
+     * @return Snapshots by metric name, sorted by name
+     */
+    Map<String, LatencyHistogram.Snapshot> histogramSnapshots() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+        histograms.forEach((name, histogram) -> snapshots.put(name, histogram.snapshot()));
+        return snapshots;
+    }
+
+    /**
+     * Write all metrics in the Prometheus text exposition format. Histograms are
+     * written as summaries in seconds, with quantiles, sum, count and max.
+     * @param out Writer to write to
+     * @throws IOException if writing fails
+     */
+    public void writeExposition(Writer out) throws IOException {
+        StringBuilder line = new StringBuilder(128);
+        String family = null;
+        Map<String, String> types = new TreeMap<>();
+        counters.keySet().forEach(name -> types.put(name, "counter"));
+        gauges.keySet().forEach(name -> types.put(name, "gauge"));
+        Map<String, Number> values = values();
+        for (Map.Entry<String, String> entry : types.entrySet()) {
+            String name = entry.getKey();
+            Number value = values.get(name);
+            if (value == null) {
+                continue;
+            }
+            family = writeType(out, line, family, familyOf(name), entry.getValue());
+            line.setLength(0);
+            line.append(name).append(' ');
+            out.append(appendValue(line, value).append('\n'));
+        }
+
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : histogramSnapshots().entrySet()) {
+            String name = entry.getKey();
+            String base = familyOf(name);
+            String labels = labelsOf(name);
+            LatencyHistogram.Snapshot snapshot = entry.getValue();
+            family = writeType(out, line, family, base, "summary");
+            for (double quantile : QUANTILES) {
+                line.setLength(0);
+                line.append(base).append('{');
+                if (!labels.isEmpty()) {
+                    line.append(labels).append(',');
+                }
+                line.append("quantile=\"").append(quantile).append("\"} ");
+                appendSeconds(line, snapshot.getPercentile(quantile * 100)).append('\n');
+                out.append(line);
+            }
+            line.setLength(0);
+            appendSeconds(appendName(line, base, "_sum", labels), snapshot.getSum()).append('\n');
+            appendName(line, base, "_count", labels).append(snapshot.getCount()).append('\n');
+            appendSeconds(appendName(line, base, "_max", labels), snapshot.getMax()).append('\n');
+            out.append(line);
+        }
+        out.flush();
+    }
+
+    /**
+     * Get all metrics in the Prometheus text exposition format
+     * @return Exposition text
+     */
+    public String exposition() {
+        StringWriter out = new StringWriter();
+        try {
+            writeExposition(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Register the metrics with the platform MBean server, once
+     * @return true if the metrics are registered
+     */
+    public synchronized boolean registerMBean() {
+        if (mbeanRegistered) {
+            return true;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsJmxBean(this), name);
+            }
+            mbeanRegistered = true;
+        } catch (JMException e) {
+            AsyncLog.getInstance().warn("Could not register metrics MBean: " + e.getMessage());
+        }
+        return mbeanRegistered;
+    }
+
+    /**
+     * Write a TYPE line when a new family starts
+     * @return The current family
+     */
+    private static String writeType(Writer out, StringBuilder line, String current, String family,
+                                    String type) throws IOException {
+        if (family.equals(current)) {
+            return current;
+        }
+        line.setLength(0);
+        out.append(line.append("# TYPE ").append(family).append(' ').append(type).append('\n'));
+        return family;
+    }
+
+    /**
+     * Append a family name with a suffix and its labels, followed by a space
+     */
+    private static StringBuilder appendName(StringBuilder line, String family, String suffix, String labels) {
+        line.append(family).append(suffix);
+        if (!labels.isEmpty()) {
+            line.append('{').append(labels).append('}');
+        }
+        return line.append(' ');
+    }
+
+    /**
+     * Append a value, writing whole numbers without a fraction
+     */
+    private static StringBuilder appendValue(StringBuilder line, Number value) {
+        double d = value.doubleValue();
+        if (value instanceof Double && d == Math.rint(d) && Math.abs(d) < 1e15) {
+            return line.append((long) d);
+        }
+        return line.append(value);
+    }
+
+    private static StringBuilder appendSeconds(StringBuilder line, long nanos) {
+        return line.append(nanos / 1e9);
+    }
+
+    /**
+     * Get the name of a metric without its labels
+     */
+    static String familyOf(String name) {
+        int brace = name.indexOf('{');
+        return brace < 0 ? name : name.substring(0, brace);
+    }
+
+    /**
+     * Get the labels of a metric without the braces, or an empty string
+     */
+    static String labelsOf(String name) {
+        int brace = name.indexOf('{');
+        return brace < 0 ? "" : name.substring(brace + 1, name.length() - 1);
+    }
+}
@@ -0,0 +1,142 @@
+package util;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MetricsJmxBean class - read-only JMX view of the Metrics registry.
+ *
+ * Every counter is a Long and every gauge a Double attribute named after the
+ * metric. Each histogram gives the attributes "name.count", "name.mean_ns", "name.max_ns"
+ * and one "name.pNN_ns" per exported quantile. The attribute "Exposition"
+ * holds the same text as the /metrics endpoint. The attribute list is built
+ * from the registry on each request, so metrics created later show up too.
+ */
+class MetricsJmxBean implements DynamicMBean {
+    private static final String EXPOSITION = "Exposition";
+
+    private final Metrics metrics;
+
+    /**
+     * Constructor for MetricsJmxBean
+     * @param metrics Registry to expose
+     */
+    MetricsJmxBean(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        if (EXPOSITION.equals(attribute)) {
+            return metrics.exposition();
+        }
+        Number value = metrics.values().get(attribute);
+        if (value != null) {
+            return value;
+        }
+        int dot = attribute.lastIndexOf('.');
+        if (dot > 0) {
+            LatencyHistogram.Snapshot snapshot = metrics.histogramSnapshots().get(attribute.substring(0, dot));
+            if (snapshot != null) {
+                Object statistic = statistic(snapshot, attribute.substring(dot + 1));
+                if (statistic != null) {
+                    return statistic;
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // Left out, as the JMX contract allows
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName), "No operations on metrics");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        attributes.add(new MBeanAttributeInfo(EXPOSITION, String.class.getName(),
+                "All metrics in the Prometheus text format", true, false, false));
+        for (Map.Entry<String, Number> entry : metrics.values().entrySet()) {
+            attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                    entry.getKey(), true, false, false));
+        }
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : metrics.histogramSnapshots().entrySet()) {
+            String name = entry.getKey();
+            attributes.add(new MBeanAttributeInfo(name + ".count", Long.class.getName(),
+                    "Number of recorded values", true, false, false));
+            attributes.add(new MBeanAttributeInfo(name + ".mean_ns", Double.class.getName(),
+                    "Mean in nanoseconds", true, false, false));
+            attributes.add(new MBeanAttributeInfo(name + ".max_ns", Long.class.getName(),
+                    "Maximum in nanoseconds", true, false, false));
+            for (double quantile : Metrics.QUANTILES) {
+                attributes.add(new MBeanAttributeInfo(name + "." + quantileName(quantile), Long.class.getName(),
+                        quantile + " quantile in nanoseconds", true, false, false));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "Depot hot-path metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+
+    /**
+     * Read one statistic of a histogram by its attribute suffix
+     * @return Value, or null if the suffix is unknown
+     */
+    private static Object statistic(LatencyHistogram.Snapshot snapshot, String suffix) {
+        switch (suffix) {
+            case "count":
+                return snapshot.getCount();
+            case "mean_ns":
+                return snapshot.getMean();
+            case "max_ns":
+                return snapshot.getMax();
+            default:
+                for (double quantile : Metrics.QUANTILES) {
+                    if (quantileName(quantile).equals(suffix)) {
+                        return snapshot.getPercentile(quantile * 100);
+                    }
+                }
+                return null;
+        }
+    }
+
+    /**
+     * Name a quantile the way percentiles are usually written, e.g. 0.999 as p999_ns
+     */
+    private static String quantileName(double quantile) {
+        String digits = String.valueOf(quantile).substring(2);
+        return "p" + (digits.length() == 1 ? digits + "0" : digits) + "_ns";
+    }
+}
@@ -0,0 +1,314 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ParcelIdCodec class - turns parcel IDs into long keys and back.
+ *
+ * IDs of the usual shape, up to 3 capital letters followed by 1 to 12 digits
+ * (for example "C0001234" or "X42"), are packed into the key itself, leading
+ * zeros included, so equal IDs always give equal keys and no table is needed.
+ * Any other ID is interned once in a process-wide table and its key is a
+ * handle into that table. Interned IDs are never freed, so only the parcel
+ * stores encode; anything that merely refers to a parcel, such as a
+ * customer, uses find. A key is never 0, which is kept for NO_KEY.
+ */
+public final class ParcelIdCodec {
+    /** Key of an ID that has never been seen */
+    public static final long NO_KEY = 0;
+
+    private static final int MAX_LETTERS = 3;
+    private static final int MAX_DIGITS = 12;
+    private static final int VALUE_BITS = 40;
+    private static final long INTERNED = 1L << 63;
+    private static final long LETTER_SLOTS_MASK = (1L << (5 * MAX_LETTERS)) - 1;
+    private static final long[] POWERS_OF_TEN = new long[MAX_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_DIGITS; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    // Fallback for IDs that cannot be packed; handles index into internedIDs
+    private static final Map<String, Long> internedKeys = new ConcurrentHashMap<>();
+    private static volatile String[] internedIDs = new String[64];
+    private static int internedCount;
+
+    private ParcelIdCodec() {
+    }
+
+    /**
+     * Get the key of an ID, interning the ID if it cannot be packed
+     * @param parcelID Parcel ID
+     * @return Key, never NO_KEY
+     */
+    public static long encode(String parcelID) {
+        long key = pack(parcelID);
+        return key != NO_KEY ? key : intern(parcelID);
+    }
+
+    /**
+     * Get the key of an ID held as bytes in a buffer, without creating a String
+     * unless the ID has to be interned
+     * @param buf Buffer holding the ID as UTF-8
+     * @param start Index of the first byte
+     * @param end Index after the last byte
+     * @return Key, never NO_KEY
+     */
+    public static long encode(byte[] buf, int start, int end) {
+        long key = pack(buf, start, end);
+        return key != NO_KEY ? key : intern(new String(buf, start, end - start, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the key of an ID held as bytes in a buffer without interning it,
+     * creating a String only if the ID cannot be packed
+     * @param buf Buffer holding the ID as UTF-8
+     * @param start Index of the first byte
+     * @param end Index after the last byte
+     * @return Key, or NO_KEY if the ID cannot be packed and has never been interned
+     */
+    public static long find(byte[] buf, int start, int end) {
+        long key = pack(buf, start, end);
+        if (key != NO_KEY) {
+            return key;
+        }
+        Long interned = internedKeys.get(new String(buf, start, end - start, StandardCharsets.UTF_8));
+        return interned != null ? interned : NO_KEY;
+    }
+
+    /**
+     * Get the key of an ID without interning it, for lookups
+     * @param parcelID Parcel ID
+     * @return Key, or NO_KEY if the ID cannot be packed and has never been interned
+     */
+    public static long find(String parcelID) {
+        long key = pack(parcelID);
+        if (key != NO_KEY) {
+            return key;
+        }
+        Long interned = internedKeys.get(parcelID);
+        return interned != null ? interned : NO_KEY;
+    }
+
+    /**
+     * Get the ID of a key
+     * @param key Key from encode or find
+     * @return Parcel ID
+     */
+    public static String decode(long key) {
+        if ((key & INTERNED) != 0) {
+            return internedIDs[(int) key];
+        }
+        long value = key & ((1L << VALUE_BITS) - 1);
+        int digits = (int) (key >>> VALUE_BITS) & 0xF;
+        int letters = (int) (key >>> (VALUE_BITS + 4 + 5 * MAX_LETTERS));
+        char[] id = new char[letters + digits];
+        for (int i = 0; i < letters; i++) {
+            id[i] = (char) ('A' - 1 + ((key >>> (VALUE_BITS + 4 + 5 * (MAX_LETTERS - 1 - i))) & 0x1F));
+        }
+        for (int i = id.length - 1; i >= letters; i--) {
+            id[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(id);
+    }
+
+    /**
+     * Get a number that sorts packed keys in the same order as their IDs, for
+     * sorted indexes of IDs. Letters are compared first, then the digits read
+     * as a fraction (so "C05" sorts before "C1", as it does as a string),
+     * then the number of digits.
+     * @param key Key from encode or find
+     * @return Order key, from 0 up, or -1 if the ID was interned
+     */
+    public static long orderKey(long key) {
+        if ((key & INTERNED) != 0) {
+            return -1;
+        }
+        long value = key & ((1L << VALUE_BITS) - 1);
+        int digits = (int) (key >>> VALUE_BITS) & 0xF;
+        long letters = (key >>> (VALUE_BITS + 4)) & LETTER_SLOTS_MASK;
+        return orderKey(letters, value * POWERS_OF_TEN[MAX_DIGITS - digits], digits);
+    }
+
+    /**
+     * Get the key an order key was made from
+     * @param orderKey Order key from orderKey
+     * @return Key
+     */
+    public static long fromOrderKey(long orderKey) {
+        int digits = (int) orderKey & 0xF;
+        long value = ((orderKey >>> 4) & ((1L << VALUE_BITS) - 1)) / POWERS_OF_TEN[MAX_DIGITS - digits];
+        long slots = orderKey >>> (VALUE_BITS + 4);
+        long letters = 0;
+        while (letters < MAX_LETTERS && ((slots >>> (5 * (MAX_LETTERS - 1 - letters))) & 0x1F) != 0) {
+            letters++;
+        }
+        return ((((letters << (5 * MAX_LETTERS)) | slots) << 4 | digits) << VALUE_BITS) | value;
+    }
+
+    /**
+     * Get the lowest order key of the packed IDs that start with a prefix
+     * @param prefix Start of an ID
+     * @return Order key, or -1 if no ID that can be packed starts with the prefix
+     */
+    public static long firstOrderKey(String prefix) {
+        return prefixOrderKey(prefix, false);
+    }
+
+    /**
+     * Get the highest order key of the packed IDs that start with a prefix
+     * @param prefix Start of an ID
+     * @return Order key, or -1 if no ID that can be packed starts with the prefix
+     */
+    public static long lastOrderKey(String prefix) {
+        return prefixOrderKey(prefix, true);
+    }
+
+    /**
+     * Work out one end of the range of order keys of a prefix. A prefix of
+     * letters only covers every ID whose letters start with it; a prefix with
+     * digits covers the IDs with exactly its letters and digits that start
+     * with its digits.
+     */
+    private static long prefixOrderKey(String prefix, boolean last) {
+        int length = prefix.length();
+        int letters = 0;
+        while (letters < length && letters < MAX_LETTERS && isLetter(prefix.charAt(letters))) {
+            letters++;
+        }
+        int digits = length - letters;
+        if (digits > MAX_DIGITS) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = letters; i < length; i++) {
+            char c = prefix.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        long slots = 0;
+        for (int i = 0; i < MAX_LETTERS; i++) {
+            // Letters the prefix leaves open run from none (0) to 'Z' (26)
+            int letter = i < letters ? prefix.charAt(i) - 'A' + 1 : (digits == 0 && last ? 26 : 0);
+            slots = (slots << 5) | letter;
+        }
+        if (digits == 0) {
+            return last ? orderKey(slots, POWERS_OF_TEN[MAX_DIGITS] - 1, MAX_DIGITS) : orderKey(slots, 0, 0);
+        }
+        long scale = POWERS_OF_TEN[MAX_DIGITS - digits];
+        return last ? orderKey(slots, (value + 1) * scale - 1, MAX_DIGITS) : orderKey(slots, value * scale, digits);
+    }
+
+    private static long orderKey(long letterSlots, long leftAlignedValue, int digits) {
+        return (letterSlots << (VALUE_BITS + 4)) | (leftAlignedValue << 4) | digits;
+    }
+
+    /**
+     * Spread a key over an int, for hash tables keyed by ID
+     * @param key Key
+     * @return Well mixed hash
+     */
+    public static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Pack an ID of the usual shape
+     * @return Packed key, or NO_KEY if the ID has another shape
+     */
+    private static long pack(String parcelID) {
+        int length = parcelID.length();
+        int letters = 0;
+        while (letters < length && letters < MAX_LETTERS && isLetter(parcelID.charAt(letters))) {
+            letters++;
+        }
+        int digits = length - letters;
+        if (digits < 1 || digits > MAX_DIGITS) {
+            return NO_KEY;
+        }
+        long value = 0;
+        for (int i = letters; i < length; i++) {
+            char c = parcelID.charAt(i);
+            if (c < '0' || c > '9') {
+                return NO_KEY;
+            }
+            value = value * 10 + (c - '0');
+        }
+        long key = letters;
+        for (int i = 0; i < MAX_LETTERS; i++) {
+            key = (key << 5) | (i < letters ? parcelID.charAt(i) - 'A' + 1 : 0);
+        }
+        return (((key << 4) | digits) << VALUE_BITS) | value;
+    }
+
+    /**
+     * Pack an ID of the usual shape held as bytes
+     * @return Packed key, or NO_KEY if the ID has another shape
+     */
+    private static long pack(byte[] buf, int start, int end) {
+        int length = end - start;
+        int letters = 0;
+        while (letters < length && letters < MAX_LETTERS && isLetter(buf[start + letters])) {
+            letters++;
+        }
+        int digits = length - letters;
+        if (digits < 1 || digits > MAX_DIGITS) {
+            return NO_KEY;
+        }
+        long value = 0;
+        for (int i = start + letters; i < end; i++) {
+            if (buf[i] < '0' || buf[i] > '9') {
+                return NO_KEY;
+            }
+            value = value * 10 + (buf[i] - '0');
+        }
+        return packed(buf, start, letters, digits, value);
+    }
+
+    private static long packed(byte[] buf, int start, int letters, int digits, long value) {
+        long key = letters;
+        for (int i = 0; i < MAX_LETTERS; i++) {
+            key = (key << 5) | (i < letters ? buf[start + i] - 'A' + 1 : 0);
+        }
+        return (((key << 4) | digits) << VALUE_BITS) | value;
+    }
+
+    private static boolean isLetter(int c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    /**
+     * Get the handle of an ID that cannot be packed, adding it to the table the first time
+     */
+    private static long intern(String parcelID) {
+        Long key = internedKeys.get(parcelID);
+        if (key != null) {
+            return key;
+        }
+        synchronized (internedKeys) {
+            key = internedKeys.get(parcelID);
+            if (key == null) {
+                String[] ids = internedIDs;
+                if (internedCount == ids.length) {
+                    ids = Arrays.copyOf(ids, ids.length * 2);
+                }
+                ids[internedCount] = parcelID;
+                // Published before the key, so a key that can be seen can be decoded
+                internedIDs = ids;
+                key = INTERNED | internedCount++;
+                internedKeys.put(parcelID, key);
+            }
+            return key;
+        }
+    }
+}
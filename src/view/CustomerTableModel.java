@@ -1,49 +1,165 @@
 package view;
 
+import collection.QueueOfCustomers;
 import model.Customer;
 
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.table.AbstractTableModel;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * CustomerTableModel class - Model for customer table
+ *
+ * Rows are read straight from the QueueOfCustomers by position, so nothing is
+ * copied. Queue changes are recorded in order as runs (for example twenty
+ * customers served from the front) and replayed once per frame as one
+ * rows-deleted or rows-inserted event per run.
  */
 public class CustomerTableModel extends AbstractTableModel {
-    private List<Customer> customers;
-    private final String[] columnNames = {"Seq No", "Name", "Parcel ID"};
+    private static final int FRAME_MILLIS = 16;
 
     /**
-     * Constructor for CustomerTableModel
+     * Consecutive changes of one kind at neighbouring positions
      */
-    public CustomerTableModel() {
-        this.customers = new ArrayList<>();
+    private static class Run {
+        final boolean removal;
+        final int index;
+        int length;
+
+        Run(boolean removal, int index, int length) {
+            this.removal = removal;
+            this.index = index;
+            this.length = length;
+        }
     }
 
+    private final QueueOfCustomers queue;
+    private final String[] columnNames = {"Seq No", "Name", "Parcel ID"};
+
+    // Row count the table has been told about; only used on the event dispatch thread
+    private int rowCount;
+    // Changes since the last frame in queue order, guarded by pendingLock
+    private final Object pendingLock = new Object();
+    private List<Run> pendingRuns = new ArrayList<>();
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+    private final Timer frameTimer;
+
     /**
-     * Set customers to display
-     * @param customers List of customers to display
+     * Constructor for CustomerTableModel
+     * @param queue QueueOfCustomers to display
      */
-    public void setCustomers(List<Customer> customers) {
-        this.customers = new ArrayList<>(customers);
-        fireTableDataChanged();
+    public CustomerTableModel(QueueOfCustomers queue) {
+        this.queue = queue;
+        this.frameTimer = new Timer(FRAME_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                flushChanges();
+            }
+        });
+        frameTimer.setRepeats(false);
+
+        // Read the size and start listening in one step, so no change is counted twice or missed
+        synchronized (queue) {
+            this.rowCount = queue.size();
+            queue.addQueueListener(new QueueOfCustomers.QueueListener() {
+                @Override
+                public void customersAdded(int firstIndex, int lastIndex) {
+                    record(false, firstIndex, lastIndex - firstIndex + 1);
+                }
+
+                @Override
+                public void customerRemoved(int index) {
+                    record(true, index, 1);
+                }
+            });
+        }
     }
-    
+
     /**
      * Get the customer at the specified row
      * @param row Row index
      * @return Customer at row
      */
     public Customer getCustomerAt(int row) {
-        if (row >= 0 && row < customers.size()) {
-            return customers.get(row);
+        if (row >= 0 && row < rowCount) {
+            return queue.getCustomerAt(row);
         }
         return null;
     }
-    
+
+    /**
+     * Record a change, extending the last run where possible
+     */
+    private void record(boolean removal, int index, int length) {
+        synchronized (pendingLock) {
+            Run last = pendingRuns.isEmpty() ? null : pendingRuns.get(pendingRuns.size() - 1);
+            if (last != null && last.removal == removal
+                    && index == (removal ? last.index : last.index + last.length)) {
+                // Removals at the same position, or additions right after the last ones
+                last.length += length;
+            } else {
+                pendingRuns.add(new Run(removal, index, length));
+            }
+        }
+        scheduleFrame();
+    }
+
+    /**
+     * Start the frame timer unless a frame is already due; safe on any thread
+     */
+    private void scheduleFrame() {
+        if (!frameScheduled.get() && frameScheduled.compareAndSet(false, true)) {
+            if (SwingUtilities.isEventDispatchThread()) {
+                frameTimer.restart();
+            } else {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        frameTimer.restart();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Replay the changes since the last frame as table events
+     */
+    private void flushChanges() {
+        // Cleared first, so a change arriving from now on schedules another frame
+        frameScheduled.set(false);
+        List<Run> runs;
+        synchronized (pendingLock) {
+            runs = pendingRuns;
+            pendingRuns = new ArrayList<>();
+        }
+
+        int firstRenumbered = Integer.MAX_VALUE;
+        for (Run run : runs) {
+            int last = run.index + run.length - 1;
+            if (run.removal) {
+                rowCount -= run.length;
+                fireTableRowsDeleted(run.index, last);
+                firstRenumbered = Math.min(firstRenumbered, run.index);
+            } else {
+                rowCount += run.length;
+                fireTableRowsInserted(run.index, last);
+            }
+        }
+        if (firstRenumbered < rowCount) {
+            // Customers behind a removed one have new sequence numbers
+            fireTableRowsUpdated(firstRenumbered, rowCount - 1);
+        }
+    }
+
     @Override
     public int getRowCount() {
-        return customers.size();
+        return rowCount;
     }
 
     @Override
@@ -58,11 +174,11 @@ public class CustomerTableModel extends AbstractTableModel {
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        if (rowIndex >= 0 && rowIndex < customers.size()) {
-            Customer customer = customers.get(rowIndex);
+        Customer customer = getCustomerAt(rowIndex);
+        if (customer != null) {
             switch (columnIndex) {
                 case 0:
-                    return customer.getSeqNo();
+                    return queue.getSeqNoAt(rowIndex);
                 case 1:
                     return customer.getName();
                 case 2:
@@ -73,4 +189,4 @@ public class CustomerTableModel extends AbstractTableModel {
         }
         return "N/A";
     }
-} 
\ No newline at end of file
+}
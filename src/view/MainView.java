@@ -1,29 +1,54 @@
 package view;
 
+import controller.CustomerValidator;
+import controller.FeeRules;
+import controller.ReportGenerator;
 import controller.Worker;
 import model.Customer;
 import model.Parcel;
+import collection.Journal;
+import collection.LoadProgressListener;
 import collection.ParcelMap;
 import collection.QueueOfCustomers;
-import util.Log;
+import util.AsyncLog;
+import util.DepotClock;
+import util.Metrics;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.TitledBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * MainView class - Main GUI window of the application
+ *
+ * Changes are journaled but shown without waiting for the journal to force
+ * them to disk, so the window never stalls on a disk write; a crash may lose
+ * the last changes made, unlike in server mode, where a change is answered
+ * only once it is on disk.
  */
 public class MainView extends JFrame {
     // Models
     private ParcelMap parcelMap;
     private QueueOfCustomers queueOfCustomers;
     private Worker worker;
-    private Log log;
+    private CustomerValidator customerValidator;
+    private Journal journal;
+    private AsyncLog log;
     
     // Table models
     private ParcelTableModel parcelTableModel;
@@ -36,11 +61,31 @@ public class MainView extends JFrame {
     private JLabel lblCurrentCustomer;
     private JLabel lblCurrentParcel;
     private JLabel lblCurrentFee;
+    private JProgressBar loadProgressBar;
+    // Buttons that change the depot; held back while loading, until the journal is running
+    private JButton btnProcessNext;
+    private JButton btnAddCustomer;
+    private JButton btnAddParcel;
+    
+    // Progress of the parcel and customer loads, in percent; used on the event dispatch thread
+    private final int[] loadProgress = new int[2];
+    private int loadsRunning;
+    private boolean loadFailed;
     
     // File paths
     private String parcelFilePath = "parcels.txt";
     private String customerFilePath = "customers.txt";
-    private String logFilePath = "log.txt";
+    private String reportFilePath = "report.txt";
+    private String journalDirectoryName = "journal";
+    private String tariffFileName = "tariff.txt";
+    
+    // Find Parcel lists at most this many matches, allowing one typing error
+    // from FUZZY_ONE_LENGTH characters typed and two from FUZZY_TWO_LENGTH
+    private static final int FIND_MATCH_LIMIT = 50;
+    private static final int FUZZY_ONE_LENGTH = 3;
+    private static final int FUZZY_TWO_LENGTH = 6;
+    // How often the Find Parcel dialog checks whether the IDs are indexed yet
+    private static final int FIND_RETRY_MILLIS = 200;
     
     /**
      * Constructor for MainView
@@ -50,15 +95,44 @@ public class MainView extends JFrame {
         parcelMap = new ParcelMap();
         queueOfCustomers = new QueueOfCustomers();
         worker = new Worker(parcelMap, queueOfCustomers);
-        log = Log.getInstance();
+        customerValidator = new CustomerValidator(parcelMap, queueOfCustomers);
+        worker.setValidator(customerValidator);
+        log = AsyncLog.getInstance();
+        registerMetrics();
         
         // Initialize UI
         initializeUI();
+        startClock();
         
         // Load data
         loadData();
     }
     
+    /**
+     * Publish gauges of the depot's size and queue with the hot-path metrics
+     * and make them all readable over JMX, e.g. from JConsole
+     */
+    private void registerMetrics() {
+        parcelMap.registerMetrics();
+        queueOfCustomers.registerMetrics();
+        Metrics.getInstance().registerMBean();
+    }
+    
+    /**
+     * Age the parcels by the depot clock from today on, repainting the parcel
+     * table whenever the day changes
+     */
+    private void startClock() {
+        DepotClock clock = DepotClock.getInstance();
+        clock.addDayListener(new DepotClock.DayListener() {
+            @Override
+            public void dayChanged(int today) {
+                parcelTableModel.refreshAllRows();
+            }
+        });
+        clock.start();
+    }
+    
     /**
      * Initialize the UI components
      */
@@ -67,14 +141,20 @@ public class MainView extends JFrame {
         setSize(800, 600);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                closeJournal();
+            }
+        });
         
         // Main panel with border layout
         JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
         mainPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
         
         // Create table models
-        parcelTableModel = new ParcelTableModel();
-        customerTableModel = new CustomerTableModel();
+        parcelTableModel = new ParcelTableModel(parcelMap);
+        customerTableModel = new CustomerTableModel(queueOfCustomers);
         
         // Create tables
         parcelTable = new JTable(parcelTableModel);
@@ -98,13 +178,18 @@ public class MainView extends JFrame {
         // Create current parcel panel
         createCurrentParcelPanel();
         
-        // Create action panel
-        JPanel actionPanel = createActionPanel();
+        // Create action panel, with the load progress bar below it
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(createActionPanel(), BorderLayout.CENTER);
+        loadProgressBar = new JProgressBar(0, 100);
+        loadProgressBar.setStringPainted(true);
+        loadProgressBar.setVisible(false);
+        southPanel.add(loadProgressBar, BorderLayout.SOUTH);
         
         // Add components to main panel
         mainPanel.add(tablesPanel, BorderLayout.CENTER);
         mainPanel.add(currentParcelPanel, BorderLayout.NORTH);
-        mainPanel.add(actionPanel, BorderLayout.SOUTH);
+        mainPanel.add(southPanel, BorderLayout.SOUTH);
         
         // Set content pane
         setContentPane(mainPanel);
@@ -139,11 +224,12 @@ public class MainView extends JFrame {
     private JPanel createActionPanel() {
         JPanel actionPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 10));
         
-        JButton btnProcessNext = new JButton("Process Next Customer");
-        JButton btnAddCustomer = new JButton("Add New Customer");
-        JButton btnAddParcel = new JButton("Add New Parcel");
+        btnProcessNext = new JButton("Process Next Customer");
+        btnAddCustomer = new JButton("Add New Customer");
+        btnAddParcel = new JButton("Add New Parcel");
         JButton btnFindParcel = new JButton("Find Parcel");
         JButton btnGenerateReport = new JButton("Generate Report");
+        JButton btnExceptions = new JButton("Exceptions");
         
         // Add action listeners
         btnProcessNext.addActionListener(new ActionListener() {
@@ -181,12 +267,20 @@ public class MainView extends JFrame {
             }
         });
         
+        btnExceptions.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showExceptionsDialog();
+            }
+        });
+        
         // Add buttons to panel
         actionPanel.add(btnProcessNext);
         actionPanel.add(btnAddCustomer);
         actionPanel.add(btnAddParcel);
         actionPanel.add(btnFindParcel);
         actionPanel.add(btnGenerateReport);
+        actionPanel.add(btnExceptions);
         
         return actionPanel;
     }
@@ -195,21 +289,21 @@ public class MainView extends JFrame {
      * Load data from files
      */
     private void loadData() {
-        log.addLog("Attempting to load data files...");
+        log.info("Attempting to load data files...");
         
         File parcelFile = new File(parcelFilePath);
         File customerFile = new File(customerFilePath);
         
         if (!parcelFile.exists()) {
-            log.addLog("Parcel file not found at: " + parcelFile.getAbsolutePath());
+            log.warn("Parcel file not found at: " + parcelFile.getAbsolutePath());
 
             parcelFile = new File("../" + parcelFilePath);
             parcelFilePath = "../" + parcelFilePath;
             if (parcelFile.exists()) {
-                log.addLog("Found parcel file in parent directory: " + parcelFile.getAbsolutePath());
+                log.info("Found parcel file in parent directory: " + parcelFile.getAbsolutePath());
             } else {
 
-                log.addLog("Current working directory: " + System.getProperty("user.dir"));
+                log.info("Current working directory: " + System.getProperty("user.dir"));
                 JOptionPane.showMessageDialog(this,
                         "Parcel file not found: " + parcelFilePath,
                         "Error", JOptionPane.ERROR_MESSAGE);
@@ -218,14 +312,14 @@ public class MainView extends JFrame {
         }
         
         if (!customerFile.exists()) {
-            log.addLog("Customer file not found at: " + customerFile.getAbsolutePath());
+            log.warn("Customer file not found at: " + customerFile.getAbsolutePath());
   
             customerFile = new File("../" + customerFilePath);
             customerFilePath = "../" + customerFilePath;
             if (customerFile.exists()) {
-                log.addLog("Found customer file in parent directory: " + customerFile.getAbsolutePath());
+                log.info("Found customer file in parent directory: " + customerFile.getAbsolutePath());
             } else {
-                log.addLog("Current working directory: " + System.getProperty("user.dir"));
+                log.info("Current working directory: " + System.getProperty("user.dir"));
                 JOptionPane.showMessageDialog(this,
                         "Customer file not found: " + customerFilePath,
                         "Error", JOptionPane.ERROR_MESSAGE);
@@ -234,42 +328,285 @@ public class MainView extends JFrame {
         }
         
 
-        log.addLog("Loading parcels from: " + parcelFilePath);
-        if (parcelMap.loadParcelsFromFile(parcelFilePath)) {
-            updateParcelTable();
-            log.addLog("Successfully loaded parcels: " + parcelMap.getAllParcels().size());
-        } else {
-            log.addLog("Failed to load parcels from: " + parcelFilePath);
-            JOptionPane.showMessageDialog(this, 
-                    "Error loading parcels from file: " + parcelFilePath, 
-                    "Error", JOptionPane.ERROR_MESSAGE);
+        startLoading(parcelFile, customerFile);
+    }
+    
+    /**
+     * Load parcels and customers at the same time on background threads. The
+     * tables follow the parcel map and queue, so they fill up while the files
+     * are read and the window can be browsed straight away. Changes can only
+     * be made once the journal has started, as the journal replays queue
+     * removals by position and a change made before it would be lost or
+     * shift the replayed ones.
+     * When the journal directory holds a checkpoint, the depot is recovered
+     * from it instead of the text files; see startJournal.
+     * @param parcelFile Parcel text file
+     * @param customerFile Customer text file
+     */
+    private void startLoading(final File parcelFile, final File customerFile) {
+        loadProgress[0] = 0;
+        loadProgress[1] = 0;
+        loadsRunning = 2;
+        loadFailed = false;
+        setChangesEnabled(false);
+        loadProgressBar.setValue(0);
+        loadProgressBar.setString("Loading parcels and customers...");
+        loadProgressBar.setVisible(true);
+        
+        journal = new Journal(new File(parcelFile.getAbsoluteFile().getParentFile(), journalDirectoryName).toPath(),
+                parcelMap, queueOfCustomers);
+        // Fees follow the tariff file next to the parcel file, reloaded whenever it changes
+        FeeRules.getInstance().watch(new File(parcelFile.getAbsoluteFile().getParentFile(), tariffFileName).toPath());
+        final boolean recovering = journal.hasCheckpoint();
+        if (recovering) {
+            log.info("Recovering parcels and customers from the journal checkpoint");
         }
         
-
-        log.addLog("Loading customers from: " + customerFilePath);
-        if (queueOfCustomers.loadCustomersFromFile(customerFilePath)) {
-            updateCustomerTable();
-            log.addLog("Successfully loaded customers: " + queueOfCustomers.size());
-        } else {
-            log.addLog("Failed to load customers from: " + customerFilePath);
-            JOptionPane.showMessageDialog(this, 
-                    "Error loading customers from file: " + customerFilePath, 
-                    "Error", JOptionPane.ERROR_MESSAGE);
+        log.info("Loading parcels from: " + parcelFilePath);
+        new LoadWorker(0) {
+            @Override
+            protected boolean load(LoadProgressListener progress) {
+                return recovering ? journal.loadParcelCheckpoint() : loadParcels(parcelFile, progress);
+            }
+            
+            @Override
+            protected void finished(boolean loaded) {
+                if (loaded) {
+                    log.info("Successfully loaded parcels: " + parcelMap.size());
+                } else {
+                    log.error("Failed to load parcels from: " + parcelFilePath);
+                    JOptionPane.showMessageDialog(MainView.this, 
+                            "Error loading parcels from file: " + parcelFilePath, 
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+        
+        log.info("Loading customers from: " + customerFilePath);
+        new LoadWorker(1) {
+            @Override
+            protected boolean load(LoadProgressListener progress) {
+                return recovering ? journal.loadCustomerCheckpoint() : loadCustomers(customerFile, progress);
+            }
+            
+            @Override
+            protected void finished(boolean loaded) {
+                if (loaded) {
+                    log.info("Successfully loaded customers: " + queueOfCustomers.size());
+                } else {
+                    log.error("Failed to load customers from: " + customerFilePath);
+                    JOptionPane.showMessageDialog(MainView.this, 
+                            "Error loading customers from file: " + customerFilePath, 
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+    
+    /**
+     * LoadWorker class - loads one data file on a background thread and
+     * drives its half of the load progress bar
+     */
+    private abstract class LoadWorker extends SwingWorker<Boolean, Void> {
+        private final int slot;
+        
+        /**
+         * Constructor for LoadWorker
+         * @param slot 0 for parcels, 1 for customers
+         */
+        LoadWorker(int slot) {
+            this.slot = slot;
+            addPropertyChangeListener(new PropertyChangeListener() {
+                @Override
+                public void propertyChange(PropertyChangeEvent evt) {
+                    if ("progress".equals(evt.getPropertyName())) {
+                        showLoadProgress(LoadWorker.this.slot, (Integer) evt.getNewValue());
+                    }
+                }
+            });
+        }
+        
+        /**
+         * Load the file; runs on a background thread
+         * @param progress Receives progress
+         * @return true if successful, false otherwise
+         */
+        protected abstract boolean load(LoadProgressListener progress);
+        
+        /**
+         * Report the result; runs on the event dispatch thread
+         * @param loaded true if the file was loaded
+         */
+        protected abstract void finished(boolean loaded);
+        
+        @Override
+        protected Boolean doInBackground() {
+            return load(new LoadProgressListener() {
+                @Override
+                public void progress(long bytesRead, long totalBytes) {
+                    if (totalBytes > 0) {
+                        setProgress((int) Math.min(100, 100 * bytesRead / totalBytes));
+                    }
+                }
+            });
+        }
+        
+        @Override
+        protected void done() {
+            boolean loaded;
+            try {
+                loaded = get();
+            } catch (Exception e) {
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                log.error("Error loading data: " + cause);
+                loaded = false;
+            }
+            showLoadProgress(slot, 100);
+            finished(loaded);
+            loadFailed |= !loaded;
+            if (--loadsRunning == 0) {
+                loadProgressBar.setVisible(false);
+                startJournal();
+                setChangesEnabled(true);
+                startValidation();
+                // Index the IDs for Find Parcel now, so the first search does not wait for it
+                parcelMap.startIdSearch();
+            }
         }
     }
     
     /**
-     * Update the parcel table
+     * Replay the changes journaled since the data was loaded, then journal
+     * every further change. Runs on the event dispatch thread, so no change
+     * made from the window can come between the replay and the start.
      */
-    private void updateParcelTable() {
-        parcelTableModel.setParcels(parcelMap.getAllParcels());
+    private void startJournal() {
+        if (loadFailed) {
+            log.warn("Changes are not journaled because the data did not load");
+            journal = null;
+            return;
+        }
+        try {
+            journal.replay();
+            journal.start();
+        } catch (IOException e) {
+            log.error("IO Error starting journal: " + e.getMessage());
+            journal = null;
+            JOptionPane.showMessageDialog(this,
+                    "Changes cannot be journaled and will be lost if the program stops: " + e.getMessage(),
+                    "Warning", JOptionPane.WARNING_MESSAGE);
+        }
     }
     
     /**
-     * Update the customer table
+     * Enable or disable the buttons that change the parcels or the queue
+     * @param enabled true to allow changes
      */
-    private void updateCustomerTable() {
-        customerTableModel.setCustomers(queueOfCustomers.getAllCustomers());
+    private void setChangesEnabled(boolean enabled) {
+        btnProcessNext.setEnabled(enabled);
+        btnAddCustomer.setEnabled(enabled);
+        btnAddParcel.setEnabled(enabled);
+    }
+    
+    /**
+     * Check the loaded customers against the loaded parcels and from then on
+     * every customer that joins; customers who cannot be served go to the
+     * exception queue. Not started if the data did not load, as every
+     * customer would be turned away.
+     */
+    private void startValidation() {
+        if (!loadFailed) {
+            customerValidator.start();
+        }
+    }
+    
+    /**
+     * Write the journal out and stop it; called when the window closes
+     */
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.error("IO Error closing journal: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Show the combined progress of the parcel and customer loads
+     * @param slot 0 for parcels, 1 for customers
+     * @param percent Progress of that load
+     */
+    private void showLoadProgress(int slot, int percent) {
+        loadProgress[slot] = percent;
+        loadProgressBar.setValue((loadProgress[0] + loadProgress[1]) / 2);
+        loadProgressBar.setString("Loading: " + parcelMap.size() + " parcels, "
+                + queueOfCustomers.size() + " customers");
+    }
+    
+    /**
+     * Load parcels, preferring a binary snapshot that is newer than the text file.
+     * After a text import a fresh snapshot is written for the next start.
+     * Runs on a background thread.
+     * @param parcelFile Parcel text file
+     * @param progress Receives progress of a text import
+     * @return true if successful, false otherwise
+     */
+    private boolean loadParcels(File parcelFile, LoadProgressListener progress) {
+        String snapshotPath = snapshotPathFor(parcelFilePath);
+        if (isSnapshotCurrent(snapshotPath, parcelFile) && parcelMap.loadSnapshot(snapshotPath)) {
+            return true;
+        }
+        if (parcelMap.loadParcelsFromFile(parcelFilePath, progress)) {
+            parcelMap.saveSnapshot(snapshotPath);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Load customers, preferring a binary snapshot that is newer than the text file.
+     * After a text import a fresh snapshot is written for the next start.
+     * Runs on a background thread.
+     * @param customerFile Customer text file
+     * @param progress Receives progress of a text import
+     * @return true if successful, false otherwise
+     */
+    private boolean loadCustomers(File customerFile, LoadProgressListener progress) {
+        String snapshotPath = snapshotPathFor(customerFilePath);
+        if (isSnapshotCurrent(snapshotPath, customerFile) && queueOfCustomers.loadSnapshot(snapshotPath)) {
+            return true;
+        }
+        if (queueOfCustomers.loadCustomersFromFile(customerFilePath, progress)) {
+            queueOfCustomers.saveSnapshot(snapshotPath);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Get the snapshot file that belongs to a text data file
+     * @param textPath Path of the text file
+     * @return Path of the snapshot file
+     */
+    private String snapshotPathFor(String textPath) {
+        if (textPath.endsWith(".txt")) {
+            textPath = textPath.substring(0, textPath.length() - 4);
+        }
+        return textPath + ".snap";
+    }
+    
+    /**
+     * Check whether a snapshot exists and is at least as new as its text file
+     * @param snapshotPath Path of the snapshot file
+     * @param textFile Text file the snapshot was made from
+     * @return true if the snapshot can be used
+     */
+    private boolean isSnapshotCurrent(String snapshotPath, File textFile) {
+        File snapshotFile = new File(snapshotPath);
+        return snapshotFile.exists() && snapshotFile.lastModified() >= textFile.lastModified();
     }
     
     /**
@@ -296,13 +633,22 @@ public class MainView extends JFrame {
      */
     private void processNextCustomer() {
         if (worker.processNextCustomer()) {
-            updateParcelTable();
-            updateCustomerTable();
+            // The tables follow the parcel map and queue by themselves
             updateCurrentProcessingPanel();
         } else {
-            JOptionPane.showMessageDialog(this, 
-                    "No customers to process or parcel not found", 
-                    "Processing Error", JOptionPane.INFORMATION_MESSAGE);
+            String message;
+            switch (worker.getLastOutcome()) {
+                case QUEUE_EMPTY:
+                    message = "No customers to process";
+                    break;
+                case PARCEL_NOT_FOUND:
+                    message = "The customer's parcel was not found; they have been moved to the exception queue";
+                    break;
+                default:
+                    message = "The customer's parcel was already collected; "
+                            + "they have been moved to the exception queue";
+            }
+            JOptionPane.showMessageDialog(this, message, "Processing Error", JOptionPane.INFORMATION_MESSAGE);
         }
     }
     
@@ -330,13 +676,16 @@ public class MainView extends JFrame {
                 // Create customer with next sequence number
                 int seqNo = queueOfCustomers.size() + 1;
                 Customer newCustomer = new Customer(seqNo, name, parcelID);
-                queueOfCustomers.addCustomer(newCustomer);
-                
-                // Update UI
-                updateCustomerTable();
-                JOptionPane.showMessageDialog(this, 
-                        "Customer added successfully", 
-                        "Success", JOptionPane.INFORMATION_MESSAGE);
+                if (queueOfCustomers.addCustomer(newCustomer)) {
+                    JOptionPane.showMessageDialog(this, 
+                            "Customer added successfully", 
+                            "Success", JOptionPane.INFORMATION_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(this, 
+                            "Parcel " + parcelID + " is not in the depot or was already collected; "
+                            + "the customer has been moved to the exception queue", 
+                            "Customer Not Queued", JOptionPane.WARNING_MESSAGE);
+                }
             } else {
                 JOptionPane.showMessageDialog(this, 
                         "Name and Parcel ID cannot be empty", 
@@ -345,6 +694,25 @@ public class MainView extends JFrame {
         }
     }
     
+    /**
+     * Show the customers in the exception queue and why they cannot be served
+     */
+    private void showExceptionsDialog() {
+        List<CustomerValidator.Rejection> exceptions = customerValidator.getExceptions();
+        if (exceptions.isEmpty()) {
+            JOptionPane.showMessageDialog(this, 
+                    "No customers in the exception queue", 
+                    "Exceptions", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        JList<CustomerValidator.Rejection> list = new JList<>(
+                exceptions.toArray(new CustomerValidator.Rejection[0]));
+        JScrollPane scrollPane = new JScrollPane(list);
+        scrollPane.setPreferredSize(new Dimension(400, 200));
+        JOptionPane.showMessageDialog(this, scrollPane, 
+                "Exceptions (" + exceptions.size() + ")", JOptionPane.PLAIN_MESSAGE);
+    }
+    
     /**
      * Show dialog to add a new parcel
      */
@@ -387,8 +755,6 @@ public class MainView extends JFrame {
                     Parcel newParcel = new Parcel(parcelID, days, weight, length, width, height);
                     parcelMap.addParcel(newParcel);
                     
-                    // Update UI
-                    updateParcelTable();
                     JOptionPane.showMessageDialog(this, 
                             "Parcel added successfully", 
                             "Success", JOptionPane.INFORMATION_MESSAGE);
@@ -406,84 +772,211 @@ public class MainView extends JFrame {
     }
     
     /**
-     * Show dialog to find a parcel
+     * Show dialog to find a parcel. Matches are listed as the ID is typed:
+     * first the IDs that start with the text, then, once enough has been
+     * typed, IDs one or two characters different, so a misheard or mistyped
+     * ID still finds its parcel.
      */
     private void showFindParcelDialog() {
-        String parcelID = JOptionPane.showInputDialog(this, 
-                "Enter Parcel ID to find:", 
-                "Find Parcel", JOptionPane.QUESTION_MESSAGE);
+        final JDialog dialog = new JDialog(this, "Find Parcel", true);
+        final JTextField idField = new JTextField(20);
+        final DefaultListModel<ParcelMap.IdMatch> matches = new DefaultListModel<>();
+        final JList<ParcelMap.IdMatch> matchList = new JList<>(matches);
+        final JLabel lblMatches = new JLabel("Type a parcel ID or the start of one");
+        // Searches again once the IDs are indexed, if they were not when the text was typed
+        final Timer retry = new Timer(FIND_RETRY_MILLIS, null);
+        retry.setRepeats(false);
+        retry.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (dialog.isDisplayable()) {
+                    showMatches(idField.getText().trim(), matches, matchList, lblMatches, retry);
+                }
+            }
+        });
         
-        if (parcelID != null && !parcelID.isEmpty()) {
-            Parcel parcel = parcelMap.findParcelByID(parcelID);
+        matchList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        matchList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                ParcelMap.IdMatch match = (ParcelMap.IdMatch) value;
+                Parcel parcel = match.getParcel();
+                String text = parcel.getParcelID() + "   "
+                        + (parcel.isCollected() ? "collected" : "waiting") + ", "
+                        + parcel.getDaysInDepot() + " days, " + parcel.getWeight() + " kg"
+                        + (match.getDistance() > 0 ? "   (close match)" : "");
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        
+        idField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                showMatches(idField.getText().trim(), matches, matchList, lblMatches, retry);
+            }
             
-            if (parcel != null) {
-                // Show parcel details
-                JOptionPane.showMessageDialog(this, 
-                        "Parcel Found:\n" + 
-                        "ID: " + parcel.getParcelID() + "\n" +
-                        "Days in Depot: " + parcel.getDaysInDepot() + "\n" +
-                        "Weight: " + parcel.getWeight() + "\n" +
-                        "Dimensions: " + parcel.getDimensions() + "\n" +
-                        "Status: " + (parcel.isCollected() ? "Collected" : "Waiting"),
-                        "Parcel Details", JOptionPane.INFORMATION_MESSAGE);
-            } else {
-                JOptionPane.showMessageDialog(this, 
-                        "No parcel found with ID: " + parcelID, 
-                        "Not Found", JOptionPane.INFORMATION_MESSAGE);
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                showMatches(idField.getText().trim(), matches, matchList, lblMatches, retry);
+            }
+            
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        
+        // Enter shows the highlighted match, the closest one unless another was chosen
+        final ActionListener showSelected = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                ParcelMap.IdMatch match = matchList.getSelectedValue();
+                if (match != null) {
+                    showParcelDetails(dialog, match.getParcel());
+                }
+            }
+        };
+        idField.addActionListener(showSelected);
+        matchList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    showSelected.actionPerformed(null);
+                }
             }
+        });
+        
+        JButton btnShow = new JButton("Show Details");
+        btnShow.addActionListener(showSelected);
+        JButton btnClose = new JButton("Close");
+        btnClose.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                dialog.dispose();
+            }
+        });
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttonPanel.add(btnShow);
+        buttonPanel.add(btnClose);
+        
+        JPanel searchPanel = new JPanel(new BorderLayout(5, 5));
+        searchPanel.add(new JLabel("Parcel ID:"), BorderLayout.WEST);
+        searchPanel.add(idField, BorderLayout.CENTER);
+        searchPanel.add(lblMatches, BorderLayout.SOUTH);
+        
+        JScrollPane scrollPane = new JScrollPane(matchList);
+        scrollPane.setPreferredSize(new Dimension(420, 240));
+        JPanel content = new JPanel(new BorderLayout(5, 5));
+        content.setBorder(new EmptyBorder(10, 10, 10, 10));
+        content.add(searchPanel, BorderLayout.NORTH);
+        content.add(scrollPane, BorderLayout.CENTER);
+        content.add(buttonPanel, BorderLayout.SOUTH);
+        
+        dialog.setContentPane(content);
+        dialog.getRootPane().setDefaultButton(btnShow);
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+    
+    /**
+     * List the parcels matching what has been typed in the Find Parcel dialog.
+     * Short texts only list exact prefixes; longer ones allow more typing errors.
+     * @param text ID typed so far
+     * @param matches List model to fill
+     * @param matchList List showing the matches
+     * @param lblMatches Label to describe the result in
+     * @param retry Timer to search again with, while the IDs are still being indexed
+     */
+    private void showMatches(String text, DefaultListModel<ParcelMap.IdMatch> matches,
+                             JList<ParcelMap.IdMatch> matchList, JLabel lblMatches, Timer retry) {
+        matches.clear();
+        if (text.isEmpty()) {
+            lblMatches.setText("Type a parcel ID or the start of one");
+            return;
+        }
+        if (!parcelMap.isIdSearchReady()) {
+            parcelMap.startIdSearch();
+            lblMatches.setText("Indexing parcel IDs...");
+            retry.restart();
+            return;
+        }
+        int maxDistance = text.length() < FUZZY_ONE_LENGTH ? 0 : text.length() < FUZZY_TWO_LENGTH ? 1 : 2;
+        for (ParcelMap.IdMatch match : parcelMap.searchParcelIDs(text, maxDistance, FIND_MATCH_LIMIT)) {
+            matches.addElement(match);
+        }
+        if (matches.isEmpty()) {
+            lblMatches.setText("No parcel found with an ID like " + text);
+        } else {
+            matchList.setSelectedIndex(0);
+            lblMatches.setText(matches.size() == FIND_MATCH_LIMIT
+                    ? "First " + FIND_MATCH_LIMIT + " matches; keep typing to narrow them"
+                    : matches.size() + (matches.size() == 1 ? " match" : " matches"));
         }
     }
     
     /**
-     * Generate report and save to file
+     * Show the details of a parcel
+     * @param owner Window to show the details over
+     * @param parcel Parcel to show
+     */
+    private void showParcelDetails(Component owner, Parcel parcel) {
+        JOptionPane.showMessageDialog(owner, 
+                "Parcel Found:\n" + 
+                "ID: " + parcel.getParcelID() + "\n" +
+                "Days in Depot: " + parcel.getDaysInDepot() + "\n" +
+                "Weight: " + parcel.getWeight() + "\n" +
+                "Dimensions: " + parcel.getDimensions() + "\n" +
+                "Status: " + (parcel.isCollected() ? "Collected" : "Waiting"),
+                "Parcel Details", JOptionPane.INFORMATION_MESSAGE);
+    }
+    
+    /**
+     * Generate report and save to file. The report is written on a background
+     * thread while a progress dialog is shown, so the window stays responsive.
      */
     private void generateReport() {
-        try {
-            // Output report to log
-            log.addLog("=== DEPOT PARCEL SYSTEM REPORT ===");
-            log.addLog("Total parcels: " + parcelMap.getAllParcels().size());
-            log.addLog("Collected parcels: " + parcelMap.getCollectedParcels().size());
-            log.addLog("Waiting parcels: " + parcelMap.getUncollectedParcels().size());
-            
-            log.addLog("\nCOLLECTED PARCELS:");
-            for (Parcel parcel : parcelMap.getCollectedParcels()) {
-                log.addLog(parcel.getParcelID() + " - Days: " + parcel.getDaysInDepot() + 
-                        " - Weight: " + parcel.getWeight() + " - Dimensions: " + parcel.getDimensions() +
-                        " - Fee: £" + String.format("%.2f", worker.calculateFee(parcel)));
-            }
-            
-            log.addLog("\nWAITING PARCELS:");
-            for (Parcel parcel : parcelMap.getUncollectedParcels()) {
-                log.addLog(parcel.getParcelID() + " - Days: " + parcel.getDaysInDepot() + 
-                        " - Weight: " + parcel.getWeight() + " - Dimensions: " + parcel.getDimensions());
+        final ProgressMonitor progressMonitor = new ProgressMonitor(this,
+                "Generating report...", null, 0, 100);
+        progressMonitor.setMillisToDecideToPopup(200);
+        final ReportGenerator generator = new ReportGenerator(parcelMap, worker);
+        
+        SwingWorker<ReportGenerator.Summary, Void> reportWorker = new SwingWorker<ReportGenerator.Summary, Void>() {
+            @Override
+            protected ReportGenerator.Summary doInBackground() throws Exception {
+                return generator.writeReport(reportFilePath, new ReportGenerator.ProgressListener() {
+                    @Override
+                    public void progress(int done, int total) {
+                        setProgress(total == 0 ? 100 : (int) (100L * done / total));
+                    }
+                });
             }
             
-            log.addLog("\nSTATISTICS:");
-            log.addLog("Parcels in depot more than 7 days: " + parcelMap.countParcelsInDepotMoreThanDays(7));
-            
-            // Calculate total fees collected
-            double totalFees = 0;
-            for (Parcel parcel : parcelMap.getCollectedParcels()) {
-                totalFees += worker.calculateFee(parcel);
+            @Override
+            protected void done() {
+                progressMonitor.close();
+                try {
+                    ReportGenerator.Summary summary = get();
+                    log.info("Report generated for " + summary.getTotalParcels() + " parcels: " + reportFilePath);
+                    JOptionPane.showMessageDialog(MainView.this, 
+                            "Report generated successfully and saved to " + reportFilePath, 
+                            "Report Generated", JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception e) {
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(MainView.this, 
+                            "Error generating report: " + cause.getMessage(), 
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
             }
-            log.addLog("Total fees collected: £" + String.format("%.2f", totalFees));
-            
-            log.addLog("=== END OF REPORT ===");
-            
-            // Save to file
-            if (log.saveToFile(logFilePath)) {
-                JOptionPane.showMessageDialog(this, 
-                        "Report generated successfully and saved to " + logFilePath, 
-                        "Report Generated", JOptionPane.INFORMATION_MESSAGE);
-            } else {
-                JOptionPane.showMessageDialog(this, 
-                        "Error saving report to file", 
-                        "Error", JOptionPane.ERROR_MESSAGE);
+        };
+        reportWorker.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if ("progress".equals(evt.getPropertyName())) {
+                    progressMonitor.setProgress((Integer) evt.getNewValue());
+                }
             }
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, 
-                    "Error generating report: " + e.getMessage(), 
-                    "Error", JOptionPane.ERROR_MESSAGE);
-        }
+        });
+        reportWorker.execute();
     }
 } 
\ No newline at end of file
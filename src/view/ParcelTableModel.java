@@ -1,49 +1,140 @@
 package view;
 
+import collection.ParcelMap;
 import model.Parcel;
 
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.table.AbstractTableModel;
-import java.util.ArrayList;
-import java.util.List;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * ParcelTableModel class - Model for parcel table
+ *
+ * Rows are read straight from the ParcelMap by position, so nothing is copied.
+ * Changes reported by the map are collected and turned into table events at
+ * most once per frame: new parcels become one rows-inserted event and
+ * collected parcels one rows-updated event, which only repaints visible rows.
  */
 public class ParcelTableModel extends AbstractTableModel {
-    private List<Parcel> parcels;
+    private static final int FRAME_MILLIS = 16;
+
+    private final ParcelMap parcelMap;
     private final String[] columnNames = {"Parcel ID", "Days in Depot", "Weight", "Dimensions", "Status"};
 
+    // Row count the table has been told about; only used on the event dispatch thread
+    private int rowCount;
+    // Range of positions updated since the last frame, guarded by pendingLock
+    private final Object pendingLock = new Object();
+    private int updatedFrom = Integer.MAX_VALUE;
+    private int updatedTo = -1;
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+    private final Timer frameTimer;
+
     /**
      * Constructor for ParcelTableModel
+     * @param parcelMap ParcelMap to display
      */
-    public ParcelTableModel() {
-        this.parcels = new ArrayList<>();
-    }
+    public ParcelTableModel(ParcelMap parcelMap) {
+        this.parcelMap = parcelMap;
+        this.frameTimer = new Timer(FRAME_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                flushChanges();
+            }
+        });
+        frameTimer.setRepeats(false);
+        this.rowCount = parcelMap.size();
+        parcelMap.addParcelListener(new ParcelMap.ParcelListener() {
+            @Override
+            public void parcelsAdded(int firstPosition, int lastPosition) {
+                scheduleFrame();
+            }
 
-    /**
-     * Set parcels to display
-     * @param parcels List of parcels to display
-     */
-    public void setParcels(List<Parcel> parcels) {
-        this.parcels = new ArrayList<>(parcels);
-        fireTableDataChanged();
+            @Override
+            public void parcelUpdated(int position) {
+                synchronized (pendingLock) {
+                    updatedFrom = Math.min(updatedFrom, position);
+                    updatedTo = Math.max(updatedTo, position);
+                }
+                scheduleFrame();
+            }
+        });
     }
-    
+
     /**
      * Get the parcel at the specified row
      * @param row Row index
      * @return Parcel at row
      */
     public Parcel getParcelAt(int row) {
-        if (row >= 0 && row < parcels.size()) {
-            return parcels.get(row);
+        if (row >= 0 && row < rowCount) {
+            return parcelMap.getParcelAt(row);
         }
         return null;
     }
-    
+
+    /**
+     * Repaint every row at the next frame, for changes that touch every parcel
+     * at once, such as a new depot day; safe on any thread
+     */
+    public void refreshAllRows() {
+        synchronized (pendingLock) {
+            updatedFrom = 0;
+            updatedTo = Integer.MAX_VALUE;
+        }
+        scheduleFrame();
+    }
+
+    /**
+     * Start the frame timer unless a frame is already due; safe on any thread
+     */
+    private void scheduleFrame() {
+        if (!frameScheduled.get() && frameScheduled.compareAndSet(false, true)) {
+            if (SwingUtilities.isEventDispatchThread()) {
+                frameTimer.restart();
+            } else {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        frameTimer.restart();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Tell the table about everything that changed since the last frame
+     */
+    private void flushChanges() {
+        // Cleared first, so a change arriving from now on schedules another frame
+        frameScheduled.set(false);
+        int from;
+        int to;
+        synchronized (pendingLock) {
+            from = updatedFrom;
+            to = Math.min(updatedTo, rowCount - 1);
+            updatedFrom = Integer.MAX_VALUE;
+            updatedTo = -1;
+        }
+        if (from <= to) {
+            fireTableRowsUpdated(from, to);
+        }
+
+        int newRowCount = parcelMap.size();
+        if (newRowCount > rowCount) {
+            int firstNew = rowCount;
+            rowCount = newRowCount;
+            fireTableRowsInserted(firstNew, newRowCount - 1);
+        }
+    }
+
     @Override
     public int getRowCount() {
-        return parcels.size();
+        return rowCount;
     }
 
     @Override
@@ -58,8 +149,8 @@ public class ParcelTableModel extends AbstractTableModel {
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        if (rowIndex >= 0 && rowIndex < parcels.size()) {
-            Parcel parcel = parcels.get(rowIndex);
+        Parcel parcel = getParcelAt(rowIndex);
+        if (parcel != null) {
             switch (columnIndex) {
                 case 0:
                     return parcel.getParcelID();
@@ -77,4 +168,4 @@ public class ParcelTableModel extends AbstractTableModel {
         }
         return "N/A";
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,128 @@
+package collection;
+
+import model.Customer;
+import model.Parcel;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ChunkedFileLoaderTest class - checks that parallel loads split into many
+ * ranges give the same parcels and queue as loading the file line by line,
+ * including blank and bad lines, CRLF endings and repeated IDs.
+ */
+public class ChunkedFileLoaderTest {
+    // Several megabytes, so the files split into several ranges
+    private static final int LINES = 150_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @After
+    public void shutDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void parallelParcelLoadMatchesSerial() throws IOException {
+        File file = folder.newFile("parcels.txt");
+        Random random = new Random(31);
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write("PARCELS\r\nParcelID DaysInDepot Weight Dimensions\r\n");
+            for (int i = 0; i < LINES; i++) {
+                switch (random.nextInt(100)) {
+                    case 0:
+                        out.write("\n");
+                        break;
+                    case 1:
+                        out.write("C" + i + " bad 1.0 1x1x1\n");
+                        break;
+                    case 2:
+                        out.write("C" + random.nextInt(i + 1) + " 9 99.5 9x9x9\r\n");
+                        break;
+                    default:
+                        out.write("C" + i + " " + random.nextInt(14) + " " + random.nextInt(300) / 10.0
+                                + " " + (1 + random.nextInt(50)) + "x" + (1 + random.nextInt(40))
+                                + "x" + (1 + random.nextInt(30)) + (i % 7 == 0 ? "\r\n" : "\n"));
+                }
+            }
+            // Last line without a newline
+            out.write("X1 1 1.5 2x3x4");
+        }
+
+        ParcelMap serial = new ParcelMap();
+        assertTrue(serial.loadParcelsFromFile(file.getPath()));
+        ParcelMap parallel = new ParcelMap();
+        assertTrue(parallel.loadParcelsFromFileParallel(file.getPath(), pool));
+
+        List<Parcel> expected = serial.getAllParcels();
+        List<Parcel> actual = parallel.getAllParcels();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Parcel a = expected.get(i);
+            Parcel b = actual.get(i);
+            assertEquals(a.getParcelID(), b.getParcelID());
+            assertEquals(a.getParcelID(), a.getDaysInDepot(), b.getDaysInDepot());
+            assertEquals(a.getParcelID(), a.getWeight(), b.getWeight(), 0);
+            assertEquals(a.getParcelID(), a.getDimensions(), b.getDimensions());
+        }
+        assertEquals("X1", actual.get(actual.size() - 1).getParcelID());
+    }
+
+    @Test
+    public void parallelCustomerLoadMatchesSerial() throws IOException {
+        File file = folder.newFile("customers.txt");
+        Random random = new Random(32);
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write("SeqNo Name ParcelID\n");
+            for (int i = 1; i <= LINES; i++) {
+                int kind = random.nextInt(100);
+                if (kind == 0) {
+                    out.write("  \n");
+                } else if (kind == 1) {
+                    out.write("x" + i + " Name C" + i + "\n");
+                } else if (kind == 2) {
+                    out.write(i + " Ann Marie Smith C" + i + "\r\n");
+                } else {
+                    out.write(i + " Name" + i + " C" + random.nextInt(LINES) + "\n");
+                }
+            }
+        }
+
+        QueueOfCustomers serial = new QueueOfCustomers();
+        assertTrue(serial.loadCustomersFromFile(file.getPath()));
+        QueueOfCustomers parallel = new QueueOfCustomers();
+        assertTrue(parallel.loadCustomersFromFileParallel(file.getPath(), pool));
+
+        List<Customer> expected = serial.getAllCustomers();
+        List<Customer> actual = parallel.getAllCustomers();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        }
+    }
+
+    @Test
+    public void missingHeaderFailsBothLoads() throws IOException {
+        File file = folder.newFile("parcels.txt");
+        Files.write(file.toPath(), "C1 1 1.0 1x1x1\n".getBytes(StandardCharsets.UTF_8));
+        assertFalse(new ParcelMap().loadParcelsFromFile(file.getPath()));
+        assertFalse(new ParcelMap().loadParcelsFromFileParallel(file.getPath(), pool));
+    }
+}
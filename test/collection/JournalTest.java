@@ -0,0 +1,339 @@
+package collection;
+
+import model.Customer;
+import model.Parcel;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import util.DepotClock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JournalTest class - checks recovery from the journal directory: a clean
+ * restart, a segment that ends in a torn record, segments written in the
+ * first format, a depot clock moved on before the restart, and a crash after
+ * a new segment was started but before its checkpoint was recorded. Damaged and old segments are written by hand in
+ * the format the Journal class documents.
+ */
+public class JournalTest {
+    private static final int MAGIC = 0x504D534A;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void changesSurviveRestart() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ParcelMap parcels = new ParcelMap();
+        QueueOfCustomers customers = new QueueOfCustomers();
+        parcels.addParcel(new Parcel("C001", 3, 2.5, 10, 20, 30));
+        customers.addCustomer(new Customer(1, "Ann", "C001"));
+        Journal journal = new Journal(directory, parcels, customers);
+        journal.replay();
+        journal.start();
+
+        for (int i = 2; i <= 200; i++) {
+            parcels.addParcel(new Parcel(String.format("C%03d", i), i % 9, i / 4.0, i, 2, 3));
+            customers.addCustomer(new Customer(i, "Customer " + i, String.format("C%03d", i)));
+        }
+        parcels.collectParcel("C001");
+        customers.pollCustomer();
+        customers.removeCustomer(50);
+        parcels.addParcel(new Parcel("C010", 1, 99.0, 1, 1, 1));
+        journal.sync();
+        journal.close();
+
+        ParcelMap recoveredParcels = new ParcelMap();
+        QueueOfCustomers recoveredCustomers = new QueueOfCustomers();
+        recover(directory, recoveredParcels, recoveredCustomers);
+        assertEquals(describe(parcels), describe(recoveredParcels));
+        assertEquals(describe(customers), describe(recoveredCustomers));
+    }
+
+    @Test
+    public void tornTailRecordIsDropped() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        int today = DepotClock.getInstance().today();
+        byte[] first = new Segment(2, 1)
+                .parcel("C1", today - 1, 1.0, 1, 1, 1, -1)
+                .customerAdded(1, "Ann", "C1")
+                .parcel("C2", today - 2, 2.0, 2, 2, 2, -1)
+                .customerAdded(2, "Bob", "C2")
+                .bytes();
+        // The last record was half written when the process stopped
+        Files.write(directory.resolve("journal-00000001.log"), Arrays.copyOf(first, first.length - 7));
+        // A later run started a new segment after recovering without it
+        new Segment(2, 2).customerAdded(3, "Cat", "C2").writeTo(directory);
+
+        ParcelMap parcels = new ParcelMap();
+        QueueOfCustomers customers = new QueueOfCustomers();
+        assertEquals(4, new Journal(directory, parcels, customers).replay());
+        assertEquals(Arrays.asList("C1 1.0 1 waiting", "C2 2.0 2 waiting"), describe(parcels));
+        assertEquals(Arrays.asList("1 Ann C1", "3 Cat C2"), describe(customers));
+    }
+
+    @Test
+    public void damagedRecordEndsItsSegment() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        byte[] segment = new Segment(2, 1)
+                .customerAdded(1, "Ann", "C1")
+                .customerAdded(2, "Bob", "C2")
+                .customerAdded(3, "Cat", "C3")
+                .bytes();
+        // Flip a byte of Bob's name, so the record fails its checksum
+        int bob = indexOf(segment, "Bob".getBytes(StandardCharsets.UTF_8));
+        segment[bob] ^= 1;
+        Files.write(directory.resolve("journal-00000001.log"), segment);
+
+        QueueOfCustomers customers = new QueueOfCustomers();
+        assertEquals(1, new Journal(directory, new ParcelMap(), customers).replay());
+        assertEquals(Collections.singletonList("1 Ann C1"), describe(customers));
+    }
+
+    @Test
+    public void version1SegmentsAreReplayed() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        new Segment(1, 1)
+                .parcelV1("C1", 4, 1.5, 10, 20, 30, false)
+                .parcelV1("C2", 2, 3.0, 1, 2, 3, true)
+                .customerAdded(1, "Ann", "C1")
+                .writeTo(directory);
+        new Segment(2, 2)
+                .parcel("C3", DepotClock.getInstance().today() - 6, 2.0, 1, 1, 1, -1)
+                .customerRemoved(0)
+                .writeTo(directory);
+
+        ParcelMap parcels = new ParcelMap();
+        QueueOfCustomers customers = new QueueOfCustomers();
+        assertEquals(5, new Journal(directory, parcels, customers).replay());
+        // Days in depot of the old format were counted up to today
+        assertEquals(Arrays.asList("C1 1.5 4 waiting", "C2 3.0 2 collected", "C3 2.0 6 waiting"),
+                describe(parcels));
+        assertEquals(10, parcels.findParcelByID("C1").getLength());
+        assertTrue(customers.isEmpty());
+    }
+
+    @Test
+    public void depotDayIsJournaledAndRestored() throws Exception {
+        DepotClock clock = DepotClock.getInstance();
+        Path written = folder.newFolder("written").toPath();
+        Journal journal = new Journal(written, new ParcelMap(), new QueueOfCustomers());
+        journal.start();
+        int day = clock.advance(1);
+        journal.sync();
+        journal.close();
+        byte[] record = ByteBuffer.allocate(9).put((byte) 4).putInt(day).putInt(clock.getAdvancedDays()).array();
+        boolean found = false;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(written, "journal-*.log")) {
+            for (Path file : files) {
+                found |= find(Files.readAllBytes(file), record) >= 0;
+            }
+        }
+        assertTrue(found);
+
+        // A depot whose clock had been moved on five days further than this one
+        Path directory = folder.newFolder("restored").toPath();
+        new Segment(3, 1)
+                .depotDay(day + 5, clock.getAdvancedDays() + 5)
+                .parcel("C1", day + 5, 1.0, 1, 1, 1, -1)
+                .writeTo(directory);
+        ParcelMap parcels = new ParcelMap();
+        assertEquals(2, new Journal(directory, parcels, new QueueOfCustomers()).replay());
+        assertEquals(day + 5, clock.today());
+        assertEquals(Collections.singletonList("C1 1.0 0 waiting"), describe(parcels));
+    }
+
+    @Test
+    public void crashBetweenRotateAndCheckpointRecoversFromOldCheckpoint() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        int today = DepotClock.getInstance().today();
+
+        // Checkpoint 1
+        ParcelMap checkpointParcels = new ParcelMap();
+        checkpointParcels.addParcel(new Parcel("C1", 1, 1.0, 1, 1, 1));
+        checkpointParcels.addParcel(new Parcel("C2", 2, 2.0, 2, 2, 2));
+        assertTrue(checkpointParcels.saveSnapshot(directory.resolve("parcels-00000001.snap").toString()));
+        QueueOfCustomers checkpointCustomers = new QueueOfCustomers();
+        checkpointCustomers.addCustomer(new Customer(1, "Ann", "C1"));
+        checkpointCustomers.addCustomer(new Customer(2, "Bob", "C2"));
+        assertTrue(checkpointCustomers.saveSnapshot(directory.resolve("customers-00000001.snap").toString()));
+        Files.write(directory.resolve("CHECKPOINT"), "1\n".getBytes(StandardCharsets.UTF_8));
+
+        new Segment(2, 1)
+                .parcel("C3", today - 3, 3.0, 3, 3, 3, -1)
+                .customerAdded(3, "Cat", "C3")
+                .customerRemoved(0)
+                .writeTo(directory);
+        // Rotated to segment 2, which kept journaling while the snapshots
+        // were written; the parcels were, the customers were not
+        new Segment(2, 2)
+                .parcel("C2", today - 2, 2.0, 2, 2, 2, today)
+                .customerAdded(4, "Dan", "C2")
+                .writeTo(directory);
+        ParcelMap unfinished = new ParcelMap();
+        unfinished.addParcel(new Parcel("C9", 9, 9.0, 9, 9, 9));
+        assertTrue(unfinished.saveSnapshot(directory.resolve("parcels-00000002.snap").toString()));
+        Files.write(directory.resolve("customers-00000002.snap.tmp"), new byte[] {1, 2, 3});
+
+        ParcelMap parcels = new ParcelMap();
+        QueueOfCustomers customers = new QueueOfCustomers();
+        Journal journal = recover(directory, parcels, customers);
+        List<String> expectedParcels = Arrays.asList("C1 1.0 1 waiting", "C2 2.0 2 collected", "C3 3.0 3 waiting");
+        List<String> expectedCustomers = Arrays.asList("1 Bob C2", "2 Cat C3", "4 Dan C2");
+        assertEquals(expectedParcels, describe(parcels));
+        assertEquals(expectedCustomers, describe(customers));
+
+        // Carrying on folds everything into a new checkpoint and drops what it replaces
+        journal.start();
+        journal.close();
+        assertFalse(Files.exists(directory.resolve("journal-00000001.log")));
+        assertFalse(Files.exists(directory.resolve("parcels-00000002.snap")));
+        parcels = new ParcelMap();
+        customers = new QueueOfCustomers();
+        recover(directory, parcels, customers);
+        assertEquals(expectedParcels, describe(parcels));
+        assertEquals(expectedCustomers, describe(customers));
+    }
+
+    /**
+     * Recover the way the application does: from the checkpoint if there is
+     * one, then the journal
+     */
+    private static Journal recover(Path directory, ParcelMap parcels, QueueOfCustomers customers)
+            throws IOException {
+        Journal journal = new Journal(directory, parcels, customers);
+        if (journal.hasCheckpoint()) {
+            assertTrue(journal.loadParcelCheckpoint());
+            assertTrue(journal.loadCustomerCheckpoint());
+        }
+        journal.replay();
+        return journal;
+    }
+
+    private static List<String> describe(ParcelMap parcels) {
+        List<String> lines = new ArrayList<>();
+        for (Parcel parcel : parcels.getAllParcels()) {
+            lines.add(parcel.getParcelID() + " " + parcel.getWeight() + " " + parcel.getDaysInDepot() + " "
+                    + (parcel.isCollected() ? "collected" : "waiting"));
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+
+    private static List<String> describe(QueueOfCustomers customers) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < customers.size(); i++) {
+            Customer customer = customers.getCustomerAt(i);
+            lines.add(customers.getSeqNoAt(i) + " " + customer.getName() + " " + customer.getParcelID());
+        }
+        return lines;
+    }
+
+    private static int indexOf(byte[] data, byte[] part) {
+        int index = find(data, part);
+        if (index < 0) {
+            throw new AssertionError("not found");
+        }
+        return index;
+    }
+
+    private static int find(byte[] data, byte[] part) {
+        for (int i = 0; i + part.length <= data.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(data, i, i + part.length), part)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A journal segment written record by record
+     */
+    private static final class Segment {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final long number;
+
+        Segment(int version, long number) {
+            this.number = number;
+            ByteBuffer header = ByteBuffer.allocate(16);
+            header.putInt(MAGIC).putShort((short) version).putShort((short) 0).putLong(number);
+            out.write(header.array(), 0, header.capacity());
+        }
+
+        Segment parcel(String id, int arrivalDay, double weight, int length, int width, int height,
+                       int collectedDay) {
+            ByteBuffer payload = payload((byte) 1, id.length() + 30);
+            putString(payload, id);
+            payload.putInt(arrivalDay).putDouble(weight).putInt(length).putInt(width).putInt(height)
+                    .putInt(collectedDay);
+            return record(payload);
+        }
+
+        Segment parcelV1(String id, int daysInDepot, double weight, int length, int width, int height,
+                         boolean collected) {
+            ByteBuffer payload = payload((byte) 1, id.length() + 27);
+            putString(payload, id);
+            payload.putInt(daysInDepot).putDouble(weight).putInt(length).putInt(width).putInt(height)
+                    .put((byte) (collected ? 1 : 0));
+            return record(payload);
+        }
+
+        Segment customerAdded(int seqNo, String name, String parcelID) {
+            ByteBuffer payload = payload((byte) 2, 8 + name.length() + parcelID.length());
+            payload.putInt(seqNo);
+            putString(payload, name);
+            putString(payload, parcelID);
+            return record(payload);
+        }
+
+        Segment customerRemoved(int index) {
+            return record(payload((byte) 3, 4).putInt(index));
+        }
+
+        Segment depotDay(int day, int advancedDays) {
+            return record(payload((byte) 4, 8).putInt(day).putInt(advancedDays));
+        }
+
+        byte[] bytes() {
+            return out.toByteArray();
+        }
+
+        void writeTo(Path directory) throws IOException {
+            Files.write(directory.resolve(String.format("journal-%08d.log", number)), bytes());
+        }
+
+        private static ByteBuffer payload(byte type, int length) {
+            return ByteBuffer.allocate(1 + length).put(type);
+        }
+
+        private static void putString(ByteBuffer payload, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            payload.putShort((short) bytes.length).put(bytes);
+        }
+
+        private Segment record(ByteBuffer payload) {
+            CRC32 crc = new CRC32();
+            crc.update(payload.array(), 0, payload.position());
+            ByteBuffer header = ByteBuffer.allocate(8).putInt(payload.position()).putInt((int) crc.getValue());
+            out.write(header.array(), 0, 8);
+            out.write(payload.array(), 0, payload.position());
+            return this;
+        }
+    }
+}
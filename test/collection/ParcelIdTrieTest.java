@@ -0,0 +1,207 @@
+package collection;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * ParcelIdTrieTest class - checks trie searches against working out the edit
+ * distance to every ID: that pruning a branch never loses a match, that
+ * matches come closest first and in ID order within each pass, and that IDs
+ * added in or out of order, or again, end up in the same trie.
+ */
+public class ParcelIdTrieTest {
+
+    @Test
+    public void searchesMatchEveryIdChecked() {
+        Random random = new Random(21);
+        List<String> ids = randomIds(random, 4000);
+        ParcelIdTrie trie = new ParcelIdTrie();
+        for (int position = 0; position < ids.size(); position++) {
+            trie.add(ids.get(position), position);
+        }
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            texts.add(typo(random, ids.get(random.nextInt(ids.size()))));
+        }
+        texts.add("");
+        texts.add("C");
+        texts.add("Q99");
+        texts.add("C000000000000000");
+        for (String text : texts) {
+            for (int maxDistance = 0; maxDistance <= 2; maxDistance++) {
+                assertEquals(text + " within " + maxDistance, expected(ids, text, maxDistance),
+                        search(trie, ids, text, maxDistance, Integer.MAX_VALUE));
+            }
+        }
+    }
+
+    @Test
+    public void limitKeepsTheClosestInOrder() {
+        Random random = new Random(22);
+        List<String> ids = randomIds(random, 2000);
+        ParcelIdTrie trie = new ParcelIdTrie();
+        for (int position = 0; position < ids.size(); position++) {
+            trie.add(ids.get(position), position);
+        }
+        for (String text : new String[] {"C01", "C0123", "X12", "AB1"}) {
+            List<String> all = expected(ids, text, 2);
+            for (int limit : new int[] {1, 5, 40}) {
+                assertEquals(text + " first " + limit, all.subList(0, Math.min(limit, all.size())),
+                        search(trie, ids, text, 2, limit));
+            }
+        }
+    }
+
+    @Test
+    public void addingOrderDoesNotMatter() {
+        Random random = new Random(23);
+        List<String> ids = randomIds(random, 3000);
+        // IDs that are prefixes of the one added before them, and of the one after
+        ids.add("C1234");
+        ids.add("C12");
+        ids.add("C123456789012345678901");
+        ids.add("C1");
+        List<String> sorted = new ArrayList<>(new TreeSet<>(ids));
+        List<String> shuffled = new ArrayList<>(sorted);
+        Collections.shuffle(shuffled, random);
+
+        ParcelIdTrie inOrder = new ParcelIdTrie();
+        ParcelIdTrie outOfOrder = new ParcelIdTrie();
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            positions.put(sorted.get(i), i);
+            inOrder.add(sorted.get(i), i);
+        }
+        for (String id : shuffled) {
+            outOfOrder.add(id, positions.get(id));
+        }
+        assertEquals(sorted.size(), inOrder.size());
+        assertEquals(sorted.size(), outOfOrder.size());
+        assertEquals(inOrder.nodeCount(), outOfOrder.nodeCount());
+        for (String text : new String[] {"", "C", "C12", "X0", "C1234567"}) {
+            assertEquals(text, search(inOrder, sorted, text, 1, Integer.MAX_VALUE),
+                    search(outOfOrder, sorted, text, 1, Integer.MAX_VALUE));
+            assertEquals(text, expected(sorted, text, 1), search(inOrder, sorted, text, 1, Integer.MAX_VALUE));
+        }
+
+        // Adding an ID again only moves it
+        int nodes = inOrder.nodeCount();
+        List<String> moved = new ArrayList<>(sorted);
+        moved.add("C12");
+        inOrder.add("C12", moved.size() - 1);
+        assertEquals(sorted.size(), inOrder.size());
+        assertEquals(nodes, inOrder.nodeCount());
+        List<Integer> found = new ArrayList<>();
+        inOrder.search("C12", 0, (position, distance) -> {
+            found.add(position);
+            return false;
+        });
+        assertEquals(Collections.singletonList(moved.size() - 1), found);
+    }
+
+    /**
+     * Search a trie, describing each match by its ID and distance
+     */
+    private static List<String> search(ParcelIdTrie trie, List<String> ids, String text, int maxDistance,
+                                       int limit) {
+        List<String> found = new ArrayList<>();
+        trie.search(text, maxDistance, (position, distance) -> {
+            found.add(distance + " " + ids.get(position));
+            return found.size() < limit;
+        });
+        return found;
+    }
+
+    /**
+     * The matches a search should find, worked out for every ID: closest
+     * first, then in ID order
+     */
+    private static List<String> expected(List<String> ids, String text, int maxDistance) {
+        List<String> sorted = new ArrayList<>(new TreeSet<>(ids));
+        List<String> found = new ArrayList<>();
+        for (int distance = 0; distance <= maxDistance; distance++) {
+            for (String id : sorted) {
+                if (prefixDistance(text, id) == distance) {
+                    found.add(distance + " " + id);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Smallest edit distance from the text to any prefix of the ID
+     */
+    private static int prefixDistance(String text, String id) {
+        int[] row = new int[text.length() + 1];
+        for (int i = 0; i <= text.length(); i++) {
+            row[i] = i;
+        }
+        int best = row[text.length()];
+        for (int j = 1; j <= id.length(); j++) {
+            int[] next = new int[row.length];
+            next[0] = j;
+            for (int i = 1; i <= text.length(); i++) {
+                int cost = text.charAt(i - 1) == id.charAt(j - 1) ? 0 : 1;
+                next[i] = Math.min(Math.min(next[i - 1], row[i]) + 1, row[i - 1] + cost);
+            }
+            row = next;
+            best = Math.min(best, row[text.length()]);
+        }
+        return best;
+    }
+
+    private static List<String> randomIds(Random random, int count) {
+        TreeSet<String> ids = new TreeSet<>();
+        while (ids.size() < count) {
+            String letters = random.nextInt(4) == 0 ? "X" : random.nextInt(10) == 0 ? "AB" : "C";
+            StringBuilder id = new StringBuilder(letters);
+            int digits = 2 + random.nextInt(5);
+            for (int i = 0; i < digits; i++) {
+                id.append((char) ('0' + random.nextInt(random.nextBoolean() ? 3 : 10)));
+            }
+            ids.add(id.toString());
+        }
+        List<String> shuffled = new ArrayList<>(ids);
+        Collections.shuffle(shuffled, random);
+        return shuffled;
+    }
+
+    /**
+     * The start of an ID with a character changed, left out, added or two swapped
+     */
+    private static String typo(Random random, String id) {
+        StringBuilder text = new StringBuilder(id.substring(0, 1 + random.nextInt(id.length())));
+        int at = random.nextInt(text.length());
+        switch (random.nextInt(4)) {
+            case 0:
+                text.setCharAt(at, (char) ('0' + random.nextInt(10)));
+                break;
+            case 1:
+                if (text.length() > 1) {
+                    text.deleteCharAt(at);
+                }
+                break;
+            case 2:
+                text.insert(at, (char) ('0' + random.nextInt(10)));
+                break;
+            default:
+                if (at + 1 < text.length()) {
+                    char c = text.charAt(at);
+                    text.setCharAt(at, text.charAt(at + 1));
+                    text.setCharAt(at + 1, c);
+                }
+                break;
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,185 @@
+package collection;
+
+import model.Parcel;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ParcelIndexerTest class - checks that parcels replaced while the index is
+ * being rebuilt are never answered from values the new index may have read
+ * before they changed.
+ */
+public class ParcelIndexerTest {
+    private static final int PARCELS = 40_000;
+
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+
+    @After
+    public void shutDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void replacementsDuringRebuildStayMarked() throws InterruptedException {
+        Random random = new Random(21);
+        GatedStore store = new GatedStore();
+        for (int i = 0; i < PARCELS; i++) {
+            store.put(ParcelQueryTest.randomParcel(random, i));
+        }
+        ParcelIndexer indexer = new ParcelIndexer(store, pool);
+        ParcelQuery heavy = new ParcelQuery().weightAbove(25);
+        assertEquals(scan(store, heavy), query(indexer, heavy));
+
+        // Hold the next build at its last read, after it has read every other
+        // parcel, then replace enough to start it
+        store.gate = new CountDownLatch(1);
+        for (int position = 0; position <= PARCELS / 8; position++) {
+            replace(store, indexer, position, 1.0);
+        }
+        assertTrue("rebuild started", store.entered.await(10, TimeUnit.SECONDS));
+
+        // Make parcels heavy that the held build has already read as light
+        List<Integer> changed = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int position = random.nextInt(PARCELS - 1);
+            replace(store, indexer, position, 29.9);
+            changed.add(position);
+        }
+        assertEquals(scan(store, heavy), query(indexer, heavy));
+        store.gate.countDown();
+        assertTrue("rebuild finished", pool.awaitQuiescence(30, TimeUnit.SECONDS));
+
+        assertEquals(scan(store, heavy), query(indexer, heavy));
+        for (int position : changed) {
+            replace(store, indexer, position, 0.5);
+        }
+        assertEquals(scan(store, heavy), query(indexer, heavy));
+    }
+
+    private static void replace(ParcelStore store, ParcelIndexer indexer, int position, double weight) {
+        Parcel old = store.getAt(position);
+        int result = store.put(new Parcel(old.getParcelID(), old.getDaysInDepot(), weight,
+                old.getLength(), old.getWidth(), old.getHeight()));
+        assertTrue(result < 0);
+        indexer.parcelReplaced(-result - 1);
+    }
+
+    private static List<String> query(ParcelIndexer indexer, ParcelQuery query) {
+        List<String> ids = new ArrayList<>();
+        for (Iterator<Parcel> parcels = indexer.query(query); parcels.hasNext(); ) {
+            ids.add(parcels.next().getParcelID());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private static List<String> scan(ParcelStore store, ParcelQuery query) {
+        List<String> ids = new ArrayList<>();
+        for (Parcel parcel : store.all()) {
+            if (query.matches(parcel)) {
+                ids.add(parcel.getParcelID());
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Store whose read of the last position from the pool's threads waits
+     * at a gate once one is set
+     */
+    private static final class GatedStore implements ParcelStore {
+        private final ObjectParcelStore store = new ObjectParcelStore();
+        final CountDownLatch entered = new CountDownLatch(1);
+        volatile CountDownLatch gate;
+
+        @Override
+        public Parcel getAt(int position) {
+            CountDownLatch current = gate;
+            if (current != null && position == size() - 1
+                    && Thread.currentThread() instanceof ForkJoinWorkerThread) {
+                entered.countDown();
+                try {
+                    current.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return store.getAt(position);
+        }
+
+        @Override
+        public int put(Parcel parcel) {
+            return store.put(parcel);
+        }
+
+        @Override
+        public Parcel get(long key) {
+            return store.get(key);
+        }
+
+        @Override
+        public ParcelMap.CollectResult collect(long key) {
+            return store.collect(key);
+        }
+
+        @Override
+        public ParcelMap.CollectResult collectAt(int position, long version) {
+            return store.collectAt(position, version);
+        }
+
+        @Override
+        public int indexOf(long key) {
+            return store.indexOf(key);
+        }
+
+        @Override
+        public int size() {
+            return store.size();
+        }
+
+        @Override
+        public int collectedCount() {
+            return store.collectedCount();
+        }
+
+        @Override
+        public int uncollectedCount() {
+            return store.uncollectedCount();
+        }
+
+        @Override
+        public Collection<Parcel> all() {
+            return store.all();
+        }
+
+        @Override
+        public Collection<Parcel> collected() {
+            return store.collected();
+        }
+
+        @Override
+        public Collection<Parcel> uncollected() {
+            return store.uncollected();
+        }
+
+        @Override
+        public int countMoreThanDays(int days) {
+            return store.countMoreThanDays(days);
+        }
+    }
+}
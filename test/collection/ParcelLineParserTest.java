@@ -0,0 +1,120 @@
+package collection;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * ParcelLineParserTest class - checks the in-place tokenizer against the
+ * lines the old split and regex parsing accepted and rejected.
+ */
+public class ParcelLineParserTest {
+
+    @Test
+    public void parsesUsualLine() {
+        ParcelLineParser parser = parse("C0001234 5 12.5 30x20x10", ParcelLineParser.Result.PARSED);
+        assertEquals("C0001234", parser.parcelID);
+        assertEquals(5, parser.daysInDepot);
+        assertEquals(12.5, parser.weight, 0);
+        assertEquals(30, parser.length);
+        assertEquals(20, parser.width);
+        assertEquals(10, parser.height);
+    }
+
+    @Test
+    public void acceptsSpacedDimensionsAndExtraWhitespace() {
+        ParcelLineParser parser = parse("X42\t 3   0.75   30 x 20 x\t10  ", ParcelLineParser.Result.PARSED);
+        assertEquals("X42", parser.parcelID);
+        assertEquals(3, parser.daysInDepot);
+        assertEquals(0.75, parser.weight, 0);
+        assertEquals(10, parser.height);
+    }
+
+    @Test
+    public void leadingWhitespaceIsAnEmptyFirstField() {
+        // As line.split("\\s+") gives, so the ID is empty and the days are "C1"
+        ParcelLineParser parser = parse(" C1 1 2 1x1x1", ParcelLineParser.Result.ERROR);
+        assertEquals("bad_number", parser.lastErrorType());
+    }
+
+    @Test
+    public void findsFirstDimensionTripleInRestOfLine() {
+        ParcelLineParser parser = parse("C1 1 2 size: 4x5x6 (boxed)", ParcelLineParser.Result.PARSED);
+        assertEquals(4, parser.length);
+        assertEquals(5, parser.width);
+        assertEquals(6, parser.height);
+    }
+
+    @Test
+    public void parsesSignedAndWholeNumbers() {
+        ParcelLineParser parser = parse("C1 +7 -3 1x1x1", ParcelLineParser.Result.PARSED);
+        assertEquals(7, parser.daysInDepot);
+        assertEquals(-3.0, parser.weight, 0);
+        parser = parse("C1 0 .5 1x1x1", ParcelLineParser.Result.PARSED);
+        assertEquals(0.5, parser.weight, 0);
+    }
+
+    @Test
+    public void weightsMatchDoubleParsing() {
+        for (String weight : new String[] {"0.1", "1.25", "99.99", "123456.789", "0.000001", "7"}) {
+            ParcelLineParser parser = parse("C1 1 " + weight + " 1x1x1", ParcelLineParser.Result.PARSED);
+            assertEquals(weight, Double.parseDouble(weight), parser.weight, 0);
+        }
+    }
+
+    @Test
+    public void blankLinesAreSkippedWithoutError() {
+        ParcelLineParser parser = parse(" \t ", ParcelLineParser.Result.BLANK);
+        assertNull(parser.lastError());
+        parse("", ParcelLineParser.Result.BLANK);
+    }
+
+    @Test
+    public void reportsMissingFields() {
+        ParcelLineParser parser = parse("C1 2 3.5", ParcelLineParser.Result.ERROR);
+        assertEquals("missing_fields", parser.lastErrorType());
+        assertEquals("Line 7 has insufficient data: 3 parts", parser.lastError());
+    }
+
+    @Test
+    public void reportsBadNumbers() {
+        for (String line : new String[] {"C1 two 3.5 1x1x1", "C1 2 3.5kg 1x1x1", "C1 2 1.2.3 1x1x1",
+                "C1 12345678901 3 1x1x1", "C1 2 - 1x1x1"}) {
+            ParcelLineParser parser = parse(line, ParcelLineParser.Result.ERROR);
+            assertEquals(line, "bad_number", parser.lastErrorType());
+        }
+    }
+
+    @Test
+    public void reportsBadDimensions() {
+        for (String line : new String[] {"C1 2 3 30x20", "C1 2 3 30 by 20 by 10", "C1 2 3 30xx20x10"}) {
+            ParcelLineParser parser = parse(line, ParcelLineParser.Result.ERROR);
+            assertEquals(line, "bad_dimensions", parser.lastErrorType());
+        }
+        ParcelLineParser parser = parse("C1 2 3 30  x  20", ParcelLineParser.Result.ERROR);
+        assertEquals("Failed to parse dimensions from: 30 x 20", parser.lastError());
+    }
+
+    @Test
+    public void parsesLineInsideLargerBuffer() {
+        byte[] buf = "junk C9 4 2.5 3x4x5 junk".getBytes(StandardCharsets.UTF_8);
+        ParcelLineParser parser = new ParcelLineParser();
+        assertEquals(ParcelLineParser.Result.PARSED, parser.parse(buf, 5, 19, 1));
+        assertEquals("C9", parser.parcelID);
+        assertEquals(5, parser.height);
+    }
+
+    private static ParcelLineParser parse(String line, ParcelLineParser.Result expected) {
+        byte[] buf = line.getBytes(StandardCharsets.UTF_8);
+        ParcelLineParser parser = new ParcelLineParser();
+        ParcelLineParser.Result result = parser.parse(buf, 0, buf.length, 7);
+        if (result != expected) {
+            fail(line + ": " + result + " (" + parser.lastError() + ")");
+        }
+        return parser;
+    }
+}
@@ -0,0 +1,195 @@
+package collection;
+
+import model.Parcel;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import util.DepotClock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * ParcelQueryTest class - checks ParcelMap.query and the days in depot
+ * counts against a scan of every parcel, for both storages, before and after
+ * parcels are added, replaced and collected behind the indexes.
+ */
+@RunWith(Parameterized.class)
+public class ParcelQueryTest {
+    private static final int PARCELS = 20_000;
+
+    private final ParcelMap.Storage storage;
+
+    public ParcelQueryTest(ParcelMap.Storage storage) {
+        this.storage = storage;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> storages() {
+        return Arrays.asList(new Object[][] {{ParcelMap.Storage.OBJECTS}, {ParcelMap.Storage.COLUMNS}});
+    }
+
+    @Test
+    public void queriesMatchScanAsParcelsChange() {
+        Random random = new Random(11);
+        ParcelMap parcelMap = new ParcelMap(storage);
+        for (int i = 0; i < PARCELS; i++) {
+            parcelMap.addParcel(randomParcel(random, i));
+        }
+        collectSome(parcelMap, random, PARCELS / 5);
+        checkQueries(parcelMap, "built");
+
+        // Replaced behind the index, added beyond it, and collected since
+        for (int i = 0; i < 300; i++) {
+            parcelMap.addParcel(randomParcel(random, random.nextInt(PARCELS)));
+        }
+        int today = DepotClock.getInstance().today();
+        for (int i = 0; i < 100; i++) {
+            Parcel parcel = randomParcel(random, random.nextInt(PARCELS));
+            parcelMap.addParcel(Parcel.restore(parcel.getParcelID(), parcel.getWeight(), parcel.getLength(),
+                    parcel.getWidth(), parcel.getHeight(), today - 30, today - random.nextInt(30)));
+        }
+        for (int i = PARCELS; i < PARCELS + 500; i++) {
+            parcelMap.addParcel(randomParcel(random, i));
+        }
+        collectSome(parcelMap, random, 500);
+        checkQueries(parcelMap, "changed");
+    }
+
+    @Test
+    public void queriesMatchScanAfterBackgroundRebuild() throws InterruptedException {
+        Random random = new Random(12);
+        ParcelMap parcelMap = new ParcelMap(storage);
+        for (int i = 0; i < PARCELS; i++) {
+            parcelMap.addParcel(randomParcel(random, i));
+        }
+        checkQueries(parcelMap, "built");
+        // Enough replacements to start a rebuild, with queries running alongside it
+        for (int i = 0; i < 6000; i++) {
+            parcelMap.addParcel(randomParcel(random, random.nextInt(PARCELS)));
+            if (i % 1000 == 0) {
+                checkQueries(parcelMap, "replacing " + i);
+            }
+        }
+        Thread.sleep(200);
+        checkQueries(parcelMap, "rebuilt");
+    }
+
+    @Test
+    public void daysOfCollectedParcelsStopAtCollection() {
+        Random random = new Random(13);
+        ParcelMap parcelMap = new ParcelMap(storage);
+        for (int i = 0; i < PARCELS; i++) {
+            parcelMap.addParcel(randomParcel(random, i));
+        }
+        collectSome(parcelMap, random, PARCELS / 2);
+        checkQueries(parcelMap, "today");
+        DepotClock.getInstance().advance(3);
+        collectSome(parcelMap, random, PARCELS / 10);
+        checkQueries(parcelMap, "3 days on");
+    }
+
+    @Test
+    public void prefixQueryIsInIdOrder() {
+        Random random = new Random(14);
+        ParcelMap parcelMap = new ParcelMap(storage);
+        for (int i = 0; i < PARCELS; i++) {
+            parcelMap.addParcel(randomParcel(random, i));
+        }
+        for (String prefix : new String[] {"C", "C00", "X1", "parcel-1", "Q"}) {
+            List<String> found = ids(parcelMap.query(new ParcelQuery().idStartingWith(prefix)));
+            List<String> sorted = new ArrayList<>(found);
+            Collections.sort(sorted);
+            assertEquals(prefix, sorted, found);
+            assertEquals(prefix, scan(parcelMap, new ParcelQuery().idStartingWith(prefix)), sorted);
+        }
+    }
+
+    @Test
+    public void contradictoryQueryFindsNothing() {
+        ParcelMap parcelMap = new ParcelMap(storage);
+        parcelMap.addParcel(new Parcel("C001", 2, 5.0, 10, 10, 10));
+        assertEquals(Collections.emptyList(), ids(parcelMap.query(new ParcelQuery().waiting().collected())));
+        assertEquals(Collections.emptyList(), ids(parcelMap.query(new ParcelQuery().weightBetween(5, 1))));
+        assertEquals(Collections.emptyList(),
+                ids(parcelMap.query(new ParcelQuery().idStartingWith("C1").idStartingWith("C0"))));
+    }
+
+    private static void checkQueries(ParcelMap parcelMap, String stage) {
+        for (ParcelQuery query : queries()) {
+            List<String> found = ids(parcelMap.query(query));
+            Collections.sort(found);
+            assertEquals(stage + " " + query, scan(parcelMap, query), found);
+        }
+        for (int days : new int[] {-1, 0, 3, 7, 11, 25, 400}) {
+            int expected = 0;
+            for (Parcel parcel : parcelMap.getAllParcels()) {
+                if (parcel.getDaysInDepot() > days) {
+                    expected++;
+                }
+            }
+            assertEquals(stage + " more than " + days + " days", expected,
+                    parcelMap.countParcelsInDepotMoreThanDays(days));
+        }
+    }
+
+    private static List<ParcelQuery> queries() {
+        return Arrays.asList(
+                new ParcelQuery().waiting(),
+                new ParcelQuery().collected().weightAbove(20),
+                new ParcelQuery().weightBetween(2.5, 7.5),
+                new ParcelQuery().volumeAbove(5000),
+                new ParcelQuery().volumeBetween(100, 900).weightAbove(1),
+                new ParcelQuery().waiting().daysBetween(4, 7),
+                new ParcelQuery().collected().daysBetween(0, 2),
+                new ParcelQuery().collected().daysAbove(5),
+                new ParcelQuery().daysAbove(9),
+                new ParcelQuery().waiting().weightAbove(20).daysBetween(4, 7).volumeAbove(5000),
+                new ParcelQuery().idStartingWith("C01"),
+                new ParcelQuery().idStartingWith("X").weightAbove(10),
+                new ParcelQuery().idStartingWith("parcel-").waiting(),
+                new ParcelQuery().idStartingWith("Z"));
+    }
+
+    private static List<String> scan(ParcelMap parcelMap, ParcelQuery query) {
+        List<String> expected = new ArrayList<>();
+        for (Parcel parcel : parcelMap.getAllParcels()) {
+            if (query.matches(parcel)) {
+                expected.add(parcel.getParcelID());
+            }
+        }
+        Collections.sort(expected);
+        return expected;
+    }
+
+    private static List<String> ids(Iterable<Parcel> parcels) {
+        List<String> ids = new ArrayList<>();
+        for (Parcel parcel : parcels) {
+            ids.add(parcel.getParcelID());
+        }
+        return ids;
+    }
+
+    private static void collectSome(ParcelMap parcelMap, Random random, int count) {
+        List<Parcel> parcels = parcelMap.getAllParcels();
+        for (int i = 0; i < count; i++) {
+            parcelMap.collectParcel(parcels.get(random.nextInt(parcels.size())).getParcelID());
+        }
+    }
+
+    /**
+     * A parcel with an ID numbered n: mostly packed C and X IDs, and some
+     * that the codec has to intern
+     */
+    static Parcel randomParcel(Random random, int n) {
+        String parcelID = n % 50 == 0 ? "parcel-" + n : (n % 3 == 0 ? "X" : "C") + String.format("%05d", n);
+        return new Parcel(parcelID, random.nextInt(12), Math.round(random.nextDouble() * 300) / 10.0,
+                1 + random.nextInt(40), 1 + random.nextInt(30), 1 + random.nextInt(20));
+    }
+}
@@ -0,0 +1,147 @@
+package collection;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PositionBitmapTest class - checks PositionBitmap against java.util.BitSet,
+ * for sparse containers kept as arrays, dense ones kept as bitsets and the
+ * switch between the two.
+ */
+public class PositionBitmapTest {
+    private static final int POSITIONS = 3 * PositionBitmap.CONTAINER_SIZE + 1000;
+
+    @Test
+    public void emptyBitmapHasNoPositions() {
+        PositionBitmap bitmap = new PositionBitmap.Builder(0).build();
+        assertEquals(0, bitmap.cardinality());
+        assertEquals(-1, bitmap.cursor().next());
+        assertFalse(bitmap.contains(0));
+        assertFalse(bitmap.contains(-1));
+    }
+
+    @Test
+    public void containerTurnsIntoBitsetPastArrayLimit() {
+        for (int count : new int[] {1, 4095, 4096, 4097, 20_000, PositionBitmap.CONTAINER_SIZE}) {
+            BitSet expected = new BitSet();
+            PositionBitmap.Builder builder = new PositionBitmap.Builder(POSITIONS);
+            int start = PositionBitmap.CONTAINER_SIZE;
+            for (int i = 0; i < count; i++) {
+                builder.add(start + i);
+                expected.set(start + i);
+            }
+            assertSame("count " + count, expected, builder.build());
+        }
+    }
+
+    @Test
+    public void cursorWalksEveryContainerInOrder() {
+        Random random = new Random(1);
+        for (double density : new double[] {0.001, 0.05, 0.5, 0.99}) {
+            BitSet expected = randomSet(random, density);
+            assertSame("density " + density, expected, build(expected));
+        }
+    }
+
+    @Test
+    public void andMatchesBitSet() {
+        Random random = new Random(2);
+        double[] densities = {0, 0.001, 0.03, 0.2, 0.9};
+        for (double a : densities) {
+            for (double b : densities) {
+                BitSet first = randomSet(random, a);
+                BitSet second = randomSet(random, b);
+                BitSet expected = (BitSet) first.clone();
+                expected.and(second);
+                assertSame(a + " and " + b, expected, PositionBitmap.and(build(first), build(second)));
+            }
+        }
+    }
+
+    @Test
+    public void andOfBitmapsOfDifferentLengths() {
+        BitSet shortSet = new BitSet();
+        shortSet.set(5);
+        shortSet.set(70_000);
+        PositionBitmap.Builder builder = new PositionBitmap.Builder(70_001);
+        builder.add(5);
+        builder.add(70_000);
+        BitSet longSet = randomSet(new Random(3), 0.5);
+        longSet.set(70_000);
+        BitSet expected = (BitSet) longSet.clone();
+        expected.and(shortSet);
+        assertSame("short and long", expected, PositionBitmap.and(builder.build(), build(longSet)));
+        assertSame("long and short", expected, PositionBitmap.and(build(longSet), builder.build()));
+    }
+
+    @Test
+    public void orMatchesBitSet() {
+        Random random = new Random(4);
+        List<PositionBitmap> bitmaps = new ArrayList<>();
+        BitSet expected = new BitSet();
+        for (double density : new double[] {0.0005, 0.01, 0.03, 0.001}) {
+            BitSet part = randomSet(random, density);
+            expected.or(part);
+            bitmaps.add(build(part));
+            assertSame(bitmaps.size() + " bitmaps", expected, PositionBitmap.or(bitmaps));
+        }
+    }
+
+    @Test
+    public void orOfOneBitmapIsThatBitmap() {
+        PositionBitmap bitmap = build(randomSet(new Random(5), 0.1));
+        assertTrue(bitmap == PositionBitmap.or(Arrays.asList(bitmap)));
+    }
+
+    /**
+     * Check that a bitmap holds exactly the positions of a BitSet, through
+     * every accessor
+     */
+    private static void assertSame(String message, BitSet expected, PositionBitmap bitmap) {
+        assertEquals(message, expected.cardinality(), bitmap.cardinality());
+        PositionBitmap.Cursor cursor = bitmap.cursor();
+        for (int position = expected.nextSetBit(0); position >= 0; position = expected.nextSetBit(position + 1)) {
+            assertEquals(message, position, cursor.next());
+        }
+        assertEquals(message, -1, cursor.next());
+        assertEquals(message, -1, cursor.next());
+        for (int position = 0; position < POSITIONS; position += 7) {
+            assertEquals(message + " at " + position, expected.get(position), bitmap.contains(position));
+        }
+    }
+
+    private static PositionBitmap build(BitSet positions) {
+        PositionBitmap.Builder builder = new PositionBitmap.Builder(POSITIONS);
+        for (int position = positions.nextSetBit(0); position >= 0; position = positions.nextSetBit(position + 1)) {
+            builder.add(position);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Positions chosen at random, with each container at its own density
+     * around the one given, so arrays and bitsets both turn up
+     */
+    private static BitSet randomSet(Random random, double density) {
+        BitSet positions = new BitSet();
+        for (int from = 0; from < POSITIONS; from += PositionBitmap.CONTAINER_SIZE) {
+            double local = Math.min(1, density * random.nextDouble() * 2);
+            int to = Math.min(POSITIONS, from + PositionBitmap.CONTAINER_SIZE);
+            for (int position = from; position < to; position++) {
+                if (random.nextDouble() < local) {
+                    positions.set(position);
+                }
+            }
+        }
+        return positions;
+    }
+}
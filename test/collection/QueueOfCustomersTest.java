@@ -0,0 +1,87 @@
+package collection;
+
+import model.Customer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * QueueOfCustomersTest class - checks that sequence numbers after removals
+ * match the old renumber-on-remove behaviour, and that reading the queue
+ * leaves its customers unchanged.
+ */
+public class QueueOfCustomersTest {
+
+    @Test
+    public void numbersFollowPositionAfterRemoval() {
+        QueueOfCustomers queue = queueOf(5);
+        assertEquals(3, queue.removeCustomer(2).getSeqNo());
+        queue.addCustomer(new Customer(40, "late", "C40"));
+        assertEquals(listOf(1, 2, 3, 4, 40), seqNos(queue));
+
+        // A removal renumbers everyone still waiting, the late customer included
+        Customer first = queue.pollCustomer();
+        assertEquals(1, first.getSeqNo());
+        queue.addCustomer(new Customer(50, "later", "C50"));
+        assertEquals(listOf(1, 2, 3, 4, 50), seqNos(queue));
+        assertEquals(-1, queue.getSeqNoAt(5));
+    }
+
+    @Test
+    public void readingLeavesCustomersAlone() {
+        QueueOfCustomers queue = queueOf(4);
+        queue.pollCustomer();
+        for (int i = 0; i < queue.size(); i++) {
+            Customer customer = queue.getCustomerAt(i);
+            assertEquals(i + 1, queue.getSeqNoAt(i));
+            // Still the number the customer joined with
+            assertEquals(i + 2, customer.getSeqNo());
+        }
+        assertEquals(2, queue.getFirstCustomer().getSeqNo());
+        assertEquals(2, queue.getAllCustomers().get(0).getSeqNo());
+        assertNull(queue.getCustomerAt(3));
+    }
+
+    @Test
+    public void copyMatchesNumbersAndStopsAtEnd() {
+        QueueOfCustomers queue = queueOf(6);
+        queue.removeCustomer(0);
+        Customer[] customers = new Customer[4];
+        int[] seqNos = new int[4];
+        assertEquals(4, queue.copyCustomers(0, customers, seqNos));
+        assertEquals("C2", customers[0].getParcelID());
+        assertEquals(1, seqNos[0]);
+        assertEquals(1, queue.copyCustomers(4, customers, seqNos));
+        assertEquals("C6", customers[0].getParcelID());
+        assertEquals(5, seqNos[0]);
+        assertEquals(0, queue.copyCustomers(5, customers, seqNos));
+    }
+
+    private static QueueOfCustomers queueOf(int count) {
+        QueueOfCustomers queue = new QueueOfCustomers();
+        for (int i = 1; i <= count; i++) {
+            queue.addCustomer(new Customer(i, "Customer" + i, "C" + i));
+        }
+        return queue;
+    }
+
+    private static List<Integer> seqNos(QueueOfCustomers queue) {
+        List<Integer> seqNos = new ArrayList<>();
+        for (int i = 0; i < queue.size(); i++) {
+            seqNos.add(queue.getSeqNoAt(i));
+        }
+        return seqNos;
+    }
+
+    private static List<Integer> listOf(int... values) {
+        List<Integer> list = new ArrayList<>();
+        for (int value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
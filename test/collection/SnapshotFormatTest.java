@@ -0,0 +1,90 @@
+package collection;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * SnapshotFormatTest class - checks that snapshots read back as written,
+ * past the size the writer first expected, and that damaged files are
+ * rejected.
+ */
+public class SnapshotFormatTest {
+    private static final int RECORD_SIZE = 12;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsReadBackPastExpectedCount() throws IOException {
+        Path file = write(5000);
+        SnapshotFormat.Reader reader = new SnapshotFormat.Reader(file, SnapshotFormat.KIND_CUSTOMERS, RECORD_SIZE);
+        assertEquals(5000, reader.recordCount());
+        assertEquals(SnapshotFormat.VERSION, reader.version());
+        ByteBuffer records = reader.records();
+        for (int i = 0; i < 5000; i++) {
+            int offset = reader.recordOffset(i);
+            assertEquals(i, records.getInt(offset));
+            assertEquals("name" + (i % 10), reader.string(records.getInt(offset + 4)));
+            assertEquals(-i, records.getInt(offset + 8));
+        }
+    }
+
+    @Test
+    public void emptySnapshotReadsBack() throws IOException {
+        SnapshotFormat.Reader reader = new SnapshotFormat.Reader(write(0), SnapshotFormat.KIND_CUSTOMERS, RECORD_SIZE);
+        assertEquals(0, reader.recordCount());
+    }
+
+    @Test
+    public void damagedSnapshotsAreRejected() throws IOException {
+        Path file = write(100);
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(raw.length() / 2);
+            int b = raw.read();
+            raw.seek(raw.length() / 2);
+            raw.write(b ^ 1);
+        }
+        expectRejected(file, SnapshotFormat.KIND_CUSTOMERS, "checksum");
+
+        file = write(100);
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.setLength(raw.length() - 3);
+        }
+        expectRejected(file, SnapshotFormat.KIND_CUSTOMERS, "truncated");
+
+        expectRejected(write(1), SnapshotFormat.KIND_PARCELS, "different records");
+    }
+
+    private Path write(int count) throws IOException {
+        SnapshotFormat.Writer writer = new SnapshotFormat.Writer(SnapshotFormat.KIND_CUSTOMERS, RECORD_SIZE, 1);
+        for (int i = 0; i < count; i++) {
+            ByteBuffer record = writer.newRecord();
+            record.putInt(i);
+            record.putInt(writer.intern("name" + (i % 10)));
+            record.putInt(-i);
+        }
+        Path file = folder.getRoot().toPath().resolve("snapshot.bin");
+        writer.writeTo(file);
+        return file;
+    }
+
+    private static void expectRejected(Path file, byte kind, String reason) {
+        try {
+            new SnapshotFormat.Reader(file, kind, RECORD_SIZE);
+            fail("accepted a snapshot that should fail with: " + reason);
+        } catch (IOException e) {
+            if (!e.getMessage().contains(reason)) {
+                fail("expected " + reason + " but got: " + e.getMessage());
+            }
+        }
+    }
+}
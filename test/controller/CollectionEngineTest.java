@@ -0,0 +1,99 @@
+package controller;
+
+import collection.ParcelMap;
+import collection.QueueOfCustomers;
+import model.Customer;
+import model.Parcel;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CollectionEngineTest class - checks that counters draining one queue
+ * together, with several customers asking for each parcel, collect every
+ * parcel exactly once, and that the customers turned away reach the
+ * validator's exception queue, for both storages.
+ */
+@RunWith(Parameterized.class)
+public class CollectionEngineTest {
+    private static final int PARCELS = 2000;
+    private static final int CUSTOMERS_PER_PARCEL = 3;
+    private static final int COUNTERS = 4;
+
+    private final ParcelMap.Storage storage;
+
+    public CollectionEngineTest(ParcelMap.Storage storage) {
+        this.storage = storage;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> storages() {
+        return Arrays.asList(new Object[][] {{ParcelMap.Storage.OBJECTS}, {ParcelMap.Storage.COLUMNS}});
+    }
+
+    @Test
+    public void everyParcelIsCollectedOnce() throws InterruptedException {
+        ParcelMap parcels = new ParcelMap(storage);
+        QueueOfCustomers queue = new QueueOfCustomers();
+        fill(parcels, queue);
+        CollectionEngine engine = new CollectionEngine(parcels, queue, COUNTERS);
+        Map<String, AtomicInteger> collections = new ConcurrentHashMap<>();
+        engine.addTransactionListener((counter, customer, parcel, fee) ->
+                collections.computeIfAbsent(parcel.getParcelID(), id -> new AtomicInteger()).incrementAndGet());
+
+        assertEquals(PARCELS, engine.processAll());
+        assertTrue(queue.isEmpty());
+        assertEquals(PARCELS, engine.getCompletedCount());
+        assertEquals(PARCELS * (CUSTOMERS_PER_PARCEL - 1), engine.getFailedCount());
+        assertEquals(PARCELS, collections.size());
+        for (Map.Entry<String, AtomicInteger> entry : collections.entrySet()) {
+            assertEquals(entry.getKey(), 1, entry.getValue().get());
+        }
+        for (Parcel parcel : parcels.getAllParcels()) {
+            assertTrue(parcel.getParcelID(), parcel.isCollected());
+        }
+    }
+
+    @Test
+    public void turnedAwayCustomersReachTheValidator() throws InterruptedException {
+        ParcelMap parcels = new ParcelMap(storage);
+        QueueOfCustomers queue = new QueueOfCustomers();
+        CustomerValidator validator = new CustomerValidator(parcels, queue);
+        validator.start();
+        fill(parcels, queue);
+        CollectionEngine engine = new CollectionEngine(parcels, queue, COUNTERS);
+        engine.setValidator(validator);
+
+        assertEquals(PARCELS, engine.processAll());
+        assertEquals(PARCELS * (CUSTOMERS_PER_PARCEL - 1), validator.getExceptionCount());
+        for (CustomerValidator.Rejection rejection : validator.getExceptions()) {
+            assertEquals(CustomerValidator.Problem.ALREADY_COLLECTED, rejection.getProblem());
+        }
+    }
+
+    /**
+     * Add the parcels, then queue customers for them, each parcel asked for
+     * by several customers spread through the queue
+     */
+    private static void fill(ParcelMap parcels, QueueOfCustomers queue) {
+        for (int i = 0; i < PARCELS; i++) {
+            parcels.addParcel(new Parcel(String.format("C%05d", i), i % 10, 1.0 + i % 7, 10, 20, 30));
+        }
+        int seqNo = 1;
+        for (int round = 0; round < CUSTOMERS_PER_PARCEL; round++) {
+            for (int i = 0; i < PARCELS; i++) {
+                queue.addCustomer(new Customer(seqNo, "Customer " + seqNo, String.format("C%05d", i)));
+                seqNo++;
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package controller;
+
+import model.Parcel;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * TariffTest class - checks that tariff rules compile to the fees they
+ * describe, and that a file missing its weight or volume rule is rejected
+ * and leaves the tariff in force alone.
+ */
+public class TariffTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void restoreDefaults() {
+        FeeRules.getInstance().setTariff(Tariff.defaults());
+    }
+
+    @Test
+    public void defaultsChargeTheOriginalRules() {
+        Tariff tariff = Tariff.defaults();
+        Parcel parcel = new Parcel("C1", 5, 2.0, 10, 10, 10);
+        assertEquals(1.0 + 10.0 + 5.0, tariff.calculateFee(parcel, 5), 1e-9);
+        assertEquals(1.0 + 10.0 + 10.0, tariff.calculateFee(parcel, 9), 1e-9);
+        assertEquals((1.0 + 10.0) * 0.9, tariff.calculateFee(new Parcel("X1", 0, 2.0, 10, 10, 10), 0), 1e-9);
+    }
+
+    @Test
+    public void missingWeightOrVolumeIsRejected() throws IOException {
+        expectRejected("", "no weight rule");
+        expectRejected("# nothing but a comment\n", "no weight rule");
+        expectRejected("volume 0.01\ndays 4 5.0\n", "no weight rule");
+        expectRejected("weight 0.5\n", "no volume rule");
+        expectRejected("weight 0.5\nvolume 0.01\nweight 0.6\n", "line 3: second weight rule");
+        // Zero rates are allowed when written down
+        assertEquals(0.0, parse("weight 0\nvolume 0\n").calculateFee(new Parcel("C1", 0, 2.0, 1, 1, 1), 0), 0);
+    }
+
+    @Test
+    public void truncatedFileKeepsTariffInForce() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("tariff.txt");
+        Files.write(file, "weight 1.0\nvolume 0\n".getBytes(StandardCharsets.UTF_8));
+        FeeRules rules = FeeRules.getInstance();
+        assertTrue(rules.reload(file));
+        Tariff loaded = rules.getTariff();
+        assertEquals(2.0, loaded.calculateFee(new Parcel("C1", 0, 2.0, 1, 1, 1), 0), 1e-9);
+
+        Files.write(file, "weig".getBytes(StandardCharsets.UTF_8));
+        assertFalse(rules.reload(file));
+        Files.write(file, new byte[0]);
+        assertFalse(rules.reload(file));
+        assertSame(loaded, rules.getTariff());
+    }
+
+    private static void expectRejected(String rules, String message) throws IOException {
+        try {
+            parse(rules);
+            fail("accepted " + rules);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("test") && e.getMessage().endsWith(message));
+        }
+    }
+
+    private static Tariff parse(String rules) throws IOException {
+        return Tariff.parse(new BufferedReader(new StringReader(rules)), "test");
+    }
+}
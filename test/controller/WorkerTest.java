@@ -0,0 +1,139 @@
+package controller;
+
+import collection.ParcelMap;
+import collection.QueueOfCustomers;
+import model.Customer;
+import model.Parcel;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * WorkerTest class - checks that validated customers are served from the
+ * parcel found when they joined, and that a parcel replaced or collected
+ * while they waited is looked up again, for both storages, and that fees
+ * worked out a column at a time match those worked out one by one.
+ */
+@RunWith(Parameterized.class)
+public class WorkerTest {
+    private final ParcelMap.Storage storage;
+
+    public WorkerTest(ParcelMap.Storage storage) {
+        this.storage = storage;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> storages() {
+        return Arrays.asList(new Object[][] {{ParcelMap.Storage.OBJECTS}, {ParcelMap.Storage.COLUMNS}});
+    }
+
+    @Test
+    public void servesPreparedParcel() {
+        Depot depot = new Depot(storage);
+        depot.parcels.addParcel(new Parcel("C1", 2, 4.0, 10, 10, 10));
+        depot.queue.addCustomer(new Customer(1, "Ann", "C1"));
+
+        assertTrue(depot.worker.processNextCustomer());
+        assertEquals(Worker.Outcome.COLLECTED, depot.worker.getLastOutcome());
+        assertTrue(depot.parcels.findParcelByID("C1").isCollected());
+        assertEquals(depot.worker.calculateFee(depot.parcels.findParcelByID("C1")),
+                depot.worker.getCurrentFee(), 1e-9);
+    }
+
+    @Test
+    public void replacedParcelIsLookedUpAgain() {
+        Depot depot = new Depot(storage);
+        depot.parcels.addParcel(new Parcel("C1", 2, 4.0, 10, 10, 10));
+        depot.queue.addCustomer(new Customer(1, "Ann", "C1"));
+        Parcel heavier = new Parcel("C1", 2, 40.0, 10, 10, 10);
+        depot.parcels.addParcel(heavier);
+
+        assertTrue(depot.worker.processNextCustomer());
+        Parcel stored = depot.parcels.findParcelByID("C1");
+        assertTrue(stored.isCollected());
+        assertEquals(40.0, stored.getWeight(), 0);
+        assertEquals(40.0, depot.worker.getCurrentParcel().getWeight(), 0);
+        assertEquals(depot.worker.calculateFee(heavier), depot.worker.getCurrentFee(), 1e-9);
+    }
+
+    @Test
+    public void parcelCollectedWhileWaitingIsRejected() {
+        Depot depot = new Depot(storage);
+        depot.parcels.addParcel(new Parcel("C1", 2, 4.0, 10, 10, 10));
+        depot.queue.addCustomer(new Customer(1, "Ann", "C1"));
+        depot.queue.addCustomer(new Customer(2, "Bob", "C1"));
+
+        assertTrue(depot.worker.processNextCustomer());
+        assertFalse(depot.worker.processNextCustomer());
+        assertEquals(Worker.Outcome.ALREADY_COLLECTED, depot.worker.getLastOutcome());
+        assertEquals(1, depot.validator.getExceptionCount());
+        assertEquals(CustomerValidator.Problem.ALREADY_COLLECTED, depot.validator.pollException().getProblem());
+    }
+
+    @Test
+    public void exceptionQueueKeepsLatest() {
+        Depot depot = new Depot(storage);
+        for (int i = 1; i <= CustomerValidator.MAX_EXCEPTIONS + 10; i++) {
+            assertFalse(depot.queue.addCustomer(new Customer(i, "Customer " + i, "C" + i)));
+        }
+        assertEquals(CustomerValidator.MAX_EXCEPTIONS, depot.validator.getExceptionCount());
+        assertEquals(CustomerValidator.MAX_EXCEPTIONS, depot.validator.getExceptions().size());
+        assertEquals("C11", depot.validator.pollException().getCustomer().getParcelID());
+        assertEquals(CustomerValidator.MAX_EXCEPTIONS - 1, depot.validator.getExceptionCount());
+    }
+
+    @Test
+    public void batchFeesMatchSingleFees() {
+        Depot depot = new Depot(storage);
+        Tariff tariff = FeeRules.getInstance().getTariff();
+        Parcel[] parcels = {
+                new Parcel("C1", 0, 1.5, 10, 20, 30),
+                new Parcel("X2", 5, 7.25, 3, 4, 5),
+                new Parcel("C3", 9, 0.1, 100, 100, 100),
+                new Parcel("X4", 30, 12.0, 1, 1, 1)
+        };
+        double[] weights = new double[parcels.length];
+        int[] lengths = new int[parcels.length];
+        int[] widths = new int[parcels.length];
+        int[] heights = new int[parcels.length];
+        int[] days = new int[parcels.length];
+        double[] discounts = new double[parcels.length];
+        for (int i = 0; i < parcels.length; i++) {
+            weights[i] = parcels[i].getWeight();
+            lengths[i] = parcels[i].getLength();
+            widths[i] = parcels[i].getWidth();
+            heights[i] = parcels[i].getHeight();
+            days[i] = parcels[i].getDaysInDepot();
+            discounts[i] = tariff.getDiscount(parcels[i].getParcelID());
+        }
+        double[] fees = depot.worker.calculateFees(weights, lengths, widths, heights, days, discounts);
+        for (int i = 0; i < parcels.length; i++) {
+            assertEquals(parcels[i].getParcelID(), depot.worker.calculateFee(parcels[i]), fees[i], 0.0);
+        }
+    }
+
+    /**
+     * Parcels, a validated queue and a worker serving it
+     */
+    private static final class Depot {
+        final ParcelMap parcels;
+        final QueueOfCustomers queue = new QueueOfCustomers();
+        final CustomerValidator validator;
+        final Worker worker;
+
+        Depot(ParcelMap.Storage storage) {
+            parcels = new ParcelMap(storage);
+            validator = new CustomerValidator(parcels, queue);
+            validator.start();
+            worker = new Worker(parcels, queue);
+            worker.setValidator(validator);
+        }
+    }
+}
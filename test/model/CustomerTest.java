@@ -0,0 +1,44 @@
+package model;
+
+import org.junit.Test;
+import util.ParcelIdCodec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * CustomerTest class - checks how customers hold the ID of the parcel they
+ * want: packed, interned by a store, unknown, or missing.
+ */
+public class CustomerTest {
+
+    @Test
+    public void packedIdIsHeldAsItsKey() {
+        Customer customer = new Customer(1, "Ann", "C0001234");
+        assertEquals(ParcelIdCodec.encode("C0001234"), customer.getParcelKey());
+        assertEquals("C0001234", customer.getParcelID());
+    }
+
+    @Test
+    public void unknownIdIsNotInternedButFoundOnceAParcelHasIt() {
+        String parcelID = "odd-id-" + System.nanoTime();
+        Customer customer = new Customer(1, "Ann", parcelID);
+        assertEquals(parcelID, customer.getParcelID());
+        assertEquals(ParcelIdCodec.NO_KEY, customer.getParcelKey());
+        assertEquals(ParcelIdCodec.NO_KEY, ParcelIdCodec.find(parcelID));
+
+        // As a parcel store does when the parcel arrives
+        long key = ParcelIdCodec.encode(parcelID);
+        assertEquals(key, customer.getParcelKey());
+        assertEquals(parcelID, customer.getParcelID());
+        assertEquals(key, new Customer(2, "Bob", parcelID).getParcelKey());
+    }
+
+    @Test
+    public void missingIdIsKept() {
+        Customer customer = new Customer(1, "Ann", (String) null);
+        assertNull(customer.getParcelID());
+        assertEquals(ParcelIdCodec.NO_KEY, customer.getParcelKey());
+        assertEquals("1\tAnn\tnull", customer.toString());
+    }
+}
@@ -0,0 +1,106 @@
+package server;
+
+import collection.Journal;
+import collection.ParcelMap;
+import collection.QueueOfCustomers;
+import model.Parcel;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * DepotServerTest class - checks that a change the server has acknowledged
+ * is already in the journal: the journal directory is reopened while the
+ * server still runs, as after a crash, and every acknowledged change is
+ * recovered from it.
+ */
+public class DepotServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Journal journal;
+    private DepotServer server;
+
+    @After
+    public void stop() throws IOException {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void acknowledgedChangesSurviveReopening() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        ParcelMap parcels = new ParcelMap();
+        QueueOfCustomers customers = new QueueOfCustomers();
+        journal = new Journal(directory, parcels, customers);
+        journal.replay();
+        journal.start();
+        server = new DepotServer(parcels, customers, journal, new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+
+        assertEquals(201, post("/parcels", "id=C100&days=2&weight=1.5&length=10&width=20&height=30"));
+        assertEquals(201, post("/parcels", "id=C200&days=5&weight=4.0&length=1&width=2&height=3"));
+        assertEquals(201, post("/queue", "name=Ann&parcelId=C100"));
+        assertEquals(201, post("/queue", "name=Bob&parcelId=C200"));
+        assertEquals(200, post("/queue/next", ""));
+
+        // Reopened without closing the running journal, so only what was forced is there
+        ParcelMap recoveredParcels = new ParcelMap();
+        QueueOfCustomers recoveredCustomers = new QueueOfCustomers();
+        Journal reopened = new Journal(directory, recoveredParcels, recoveredCustomers);
+        if (reopened.hasCheckpoint()) {
+            assertTrue(reopened.loadParcelCheckpoint());
+            assertTrue(reopened.loadCustomerCheckpoint());
+        }
+        reopened.replay();
+
+        Parcel collected = recoveredParcels.findParcelByID("C100");
+        assertNotNull(collected);
+        assertTrue(collected.isCollected());
+        Parcel waiting = recoveredParcels.findParcelByID("C200");
+        assertNotNull(waiting);
+        assertFalse(waiting.isCollected());
+        assertEquals(4.0, waiting.getWeight(), 0.0);
+        assertEquals(1, recoveredCustomers.size());
+        assertEquals("Bob", recoveredCustomers.getCustomerAt(0).getName());
+    }
+
+    /**
+     * Post a form-encoded body to the server
+     * @return the response status
+     */
+    private int post(String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path)
+                .openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
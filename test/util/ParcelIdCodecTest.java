@@ -0,0 +1,142 @@
+package util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ParcelIdCodecTest class - checks that packed keys decode to the same IDs,
+ * that order keys sort packed IDs as strings sort, and that IDs of other
+ * shapes fall back to the interned table only when encoded.
+ */
+public class ParcelIdCodecTest {
+
+    @Test
+    public void packedIdsDecodeToThemselves() {
+        for (String id : new String[] {"C0001234", "X42", "C7", "C007", "ABC999999999999", "0", "000000000000",
+                "Z1", "AB12"}) {
+            long key = ParcelIdCodec.encode(id);
+            assertTrue(id, key > 0);
+            assertEquals(id, ParcelIdCodec.decode(key));
+            assertEquals(id, key, ParcelIdCodec.find(id));
+            assertEquals(id, key, encodeBytes(id));
+            assertTrue(id, ParcelIdCodec.orderKey(key) >= 0);
+        }
+        assertNotEquals(ParcelIdCodec.encode("C7"), ParcelIdCodec.encode("C007"));
+    }
+
+    @Test
+    public void otherShapesAreInternedOnlyWhenEncoded() {
+        String[] ids = {"parcel-one", "ABCD1", "C1234567890123", "c1", "C", "", "C1x", "C 1", "Ä1"};
+        for (String id : ids) {
+            String unique = id + "#" + System.nanoTime();
+            assertEquals(unique, ParcelIdCodec.NO_KEY, ParcelIdCodec.find(unique));
+            byte[] bytes = unique.getBytes(StandardCharsets.UTF_8);
+            assertEquals(unique, ParcelIdCodec.NO_KEY, ParcelIdCodec.find(bytes, 0, bytes.length));
+            // Finding never interns
+            assertEquals(unique, ParcelIdCodec.NO_KEY, ParcelIdCodec.find(unique));
+
+            long key = ParcelIdCodec.encode(unique);
+            assertTrue(unique, key != ParcelIdCodec.NO_KEY);
+            assertEquals(unique, ParcelIdCodec.decode(key));
+            assertEquals(unique, key, ParcelIdCodec.find(unique));
+            assertEquals(unique, key, ParcelIdCodec.find(bytes, 0, bytes.length));
+            assertEquals(unique, key, encodeBytes(unique));
+            assertEquals(unique, -1, ParcelIdCodec.orderKey(key));
+        }
+        // Shapes that only miss packing by their own characters
+        for (String id : new String[] {"ABCD1", "C1234567890123", "c1", "C", "C1x"}) {
+            long key = ParcelIdCodec.encode(id);
+            assertEquals(id, ParcelIdCodec.decode(key));
+            assertEquals(id, -1, ParcelIdCodec.orderKey(key));
+        }
+    }
+
+    @Test
+    public void orderKeysSortLikeStrings() {
+        Random random = new Random(41);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            ids.add(randomId(random));
+        }
+        List<String> byString = new ArrayList<>(ids);
+        Collections.sort(byString);
+        List<String> byOrderKey = new ArrayList<>(ids);
+        Collections.sort(byOrderKey, (a, b) -> Long.compare(ParcelIdCodec.orderKey(ParcelIdCodec.encode(a)),
+                ParcelIdCodec.orderKey(ParcelIdCodec.encode(b))));
+        assertEquals(byString, byOrderKey);
+
+        for (String id : ids) {
+            long key = ParcelIdCodec.encode(id);
+            assertEquals(id, key, ParcelIdCodec.fromOrderKey(ParcelIdCodec.orderKey(key)));
+        }
+    }
+
+    @Test
+    public void prefixRangesHoldExactlyTheMatchingIds() {
+        Random random = new Random(42);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            ids.add(randomId(random));
+        }
+        for (String prefix : new String[] {"C", "C0", "C01", "AB", "AB9", "X", "XY", "Q", "C12345"}) {
+            long first = ParcelIdCodec.firstOrderKey(prefix);
+            long last = ParcelIdCodec.lastOrderKey(prefix);
+            assertTrue(prefix, first >= 0 && first <= last);
+            for (String id : ids) {
+                long orderKey = ParcelIdCodec.orderKey(ParcelIdCodec.encode(id));
+                boolean inRange = orderKey >= first && orderKey <= last;
+                assertEquals(prefix + " " + id, startsWithinShape(id, prefix), inRange);
+            }
+        }
+        assertEquals(-1, ParcelIdCodec.firstOrderKey("C1x"));
+        assertEquals(-1, ParcelIdCodec.lastOrderKey("C1234567890123"));
+    }
+
+    /**
+     * Whether an ID is one a prefix's order key range is meant to cover: a
+     * prefix of letters covers IDs whose letters start with it, one with
+     * digits covers IDs with exactly its letters
+     */
+    private static boolean startsWithinShape(String id, String prefix) {
+        if (!id.startsWith(prefix)) {
+            return false;
+        }
+        int prefixLetters = letters(prefix);
+        return prefixLetters == prefix.length() || letters(id) == prefixLetters;
+    }
+
+    private static int letters(String id) {
+        int letters = 0;
+        while (letters < id.length() && id.charAt(letters) >= 'A' && id.charAt(letters) <= 'Z') {
+            letters++;
+        }
+        return letters;
+    }
+
+    private static String randomId(Random random) {
+        StringBuilder id = new StringBuilder();
+        int letters = random.nextInt(4);
+        for (int i = 0; i < letters; i++) {
+            id.append((char) ('A' + random.nextInt(random.nextBoolean() ? 3 : 26)));
+        }
+        int digits = 1 + random.nextInt(random.nextBoolean() ? 4 : 12);
+        for (int i = 0; i < digits; i++) {
+            id.append((char) ('0' + random.nextInt(random.nextBoolean() ? 2 : 10)));
+        }
+        return id.toString();
+    }
+
+    private static long encodeBytes(String id) {
+        byte[] bytes = ("  " + id + " ").getBytes(StandardCharsets.UTF_8);
+        return ParcelIdCodec.encode(bytes, 2, bytes.length - 1);
+    }
+}